@@ -9,6 +9,7 @@ import java.util.Optional;
 
 import lombok.extern.log4j.Log4j2;
 
+import gg.sep.securityrobot.lifecycle.ShutdownReport;
 import gg.sep.twitchapi.helix.Helix;
 import gg.sep.twitchapi.helix.model.game.Game;
 import gg.sep.twitchapi.helix.model.stream.Stream;
@@ -29,10 +30,15 @@ import gg.sep.twitchapi.kraken.model.team.Team;
 public final class Main {
 
 
+    private static final int EXIT_SHUTDOWN_FAILED = 1;
+
     private Main() { }
 
     /**
      * Main entry point into the application.
+     *
+     * Once the bot has started, the main thread waits for it to be shut down, and then exits the process: with status
+     * 0, or with status 1 if any step of the shutdown failed, so a supervisor can tell the two apart.
      * @param args Command line arguments.
      * @throws Exception Fatal exception thrown indicating the bot cannot proceed and will exit.
      */
@@ -59,5 +65,8 @@ public final class Main {
         final List<Stream> streams = helix.getStreamsAPI().getStreamsByUserLogin(Arrays.asList("Seputaes", "TwitchPresents"));
         final List<Subscription> subscriptions = helix.getSubscriptionsAPI().getSubscriptions("24233949");
         final List<Tag> tags = helix.getTagsAPI().getTags(500);
+
+        final ShutdownReport report = securityRobot.getLifecycleManager().awaitShutdown();
+        System.exit(report.getFailedSteps().isEmpty() ? 0 : EXIT_SHUTDOWN_FAILED);
     }
 }
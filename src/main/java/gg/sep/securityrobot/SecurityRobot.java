@@ -1,25 +1,72 @@
 package gg.sep.securityrobot;
 
-import java.util.HashSet;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+import com.mongodb.MongoException;
 import lombok.Getter;
 import lombok.extern.log4j.Log4j2;
+import org.bson.Document;
 import org.kitteh.irc.client.library.Client;
 import org.kitteh.irc.client.library.feature.twitch.TwitchSupport;
-import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPool;
-import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.exceptions.JedisException;
 
+import gg.sep.securityrobot.activity.UserActivityIndex;
+import gg.sep.securityrobot.analytics.ChatAnalytics;
+import gg.sep.securityrobot.archive.ChatArchiveWriter;
+import gg.sep.securityrobot.chatlogs.ChannelLogPolicies;
 import gg.sep.securityrobot.commands.CommandManager;
-import gg.sep.securityrobot.config.ConfigLoader;
+import gg.sep.securityrobot.config.ConfigManager;
 import gg.sep.securityrobot.config.models.ApplicationConfig;
-import gg.sep.securityrobot.config.models.RedisConfig;
+import gg.sep.securityrobot.config.models.MongoDBConfig;
+import gg.sep.securityrobot.config.models.ResilienceConfig;
+import gg.sep.securityrobot.config.models.SearchConfig;
+import gg.sep.securityrobot.config.models.TwitchConfig;
+import gg.sep.securityrobot.db.ChatLogStores;
 import gg.sep.securityrobot.db.MongoWrapper;
+import gg.sep.securityrobot.engagement.EngagementManager;
 import gg.sep.securityrobot.exceptions.SecurityRobotFatal;
+import gg.sep.securityrobot.history.ChatHistory;
+import gg.sep.securityrobot.http.HttpApiServer;
+import gg.sep.securityrobot.identity.IdentityTable;
+import gg.sep.securityrobot.jfr.FlightRecording;
+import gg.sep.securityrobot.lifecycle.LifecycleManager;
+import gg.sep.securityrobot.lifecycle.ShutdownReport;
 import gg.sep.securityrobot.listeners.CommandListener;
+import gg.sep.securityrobot.listeners.IngestListener;
 import gg.sep.securityrobot.listeners.JoinPartListener;
 import gg.sep.securityrobot.listeners.LoggingListener;
+import gg.sep.securityrobot.outbound.OutboundMessageQueue;
+import gg.sep.securityrobot.permissions.CommandRoleOverrides;
+import gg.sep.securityrobot.permissions.FollowerCache;
+import gg.sep.securityrobot.points.LoyaltyPoints;
+import gg.sep.securityrobot.presence.PresenceTracker;
+import gg.sep.securityrobot.redis.RedisAccess;
+import gg.sep.securityrobot.search.ChatSearchIndex;
+import gg.sep.securityrobot.search.SearchQuery;
+import gg.sep.securityrobot.search.SearchResult;
+import gg.sep.securityrobot.snapshot.StateSnapshot;
+import gg.sep.securityrobot.snapshot.WarmRestartSnapshots;
+import gg.sep.securityrobot.startup.ReadyGate;
+import gg.sep.securityrobot.startup.StartupOrchestrator;
+import gg.sep.securityrobot.timers.TimedMessages;
+import gg.sep.securityrobot.twitch.AsyncTwitchAPI;
+import gg.sep.securityrobot.twitch.FaultInjectingEndpoints;
+import gg.sep.securityrobot.twitch.StreamStatusCache;
+import gg.sep.securityrobot.twitch.TwitchApiEndpoints;
+import gg.sep.securityrobot.twitch.TwitchEndpoints;
+import gg.sep.securityrobot.twitch.UserResolver;
 import gg.sep.securityrobot.utils.IRCUtils;
 import gg.sep.twitchapi.TwitchAPI;
 
@@ -30,33 +77,102 @@ import gg.sep.twitchapi.TwitchAPI;
 public class SecurityRobot {
     public static final String REDIS_PREFIX = "securityrobot:";
     public static final String COMMAND_PREFIX = "+";
-    @Getter private final ApplicationConfig config;
+    // sections held by components since startup, so reloaded changes to them only apply after a restart
+    private static final Map<String, Function<ApplicationConfig, Object>> RESTART_SECTIONS = restartSections();
+    private static final long MONGO_RETIRE_GRACE_MILLIS = 2000;
+    @Getter private final ConfigManager configManager;
     @Getter private SecurityRobotClient securityRobotClient;
-    @Getter private TwitchAPI twitchAPI;
-    @Getter private MongoWrapper mongoWrapper;
+    @Getter private volatile TwitchAPI twitchAPI;
+    private TwitchApiEndpoints twitchApiEndpoints;
+    @Getter private AsyncTwitchAPI asyncTwitchAPI;
+    @Getter private UserResolver userResolver;
+    @Getter private StreamStatusCache streamStatusCache;
+    @Getter private volatile MongoWrapper mongoWrapper;
+    @Getter private volatile ChatLogStores chatLogStores;
+    @Getter private ChannelLogPolicies channelLogPolicies;
     @Getter private CommandManager commandManager;
-    @Getter private JedisPool jedisPool;
+    @Getter private RedisAccess redis;
+    @Getter private IngestListener ingestListener;
+    @Getter private IdentityTable identityTable;
+    @Getter private FollowerCache followerCache;
+    @Getter private CommandRoleOverrides commandRoleOverrides;
+    @Getter private ChatHistory chatHistory;
+    @Getter private ChatAnalytics chatAnalytics;
+    @Getter private UserActivityIndex userActivityIndex;
+    @Getter private ChatSearchIndex chatSearchIndex;
+    @Getter private HttpApiServer httpApiServer;
+    @Getter private ChatArchiveWriter chatArchiveWriter;
+    @Getter private OutboundMessageQueue outboundMessageQueue;
+    @Getter private TimedMessages timedMessages;
+    @Getter private EngagementManager engagementManager;
+    @Getter private LoyaltyPoints loyaltyPoints;
+    @Getter private PresenceTracker presenceTracker;
+    @Getter private FlightRecording flightRecording;
+    @Getter private ReadyGate readyGate;
+    @Getter private LifecycleManager lifecycleManager;
+    @Getter private WarmRestartSnapshots warmRestartSnapshots;
+    private StateSnapshot warmSnapshot;
+    @Getter private Map<String, Long> startupTimings;
 
     /**
-     * Creates a new instance of SecurityRobot and loads all instance variables.
+     * Creates a new instance of SecurityRobot and loads its configuration.
+     *
+     * Connections and components are only created by {@link #start()}.
      */
     public SecurityRobot() {
-        this.config = ConfigLoader.loadConfig();
-
-        initTwitchAPI();
-        this.mongoWrapper = new MongoWrapper(this.config.getMongodb());
-        this.jedisPool = initJedisPool();
+        this.configManager = new ConfigManager();
+        this.configManager.subscribe(this::applyConfigChange);
+        this.flightRecording = new FlightRecording(getConfig().getJfr());
+        this.flightRecording.start();
+        this.readyGate = new ReadyGate(getConfig().getStartup().getMaxBufferedEvents());
+        this.warmRestartSnapshots = new WarmRestartSnapshots(getConfig().getSnapshot(), this::captureSnapshot);
+        this.lifecycleManager = new LifecycleManager(getConfig().getShutdown().getDrainTimeoutSeconds());
+        addShutdownSteps();
+        this.lifecycleManager.installShutdownHook();
     }
 
     /**
-     * Starts running the bot, connects to the IRC server, joins channels, and adds listeners.
+     * Starts running the bot: connects to MongoDB, Redis, Twitch and the IRC server, creates every component, adds
+     * listeners and joins channels.
+     *
+     * Independent phases run in parallel. IRC events which arrive before every phase has finished are buffered by the
+     * {@link #getReadyGate() ready gate}, and handled once the bot is ready. If there is a recent warm restart
+     * snapshot, channels, custom commands and caches start from it, and are reconciled against Redis once the bot is
+     * ready.
      * @throws SecurityRobotFatal Exception indicating that the bot cannot proceed and will shut down.
      */
     public void start() throws SecurityRobotFatal {
-        this.securityRobotClient = new SecurityRobotClient(this, buildIrcClient());
-        addListeners();
-        joinInitialChannels();
-        this.commandManager = new CommandManager(this);
+        final StartupOrchestrator startup = new StartupOrchestrator(getConfig().getStartup().getThreads(),
+            getConfig().getStartup().getTimeoutSeconds());
+        try {
+            startup.phase("snapshot", () -> this.warmSnapshot = this.warmRestartSnapshots.load().orElse(null));
+            startup.phase("redis", this::initRedis);
+            startup.phase("twitchApi", this::initTwitchAPI, "snapshot", "redis");
+            startup.phase("mongo", this::initMongo);
+            startup.phase("identity", this::initIdentity, "snapshot");
+            startup.phase("irc", () -> this.securityRobotClient = new SecurityRobotClient(this, buildIrcClient()));
+            startup.phase("components", this::initComponents, "twitchApi", "redis", "identity");
+            startup.phase("commands", () -> this.commandManager = new CommandManager(this,
+                this.warmSnapshot == null ? null : this.warmSnapshot.getCustomCommands()), "redis", "snapshot");
+            startup.phase("listeners", this::addListeners, "irc", "mongo", "components");
+            startup.phase("channels", this::joinInitialChannels, "listeners");
+            startup.phase("services", this::startServices, "irc", "components");
+            startup.phase("httpApi", this::startHttpApi, "components");
+            this.startupTimings = startup.run();
+        } catch (final SecurityRobotFatal e) {
+            shutdown(e.getMessage());
+            throw e;
+        } catch (final RuntimeException e) {
+            // eg a phase added before one of its dependencies, which would otherwise skip the shutdown
+            final SecurityRobotFatal fatal = new SecurityRobotFatal("Startup failed: " + e.getMessage(), e);
+            shutdown(fatal.getMessage());
+            throw fatal;
+        }
+        this.readyGate.open();
+        if (this.warmSnapshot != null) {
+            this.warmRestartSnapshots.reconcile(this::reconcileWarmSnapshot);
+            this.warmSnapshot = null;
+        }
     }
 
     /**
@@ -65,9 +181,9 @@ public class SecurityRobot {
      */
     private Client buildIrcClient() {
         final Client client = Client.builder()
-            .server().host(config.getTwitch().getIrcHost()).port(config.getTwitch().getIrcPort())
-            .password(config.getTwitch().getIrcOauthPassword()).then()
-            .nick(config.getTwitch().getIrcNickname())
+            .server().host(getConfig().getTwitch().getIrcHost()).port(getConfig().getTwitch().getIrcPort())
+            .password(getConfig().getTwitch().getIrcOauthPassword()).then()
+            .nick(getConfig().getTwitch().getIrcNickname())
             .build();
         TwitchSupport.addSupport(client);
         client.connect();
@@ -78,50 +194,445 @@ public class SecurityRobot {
      * Initializes the Twitch API using the Twitch configuration.
      */
     private void initTwitchAPI() {
-        this.twitchAPI = new TwitchAPI(this.config.getTwitch().buildAPIConfig());
+        this.twitchAPI = new TwitchAPI(getConfig().getTwitch().buildAPIConfig(this.redis.getPool()));
+        final ResilienceConfig resilience = getConfig().getResilience();
+        this.twitchApiEndpoints = new TwitchApiEndpoints(this.twitchAPI);
+        TwitchEndpoints endpoints = this.twitchApiEndpoints;
+        if (resilience.getFaultLatencyMillis() > 0 || resilience.getFaultErrorRate() > 0) {
+            endpoints = new FaultInjectingEndpoints(endpoints, resilience.getFaultLatencyMillis(),
+                resilience.getFaultErrorRate());
+        }
+        this.asyncTwitchAPI = new AsyncTwitchAPI(endpoints, resilience, getConfig().getTwitch().getApiThreads());
+        this.userResolver = new UserResolver(getConfig().getUserResolver(), this.asyncTwitchAPI);
+        this.streamStatusCache = new StreamStatusCache(this.asyncTwitchAPI,
+            getConfig().getTwitch().getStreamStatusCacheSeconds());
+        if (this.warmSnapshot != null) {
+            this.streamStatusCache.restore(this.warmSnapshot.getLiveChannels(), this.warmSnapshot.ageMillis());
+        }
+    }
+
+    private void initRedis() {
+        this.redis = new RedisAccess(getConfig().getRedis());
+        this.redis.warmUp(getConfig().getStartup().getRedisWarmConnections());
+    }
+
+    private void initMongo() {
+        this.mongoWrapper = new MongoWrapper(getConfig().getMongodb());
+        this.chatLogStores = new ChatLogStores(this.mongoWrapper);
+        this.mongoWrapper.getMongoClient().getDatabase("admin").runCommand(new Document("ping", 1));
+    }
+
+    private void initIdentity() {
+        this.identityTable = new IdentityTable(getConfig().getIdentity());
+        if (this.warmSnapshot != null) {
+            this.warmSnapshot.getChannelRoomIds().forEach(this.identityTable::resolveChannel);
+            this.warmSnapshot.getUsers().forEach(u -> this.identityTable.restoreUser(u.getUserId(), u.getLogin(),
+                u.getDisplayName(), u.getLastSeenMillis()));
+        }
+        this.identityTable.start();
+    }
+
+    private void initComponents() {
+        this.followerCache = new FollowerCache(getConfig().getPermissions(), this.asyncTwitchAPI);
+        if (this.warmSnapshot != null) {
+            this.followerCache.restore(this.warmSnapshot.getFollows(), this.warmSnapshot.ageMillis());
+        }
+        this.commandRoleOverrides = new CommandRoleOverrides(getConfig().getPermissions(), this.redis);
+        this.chatHistory = new ChatHistory(getConfig().getChatHistory());
+        this.chatAnalytics = new ChatAnalytics(getConfig().getAnalytics());
+        this.chatAnalytics.start(this.redis);
+        this.userActivityIndex = new UserActivityIndex(getConfig().getActivity(), this.redis);
+        this.userActivityIndex.start();
+        this.chatArchiveWriter = initChatArchiveWriter();
+        this.outboundMessageQueue = new OutboundMessageQueue(getConfig().getOutbound(),
+            (channel, message) -> this.securityRobotClient.getIrcClient().sendMessage(channel, message));
+        this.timedMessages = new TimedMessages(getConfig().getTimers(), this.redis, this.streamStatusCache,
+            this.identityTable, this.outboundMessageQueue);
+        this.engagementManager = new EngagementManager(getConfig().getEngagement(), this.redis);
+        this.loyaltyPoints = new LoyaltyPoints(getConfig().getPoints(), this.redis, this.chatAnalytics,
+            this.identityTable, this.streamStatusCache);
+        this.presenceTracker = new PresenceTracker(getConfig().getPresence());
+        this.channelLogPolicies = new ChannelLogPolicies(getConfig().getChatLogs(), this.redis,
+            () -> getConfig().getTwitch().getStreamChannel());
+        this.chatSearchIndex = new ChatSearchIndex(getConfig().getSearch(), this.channelLogPolicies::isSearchEnabled,
+            () -> getConfig().getTwitch().getStreamChannel());
+    }
+
+    private void startServices() {
+        this.outboundMessageQueue.start();
+        this.timedMessages.start();
+        this.engagementManager.start();
+        this.loyaltyPoints.start();
+        this.presenceTracker.start();
+        this.channelLogPolicies.start();
+        this.commandRoleOverrides.start();
+        this.chatSearchIndex.start();
+        this.warmRestartSnapshots.start();
+        this.configManager.start(this.redis);
+    }
+
+    /**
+     * Returns the running configuration, which may be replaced while the bot is running when the configuration is
+     * reloaded. Callers should not keep the returned configuration, so that they see reloaded settings.
+     * @return Running application configuration.
+     */
+    public ApplicationConfig getConfig() {
+        return this.configManager.get();
     }
 
     /**
-     * Joints all initial channels.
+     * Applies a reloaded configuration to the components which can be reconfigured while running.
+     *
+     * Settings read on each use, eg the stream channel and the bot owner, apply without any work here. Redis and
+     * MongoDB are reconnected, and the new connections replace the old ones once they answer; work in flight on the
+     * old connections finishes before they are closed. Settings held by other components since startup are logged as
+     * requiring a restart.
+     * @param previous Configuration which was replaced.
+     * @param current Configuration which is now running.
+     */
+    private void applyConfigChange(final ApplicationConfig previous, final ApplicationConfig current) {
+        boolean redisReplaced = false;
+        if (this.redis != null && ConfigManager.changed(previous.getRedis(), current.getRedis())) {
+            try {
+                this.redis.reconfigure(current.getRedis());
+                redisReplaced = true;
+            } catch (final JedisException e) {
+                log.error("Unable to connect with the reloaded Redis configuration, keeping the current connections.",
+                    e);
+            }
+        }
+        if (this.mongoWrapper != null && ConfigManager.changed(previous.getMongodb(), current.getMongodb())) {
+            reconnectMongo(current.getMongodb());
+        }
+
+        final TwitchConfig before = previous.getTwitch();
+        final TwitchConfig after = current.getTwitch();
+        // the Twitch API client keeps the Redis pool it was built with
+        if (this.twitchApiEndpoints != null && (redisReplaced || before.getApiRateLimit() != after.getApiRateLimit()
+            || !Objects.equals(before.getApiClientId(), after.getApiClientId())
+            || !Objects.equals(before.getApiOauthToken(), after.getApiOauthToken()))) {
+            this.twitchAPI = new TwitchAPI(after.buildAPIConfig(this.redis.getPool()));
+            this.twitchApiEndpoints.setTwitchAPI(this.twitchAPI);
+            log.info("Applied reloaded Twitch API configuration. apiRateLimit={}", after.getApiRateLimit());
+        }
+        if (this.outboundMessageQueue != null && ConfigManager.changed(previous.getOutbound(), current.getOutbound())) {
+            this.outboundMessageQueue.reconfigure(current.getOutbound());
+            log.info("Applied reloaded outbound message configuration.");
+        }
+
+        final List<String> restartRequired = RESTART_SECTIONS.entrySet().stream()
+            .filter(e -> ConfigManager.changed(e.getValue().apply(previous), e.getValue().apply(current)))
+            .map(Map.Entry::getKey)
+            .collect(Collectors.toList());
+        if (!restartRequired.isEmpty()) {
+            log.warn("Reloaded configuration changes only apply after a restart. sections={}", restartRequired);
+        }
+    }
+
+    /**
+     * Connects to MongoDB with a reloaded configuration, and replaces the client and chat log stores once the new
+     * client answers. The previous stores are flushed and the previous client closed after a short grace period, so
+     * messages written through them just before the swap are not lost.
+     * @param mongoConfig New MongoDB configuration.
+     */
+    private void reconnectMongo(final MongoDBConfig mongoConfig) {
+        MongoWrapper replacement = null;
+        final ChatLogStores replacementStores;
+        try {
+            replacement = new MongoWrapper(mongoConfig);
+            replacement.getMongoClient().getDatabase("admin").runCommand(new Document("ping", 1));
+            replacementStores = new ChatLogStores(replacement);
+        } catch (final RuntimeException e) {
+            log.error("Unable to connect with the reloaded MongoDB configuration, keeping the current connection.", e);
+            if (replacement != null) {
+                replacement.getMongoClient().close();
+            }
+            return;
+        }
+        final MongoWrapper previous = this.mongoWrapper;
+        final ChatLogStores previousStores = this.chatLogStores;
+        this.mongoWrapper = replacement;
+        this.chatLogStores = replacementStores;
+        log.info("Connected to reloaded MongoDB configuration. host={}, port={}, logLayout={}",
+            mongoConfig.getHost(), mongoConfig.getPort(), mongoConfig.getLogLayout());
+
+        try {
+            // writes which picked up the previous stores just before the swap only take a moment to finish
+            TimeUnit.MILLISECONDS.sleep(MONGO_RETIRE_GRACE_MILLIS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            previousStores.close();
+        } catch (final MongoException e) {
+            log.error("Unable to flush chat logs buffered for the previous MongoDB connection.", e);
+        }
+        previous.getMongoClient().close();
+    }
+
+    private static Map<String, Function<ApplicationConfig, Object>> restartSections() {
+        final Map<String, Function<ApplicationConfig, Object>> sections = new LinkedHashMap<>();
+        sections.put("twitch.irc", c -> Arrays.asList(c.getTwitch().getIrcHost(), c.getTwitch().getIrcPort(),
+            c.getTwitch().getIrcNickname(), c.getTwitch().getIrcOauthPassword()));
+        sections.put("twitch.apiThreads", c -> c.getTwitch().getApiThreads());
+        sections.put("twitch.streamStatusCacheSeconds", c -> c.getTwitch().getStreamStatusCacheSeconds());
+        sections.put("chatHistory", ApplicationConfig::getChatHistory);
+        sections.put("analytics", ApplicationConfig::getAnalytics);
+        sections.put("activity", ApplicationConfig::getActivity);
+        sections.put("http", ApplicationConfig::getHttp);
+        sections.put("archive", ApplicationConfig::getArchive);
+        sections.put("identity", ApplicationConfig::getIdentity);
+        sections.put("permissions", ApplicationConfig::getPermissions);
+        sections.put("resilience", ApplicationConfig::getResilience);
+        sections.put("userResolver", ApplicationConfig::getUserResolver);
+        sections.put("timers", ApplicationConfig::getTimers);
+        sections.put("engagement", ApplicationConfig::getEngagement);
+        sections.put("points", ApplicationConfig::getPoints);
+        sections.put("presence", ApplicationConfig::getPresence);
+        sections.put("chatLogs", ApplicationConfig::getChatLogs);
+        sections.put("search", ApplicationConfig::getSearch);
+        sections.put("jfr", ApplicationConfig::getJfr);
+        sections.put("startup", ApplicationConfig::getStartup);
+        sections.put("shutdown", ApplicationConfig::getShutdown);
+        sections.put("snapshot", ApplicationConfig::getSnapshot);
+        sections.put("reload", ApplicationConfig::getReload);
+        return sections;
+    }
+
+    /**
+     * Joins the bot's own channel and all initial channels, from the warm restart snapshot if there is one, or from
+     * Redis otherwise.
      */
     private void joinInitialChannels() {
-        final Set<String> initialChannels = new HashSet<>();
-        initialChannels.add(IRCUtils.ircify((getConfig().getTwitch().getIrcNickname()))); // always join the bots own channel
+        // always join the bots own channel
+        securityRobotClient.joinChannel(IRCUtils.ircify(getConfig().getTwitch().getIrcNickname()), false);
+        securityRobotClient.syncInitialChannels(this.warmSnapshot != null ? this.warmSnapshot.getChannels()
+            : readInitialChannels());
+    }
 
-        try (Jedis jedis = this.jedisPool.getResource()) {
-            final Set<String> activeChannels = jedis.smembers(REDIS_PREFIX + "added_channels");
-            activeChannels.forEach(c -> initialChannels.add(IRCUtils.ircify(c)));
+    private Set<String> readInitialChannels() {
+        return this.redis.execute("readInitialChannels", jedis -> jedis.smembers(REDIS_PREFIX + "added_channels"));
+    }
+
+    /**
+     * Brings state which was started from a warm restart snapshot up to date with Redis, its source of truth.
+     */
+    private void reconcileWarmSnapshot() {
+        this.securityRobotClient.syncInitialChannels(readInitialChannels());
+        this.commandManager.reloadCustomCommands();
+    }
+
+    /**
+     * Captures the state kept in warm restart snapshots.
+     * @return Current state, or empty if the bot has not finished starting, so its state is incomplete.
+     */
+    private Optional<StateSnapshot> captureSnapshot() {
+        if (!this.readyGate.isReady()) {
+            return Optional.empty();
         }
-        initialChannels.forEach(c -> securityRobotClient.joinChannel(c, false));
+        final Map<String, Long> channelRoomIds = new HashMap<>();
+        this.identityTable.getChannels().forEach(c -> channelRoomIds.put(c.getIrcName(), c.getRoomId()));
+        final List<StateSnapshot.User> users = this.identityTable.getUsers().stream()
+            .filter(u -> u.getLogin() != null && u.getDisplayName() != null)
+            .map(u -> new StateSnapshot.User(u.getUserId(), u.getLogin(), u.getDisplayName(), u.lastSeenMillis()))
+            .collect(Collectors.toList());
+        return Optional.of(StateSnapshot.builder()
+            .writtenAtMillis(System.currentTimeMillis())
+            .channels(this.securityRobotClient.getInitialChannels())
+            .customCommands(this.commandManager.getCustomCommandHashes())
+            .follows(this.followerCache.snapshot())
+            .liveChannels(this.streamStatusCache.snapshot())
+            .channelRoomIds(channelRoomIds)
+            .users(users)
+            .build());
     }
 
     /**
      * Adds all default event listeners to the IRC client.
      */
     private void addListeners() {
+        this.ingestListener = new IngestListener(this);
+        this.ingestListener.addConsumer(new CommandListener(this));
+        this.ingestListener.addConsumer(this.chatHistory);
+        this.ingestListener.addConsumer(this.chatAnalytics);
+        this.ingestListener.addConsumer(this.userActivityIndex);
+        this.ingestListener.addConsumer(this.timedMessages);
+        this.ingestListener.addConsumer(this.chatSearchIndex);
+        if (this.chatArchiveWriter != null) {
+            this.ingestListener.addConsumer(this.chatArchiveWriter);
+        }
+        this.ingestListener.addConsumer(new LoggingListener(this.channelLogPolicies, this::getChatLogStores));
         securityRobotClient.getIrcClient().getEventManager()
-            .registerEventListener(new CommandListener(this));
+            .registerEventListener(this.ingestListener);
 
         securityRobotClient.getIrcClient().getEventManager()
-            .registerEventListener(new JoinPartListener());
+            .registerEventListener(new JoinPartListener(this.presenceTracker));
+    }
 
-        securityRobotClient.getIrcClient().getEventManager()
-            .registerEventListener(new LoggingListener(this, this.mongoWrapper.getMongoClient().getDatabase("beastielogs")));
+    /**
+     * Starts the embedded HTTP API, if it is enabled in the configuration.
+     *
+     * Failing to start the HTTP API is logged, but does not stop the bot.
+     */
+    private void startHttpApi() {
+        if (!getConfig().getHttp().isEnabled()) {
+            return;
+        }
+        try {
+            this.httpApiServer = new HttpApiServer(getConfig().getHttp());
+            this.httpApiServer.addRoute("/chatstats", (path, query) -> this.chatAnalytics.getSnapshot(path));
+            this.httpApiServer.addRoute("/twitchapi", (path, query) -> Optional.of(this.asyncTwitchAPI.getMetrics()));
+            this.httpApiServer.addRoute("/search", this::searchRoute);
+            this.httpApiServer.addRoute("/redis", (path, query) -> Optional.of(this.redis.getMetrics()));
+            this.httpApiServer.addRoute("/searchstats", (path, query) -> this.chatSearchIndex.getStats(path));
+            this.httpApiServer.start();
+        } catch (final IOException e) {
+            log.error("Unable to start the HTTP API.", e);
+        }
     }
 
-    private JedisPool initJedisPool() {
-        final int defaultJedisTimeout = 2000;
-        final JedisPoolConfig poolConfig = new JedisPoolConfig();
-        final RedisConfig redisConfig = this.getConfig().getRedis();
-        return new JedisPool(poolConfig, redisConfig.getHost(), redisConfig.getPort(),
-            defaultJedisTimeout, redisConfig.getPassword());
+    /**
+     * Searches a channel's recent chat for the HTTP API, eg {@code /search/channel?q=gg&hours=6&limit=20}.
+     * @param path Channel to search.
+     * @param query Query string parameters: {@code q} the search query, {@code hours} how far back to search, which
+     *              defaults to the whole retention, and {@code limit} the maximum number of hits.
+     * @return Search result, or empty if the channel or the query is missing or invalid.
+     */
+    private Optional<SearchResult> searchRoute(final String path, final Map<String, String> query) {
+        final SearchConfig search = getConfig().getSearch();
+        final long hours;
+        final int limit;
+        try {
+            hours = Long.parseLong(query.getOrDefault("hours", String.valueOf(search.getRetentionHours())));
+            limit = Integer.parseInt(query.getOrDefault("limit", String.valueOf(search.getMaxResults())));
+        } catch (final NumberFormatException e) {
+            return Optional.empty();
+        }
+        if (path.isEmpty()) {
+            return Optional.empty();
+        }
+        final long now = System.currentTimeMillis();
+        return SearchQuery.parse(query.getOrDefault("q", "")).map(q -> this.chatSearchIndex.search(path, q,
+            now - TimeUnit.HOURS.toMillis(hours), now + 1, limit));
+    }
+
+    /**
+     * Opens the local chat archive, if it is enabled in the configuration.
+     *
+     * Failing to open the archive is logged, but does not stop the bot.
+     * @return The started archive writer, or null if the archive is disabled or could not be opened.
+     */
+    private ChatArchiveWriter initChatArchiveWriter() {
+        if (!getConfig().getArchive().isEnabled()) {
+            return null;
+        }
+        try {
+            final ChatArchiveWriter writer = new ChatArchiveWriter(getConfig().getArchive());
+            writer.start();
+            return writer;
+        } catch (final IOException e) {
+            log.error("Unable to open the chat archive.", e);
+            return null;
+        }
     }
 
     /**
-     * Disconnects the IRC bot and shuts down any running processes.
+     * Shuts the bot down gracefully, if it hasn't been already.
+     *
+     * Intake of IRC events is stopped first, then running commands and queued outbound messages are given until the
+     * configured deadline to finish, and then buffered state is flushed to Redis, MongoDB and disk before every
+     * connection is closed. Components which were never created, eg because startup failed part of the way through,
+     * are skipped.
      * @param reason Reason message for shutting down the bot.
+     * @return Report of the shutdown, including anything which was dropped.
      */
-    public synchronized void shutdown(final String reason) {
-        this.securityRobotClient.disconnect(reason);
+    public ShutdownReport shutdown(final String reason) {
+        return this.lifecycleManager.shutdown(reason);
+    }
+
+    /**
+     * Adds the steps of a graceful shutdown, in the order they run.
+     */
+    private void addShutdownSteps() {
+        // stop intake: events from IRC, and the components which produce work on their own
+        this.lifecycleManager.step("intake", deadline -> {
+            this.readyGate.close();
+            this.configManager.stop();
+            stopIfCreated(this.timedMessages, TimedMessages::stop);
+            stopIfCreated(this.loyaltyPoints, LoyaltyPoints::stop);
+            stopIfCreated(this.presenceTracker, PresenceTracker::stop);
+            stopIfCreated(this.channelLogPolicies, ChannelLogPolicies::stop);
+            stopIfCreated(this.commandRoleOverrides, CommandRoleOverrides::stop);
+            stopIfCreated(this.chatSearchIndex, ChatSearchIndex::stop);
+            return 0;
+        });
+        // drain running and queued work until the deadline
+        this.lifecycleManager.step("commands", deadline ->
+            this.commandManager == null ? 0 : this.commandManager.drainInFlight(deadline));
+        this.lifecycleManager.step("outbound", deadline ->
+            this.outboundMessageQueue == null ? 0 : this.outboundMessageQueue.stopAndDrain(deadline));
+        this.lifecycleManager.step("irc", deadline -> {
+            stopIfCreated(this.securityRobotClient, c -> c.disconnect(this.lifecycleManager.getShutdownReason()));
+            return this.readyGate.rejectedCount();
+        });
+        this.lifecycleManager.step("httpApi", deadline -> {
+            stopIfCreated(this.httpApiServer, HttpApiServer::stop);
+            return 0;
+        });
+        // flush write-behind state
+        this.lifecycleManager.step("engagement", deadline -> {
+            stopIfCreated(this.engagementManager, EngagementManager::stop);
+            return 0;
+        });
+        this.lifecycleManager.step("analytics", deadline -> {
+            stopIfCreated(this.chatAnalytics, ChatAnalytics::stop);
+            if (this.chatAnalytics != null && this.redis != null) {
+                this.chatAnalytics.writeSnapshots(this.redis);
+            }
+            return 0;
+        });
+        this.lifecycleManager.step("activity", deadline -> {
+            stopIfCreated(this.userActivityIndex, UserActivityIndex::stop);
+            return 0;
+        });
+        this.lifecycleManager.step("identity", deadline -> {
+            stopIfCreated(this.identityTable, IdentityTable::stop);
+            return 0;
+        });
+        this.lifecycleManager.step("chatLogs", deadline -> {
+            stopIfCreated(this.chatLogStores, ChatLogStores::flush);
+            return 0;
+        });
+        this.lifecycleManager.step("archive", deadline -> {
+            if (this.chatArchiveWriter != null) {
+                this.chatArchiveWriter.close();
+            }
+            return 0;
+        });
+        this.lifecycleManager.step("snapshot", deadline -> {
+            this.warmRestartSnapshots.stop();
+            return 0;
+        });
+        // close connections and pools
+        this.lifecycleManager.step("twitchApi", deadline -> {
+            stopIfCreated(this.userResolver, UserResolver::shutdown);
+            stopIfCreated(this.asyncTwitchAPI, AsyncTwitchAPI::shutdown);
+            return 0;
+        });
+        this.lifecycleManager.step("redis", deadline -> this.redis == null ? 0 : this.redis.close(deadline));
+        this.lifecycleManager.step("mongo", deadline -> {
+            stopIfCreated(this.mongoWrapper, m -> m.getMongoClient().close());
+            return 0;
+        });
+        this.lifecycleManager.step("flightRecording", deadline -> {
+            this.flightRecording.stop();
+            return 0;
+        });
+    }
+
+    private static <T> void stopIfCreated(final T component, final Consumer<T> stop) {
+        if (component != null) {
+            stop.accept(component);
+        }
     }
 }
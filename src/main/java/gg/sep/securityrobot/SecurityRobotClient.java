@@ -2,11 +2,25 @@ package gg.sep.securityrobot;
 
 import static gg.sep.securityrobot.SecurityRobot.REDIS_PREFIX;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.Getter;
 import lombok.extern.log4j.Log4j2;
 import org.kitteh.irc.client.library.Client;
-import redis.clients.jedis.Jedis;
 
+import gg.sep.securityrobot.config.models.TwitchConfig;
 import gg.sep.securityrobot.utils.IRCUtils;
 
 /**
@@ -15,8 +29,14 @@ import gg.sep.securityrobot.utils.IRCUtils;
 @Log4j2
 public class SecurityRobotClient {
 
+    private static final String ADDED_CHANNELS_KEY = REDIS_PREFIX + "added_channels";
+
     @Getter private Client ircClient;
     @Getter private SecurityRobot securityRobot;
+    private final Set<String> initialChannels = ConcurrentHashMap.newKeySet();
+    private final RateLimiter joinLimiter;
+    private final ExecutorService joinExecutor = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setNameFormat("channel-joins-%d").setDaemon(true).build());
 
     /**
      * Create a new instance wrapping the specified Kitteh IRC client.
@@ -26,6 +46,44 @@ public class SecurityRobotClient {
     public SecurityRobotClient(final SecurityRobot bot, final Client ircClient) {
         this.securityRobot = bot;
         this.ircClient = ircClient;
+        final TwitchConfig twitch = bot.getConfig().getTwitch();
+        this.joinLimiter = RateLimiter.create(twitch.getJoinsPerWindow() / (double) twitch.getJoinWindowSeconds());
+    }
+
+    /**
+     * Joins many Twitch IRC channels in the background, paced to stay within Twitch's JOIN rate limit of
+     * {@link TwitchConfig#getJoinsPerWindow()} per {@link TwitchConfig#getJoinWindowSeconds()}. Every paced join
+     * shares one limit, and joins still waiting when the client disconnects are dropped.
+     * @param channels Twitch channels in either IRC or non-IRC form.
+     * @param addToInitial If {@code true}, each channel will also be added to the initial channel list as it is joined.
+     * @return Future of the number of channels joined, once every channel has been joined.
+     */
+    public CompletableFuture<Integer> joinChannelsPaced(final Collection<String> channels,
+                                                        final boolean addToInitial) {
+        return joinChannelsPaced(channels, addToInitial, channel -> true);
+    }
+
+    private CompletableFuture<Integer> joinChannelsPaced(final Collection<String> channels, final boolean addToInitial,
+                                                         final Predicate<String> stillWanted) {
+        final List<String> toJoin = new ArrayList<>(channels);
+        return CompletableFuture.supplyAsync(() -> {
+            int joined = 0;
+            for (int i = 0; i < toJoin.size(); i++) {
+                // RateLimiter#acquire keeps the interrupt, so disconnecting stops the remaining joins
+                if (Thread.currentThread().isInterrupted()) {
+                    log.info("Stopped joining channels. joined={}, dropped={}", joined, toJoin.size() - i);
+                    break;
+                }
+                final String channel = toJoin.get(i);
+                if (!stillWanted.test(channel)) {
+                    continue;
+                }
+                joinLimiter.acquire();
+                joinChannel(channel, addToInitial);
+                joined++;
+            }
+            return joined;
+        }, joinExecutor);
     }
 
     /**
@@ -44,9 +102,10 @@ public class SecurityRobotClient {
     public void joinChannel(final String channel, final boolean addToInitial) {
         final String ircChannelName = IRCUtils.ircify(channel);
         if (addToInitial) {
-            try (Jedis jedis = getSecurityRobot().getJedisPool().getResource()) {
-                jedis.sadd(REDIS_PREFIX + "added_channels", IRCUtils.stripIrcChannel(channel));
-            }
+            final String cleanChannel = IRCUtils.stripIrcChannel(channel);
+            securityRobot.getRedis().submit("addInitialChannel", p -> p.sadd(ADDED_CHANNELS_KEY, cleanChannel))
+                .whenComplete((added, e) -> logInitialChannelFailure(cleanChannel, e));
+            initialChannels.add(cleanChannel);
         }
         ircClient.addChannel(ircChannelName);
     }
@@ -67,11 +126,68 @@ public class SecurityRobotClient {
     public void leaveChannel(final String channel, final boolean removeFromInitial) {
         final String ircChannelName = IRCUtils.ircify(channel);
         if (removeFromInitial) {
-            try (Jedis jedis = getSecurityRobot().getJedisPool().getResource()) {
-                jedis.srem(REDIS_PREFIX + "added_channels", IRCUtils.stripIrcChannel(channel));
-            }
+            final String cleanChannel = IRCUtils.stripIrcChannel(channel);
+            securityRobot.getRedis().submit("removeInitialChannel", p -> p.srem(ADDED_CHANNELS_KEY, cleanChannel))
+                .whenComplete((removed, e) -> logInitialChannelFailure(cleanChannel, e));
+            initialChannels.remove(cleanChannel);
         }
         ircClient.removeChannel(ircChannelName);
+        securityRobot.getChatHistory().removeChannel(ircChannelName);
+        securityRobot.getIdentityTable().removeChannel(ircChannelName);
+    }
+
+    /**
+     * Returns the initial channel list, as last read from Redis or a warm restart snapshot and changed since.
+     * @return Non-IRC names of the initial channels.
+     */
+    public Set<String> getInitialChannels() {
+        return new HashSet<>(initialChannels);
+    }
+
+    /**
+     * Joins and leaves channels so that the bot is in every channel of an initial channel list, and no longer in
+     * initial channels which are not on it. Does not change the initial channel list in Redis, and does not leave
+     * channels which were joined temporarily, or the bot's own channel.
+     *
+     * Channels are joined in the background, paced by the same JOIN rate limit as
+     * {@link #joinChannelsPaced(Collection, boolean)}, so a long initial channel list does not flood Twitch on startup
+     * or reload. Channels which are no longer on the list by the time their turn comes are skipped.
+     * @param channels Twitch channels of the initial channel list, in either IRC or non-IRC form.
+     */
+    public void syncInitialChannels(final Set<String> channels) {
+        final Set<String> wanted = channels.stream()
+            .map(IRCUtils::stripIrcChannel)
+            .collect(Collectors.toSet());
+        final List<String> toJoin = new ArrayList<>();
+        int left = 0;
+        for (final String channel : wanted) {
+            if (initialChannels.add(channel)) {
+                toJoin.add(channel);
+            }
+        }
+        final String ownChannel = IRCUtils.stripIrcChannel(securityRobot.getConfig().getTwitch().getIrcNickname());
+        for (final String channel : new ArrayList<>(initialChannels)) {
+            if (!wanted.contains(channel)) {
+                initialChannels.remove(channel);
+                if (!channel.equalsIgnoreCase(ownChannel)) {
+                    leaveChannel(channel, false);
+                }
+                left++;
+            }
+        }
+        if (!toJoin.isEmpty() || left > 0) {
+            log.info("Synced initial channels. joining={}, left={}, total={}", toJoin.size(), left,
+                initialChannels.size());
+        }
+        if (!toJoin.isEmpty()) {
+            joinChannelsPaced(toJoin, false, initialChannels::contains).whenComplete((joined, e) -> {
+                if (e != null) {
+                    log.error("Unable to join initial channels.", e);
+                } else {
+                    log.info("Joined initial channels. joined={}", joined);
+                }
+            });
+        }
     }
 
     /**
@@ -79,6 +195,13 @@ public class SecurityRobotClient {
      * @param reason Reason for disconnecting.
      */
     public synchronized void disconnect(final String reason) {
+        joinExecutor.shutdownNow();
         this.getIrcClient().shutdown(reason);
     }
+
+    private static void logInitialChannelFailure(final String channel, final Throwable e) {
+        if (e != null) {
+            log.error("Unable to update the initial channel list in Redis. channel={}", channel, e);
+        }
+    }
 }
@@ -0,0 +1,18 @@
+package gg.sep.securityrobot.activity;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * First and last seen activity of a single chatter, across every channel the bot is in.
+ */
+@Builder
+@Getter
+public class UserActivity {
+    private final long userId;
+    private final String userName;
+    private final long firstSeen;
+    private final long lastSeen;
+    private final long messageCount;
+    private final String lastChannel;
+}
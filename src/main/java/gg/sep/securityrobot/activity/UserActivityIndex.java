@@ -0,0 +1,409 @@
+package gg.sep.securityrobot.activity;
+
+import static gg.sep.securityrobot.SecurityRobot.REDIS_PREFIX;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.log4j.Log4j2;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.exceptions.JedisException;
+
+import gg.sep.securityrobot.config.models.ActivityConfig;
+import gg.sep.securityrobot.listeners.ChannelMessageConsumer;
+import gg.sep.securityrobot.models.twitch.tmi.TwitchChannelMessage;
+import gg.sep.securityrobot.redis.RedisAccess;
+import gg.sep.securityrobot.utils.collections.LongIntHashMap;
+
+/**
+ * Index of when each chatter was first and last seen, fed from the shared ingest path.
+ *
+ * Activity is held in primitive column arrays indexed by a user ID to slot map, so lookups of recently seen chatters
+ * never leave memory. Changes are written behind to one Redis hash per user in pipelined batches, together with a
+ * login to user ID hash, so the index survives restarts without replaying the chat logs. Chatters who are not in
+ * memory are loaded from Redis on their first lookup.
+ */
+@Log4j2
+public class UserActivityIndex implements ChannelMessageConsumer {
+
+    private static final String ACTIVITY_KEY_F = REDIS_PREFIX + "user_activity:%d";
+    private static final String LOGINS_KEY = REDIS_PREFIX + "user_logins";
+    private static final String FIRST_FIELD = "first";
+    private static final String LAST_FIELD = "last";
+    private static final String COUNT_FIELD = "count";
+    private static final String CHANNEL_FIELD = "channel";
+    private static final String LOGIN_FIELD = "login";
+
+    private static final int NO_SLOT = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int EVICTION_DIVISOR = 10;
+
+    private final ActivityConfig config;
+    private final RedisAccess redis;
+    private final ReentrantLock redisLock = new ReentrantLock();
+    private ScheduledExecutorService scheduler;
+
+    // all of the in-memory state below is guarded by "this"
+    private final LongIntHashMap slotsByUser;
+    private final Map<String, Long> userIdsByLogin = new HashMap<>();
+    private final BitSet dirty = new BitSet();
+    private long[] userIds = new long[INITIAL_CAPACITY];
+    private long[] firstSeen = new long[INITIAL_CAPACITY];
+    private long[] lastSeen = new long[INITIAL_CAPACITY];
+    private long[] messageCounts = new long[INITIAL_CAPACITY];
+    private long[] pendingCounts = new long[INITIAL_CAPACITY];
+    private boolean[] loaded = new boolean[INITIAL_CAPACITY];
+    private String[] userNames = new String[INITIAL_CAPACITY];
+    private String[] lastChannels = new String[INITIAL_CAPACITY];
+    private int[] freeSlots = new int[0];
+    private int freeCount;
+    private int nextSlot;
+
+    /**
+     * Create a new, empty user activity index.
+     * @param config User activity configuration.
+     * @param redis Redis which activity is written behind to and loaded from.
+     */
+    public UserActivityIndex(final ActivityConfig config, final RedisAccess redis) {
+        this.config = config;
+        this.redis = redis;
+        this.slotsByUser = new LongIntHashMap(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Records the activity of a parsed channel message.
+     * @param message Parsed Twitch channel message.
+     */
+    @Override
+    public void accept(final TwitchChannelMessage message) {
+        final String userId = message.getAuthor().getUserId();
+        if (userId == null) {
+            return;
+        }
+        record(Long.parseLong(userId), message.getAuthor().getUserName(), message.getCleanChannelName(),
+            message.getMessageTime().toInstant().toEpochMilli());
+    }
+
+    /**
+     * Records a single message from a chatter.
+     * @param userId Twitch user ID of the chatter.
+     * @param userName Login name of the chatter.
+     * @param channel Clean name of the channel the message was sent in.
+     * @param messageTime Time of the message, in epoch milliseconds.
+     */
+    public synchronized void record(final long userId, final String userName, final String channel,
+                                    final long messageTime) {
+        int slot = slotsByUser.get(userId, NO_SLOT);
+        if (slot == NO_SLOT) {
+            slot = allocateSlot(userId);
+            firstSeen[slot] = messageTime;
+            lastSeen[slot] = messageTime;
+        }
+        if (!userName.equals(userNames[slot])) {
+            if (userNames[slot] != null) {
+                userIdsByLogin.remove(userNames[slot], userId);
+            }
+            userNames[slot] = userName;
+            userIdsByLogin.put(userName, userId);
+        }
+        firstSeen[slot] = Math.min(firstSeen[slot], messageTime);
+        lastSeen[slot] = Math.max(lastSeen[slot], messageTime);
+        lastChannels[slot] = channel;
+        messageCounts[slot]++;
+        pendingCounts[slot]++;
+        dirty.set(slot);
+    }
+
+    /**
+     * Returns the activity of a chatter by their user ID.
+     *
+     * Chatters already in memory are returned without any I/O; otherwise their activity is loaded from Redis once.
+     * @param userId Twitch user ID of the chatter.
+     * @return Activity of the chatter, or empty if they have never been seen.
+     */
+    public Optional<UserActivity> get(final long userId) {
+        synchronized (this) {
+            final int slot = slotsByUser.get(userId, NO_SLOT);
+            if (slot != NO_SLOT && loaded[slot]) {
+                return Optional.of(toActivity(slot));
+            }
+        }
+        redisLock.lock();
+        try {
+            final Map<String, String> stored = redis.execute("readUserActivity",
+                jedis -> jedis.hgetAll(String.format(ACTIVITY_KEY_F, userId)));
+            return merge(userId, stored);
+        } catch (final JedisException e) {
+            log.error("Unable to load user activity from Redis. userId={}", userId, e);
+            return Optional.empty();
+        } finally {
+            redisLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the activity of a chatter by their login name.
+     * @param login Login name of the chatter.
+     * @return Activity of the chatter, or empty if they have never been seen.
+     */
+    public Optional<UserActivity> getByLogin(final String login) {
+        final String cleanLogin = login.trim().toLowerCase();
+        Long userId;
+        synchronized (this) {
+            userId = userIdsByLogin.get(cleanLogin);
+        }
+        if (userId == null) {
+            try {
+                final String storedId = redis.execute("readUserLogin", jedis -> jedis.hget(LOGINS_KEY, cleanLogin));
+                if (storedId == null) {
+                    return Optional.empty();
+                }
+                userId = Long.parseLong(storedId);
+            } catch (final JedisException e) {
+                log.error("Unable to load user login from Redis. login={}", cleanLogin, e);
+                return Optional.empty();
+            }
+        }
+        return get(userId);
+    }
+
+    /**
+     * Starts writing changed activity behind to Redis on the configured interval.
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("user-activity-%d").setDaemon(true).build());
+        scheduler.scheduleWithFixedDelay(this::flush,
+            config.getFlushIntervalSeconds(), config.getFlushIntervalSeconds(), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the write-behind schedule and flushes any remaining changes.
+     */
+    public void stop() {
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Writes every changed chatter's activity to Redis in a single pipeline.
+     *
+     * The first seen time is only set if it is not already stored, and message counts are written as increments,
+     * so flushing never loses activity recorded before a restart.
+     * @return Number of chatters written.
+     */
+    public int flush() {
+        redisLock.lock();
+        try {
+            final List<PendingWrite> writes = drainDirty();
+            if (writes.isEmpty()) {
+                return 0;
+            }
+            try {
+                return redis.execute("flushUserActivity", jedis -> {
+                    final Pipeline pipeline = jedis.pipelined();
+                    for (final PendingWrite write : writes) {
+                        final String key = String.format(ACTIVITY_KEY_F, write.userId);
+                        final Map<String, String> fields = new HashMap<>();
+                        fields.put(LAST_FIELD, String.valueOf(write.lastSeen));
+                        fields.put(CHANNEL_FIELD, write.channel);
+                        fields.put(LOGIN_FIELD, write.userName);
+                        pipeline.hsetnx(key, FIRST_FIELD, String.valueOf(write.firstSeen));
+                        pipeline.hset(key, fields);
+                        pipeline.hincrBy(key, COUNT_FIELD, write.countDelta);
+                        pipeline.hset(LOGINS_KEY, write.userName, String.valueOf(write.userId));
+                    }
+                    pipeline.sync();
+                    return writes.size();
+                });
+            } catch (final JedisException e) {
+                log.error("Unable to flush user activity to Redis, it will be retried. users={}", writes.size(), e);
+                restorePending(writes);
+                return 0;
+            }
+        } finally {
+            redisLock.unlock();
+        }
+    }
+
+    private synchronized List<PendingWrite> drainDirty() {
+        final List<PendingWrite> writes = new ArrayList<>(dirty.cardinality());
+        for (int slot = dirty.nextSetBit(0); slot >= 0; slot = dirty.nextSetBit(slot + 1)) {
+            writes.add(new PendingWrite(userIds[slot], userNames[slot], lastChannels[slot],
+                firstSeen[slot], lastSeen[slot], pendingCounts[slot]));
+            pendingCounts[slot] = 0;
+        }
+        dirty.clear();
+        return writes;
+    }
+
+    private synchronized void restorePending(final List<PendingWrite> writes) {
+        for (final PendingWrite write : writes) {
+            int slot = slotsByUser.get(write.userId, NO_SLOT);
+            if (slot == NO_SLOT) {
+                slot = allocateSlot(write.userId);
+                userNames[slot] = write.userName;
+                userIdsByLogin.put(write.userName, write.userId);
+                lastChannels[slot] = write.channel;
+                firstSeen[slot] = write.firstSeen;
+                lastSeen[slot] = write.lastSeen;
+                messageCounts[slot] = write.countDelta;
+            }
+            pendingCounts[slot] += write.countDelta;
+            dirty.set(slot);
+        }
+    }
+
+    private synchronized Optional<UserActivity> merge(final long userId, final Map<String, String> stored) {
+        int slot = slotsByUser.get(userId, NO_SLOT);
+        if (slot != NO_SLOT && loaded[slot]) {
+            return Optional.of(toActivity(slot));
+        }
+        if (stored.isEmpty()) {
+            return (slot == NO_SLOT) ? Optional.empty() : Optional.of(toActivity(slot));
+        }
+        final long storedFirst = Long.parseLong(stored.getOrDefault(FIRST_FIELD, "0"));
+        final long storedLast = Long.parseLong(stored.getOrDefault(LAST_FIELD, "0"));
+        final long storedCount = Long.parseLong(stored.getOrDefault(COUNT_FIELD, "0"));
+
+        if (slot == NO_SLOT) {
+            slot = allocateSlot(userId);
+            firstSeen[slot] = storedFirst;
+            lastSeen[slot] = storedLast;
+            lastChannels[slot] = stored.get(CHANNEL_FIELD);
+            userNames[slot] = stored.get(LOGIN_FIELD);
+            if (userNames[slot] != null) {
+                userIdsByLogin.put(userNames[slot], userId);
+            }
+        } else {
+            // the slot was created since the last restart; Redis holds everything flushed before now
+            firstSeen[slot] = Math.min(firstSeen[slot], storedFirst);
+            lastSeen[slot] = Math.max(lastSeen[slot], storedLast);
+        }
+        messageCounts[slot] = storedCount + pendingCounts[slot];
+        loaded[slot] = true;
+        return Optional.of(toActivity(slot));
+    }
+
+    private UserActivity toActivity(final int slot) {
+        return UserActivity.builder()
+            .userId(userIds[slot])
+            .userName(userNames[slot])
+            .firstSeen(firstSeen[slot])
+            .lastSeen(lastSeen[slot])
+            .messageCount(messageCounts[slot])
+            .lastChannel(lastChannels[slot])
+            .build();
+    }
+
+    private int allocateSlot(final long userId) {
+        if (freeCount == 0 && nextSlot == userIds.length) {
+            if (userIds.length < config.getMaxUsersInMemory()) {
+                grow(Math.min(userIds.length * 2, config.getMaxUsersInMemory()));
+            } else {
+                evictLeastRecentlySeen();
+            }
+        }
+        final int slot = (freeCount > 0) ? freeSlots[--freeCount] : nextSlot++;
+        userIds[slot] = userId;
+        messageCounts[slot] = 0;
+        pendingCounts[slot] = 0;
+        loaded[slot] = false;
+        userNames[slot] = null;
+        lastChannels[slot] = null;
+        slotsByUser.put(userId, slot);
+        return slot;
+    }
+
+    private void grow(final int capacity) {
+        userIds = Arrays.copyOf(userIds, capacity);
+        firstSeen = Arrays.copyOf(firstSeen, capacity);
+        lastSeen = Arrays.copyOf(lastSeen, capacity);
+        messageCounts = Arrays.copyOf(messageCounts, capacity);
+        pendingCounts = Arrays.copyOf(pendingCounts, capacity);
+        loaded = Arrays.copyOf(loaded, capacity);
+        userNames = Arrays.copyOf(userNames, capacity);
+        lastChannels = Arrays.copyOf(lastChannels, capacity);
+    }
+
+    /**
+     * Frees the least recently seen tenth of the slots. Only chatters with no unflushed activity are evicted,
+     * so eviction never loses data; they are reloaded from Redis on their next lookup.
+     */
+    private void evictLeastRecentlySeen() {
+        final long[] cleanLastSeen = new long[nextSlot];
+        int cleanCount = 0;
+        for (int slot = 0; slot < nextSlot; slot++) {
+            if (isOccupied(slot) && !dirty.get(slot)) {
+                cleanLastSeen[cleanCount++] = lastSeen[slot];
+            }
+        }
+        final int toEvict = Math.max(1, nextSlot / EVICTION_DIVISOR);
+        if (cleanCount == 0) {
+            // everything is dirty, so grow past the limit rather than block ingest on Redis
+            log.warn("User activity index is full of unflushed chatters. size={}", nextSlot);
+            grow(userIds.length + toEvict);
+            return;
+        }
+        Arrays.sort(cleanLastSeen, 0, cleanCount);
+        final long cutoff = cleanLastSeen[Math.min(toEvict, cleanCount) - 1];
+
+        freeSlots = new int[toEvict];
+        freeCount = 0;
+        for (int slot = 0; slot < nextSlot && freeCount < toEvict; slot++) {
+            if (isOccupied(slot) && !dirty.get(slot) && lastSeen[slot] <= cutoff) {
+                slotsByUser.remove(userIds[slot]);
+                if (userNames[slot] != null) {
+                    userIdsByLogin.remove(userNames[slot], userIds[slot]);
+                }
+                userNames[slot] = null;
+                lastChannels[slot] = null;
+                freeSlots[freeCount++] = slot;
+            }
+        }
+    }
+
+    private boolean isOccupied(final int slot) {
+        return slotsByUser.get(userIds[slot], NO_SLOT) == slot;
+    }
+
+    /**
+     * Copy of a single chatter's unflushed activity.
+     */
+    private static final class PendingWrite {
+        private final long userId;
+        private final String userName;
+        private final String channel;
+        private final long firstSeen;
+        private final long lastSeen;
+        private final long countDelta;
+
+        private PendingWrite(final long userId, final String userName, final String channel,
+                             final long firstSeen, final long lastSeen, final long countDelta) {
+            this.userId = userId;
+            this.userName = userName;
+            this.channel = channel;
+            this.firstSeen = firstSeen;
+            this.lastSeen = lastSeen;
+            this.countDelta = countDelta;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package gg.sep.securityrobot.analytics;
+
+import gg.sep.securityrobot.utils.collections.LongIntHashMap;
+
+/**
+ * Bounded set of the chatters who have been active within a recent time window.
+ *
+ * Stores each chatter's last active time in a primitive map, and records every touch in a ring, oldest first. Only
+ * the newest record of each chatter is live, so the first live record in the ring is always the least recently
+ * active chatter; expiry pops chatters from the head of the ring until it reaches one still inside the window, and
+ * never scans the whole set. Records made stale by a newer touch are compacted out when the ring fills, which leaves
+ * at least half of it free, so both are amortized constant time per touch. Once the set reaches its capacity and no
+ * chatter has expired, new chatters are dropped until older ones expire, so memory stays fixed. Touches are assumed
+ * to arrive roughly in time order; a chatter touched out of order is expired once the chatters recorded before it
+ * are. This class is not thread safe; callers must provide their own synchronization.
+ */
+public final class ActiveChatterSet {
+
+    private static final int ABSENT = Integer.MIN_VALUE;
+
+    private final int maxChatters;
+    private final int windowSeconds;
+    private final LongIntHashMap lastActive;
+    private final long[] ringUserIds;
+    private final int[] ringTimes;
+    private int ringHead;
+    private int ringSize;
+
+    /**
+     * Create a new active chatter set.
+     * @param maxChatters Maximum number of chatters tracked at once.
+     * @param windowSeconds Number of seconds after their last message that a chatter is considered active.
+     */
+    public ActiveChatterSet(final int maxChatters, final int windowSeconds) {
+        this.maxChatters = maxChatters;
+        this.windowSeconds = windowSeconds;
+        this.lastActive = new LongIntHashMap(maxChatters);
+        // twice the chatters, so compacting always frees at least half of the ring
+        final int ringCapacity = Math.max(2, maxChatters * 2);
+        this.ringUserIds = new long[ringCapacity];
+        this.ringTimes = new int[ringCapacity];
+    }
+
+    /**
+     * Marks a chatter as active at the specified time.
+     * @param userId Twitch user ID of the chatter.
+     * @param epochSecond Time of the activity, in epoch seconds.
+     */
+    public void touch(final long userId, final long epochSecond) {
+        final int time = (int) epochSecond;
+        final int lastSeen = lastActive.get(userId, ABSENT);
+        if (lastSeen != ABSENT && time <= lastSeen) {
+            return;
+        }
+        if (lastSeen == ABSENT && lastActive.size() >= maxChatters) {
+            expire(epochSecond);
+            if (lastActive.size() >= maxChatters) {
+                return;
+            }
+        }
+        lastActive.put(userId, time);
+        if (ringSize == ringUserIds.length) {
+            compact();
+        }
+        final int tail = (ringHead + ringSize) % ringUserIds.length;
+        ringUserIds[tail] = userId;
+        ringTimes[tail] = time;
+        ringSize++;
+    }
+
+    /**
+     * Returns the number of chatters active within the window.
+     * @param nowEpochSecond The current time, in epoch seconds.
+     * @return Number of chatters active within the window.
+     */
+    public int count(final long nowEpochSecond) {
+        expire(nowEpochSecond);
+        return lastActive.size();
+    }
+
+    /**
+     * Returns the user IDs of the chatters active within the window.
+     * @param nowEpochSecond The current time, in epoch seconds.
+     * @return User IDs of the chatters active within the window.
+     */
+    public long[] activeUserIds(final long nowEpochSecond) {
+        expire(nowEpochSecond);
+        final long[] userIds = new long[lastActive.size()];
+        final int[] index = {0};
+        lastActive.forEach((userId, lastSeen) -> userIds[index[0]++] = userId);
+        return userIds;
+    }
+
+    private void expire(final long nowEpochSecond) {
+        final long cutoff = nowEpochSecond - windowSeconds;
+        while (ringSize > 0) {
+            final long userId = ringUserIds[ringHead];
+            final int time = ringTimes[ringHead];
+            final boolean live = lastActive.get(userId, ABSENT) == time;
+            if (live && time >= cutoff) {
+                return;
+            }
+            if (live) {
+                lastActive.remove(userId);
+            }
+            ringHead = (ringHead + 1) % ringUserIds.length;
+            ringSize--;
+        }
+    }
+
+    private void compact() {
+        final int capacity = ringUserIds.length;
+        int kept = 0;
+        for (int i = 0; i < ringSize; i++) {
+            final int from = (ringHead + i) % capacity;
+            if (lastActive.get(ringUserIds[from], ABSENT) == ringTimes[from]) {
+                final int to = (ringHead + kept) % capacity;
+                ringUserIds[to] = ringUserIds[from];
+                ringTimes[to] = ringTimes[from];
+                kept++;
+            }
+        }
+        ringSize = kept;
+    }
+}
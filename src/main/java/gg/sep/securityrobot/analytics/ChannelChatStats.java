@@ -0,0 +1,130 @@
+package gg.sep.securityrobot.analytics;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import gg.sep.securityrobot.config.models.AnalyticsConfig;
+
+/**
+ * Streaming chat statistics for a single channel, with a fixed memory footprint.
+ *
+ * Keeps a ring of per-second message counts, a ring of HyperLogLogs for unique chatters over the last hour,
+ * heavy hitter words and emotes, and the set of recently active chatters.
+ */
+public final class ChannelChatStats {
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private static final int RATE_WINDOW_SECONDS = 300;
+    private static final int UNIQUE_BUCKET_SECONDS = 600;
+    private static final int UNIQUE_BUCKETS = 6;
+    private static final int HLL_PRECISION = 12;
+    private static final int SKETCH_DEPTH = 4;
+    private static final int SKETCH_WIDTH = 2048;
+
+    private final String channel;
+    private final SlidingWindowCounter messageCounter = new SlidingWindowCounter(RATE_WINDOW_SECONDS);
+    private final HyperLogLog[] uniqueChatters = new HyperLogLog[UNIQUE_BUCKETS];
+    private final long[] uniqueBucketIds = new long[UNIQUE_BUCKETS];
+    private final TopK topWords;
+    private final TopK topEmotes;
+    private final ActiveChatterSet activeChatters;
+
+    /**
+     * Create empty statistics for a channel.
+     * @param channel Clean name of the channel.
+     * @param config Analytics configuration.
+     */
+    public ChannelChatStats(final String channel, final AnalyticsConfig config) {
+        this.channel = channel;
+        for (int i = 0; i < UNIQUE_BUCKETS; i++) {
+            uniqueChatters[i] = new HyperLogLog(HLL_PRECISION);
+            uniqueBucketIds[i] = -1;
+        }
+        this.topWords = new TopK(config.getTopK(), SKETCH_DEPTH, SKETCH_WIDTH);
+        this.topEmotes = new TopK(config.getTopK(), SKETCH_DEPTH, SKETCH_WIDTH);
+        this.activeChatters = new ActiveChatterSet(config.getMaxActiveChatters(), config.getActiveWindowSeconds());
+    }
+
+    /**
+     * Records a single chat message.
+     * @param userId Twitch user ID of the message author.
+     * @param epochSecond Time of the message, in epoch seconds.
+     * @param words Words of the message, excluding emotes.
+     * @param emotes Emote names used in the message.
+     */
+    public synchronized void record(final long userId, final long epochSecond,
+                                    final List<String> words, final List<String> emotes) {
+        messageCounter.increment(epochSecond);
+        uniqueBucket(epochSecond).add(HASH.hashLong(userId).asLong());
+        activeChatters.touch(userId, epochSecond);
+        for (final String word : words) {
+            topWords.add(word);
+        }
+        for (final String emote : emotes) {
+            topEmotes.add(emote);
+        }
+    }
+
+    /**
+     * Halves the heavy hitter counts, so the top words and emotes follow recent activity.
+     */
+    public synchronized void decay() {
+        topWords.decay();
+        topEmotes.decay();
+    }
+
+    /**
+     * Returns the user IDs of the chatters active within the configured window.
+     * @param nowEpochSecond The current time, in epoch seconds.
+     * @return User IDs of the recently active chatters.
+     */
+    public synchronized long[] activeUserIds(final long nowEpochSecond) {
+        return activeChatters.activeUserIds(nowEpochSecond);
+    }
+
+    /**
+     * Builds a snapshot of the current statistics.
+     * @param nowEpochSecond The current time, in epoch seconds.
+     * @return Snapshot of the current statistics.
+     */
+    public synchronized ChatStatsSnapshot snapshot(final long nowEpochSecond) {
+        final long currentBucket = nowEpochSecond / UNIQUE_BUCKET_SECONDS;
+        final HyperLogLog lastHour = new HyperLogLog(HLL_PRECISION);
+        for (int i = 0; i < UNIQUE_BUCKETS; i++) {
+            if (uniqueBucketIds[i] > currentBucket - UNIQUE_BUCKETS) {
+                lastHour.merge(uniqueChatters[i]);
+            }
+        }
+        return ChatStatsSnapshot.builder()
+            .channel(channel)
+            .snapshotTime(nowEpochSecond)
+            .messagesLastMinute(messageCounter.sum(nowEpochSecond, 60))
+            .messagesPerMinute(messageCounter.sum(nowEpochSecond, RATE_WINDOW_SECONDS) * 60.0 / RATE_WINDOW_SECONDS)
+            .uniqueChattersLastHour(lastHour.estimate())
+            .activeChatters(activeChatters.count(nowEpochSecond))
+            .topWords(toMap(topWords.top()))
+            .topEmotes(toMap(topEmotes.top()))
+            .build();
+    }
+
+    private HyperLogLog uniqueBucket(final long epochSecond) {
+        final long bucketId = epochSecond / UNIQUE_BUCKET_SECONDS;
+        final int index = (int) (bucketId % UNIQUE_BUCKETS);
+        if (uniqueBucketIds[index] != bucketId) {
+            uniqueBucketIds[index] = bucketId;
+            uniqueChatters[index].clear();
+        }
+        return uniqueChatters[index];
+    }
+
+    private static Map<String, Long> toMap(final List<Map.Entry<String, Long>> entries) {
+        final Map<String, Long> map = new LinkedHashMap<>();
+        entries.forEach(e -> map.put(e.getKey(), e.getValue()));
+        return map;
+    }
+}
@@ -0,0 +1,233 @@
+package gg.sep.securityrobot.analytics;
+
+import static gg.sep.securityrobot.SecurityRobot.REDIS_PREFIX;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.log4j.Log4j2;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.exceptions.JedisException;
+
+import gg.sep.securityrobot.SecurityRobot;
+import gg.sep.securityrobot.config.models.AnalyticsConfig;
+import gg.sep.securityrobot.listeners.ChannelMessageConsumer;
+import gg.sep.securityrobot.models.twitch.tmi.TwitchChannelMessage;
+import gg.sep.securityrobot.redis.RedisAccess;
+import gg.sep.securityrobot.utils.IRCUtils;
+
+/**
+ * Streaming chat analytics stage, keeping live {@link ChannelChatStats} for every channel the bot is in.
+ *
+ * Snapshots of every channel's statistics are periodically written to Redis, so dashboards can read them
+ * without touching the bot.
+ */
+@Log4j2
+public class ChatAnalytics implements ChannelMessageConsumer {
+
+    private static final String STATS_KEY_F = REDIS_PREFIX + "chatstats:%s";
+    private static final int MIN_WORD_LENGTH = 3;
+    private static final int MAX_WORD_LENGTH = 25;
+
+    private final AnalyticsConfig config;
+    private final Map<String, ChannelChatStats> channels = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Create a new analytics stage.
+     * @param config Analytics configuration.
+     */
+    public ChatAnalytics(final AnalyticsConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Records a parsed channel message into its channel's statistics.
+     * @param message Parsed Twitch channel message.
+     */
+    @Override
+    public void accept(final TwitchChannelMessage message) {
+        final String userId = message.getAuthor().getUserId();
+        if (userId == null) {
+            return;
+        }
+        final List<String> emotes = parseEmotes(message.getMessage(), message.getEmotes());
+        final List<String> words = parseWords(message.getMessage(), emotes);
+        final long epochSecond = message.getMessageTime().toEpochSecond();
+
+        channels.computeIfAbsent(message.getCleanChannelName(), c -> new ChannelChatStats(c, config))
+            .record(Long.parseLong(userId), epochSecond, words, emotes);
+    }
+
+    /**
+     * Returns the current statistics snapshot of a channel.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     * @return Current statistics of the channel, or empty if no messages have been seen in it.
+     */
+    public Optional<ChatStatsSnapshot> getSnapshot(final String channel) {
+        final ChannelChatStats stats = channels.get(IRCUtils.stripIrcChannel(channel));
+        if (stats == null) {
+            return Optional.empty();
+        }
+        return Optional.of(stats.snapshot(nowEpochSecond()));
+    }
+
+    /**
+     * Returns the channels which have statistics, ie every channel a message has been seen in.
+     * @return Clean names of the channels.
+     */
+    public Set<String> getChannels() {
+        return Collections.unmodifiableSet(channels.keySet());
+    }
+
+    /**
+     * Returns the user IDs of the recently active chatters of a channel.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     * @return User IDs of the recently active chatters, empty if no messages have been seen in the channel.
+     */
+    public long[] getActiveUserIds(final String channel) {
+        final ChannelChatStats stats = channels.get(IRCUtils.stripIrcChannel(channel));
+        return (stats == null) ? new long[0] : stats.activeUserIds(nowEpochSecond());
+    }
+
+    /**
+     * Starts the periodic Redis snapshots and heavy hitter decay.
+     * @param redis Redis which the snapshots are written to.
+     */
+    public synchronized void start(final RedisAccess redis) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("chat-analytics-%d").setDaemon(true).build());
+        scheduler.scheduleWithFixedDelay(() -> writeSnapshots(redis),
+            config.getSnapshotIntervalSeconds(), config.getSnapshotIntervalSeconds(), TimeUnit.SECONDS);
+        scheduler.scheduleWithFixedDelay(() -> channels.values().forEach(ChannelChatStats::decay),
+            config.getDecayIntervalSeconds(), config.getDecayIntervalSeconds(), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the periodic Redis snapshots.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Writes the current snapshot of every channel to Redis in a single pipeline.
+     * @param redis Redis which the snapshots are written to.
+     */
+    public void writeSnapshots(final RedisAccess redis) {
+        if (channels.isEmpty()) {
+            return;
+        }
+        final long now = nowEpochSecond();
+        try {
+            redis.execute("writeChatStats", jedis -> {
+                final Pipeline pipeline = jedis.pipelined();
+                channels.forEach((channel, stats) -> pipeline.setex(String.format(STATS_KEY_F, channel),
+                    config.getSnapshotTtlSeconds(), stats.snapshot(now).toJson()));
+                pipeline.sync();
+                return null;
+            });
+        } catch (final JedisException e) {
+            log.error("Unable to write chat stats snapshots to Redis.", e);
+        }
+    }
+
+    /**
+     * Extracts the emote names used in a message from its Twitch {@code emotes} tag.
+     *
+     * The tag is in the format {@code emoteId:start-end,start-end/emoteId:start-end}, with code point offsets.
+     * @param message Text of the message.
+     * @param emotesTag Value of the {@code emotes} tag, may be {@code null}.
+     * @return Emote names used in the message, once per occurrence.
+     */
+    static List<String> parseEmotes(final String message, final String emotesTag) {
+        if (emotesTag == null || emotesTag.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<String> emotes = new ArrayList<>();
+        final int codePoints = message.codePointCount(0, message.length());
+        for (final String emote : emotesTag.split("/")) {
+            final int colon = emote.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            for (final String range : emote.substring(colon + 1).split(",")) {
+                final int dash = range.indexOf('-');
+                try {
+                    final int start = Integer.parseInt(range.substring(0, dash));
+                    final int end = Integer.parseInt(range.substring(dash + 1));
+                    if (start < 0 || end < start || end >= codePoints) {
+                        continue;
+                    }
+                    final int startIndex = message.offsetByCodePoints(0, start);
+                    final int endIndex = message.offsetByCodePoints(startIndex, end - start + 1);
+                    emotes.add(message.substring(startIndex, endIndex));
+                } catch (final NumberFormatException | StringIndexOutOfBoundsException e) {
+                    log.debug("Skipping malformed emote range. tag={}", emotesTag);
+                }
+            }
+        }
+        return emotes;
+    }
+
+    /**
+     * Splits a message into lowercase words, skipping emotes, commands and very short or long tokens.
+     * @param message Text of the message.
+     * @param emotes Emote names used in the message.
+     * @return Words of the message.
+     */
+    static List<String> parseWords(final String message, final List<String> emotes) {
+        if (message.startsWith(SecurityRobot.COMMAND_PREFIX)) {
+            return Collections.emptyList();
+        }
+        final List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= message.length(); i++) {
+            final boolean boundary = i == message.length() || Character.isWhitespace(message.charAt(i));
+            if (!boundary && start < 0) {
+                start = i;
+            } else if (boundary && start >= 0) {
+                addWord(message.substring(start, i), emotes, words);
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    private static void addWord(final String token, final List<String> emotes, final List<String> words) {
+        if (emotes.contains(token)) {
+            return;
+        }
+        int begin = 0;
+        int end = token.length();
+        while (begin < end && !Character.isLetterOrDigit(token.charAt(begin))) {
+            begin++;
+        }
+        while (end > begin && !Character.isLetterOrDigit(token.charAt(end - 1))) {
+            end--;
+        }
+        final int length = end - begin;
+        if (length >= MIN_WORD_LENGTH && length <= MAX_WORD_LENGTH) {
+            words.add(token.substring(begin, end).toLowerCase());
+        }
+    }
+
+    private static long nowEpochSecond() {
+        return System.currentTimeMillis() / 1000;
+    }
+}
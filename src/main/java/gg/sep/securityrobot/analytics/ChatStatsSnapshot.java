@@ -0,0 +1,31 @@
+package gg.sep.securityrobot.analytics;
+
+import java.util.Map;
+
+import com.google.gson.Gson;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Point in time snapshot of a channel's live chat statistics.
+ */
+@Builder
+@Getter
+public class ChatStatsSnapshot {
+    private final String channel;
+    private final long snapshotTime;
+    private final long messagesLastMinute;
+    private final double messagesPerMinute;
+    private final long uniqueChattersLastHour;
+    private final int activeChatters;
+    private final Map<String, Long> topWords;
+    private final Map<String, Long> topEmotes;
+
+    /**
+     * Converts the object to a JSON string.
+     * @return JSON string representation of the object.
+     */
+    public String toJson() {
+        return new Gson().toJson(this);
+    }
+}
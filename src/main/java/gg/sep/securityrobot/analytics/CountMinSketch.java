@@ -0,0 +1,73 @@
+package gg.sep.securityrobot.analytics;
+
+/**
+ * Fixed size Count-Min Sketch for estimating the frequency of items in a stream.
+ *
+ * Estimates never under count, and over count by at most {@code e / width} of the total count with a probability
+ * of {@code 1 - e^-depth}. This class is not thread safe; callers must provide their own synchronization.
+ */
+public final class CountMinSketch {
+
+    private final int depth;
+    private final int width;
+    private final long[] counters;
+
+    /**
+     * Create a new, empty sketch.
+     * @param depth Number of hash rows.
+     * @param width Number of counters per row.
+     */
+    public CountMinSketch(final int depth, final int width) {
+        if (depth <= 0 || width <= 0) {
+            throw new IllegalArgumentException("Count-Min Sketch depth and width must be positive.");
+        }
+        this.depth = depth;
+        this.width = width;
+        this.counters = new long[depth * width];
+    }
+
+    /**
+     * Adds one occurrence of a hashed item, and returns its new estimated count.
+     * @param hash 64 bit hash of the item. Must be well distributed.
+     * @return The new estimated count of the item.
+     */
+    public long add(final long hash) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            final int index = row * width + bucket(hash, row);
+            final long count = ++counters[index];
+            estimate = Math.min(estimate, count);
+        }
+        return estimate;
+    }
+
+    /**
+     * Returns the estimated count of a hashed item.
+     * @param hash 64 bit hash of the item.
+     * @return The estimated count of the item.
+     */
+    public long estimate(final long hash) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters[row * width + bucket(hash, row)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Halves every counter, so that old occurrences gradually stop counting towards the estimates.
+     */
+    public void decay() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] >>>= 1;
+        }
+    }
+
+    private int bucket(final long hash, final int row) {
+        // Kirsch-Mitzenmacher double hashing derives every row's index from the two halves of the hash
+        final int h1 = (int) hash;
+        final int h2 = (int) (hash >>> 32);
+        final int combined = h1 + row * h2;
+        return (combined & Integer.MAX_VALUE) % width;
+    }
+}
@@ -0,0 +1,87 @@
+package gg.sep.securityrobot.analytics;
+
+import java.util.Arrays;
+
+/**
+ * Fixed size HyperLogLog cardinality estimator over pre-hashed 64 bit values.
+ *
+ * With the default precision of 12 this uses 4 KiB of registers and has a standard error of about 1.6%.
+ * This class is not thread safe; callers must provide their own synchronization.
+ */
+public final class HyperLogLog {
+
+    private final int precision;
+    private final byte[] registers;
+
+    /**
+     * Create a new, empty HyperLogLog.
+     * @param precision Number of index bits, between 4 and 16. Uses {@code 2^precision} bytes of registers.
+     */
+    public HyperLogLog(final int precision) {
+        if (precision < 4 || precision > 16) {
+            throw new IllegalArgumentException("HyperLogLog precision must be between 4 and 16.");
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Adds a hashed value to the estimator.
+     * @param hash 64 bit hash of the value. Must be well distributed.
+     */
+    public void add(final long hash) {
+        final int index = (int) (hash >>> (Long.SIZE - precision));
+        // guard bit keeps the rank bounded when the remaining bits are all zero
+        final long remaining = (hash << precision) | (1L << (precision - 1));
+        final byte rank = (byte) (Long.numberOfLeadingZeros(remaining) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    /**
+     * Merges the registers of another estimator with the same precision into this one.
+     * @param other Estimator to merge into this one.
+     */
+    public void merge(final HyperLogLog other) {
+        if (other.precision != this.precision) {
+            throw new IllegalArgumentException("Cannot merge HyperLogLogs with a different precision.");
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * Returns the estimated number of distinct values added to the estimator.
+     * @return Estimated number of distinct values.
+     */
+    public long estimate() {
+        final int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (final byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        final double alpha = 0.7213 / (1 + 1.079 / m);
+        final double estimate = alpha * m * m / sum;
+
+        // small range correction using linear counting
+        if (estimate <= 2.5 * m && zeros > 0) {
+            return Math.round(m * Math.log((double) m / zeros));
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Resets the estimator to empty.
+     */
+    public void clear() {
+        Arrays.fill(registers, (byte) 0);
+    }
+}
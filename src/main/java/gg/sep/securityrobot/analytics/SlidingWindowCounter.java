@@ -0,0 +1,51 @@
+package gg.sep.securityrobot.analytics;
+
+/**
+ * Counts events over a sliding window using a ring of per-second buckets.
+ *
+ * This class is not thread safe; callers must provide their own synchronization.
+ */
+public final class SlidingWindowCounter {
+
+    private final int[] counts;
+    private final long[] bucketSeconds;
+
+    /**
+     * Create a new counter covering the specified number of seconds.
+     * @param windowSeconds Number of seconds of history kept by the counter.
+     */
+    public SlidingWindowCounter(final int windowSeconds) {
+        this.counts = new int[windowSeconds];
+        this.bucketSeconds = new long[windowSeconds];
+    }
+
+    /**
+     * Records a single event at the specified time.
+     * @param epochSecond Time of the event, in epoch seconds.
+     */
+    public void increment(final long epochSecond) {
+        final int index = (int) Math.floorMod(epochSecond, (long) counts.length);
+        if (bucketSeconds[index] != epochSecond) {
+            bucketSeconds[index] = epochSecond;
+            counts[index] = 0;
+        }
+        counts[index]++;
+    }
+
+    /**
+     * Returns the number of events in the most recent seconds, up to the size of the window.
+     * @param nowEpochSecond The current time, in epoch seconds.
+     * @param seconds Number of seconds to count back from now.
+     * @return Number of events in the most recent {@code seconds}.
+     */
+    public long sum(final long nowEpochSecond, final int seconds) {
+        final long oldest = nowEpochSecond - Math.min(seconds, counts.length) + 1;
+        long sum = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (bucketSeconds[i] >= oldest && bucketSeconds[i] <= nowEpochSecond) {
+                sum += counts[i];
+            }
+        }
+        return sum;
+    }
+}
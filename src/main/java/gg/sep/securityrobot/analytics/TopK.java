@@ -0,0 +1,81 @@
+package gg.sep.securityrobot.analytics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Tracks the approximate heavy hitters of a stream of strings, using a {@link CountMinSketch} for the counts
+ * and a bounded candidate table for the top items.
+ *
+ * Memory is fixed by the sketch dimensions and {@code k}. This class is not thread safe; callers must provide
+ * their own synchronization.
+ */
+public final class TopK {
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final int k;
+    private final CountMinSketch sketch;
+    private final Map<String, Long> candidates;
+
+    /**
+     * Create a new heavy hitter tracker.
+     * @param k Number of top items to track.
+     * @param depth Depth of the underlying Count-Min Sketch.
+     * @param width Width of the underlying Count-Min Sketch.
+     */
+    public TopK(final int k, final int depth, final int width) {
+        this.k = k;
+        this.sketch = new CountMinSketch(depth, width);
+        this.candidates = new HashMap<>(k * 2);
+    }
+
+    /**
+     * Adds an occurrence of an item.
+     * @param item Item to count.
+     */
+    public void add(final String item) {
+        final long estimate = sketch.add(HASH.hashUnencodedChars(item).asLong());
+        if (candidates.containsKey(item) || candidates.size() < k) {
+            candidates.put(item, estimate);
+            return;
+        }
+        String minItem = null;
+        long minCount = Long.MAX_VALUE;
+        for (final Map.Entry<String, Long> candidate : candidates.entrySet()) {
+            if (candidate.getValue() < minCount) {
+                minItem = candidate.getKey();
+                minCount = candidate.getValue();
+            }
+        }
+        if (estimate > minCount) {
+            candidates.remove(minItem);
+            candidates.put(item, estimate);
+        }
+    }
+
+    /**
+     * Returns the current top items, highest count first.
+     * @return The current top items and their estimated counts, highest count first.
+     */
+    public List<Map.Entry<String, Long>> top() {
+        final List<Map.Entry<String, Long>> top = new ArrayList<>(candidates.entrySet().size());
+        candidates.forEach((item, count) -> top.add(Map.entry(item, count)));
+        top.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        return top;
+    }
+
+    /**
+     * Halves every count, so that the top items reflect recent activity rather than all time activity.
+     */
+    public void decay() {
+        sketch.decay();
+        candidates.replaceAll((item, count) -> count >>> 1);
+        candidates.values().removeIf(count -> count == 0);
+    }
+}
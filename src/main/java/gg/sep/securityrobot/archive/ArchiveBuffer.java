@@ -0,0 +1,116 @@
+package gg.sep.securityrobot.archive;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer with the variable length encodings used by the chat archive format.
+ *
+ * Unsigned values are written as LEB128 varints, and signed values are zig-zag encoded first so that small negative
+ * deltas stay small.
+ */
+final class ArchiveBuffer {
+
+    private byte[] bytes;
+    private int size;
+
+    /**
+     * Create a new, empty buffer.
+     * @param initialCapacity Initial capacity of the buffer, in bytes.
+     */
+    ArchiveBuffer(final int initialCapacity) {
+        this.bytes = new byte[Math.max(initialCapacity, 16)];
+    }
+
+    void writeByte(final int value) {
+        ensureCapacity(1);
+        bytes[size++] = (byte) value;
+    }
+
+    void writeBytes(final byte[] source, final int offset, final int length) {
+        ensureCapacity(length);
+        System.arraycopy(source, offset, bytes, size, length);
+        size += length;
+    }
+
+    void writeInt(final int value) {
+        ensureCapacity(Integer.BYTES);
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            bytes[size++] = (byte) (value >>> shift);
+        }
+    }
+
+    void writeVarLong(final long value) {
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            writeByte((int) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        writeByte((int) remaining);
+    }
+
+    void writeSignedVarLong(final long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    void writeString(final String value) {
+        // missing values are written as empty strings
+        final byte[] encoded = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(encoded.length);
+        writeBytes(encoded, 0, encoded.length);
+    }
+
+    byte[] array() {
+        return bytes;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    private void ensureCapacity(final int additional) {
+        if (size + additional > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + additional));
+        }
+    }
+
+    static long readVarLong(final ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        byte current;
+        do {
+            current = in.get();
+            value |= (long) (current & 0x7F) << shift;
+            shift += 7;
+        } while ((current & 0x80) != 0);
+        return value;
+    }
+
+    static int readVarInt(final ByteBuffer in) {
+        return (int) readVarLong(in);
+    }
+
+    static long readSignedVarLong(final ByteBuffer in) {
+        final long raw = readVarLong(in);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    static String readString(final ByteBuffer in) {
+        final int length = readVarInt(in);
+        final String value;
+        if (in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        } else {
+            final byte[] encoded = new byte[length];
+            in.duplicate().get(encoded);
+            value = new String(encoded, StandardCharsets.UTF_8);
+        }
+        in.position(in.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,51 @@
+package gg.sep.securityrobot.archive;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Instant;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Command line tool which exports a channel's archived chat messages within a time range as JSON lines.
+ *
+ * Usage: {@code ArchiveExportCli <archiveDirectory> <channel> <fromIso8601> <toIso8601>}
+ */
+@Log4j2
+public final class ArchiveExportCli {
+
+    private ArchiveExportCli() { }
+
+    /**
+     * Entry point of the export tool.
+     * @param args Archive directory, channel name, inclusive start time and exclusive end time (ISO-8601 instants).
+     * @throws IOException If the archive cannot be read or the output cannot be written.
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 4) {
+            System.err.println("Usage: ArchiveExportCli <archiveDirectory> <channel> <fromIso8601> <toIso8601>");
+            System.exit(2);
+        }
+        final Instant from = Instant.parse(args[2]);
+        final Instant to = Instant.parse(args[3]);
+
+        final BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        try (ChatArchiveReader reader = new ChatArchiveReader(Paths.get(args[0]))) {
+            final long exported = reader.scan(args[1], from, to, record -> {
+                try {
+                    out.write(record.toJson());
+                    out.newLine();
+                } catch (final IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.flush();
+            log.info("Exported archived chat messages. channel={}, segments={}, messages={}",
+                args[1], reader.getSegmentCount(), exported);
+        }
+    }
+}
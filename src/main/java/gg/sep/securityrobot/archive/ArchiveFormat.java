@@ -0,0 +1,28 @@
+package gg.sep.securityrobot.archive;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Constants of the chat archive segment file format.
+ *
+ * A segment file is laid out as:
+ * <pre>
+ *   header:  magic (int), version (int)
+ *   blocks:  compressed length (int), raw length (int), deflated columnar block
+ *   footer:  channel dictionary, author dictionary, sparse block index
+ *   trailer: footer length (int), magic (int)
+ * </pre>
+ * Each block holds up to a configured number of records, stored column by column: delta encoded timestamps, channel
+ * dictionary IDs, author dictionary IDs, Twitch message IDs and message text. The block index records each block's
+ * offset, time range and channels, so readers only inflate blocks which can match a scan.
+ */
+@UtilityClass
+class ArchiveFormat {
+    static final int MAGIC = 0x53524341; // "SRCA"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 8;
+    static final int TRAILER_BYTES = 8;
+    static final int BLOCK_HEADER_BYTES = 8;
+    static final String SEGMENT_SUFFIX = ".seg";
+    static final String IN_PROGRESS_SUFFIX = ".seg.tmp";
+}
@@ -0,0 +1,327 @@
+package gg.sep.securityrobot.archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import lombok.extern.log4j.Log4j2;
+
+import gg.sep.securityrobot.models.db.TwitchChannelMessageLog;
+import gg.sep.securityrobot.utils.IRCUtils;
+
+/**
+ * Reads chat messages back out of the segment files written by {@link ChatArchiveWriter}.
+ *
+ * Segments are memory mapped read-only and only their footers are parsed up front. Scans use the sparse block index
+ * to skip blocks outside of the requested time range or channel, inflate matching blocks into a reused buffer, and
+ * only materialize strings for records which match.
+ *
+ * Segments which are truncated or whose header or footer cannot be parsed are skipped when the reader is opened. A
+ * block which is corrupt fails the scan reaching it with an {@link IOException}, rather than returning bad records.
+ */
+@Log4j2
+public class ChatArchiveReader implements Closeable {
+
+    // deflate never expands data by more than this, so a larger raw length can only come from a corrupt header
+    private static final int MAX_INFLATE_RATIO = 1032;
+
+    private final List<Segment> segments = new ArrayList<>();
+    private final Inflater inflater = new Inflater();
+    private byte[] rawBlock = new byte[64 * 1024];
+
+    /**
+     * Open all complete segments within an archive directory.
+     * @param directory Archive directory.
+     * @throws IOException If the directory or one of its segments cannot be read.
+     */
+    public ChatArchiveReader(final Path directory) throws IOException {
+        final List<Path> paths;
+        try (Stream<Path> files = Files.list(directory)) {
+            paths = files
+                .filter(p -> p.getFileName().toString().endsWith(ArchiveFormat.SEGMENT_SUFFIX))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+        for (final Path path : paths) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                segments.add(new Segment(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())));
+            } catch (final IllegalStateException e) {
+                log.warn("Skipping invalid chat archive segment. file={}, reason={}", path, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Number of segments opened by the reader.
+     * @return Number of segments.
+     */
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Scans the archive for messages sent in a channel within a time range, in the order they were archived.
+     * @param channelName Name of the channel, with or without the leading '#'.
+     * @param from Start of the time range, inclusive.
+     * @param to End of the time range, exclusive.
+     * @param consumer Consumer receiving each matching message.
+     * @return Number of matching messages.
+     * @throws IOException If a block in the archive is corrupt.
+     */
+    public synchronized long scan(final String channelName, final Instant from, final Instant to,
+                                  final Consumer<TwitchChannelMessageLog> consumer) throws IOException {
+        final long fromSecond = from.getEpochSecond();
+        final long toSecond = to.getEpochSecond();
+        final String cleanChannelName = IRCUtils.stripIrcChannel(channelName);
+        long matched = 0;
+        for (final Segment segment : segments) {
+            final int channelId = segment.channelId(cleanChannelName);
+            if (channelId < 0) {
+                continue;
+            }
+            for (final BlockIndexEntry block : segment.blocks) {
+                if (block.maxTime < fromSecond || block.minTime >= toSecond || !block.containsChannel(channelId)) {
+                    continue;
+                }
+                matched += scanBlock(segment, block, channelId, fromSecond, toSecond, consumer);
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Releases the reader's inflater. Mapped segments are released once they are garbage collected.
+     */
+    @Override
+    public synchronized void close() {
+        inflater.end();
+        segments.clear();
+    }
+
+    private long scanBlock(final Segment segment, final BlockIndexEntry block, final int channelId,
+                           final long from, final long to,
+                           final Consumer<TwitchChannelMessageLog> consumer) throws IOException {
+        final ByteBuffer in = segment.data.duplicate();
+        in.position((int) block.offset);
+        final int compressedLength = in.getInt();
+        final int rawLength = in.getInt();
+        if (compressedLength < 0 || compressedLength > segment.footerStart - in.position()
+            || rawLength < 0 || rawLength > (long) compressedLength * MAX_INFLATE_RATIO) {
+            throw new IOException("Chat archive block header is out of bounds in " + segment.path);
+        }
+        // one spare byte, so the inflater reads the stream's checksum rather than stopping once the output is full
+        if (rawBlock.length <= rawLength) {
+            rawBlock = new byte[Math.max(rawLength + 1, rawBlock.length * 2)];
+        }
+        in.limit(in.position() + compressedLength);
+        inflater.reset();
+        inflater.setInput(in);
+        try {
+            final int inflated = inflater.inflate(rawBlock, 0, rawLength + 1);
+            if (inflated != rawLength || !inflater.finished()) {
+                throw new IOException("Truncated chat archive block in " + segment.path);
+            }
+        } catch (final DataFormatException e) {
+            throw new IOException("Corrupt chat archive block in " + segment.path, e);
+        }
+
+        try {
+            return decodeBlock(segment, block, rawLength, channelId, from, to, consumer);
+        } catch (final BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Corrupt chat archive block in " + segment.path, e);
+        }
+    }
+
+    private long decodeBlock(final Segment segment, final BlockIndexEntry block, final int rawLength,
+                             final int channelId, final long from, final long to,
+                             final Consumer<TwitchChannelMessageLog> consumer) throws IOException {
+        final ByteBuffer raw = ByteBuffer.wrap(rawBlock, 0, rawLength);
+        final int count = ArchiveBuffer.readVarInt(raw);
+        if (count != block.recordCount) {
+            throw new IOException("Chat archive block does not match its index in " + segment.path);
+        }
+        final long[] times = new long[count];
+        long time = 0;
+        for (int i = 0; i < count; i++) {
+            time += ArchiveBuffer.readSignedVarLong(raw);
+            times[i] = time;
+        }
+        final boolean[] matches = new boolean[count];
+        int matchCount = 0;
+        for (int i = 0; i < count; i++) {
+            matches[i] = ArchiveBuffer.readVarInt(raw) == channelId && times[i] >= from && times[i] < to;
+            matchCount += matches[i] ? 1 : 0;
+        }
+        if (matchCount == 0) {
+            return 0;
+        }
+        final int[] authors = new int[count];
+        for (int i = 0; i < count; i++) {
+            authors[i] = ArchiveBuffer.readVarInt(raw);
+        }
+        final String[] twitchIds = new String[count];
+        for (int i = 0; i < count; i++) {
+            twitchIds[i] = matches[i] ? ArchiveBuffer.readString(raw) : skipString(raw);
+        }
+        final String channel = segment.channelNames[channelId];
+        final String roomId = segment.channelRoomIds[channelId];
+        for (int i = 0; i < count; i++) {
+            if (!matches[i]) {
+                skipString(raw);
+                continue;
+            }
+            consumer.accept(TwitchChannelMessageLog.builder()
+                .twitchId(twitchIds[i])
+                .message(ArchiveBuffer.readString(raw))
+                .roomId(roomId)
+                .messageTime(times[i])
+                .authorId(segment.authorIds[authors[i]])
+                .authorDisplayName(segment.authorNames[authors[i]])
+                .channelName("#" + channel)
+                .cleanChannelName(channel)
+                .build());
+        }
+        return matchCount;
+    }
+
+    private static String skipString(final ByteBuffer in) {
+        final int length = ArchiveBuffer.readVarInt(in);
+        in.position(in.position() + length);
+        return null;
+    }
+
+    /**
+     * A single mapped segment file and its parsed footer.
+     */
+    private static final class Segment {
+        private final Path path;
+        private final MappedByteBuffer data;
+        private final String[] channelNames;
+        private final String[] channelRoomIds;
+        private final String[] authorIds;
+        private final String[] authorNames;
+        private final int footerStart;
+        private final List<BlockIndexEntry> blocks = new ArrayList<>();
+
+        private Segment(final Path path, final MappedByteBuffer data) {
+            this.path = path;
+            this.data = data;
+            final int size = data.capacity();
+            if (size < ArchiveFormat.HEADER_BYTES + ArchiveFormat.TRAILER_BYTES
+                || data.getInt(0) != ArchiveFormat.MAGIC
+                || data.getInt(size - Integer.BYTES) != ArchiveFormat.MAGIC) {
+                throw new IllegalStateException("bad magic");
+            }
+            if (data.getInt(Integer.BYTES) != ArchiveFormat.VERSION) {
+                throw new IllegalStateException("unsupported version " + data.getInt(Integer.BYTES));
+            }
+            final int footerLength = data.getInt(size - ArchiveFormat.TRAILER_BYTES);
+            if (footerLength < 0 || footerLength > size - ArchiveFormat.HEADER_BYTES - ArchiveFormat.TRAILER_BYTES) {
+                throw new IllegalStateException("footer length out of bounds");
+            }
+            this.footerStart = size - ArchiveFormat.TRAILER_BYTES - footerLength;
+            final ByteBuffer footer = data.duplicate();
+            footer.position(footerStart);
+            footer.limit(size - ArchiveFormat.TRAILER_BYTES);
+
+            try {
+                final int channelCount = readCount(footer);
+                this.channelNames = new String[channelCount];
+                this.channelRoomIds = new String[channelCount];
+                for (int i = 0; i < channelCount; i++) {
+                    channelNames[i] = ArchiveBuffer.readString(footer);
+                    channelRoomIds[i] = ArchiveBuffer.readString(footer);
+                }
+                final int authorCount = readCount(footer);
+                this.authorIds = new String[authorCount];
+                this.authorNames = new String[authorCount];
+                for (int i = 0; i < authorCount; i++) {
+                    authorIds[i] = ArchiveBuffer.readString(footer);
+                    authorNames[i] = ArchiveBuffer.readString(footer);
+                }
+                final int blockCount = readCount(footer);
+                for (int i = 0; i < blockCount; i++) {
+                    final long offset = ArchiveBuffer.readVarLong(footer);
+                    final int recordCount = ArchiveBuffer.readVarInt(footer);
+                    final long minTime = ArchiveBuffer.readSignedVarLong(footer);
+                    final long maxTime = ArchiveBuffer.readSignedVarLong(footer);
+                    final int[] channels = new int[readCount(footer)];
+                    for (int c = 0; c < channels.length; c++) {
+                        channels[c] = ArchiveBuffer.readVarInt(footer);
+                    }
+                    if (offset < ArchiveFormat.HEADER_BYTES
+                        || offset > footerStart - ArchiveFormat.BLOCK_HEADER_BYTES) {
+                        throw new IllegalStateException("block offset out of bounds");
+                    }
+                    blocks.add(new BlockIndexEntry(offset, recordCount, minTime, maxTime, channels));
+                }
+            } catch (final BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+                throw new IllegalStateException("corrupt footer", e);
+            }
+        }
+
+        /**
+         * Reads the number of entries in a footer section. Every entry takes at least one byte, so a count larger
+         * than the rest of the footer can only come from a corrupt footer.
+         */
+        private static int readCount(final ByteBuffer footer) {
+            final int count = ArchiveBuffer.readVarInt(footer);
+            if (count < 0 || count > footer.remaining()) {
+                throw new IllegalStateException("corrupt footer");
+            }
+            return count;
+        }
+
+        private int channelId(final String cleanChannelName) {
+            for (int i = 0; i < channelNames.length; i++) {
+                if (channelNames[i].equals(cleanChannelName)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Sparse index entry of a single block within a segment.
+     */
+    private static final class BlockIndexEntry {
+        private final long offset;
+        private final int recordCount;
+        private final long minTime;
+        private final long maxTime;
+        private final int[] channels;
+
+        private BlockIndexEntry(final long offset, final int recordCount, final long minTime, final long maxTime,
+                                final int[] channels) {
+            this.offset = offset;
+            this.recordCount = recordCount;
+            this.minTime = minTime;
+            this.maxTime = maxTime;
+            this.channels = channels;
+        }
+
+        private boolean containsChannel(final int channelId) {
+            for (final int channel : channels) {
+                if (channel == channelId) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,446 @@
+package gg.sep.securityrobot.archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+import lombok.extern.log4j.Log4j2;
+
+import gg.sep.securityrobot.config.models.ArchiveConfig;
+import gg.sep.securityrobot.listeners.ChannelMessageConsumer;
+import gg.sep.securityrobot.models.db.TwitchChannelMessageLog;
+import gg.sep.securityrobot.models.twitch.tmi.TwitchChannelMessage;
+
+/**
+ * Writes chat messages into compressed, columnar segment files in a local archive directory.
+ *
+ * Records are collected into blocks which are encoded column by column and deflated. Each segment is written to a
+ * temporary file and atomically renamed once its footer (dictionaries and block index) is written, so readers only
+ * ever see complete segments. Segments roll after a configured number of records or age.
+ *
+ * The ingest thread only queues records; a single archive thread encodes, deflates and writes them, so a slow disk
+ * never holds up chat. Records are dropped once {@link ArchiveConfig#getQueueCapacity()} are queued. A block which
+ * cannot be written is dropped and truncated away, and if the segment cannot be repaired it is abandoned, so one
+ * failed write never wedges the writer.
+ *
+ * See {@link ArchiveFormat} for the file layout.
+ */
+@Log4j2
+public class ChatArchiveWriter implements ChannelMessageConsumer, Closeable {
+
+    private static final long POLL_MILLIS = 100;
+    private static final long CLOSE_TIMEOUT_MILLIS = 30000;
+    private static final long DROP_LOG_INTERVAL = 1000;
+
+    private final ArchiveConfig config;
+    private final Path directory;
+    private final Deflater deflater;
+    private final BlockingQueue<TwitchChannelMessageLog> queue;
+    private final AtomicLong dropped = new AtomicLong();
+    private Thread archiver; // guarded by this
+    private volatile boolean closed;
+
+    // current block
+    private final long[] blockTimes;
+    private final int[] blockChannels;
+    private final int[] blockAuthors;
+    private final String[] blockTwitchIds;
+    private final String[] blockMessages;
+    private int blockSize;
+    private final ArchiveBuffer rawBlock = new ArchiveBuffer(64 * 1024);
+    private final ArchiveBuffer compressedBlock = new ArchiveBuffer(16 * 1024);
+
+    // current segment
+    private FileChannel segmentChannel;
+    private Path segmentPath;
+    private long segmentOpenedAt;
+    private long segmentRecords;
+    private int segmentSequence;
+    private final Map<String, Integer> channelDictionary = new HashMap<>();
+    private final List<String> channelNames = new ArrayList<>();
+    private final List<String> channelRoomIds = new ArrayList<>();
+    private final Map<String, Integer> authorDictionary = new HashMap<>();
+    private final List<String> authorIds = new ArrayList<>();
+    private final List<String> authorNames = new ArrayList<>();
+    private final List<BlockIndexEntry> blockIndex = new ArrayList<>();
+
+    /**
+     * Create a new archive writer. The archive directory is created if it does not exist.
+     * @param config Archive configuration.
+     * @throws IOException If the archive directory cannot be created.
+     */
+    public ChatArchiveWriter(final ArchiveConfig config) throws IOException {
+        this.config = config;
+        this.directory = Files.createDirectories(Paths.get(config.getDirectory()));
+        this.deflater = new Deflater(config.getCompressionLevel());
+        this.blockTimes = new long[config.getBlockRecords()];
+        this.blockChannels = new int[config.getBlockRecords()];
+        this.blockAuthors = new int[config.getBlockRecords()];
+        this.blockTwitchIds = new String[config.getBlockRecords()];
+        this.blockMessages = new String[config.getBlockRecords()];
+        this.queue = new ArrayBlockingQueue<>(config.getQueueCapacity());
+    }
+
+    /**
+     * Queues a parsed channel message to be archived. The message is dropped if the queue is full.
+     * @param message Parsed Twitch channel message.
+     */
+    @Override
+    public void accept(final TwitchChannelMessage message) {
+        if (closed || !queue.offer(message.toLog())) {
+            final long total = dropped.incrementAndGet();
+            if (total % DROP_LOG_INTERVAL == 1) {
+                log.warn("Dropped chat messages which could not be queued for the archive. dropped={}", total);
+            }
+        }
+    }
+
+    /**
+     * Number of messages dropped because the archive queue was full or closed.
+     * @return Number of dropped messages.
+     */
+    public long droppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Appends a record to the current block, writing the block and rolling the segment when they are full. Called by
+     * the archive thread; messages from chat are queued by {@link #accept(TwitchChannelMessage)} instead.
+     * @param record Chat message record to archive.
+     * @throws IOException If the block or segment cannot be written.
+     */
+    public synchronized void write(final TwitchChannelMessageLog record) throws IOException {
+        if (segmentChannel == null) {
+            openSegment();
+        }
+        final int channelId = channelDictionary.computeIfAbsent(record.getCleanChannelName(), c -> {
+            channelNames.add(c);
+            channelRoomIds.add(record.getRoomId());
+            return channelNames.size() - 1;
+        });
+        final int authorId = authorDictionary.computeIfAbsent(record.getAuthorId(), a -> {
+            authorIds.add(a);
+            authorNames.add(record.getAuthorDisplayName());
+            return authorIds.size() - 1;
+        });
+        blockTimes[blockSize] = record.getMessageTime();
+        blockChannels[blockSize] = channelId;
+        blockAuthors[blockSize] = authorId;
+        blockTwitchIds[blockSize] = record.getTwitchId();
+        blockMessages[blockSize] = record.getMessage();
+        blockSize++;
+        segmentRecords++;
+
+        if (blockSize == blockTimes.length) {
+            writeBlock();
+        }
+        if (segmentRecords >= config.getSegmentRecords()) {
+            closeSegment();
+        }
+    }
+
+    /**
+     * Closes the current segment if it has any records, making them visible to readers.
+     * @throws IOException If the segment cannot be written.
+     */
+    public synchronized void roll() throws IOException {
+        if (segmentChannel != null && segmentRecords > 0) {
+            closeSegment();
+        }
+    }
+
+    /**
+     * Starts the archive thread, which writes queued messages and rolls segments once they reach the configured
+     * maximum age.
+     */
+    public synchronized void start() {
+        if (archiver != null || closed) {
+            return;
+        }
+        archiver = new Thread(this::runArchiver, "chat-archive");
+        archiver.setDaemon(true);
+        archiver.start();
+    }
+
+    /**
+     * Stops accepting messages, writes those already queued, and closes the current segment.
+     * @throws IOException If the segment cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        final Thread thread;
+        synchronized (this) {
+            thread = archiver;
+            archiver = null;
+        }
+        if (thread != null) {
+            try {
+                thread.join(CLOSE_TIMEOUT_MILLIS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // anything left over if the archive thread was never started or did not finish in time; the thread is not
+        // interrupted, as that would close the segment's file channel under it
+        TwitchChannelMessageLog record;
+        while ((record = queue.poll()) != null) {
+            writeQuietly(record);
+        }
+        roll();
+    }
+
+    private void runArchiver() {
+        try {
+            while (!closed || !queue.isEmpty()) {
+                final TwitchChannelMessageLog record = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (record != null) {
+                    writeQuietly(record);
+                }
+                rollIfExpired();
+            }
+        } catch (final InterruptedException e) {
+            // closing
+        }
+    }
+
+    private void writeQuietly(final TwitchChannelMessageLog record) {
+        try {
+            write(record);
+        } catch (final IOException | RuntimeException e) {
+            log.error("Unable to write chat message to the archive.", e);
+        }
+    }
+
+    private synchronized void rollIfExpired() {
+        final long ageMillis = System.currentTimeMillis() - segmentOpenedAt;
+        if (segmentChannel != null && ageMillis >= config.getSegmentMaxAgeSeconds() * 1000L) {
+            try {
+                roll();
+            } catch (final IOException e) {
+                log.error("Unable to roll chat archive segment.", e);
+            }
+        }
+    }
+
+    private void openSegment() throws IOException {
+        segmentOpenedAt = System.currentTimeMillis();
+        segmentPath = directory.resolve(String.format("chat-%013d-%05d%s",
+            segmentOpenedAt, segmentSequence++ % 100000, ArchiveFormat.IN_PROGRESS_SUFFIX));
+        segmentChannel = FileChannel.open(segmentPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        final ByteBuffer header = ByteBuffer.allocate(ArchiveFormat.HEADER_BYTES);
+        header.putInt(ArchiveFormat.MAGIC).putInt(ArchiveFormat.VERSION).flip();
+        try {
+            writeFully(header);
+        } catch (final IOException e) {
+            abandonSegment();
+            throw e;
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (blockSize == 0) {
+            return;
+        }
+        long offset = -1;
+        try {
+            offset = segmentChannel.position();
+            encodeAndWriteBlock(offset);
+        } catch (final IOException | RuntimeException e) {
+            discardBlock(offset);
+            throw e;
+        }
+        clearBlock();
+    }
+
+    private void encodeAndWriteBlock(final long offset) throws IOException {
+        rawBlock.clear();
+        rawBlock.writeVarLong(blockSize);
+        long previousTime = 0;
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+        for (int i = 0; i < blockSize; i++) {
+            rawBlock.writeSignedVarLong(blockTimes[i] - previousTime);
+            previousTime = blockTimes[i];
+            minTime = Math.min(minTime, blockTimes[i]);
+            maxTime = Math.max(maxTime, blockTimes[i]);
+        }
+        for (int i = 0; i < blockSize; i++) {
+            rawBlock.writeVarLong(blockChannels[i]);
+        }
+        for (int i = 0; i < blockSize; i++) {
+            rawBlock.writeVarLong(blockAuthors[i]);
+        }
+        for (int i = 0; i < blockSize; i++) {
+            rawBlock.writeString(blockTwitchIds[i]);
+        }
+        for (int i = 0; i < blockSize; i++) {
+            rawBlock.writeString(blockMessages[i]);
+        }
+
+        compressedBlock.clear();
+        deflater.reset();
+        deflater.setInput(rawBlock.array(), 0, rawBlock.size());
+        deflater.finish();
+        final byte[] chunk = new byte[16 * 1024];
+        while (!deflater.finished()) {
+            final int written = deflater.deflate(chunk);
+            compressedBlock.writeBytes(chunk, 0, written);
+        }
+
+        final ByteBuffer blockHeader = ByteBuffer.allocate(ArchiveFormat.BLOCK_HEADER_BYTES);
+        blockHeader.putInt(compressedBlock.size()).putInt(rawBlock.size()).flip();
+        writeFully(blockHeader);
+        writeFully(ByteBuffer.wrap(compressedBlock.array(), 0, compressedBlock.size()));
+
+        blockIndex.add(new BlockIndexEntry(offset, blockSize, minTime, maxTime,
+            Arrays.stream(blockChannels, 0, blockSize).distinct().sorted().toArray()));
+    }
+
+    private void clearBlock() {
+        Arrays.fill(blockTwitchIds, 0, blockSize, null);
+        Arrays.fill(blockMessages, 0, blockSize, null);
+        blockSize = 0;
+    }
+
+    /**
+     * Drops the current block after it failed to be written, and truncates anything partially written for it, so
+     * the segment can carry on from the end of the previous block. The segment is abandoned if it cannot be truncated.
+     * @param offset Position in the segment file the block was written from, or -1 if unknown.
+     */
+    private void discardBlock(final long offset) {
+        log.error("Dropped a chat archive block which could not be written. file={}, records={}",
+            segmentPath, blockSize);
+        segmentRecords -= blockSize;
+        clearBlock();
+        if (offset < 0) {
+            abandonSegment();
+            return;
+        }
+        try {
+            segmentChannel.truncate(offset);
+            segmentChannel.position(offset);
+        } catch (final IOException e) {
+            abandonSegment();
+        }
+    }
+
+    /**
+     * Gives up on the segment being written, leaving its in-progress file for manual recovery. The next record opens a
+     * new segment.
+     */
+    private void abandonSegment() {
+        log.error("Abandoned chat archive segment after a failed write. file={}, records={}, blocks={}",
+            segmentPath, segmentRecords, blockIndex.size());
+        try {
+            segmentChannel.close();
+        } catch (final IOException e) {
+            log.warn("Unable to close abandoned chat archive segment. file={}", segmentPath, e);
+        }
+        clearBlock();
+        resetSegment();
+    }
+
+    private void closeSegment() throws IOException {
+        writeBlock();
+        try {
+            writeFooter();
+        } catch (final IOException | RuntimeException e) {
+            abandonSegment();
+            throw e;
+        }
+        resetSegment();
+    }
+
+    private void writeFooter() throws IOException {
+        final ArchiveBuffer footer = new ArchiveBuffer(4096);
+        footer.writeVarLong(channelNames.size());
+        for (int i = 0; i < channelNames.size(); i++) {
+            footer.writeString(channelNames.get(i));
+            footer.writeString(channelRoomIds.get(i));
+        }
+        footer.writeVarLong(authorIds.size());
+        for (int i = 0; i < authorIds.size(); i++) {
+            footer.writeString(authorIds.get(i));
+            footer.writeString(authorNames.get(i));
+        }
+        footer.writeVarLong(blockIndex.size());
+        for (final BlockIndexEntry entry : blockIndex) {
+            footer.writeVarLong(entry.offset);
+            footer.writeVarLong(entry.recordCount);
+            footer.writeSignedVarLong(entry.minTime);
+            footer.writeSignedVarLong(entry.maxTime);
+            footer.writeVarLong(entry.channels.length);
+            for (final int channel : entry.channels) {
+                footer.writeVarLong(channel);
+            }
+        }
+        footer.writeInt(footer.size());
+        footer.writeInt(ArchiveFormat.MAGIC);
+        writeFully(ByteBuffer.wrap(footer.array(), 0, footer.size()));
+
+        segmentChannel.force(true);
+        segmentChannel.close();
+        final String fileName = segmentPath.getFileName().toString();
+        final Path finalPath = segmentPath.resolveSibling(fileName.substring(0,
+            fileName.length() - ArchiveFormat.IN_PROGRESS_SUFFIX.length()) + ArchiveFormat.SEGMENT_SUFFIX);
+        Files.move(segmentPath, finalPath, StandardCopyOption.ATOMIC_MOVE);
+        log.info("Wrote chat archive segment. file={}, records={}, blocks={}",
+            finalPath, segmentRecords, blockIndex.size());
+    }
+
+    private void resetSegment() {
+        segmentChannel = null;
+        segmentPath = null;
+        segmentRecords = 0;
+        channelDictionary.clear();
+        channelNames.clear();
+        channelRoomIds.clear();
+        authorDictionary.clear();
+        authorIds.clear();
+        authorNames.clear();
+        blockIndex.clear();
+    }
+
+    private void writeFully(final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            segmentChannel.write(buffer);
+        }
+    }
+
+    /**
+     * Sparse index entry of a single block within the segment being written.
+     */
+    private static final class BlockIndexEntry {
+        private final long offset;
+        private final int recordCount;
+        private final long minTime;
+        private final long maxTime;
+        private final int[] channels;
+
+        private BlockIndexEntry(final long offset, final int recordCount, final long minTime, final long maxTime,
+                                final int[] channels) {
+            this.offset = offset;
+            this.recordCount = recordCount;
+            this.minTime = minTime;
+            this.maxTime = maxTime;
+            this.channels = channels;
+        }
+    }
+}
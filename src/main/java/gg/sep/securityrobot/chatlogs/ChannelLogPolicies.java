@@ -0,0 +1,206 @@
+package gg.sep.securityrobot.chatlogs;
+
+import static gg.sep.securityrobot.SecurityRobot.REDIS_PREFIX;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.log4j.Log4j2;
+import redis.clients.jedis.exceptions.JedisException;
+
+import gg.sep.securityrobot.config.models.ChatLogsConfig;
+import gg.sep.securityrobot.redis.RedisAccess;
+import gg.sep.securityrobot.utils.IRCUtils;
+import gg.sep.securityrobot.utils.ModelParser;
+
+/**
+ * Per-channel chat logging policies, stored in Redis.
+ *
+ * All policies are kept in one Redis hash of channel name to the policy's JSON, which is read again every few
+ * seconds, so policies changed in Redis by hand apply without a restart. Policies are held in memory keyed by the IRC
+ * form of the channel name, so deciding whether a message is logged is a single map lookup on the raw channel name,
+ * made before the message is parsed. Channels without a policy are not logged, except for the configured stream
+ * channel, which is logged with {@link ChannelLogPolicy#DEFAULT} unless it has a policy of its own.
+ */
+@Log4j2
+public class ChannelLogPolicies {
+
+    private static final String POLICIES_KEY = REDIS_PREFIX + "chat_log_policies";
+    private static final Pattern COLLECTION_NAME = Pattern.compile("[A-Za-z0-9_.-]+");
+
+    private final ChatLogsConfig config;
+    private final RedisAccess redis;
+    private final Supplier<String> streamChannel;
+    private volatile Map<String, ChannelLogPolicy> policies = Collections.emptyMap();
+    private volatile Map<String, String> stored = Collections.emptyMap();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Create the channel logging policies, and load them from Redis.
+     * @param config Chat logging configuration.
+     * @param redis Redis which policies are stored in.
+     * @param streamChannel Supplies the name of the stream channel, which is logged when it has no policy.
+     */
+    public ChannelLogPolicies(final ChatLogsConfig config, final RedisAccess redis,
+                              final Supplier<String> streamChannel) {
+        this.config = config;
+        this.redis = redis;
+        this.streamChannel = streamChannel;
+        reload();
+    }
+
+    /**
+     * Returns whether a channel's messages are logged at all, before its sample rate is applied.
+     * @param ircChannel Channel name in IRC form, as received, eg "#channel".
+     * @return <code>true</code> if the channel has an enabled policy, or is the stream channel without a policy.
+     */
+    public boolean isLogged(final String ircChannel) {
+        final ChannelLogPolicy policy = policies.get(ircChannel);
+        return policy == null ? isStreamChannel(ircChannel) : policy.isEnabled();
+    }
+
+    /**
+     * Decides whether a message sent to a channel is logged, applying the channel's sample rate.
+     * @param ircChannel Channel name in IRC form, as received, eg "#channel".
+     * @return Policy to log the message with, or null if it is not logged.
+     */
+    public ChannelLogPolicy sample(final String ircChannel) {
+        ChannelLogPolicy policy = policies.get(ircChannel);
+        if (policy == null) {
+            if (!isStreamChannel(ircChannel)) {
+                return null;
+            }
+            policy = ChannelLogPolicy.DEFAULT;
+        }
+        if (!policy.isEnabled()) {
+            return null;
+        }
+        if (policy.getSampleRate() < 1.0 && ThreadLocalRandom.current().nextDouble() >= policy.getSampleRate()) {
+            return null;
+        }
+        return policy;
+    }
+
+    /**
+     * Returns whether a channel's policy enables the chat search index for it.
+     * @param ircChannel Channel name in IRC form, as received, eg "#channel".
+     * @return <code>true</code> if the channel has a policy which enables search; <code>false</code> otherwise.
+     */
+    public boolean isSearchEnabled(final String ircChannel) {
+        final ChannelLogPolicy policy = policies.get(ircChannel);
+        return policy != null && policy.isSearch();
+    }
+
+    /**
+     * Returns a channel's stored logging policy, if it has one.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     * @return Stored policy of the channel, or empty if it does not have one.
+     */
+    public Optional<ChannelLogPolicy> getPolicy(final String channel) {
+        return Optional.ofNullable(policies.get(IRCUtils.ircify(channel)));
+    }
+
+    /**
+     * Stores a channel's logging policy, which applies immediately.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     * @param policyJson JSON of the policy, eg <code>{"sampleRate": 0.5, "collection": "big_channel_logs"}</code>.
+     * @return Stored policy, or empty if the JSON is not a valid policy.
+     */
+    public Optional<ChannelLogPolicy> setPolicy(final String channel, final String policyJson) {
+        final Optional<ChannelLogPolicy> policy = parse(channel, policyJson);
+        if (policy.isPresent()) {
+            redis.execute("setLogPolicy",
+                jedis -> jedis.hset(POLICIES_KEY, IRCUtils.stripIrcChannel(channel), policyJson));
+            reload();
+        }
+        return policy;
+    }
+
+    /**
+     * Removes a channel's logging policy, which applies immediately.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     * @return <code>true</code> if the channel had a policy; <code>false</code> otherwise.
+     */
+    public boolean clearPolicy(final String channel) {
+        final long removed = redis.execute("clearLogPolicy",
+            jedis -> jedis.hdel(POLICIES_KEY, IRCUtils.stripIrcChannel(channel)));
+        reload();
+        return removed > 0;
+    }
+
+    /**
+     * Reads the policies from Redis again. Failing to read them keeps the policies already loaded.
+     */
+    public synchronized void reload() {
+        final Map<String, String> latest;
+        try {
+            latest = redis.execute("readLogPolicies", jedis -> jedis.hgetAll(POLICIES_KEY));
+        } catch (final JedisException e) {
+            log.warn("Unable to load chat log policies from Redis. error={}", e.getMessage());
+            return;
+        }
+        if (latest.equals(stored)) {
+            return;
+        }
+        final Map<String, ChannelLogPolicy> parsed = new HashMap<>();
+        latest.forEach((channel, json) -> parse(channel, json)
+            .ifPresent(policy -> parsed.put(IRCUtils.ircify(channel), policy)));
+        this.policies = parsed;
+        this.stored = latest;
+        log.info("Loaded chat log policies. channels={}", parsed.size());
+    }
+
+    /**
+     * Starts reading the policies from Redis on a schedule.
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("chat-log-policies-%d").setDaemon(true).build());
+        scheduler.scheduleWithFixedDelay(this::reload, config.getPolicyPollSeconds(),
+            config.getPolicyPollSeconds(), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops reading the policies from Redis.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private boolean isStreamChannel(final String ircChannel) {
+        final String stream = streamChannel.get();
+        // compare in place, since this runs for every message in every channel without a policy
+        return stream != null && ircChannel.length() == stream.length() + 1
+            && ircChannel.regionMatches(true, 1, stream, 0, stream.length());
+    }
+
+    private static Optional<ChannelLogPolicy> parse(final String channel, final String json) {
+        final Optional<ChannelLogPolicy> policy = json == null || json.trim().isEmpty()
+            ? Optional.empty() : ModelParser.parseJson(json, ChannelLogPolicy.class);
+        if (!policy.isPresent()) {
+            log.warn("Ignoring chat log policy which could not be parsed. channel={}", channel);
+            return Optional.empty();
+        }
+        if (policy.get().hasCollection() && !COLLECTION_NAME.matcher(policy.get().getCollection()).matches()) {
+            log.warn("Ignoring chat log policy with an invalid collection. channel={}, collection={}", channel,
+                policy.get().getCollection());
+            return Optional.empty();
+        }
+        return policy;
+    }
+}
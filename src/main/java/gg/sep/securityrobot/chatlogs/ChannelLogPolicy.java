@@ -0,0 +1,41 @@
+package gg.sep.securityrobot.chatlogs;
+
+import lombok.Getter;
+
+/**
+ * Model for how a single channel's messages are logged, stored in Redis as JSON.
+ *
+ * Fields missing from the stored JSON keep their defaults, so <code>{}</code> logs every message of the channel to
+ * the default collection with the default retention, and does not add the channel to the chat search index.
+ */
+@Getter
+public class ChannelLogPolicy {
+
+    /**
+     * Policy used for the stream channel when it has no stored policy.
+     */
+    public static final ChannelLogPolicy DEFAULT = new ChannelLogPolicy();
+
+    private boolean enabled = true;
+    private double sampleRate = 1.0;
+    private int retentionDays = -1;
+    private String collection;
+    // whether the channel's recent chat is also kept in the in-memory search index
+    private boolean search;
+
+    /**
+     * Returns whether the policy sets its own collection rather than using the configured log collection.
+     * @return <code>true</code> if a collection is set; <code>false</code> otherwise.
+     */
+    public boolean hasCollection() {
+        return collection != null && !collection.isEmpty();
+    }
+
+    /**
+     * Returns whether the policy sets its own retention rather than using the configured log retention.
+     * @return <code>true</code> if a retention is set; <code>false</code> otherwise.
+     */
+    public boolean hasRetention() {
+        return retentionDays >= 0;
+    }
+}
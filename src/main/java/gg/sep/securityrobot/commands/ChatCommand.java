@@ -46,4 +46,18 @@ public @interface ChatCommand {
      * @return Number of seconds in between each invocation of the command.
      */
     int cooldown() default 0;
+
+    /**
+     * Number of seconds an asynchronous command (one returning a {@link java.util.concurrent.CompletionStage}) may
+     * run before it is cancelled. The user is told straight away, and the command's work is signalled through
+     * {@link CommandEvent#isCancelled()}, but its concurrency permit is only released once that work has finished.
+     * @return Timeout of the command, in seconds.
+     */
+    int timeout() default 10;
+
+    /**
+     * Maximum number of invocations of an asynchronous command which may run at once. 0 means no limit.
+     * @return Maximum concurrent invocations of the command.
+     */
+    int maxConcurrent() default 0;
 }
@@ -1,17 +1,21 @@
 package gg.sep.securityrobot.commands;
 
+import static gg.sep.securityrobot.SecurityRobot.COMMAND_PREFIX;
+
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletionStage;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import com.google.common.base.Objects;
-import com.google.common.base.Stopwatch;
+import lombok.AccessLevel;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.extern.log4j.Log4j2;
@@ -20,23 +24,61 @@ import gg.sep.securityrobot.commands.handlers.custom.CustomCommandMetadata;
 
 /**
  * Model of a bot command with builder.
+ *
+ * Commands are immutable values: the command tree, trigger strings and prefix strings are derived once when
+ * the command is built, so equality and hashing do not need to rebuild them on every collection operation. The
+ * cooldown and concurrency state of a command is kept by the {@link CommandManager} which runs it.
  */
-@Builder
 @Getter
 @Log4j2
-public class Command {
+public final class Command {
+
+    private final String name;
+    private final String description;
+    private final Set<String> aliases;
+    private final boolean isCustom;
+    private final CustomCommandMetadata customMetadata;
+    private final Method method;
+    private final CommandLevel level;
+    private final int requiredRoles;
+    private final boolean shownInCommandList;
+    private final int cooldown;
+    private final int timeout;
+    private final boolean async;
+    private final int maxConcurrent;
 
-    private String name;
-    private String description;
-    private Set<String> aliases;
-    private boolean isCustom;
-    private CustomCommandMetadata customMetadata;
-    private Method method;
-    private CommandLevel level;
-    private boolean shownInCommandList;
-    private int cooldown;
+    @Getter(AccessLevel.NONE) private final Set<String> triggerStrings;
+    @Getter(AccessLevel.NONE) private final Set<String> identifiers;
+    private final Set<List<String>> commandTree;
+    private final List<String> commandPrefixes;
+    @Getter(AccessLevel.NONE) private final int hash;
 
-    private Stopwatch lastExecuted; // TODO: There has to be a better way to do this.
+    @Builder
+    private Command(final String name, final String description, final Set<String> aliases, final boolean isCustom,
+                    final CustomCommandMetadata customMetadata, final Method method, final CommandLevel level,
+                    final boolean shownInCommandList, final int cooldown, final int timeout,
+                    final int maxConcurrent) {
+        this.name = name;
+        this.description = description;
+        this.aliases = (aliases == null) ? Collections.emptySet() : Collections.unmodifiableSet(aliases);
+        this.isCustom = isCustom;
+        this.customMetadata = customMetadata;
+        this.method = method;
+        this.level = level;
+        this.requiredRoles = (level == null) ? 0 : level.getRequiredRoles();
+        this.shownInCommandList = shownInCommandList;
+        this.cooldown = cooldown;
+        this.timeout = timeout;
+        this.async = method != null && CompletionStage.class.isAssignableFrom(method.getReturnType());
+        this.maxConcurrent = maxConcurrent;
+
+        final String[] splitName = name.trim().split(" ");
+        this.triggerStrings = buildTriggerStrings(splitName[0], this.aliases);
+        this.identifiers = buildIdentifiers(name, this.aliases);
+        this.commandTree = buildCommandTree(splitName, this.triggerStrings);
+        this.commandPrefixes = buildCommandPrefixes(this.commandTree);
+        this.hash = this.commandTree.hashCode();
+    }
 
     /**
      * Builder class for the command, with custom alias handling.
@@ -49,7 +91,7 @@ public class Command {
          */
         public CommandBuilder aliases(final String[] aliases) {
             this.aliases = Stream.of(aliases)
-                .map(String::toLowerCase)
+                .map(Command::internToken)
                 .collect(Collectors.toSet());
             return this;
         }
@@ -61,7 +103,7 @@ public class Command {
          */
         public CommandBuilder aliases(final Collection<String> aliases) {
             this.aliases = aliases.stream()
-                .map(String::toLowerCase)
+                .map(Command::internToken)
                 .collect(Collectors.toSet());
             return this;
         }
@@ -77,31 +119,31 @@ public class Command {
     }
 
     /**
-     * Builds all of the command tree options which can trigger a command, and handles sub-commands.
+     * Returns all of the command tree options which can trigger a command, including sub-commands.
      *
      * For example, if a command string is: "points add" and has aliases of "gold, rewards", this
-     * method will produce a set containing these ordered lists:
+     * method will return a set containing these ordered lists:
      *
      *    1. [points, add]
      *    2. [gold, add]
      *    3. [rewards, add]
      *
-     * This effectively generates a completely unique signature for the command.
+     * This effectively generates a completely unique signature for the command. The tree is computed
+     * once when the command is built and the returned set is unmodifiable.
      * @return Set of all possible command branches, including aliases.
      */
     public Set<List<String>> getCommandTree() {
-        final Set<List<String>> commandTree = new HashSet<>();
-        final String[] splitMainCommand = getName().split(" ");
-
-        for (final String trigger : getTriggerStrings()) {
-            final List<String> triggerList = new LinkedList<>();
-            triggerList.add(trigger);
-            if (splitMainCommand.length > 1) {
-                triggerList.addAll(Arrays.asList(Arrays.copyOfRange(splitMainCommand, 1, splitMainCommand.length)));
-            }
-            commandTree.add(triggerList);
-        }
-        return commandTree;
+        return this.commandTree;
+    }
+
+    /**
+     * Returns the prefixed trigger strings for each branch of the command tree, eg "+points add".
+     *
+     * Prefixes are ordered longest first so that the most specific branch is matched first.
+     * @return Unmodifiable list of the prefixed trigger strings of the command.
+     */
+    public List<String> getCommandPrefixes() {
+        return this.commandPrefixes;
     }
 
     /**
@@ -109,11 +151,14 @@ public class Command {
      */
     @Override
     public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        }
         if (!(other instanceof Command)) {
             return false;
         }
         final Command o = (Command) other;
-        return o.getCommandTree().equals(this.getCommandTree());
+        return o.hash == this.hash && o.commandTree.equals(this.commandTree);
     }
 
     /**
@@ -121,7 +166,7 @@ public class Command {
      */
     @Override
     public int hashCode() {
-        return Objects.hashCode(this.getCommandTree());
+        return this.hash;
     }
 
     /**
@@ -132,18 +177,6 @@ public class Command {
         return this.description;
     }
 
-    /**
-     * Checks whether the time between the last command execution and now has elapsed.
-     * @return Whether the cooldown has expired.
-     */
-    public boolean cooldownElapsed() {
-        if (!lastExecuted.isRunning()) {
-            lastExecuted.start();
-            return true;
-        }
-        return lastExecuted.elapsed().toSeconds() >= cooldown;
-    }
-
     /**
      * Returns <code>true</code> if this Command handles the extracted command string from a Twitch Message.
      * @param commandStr Extracted command string (without the prefix) in the message.
@@ -164,10 +197,7 @@ public class Command {
             log.fatal("getTriggerStrings called on a non-custom command. " +
                 "This should never happen and is NOT safe. Command: {}", this.getName());
         }
-        final Set<String> thisAliases = new HashSet<>(this.aliases);
-        final String mainCommand = getName().split(" ")[0];
-        thisAliases.add(mainCommand);
-        return thisAliases;
+        return this.triggerStrings;
     }
 
     /**
@@ -187,7 +217,8 @@ public class Command {
             .description(annotation.description())
             .level(annotation.level())
             .cooldown(annotation.cooldown())
-            .lastExecuted(Stopwatch.createUnstarted())
+            .timeout(annotation.timeout())
+            .maxConcurrent(annotation.maxConcurrent())
             .build();
     }
 
@@ -207,11 +238,10 @@ public class Command {
             .description(metadata.getDescription())
             .level(CommandLevel.parseRequiredLevelString(String.valueOf(metadata.getLevel())))
             .cooldown((int) metadata.getCooldown())
-            .lastExecuted(Stopwatch.createUnstarted())
             .build();
     }
 
-                                              /**
+    /**
      * Checks if a command has duplicate command name or aliases.
      * @param other Other command to compare to this one.
      * @return <code>true</code> if the other command has a command name or alias which
@@ -219,13 +249,58 @@ public class Command {
      *         <code>false</code> otherwise.
      */
     public boolean isDuplicate(final Command other) {
-        final Set<String> thisAliases = new HashSet<>(this.aliases);
-        thisAliases.add(this.getName());
+        final Set<String> smaller = (this.identifiers.size() <= other.identifiers.size())
+            ? this.identifiers : other.identifiers;
+        final Set<String> larger = (smaller == this.identifiers) ? other.identifiers : this.identifiers;
+        for (final String identifier : smaller) {
+            if (larger.contains(identifier)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        final Set<String> otherAliases = new HashSet<>(other.getAliases());
-        otherAliases.add(other.getName());
+    /**
+     * Lowercases and interns a single command token, so that equal tokens share the same instance
+     * across every command in the registry.
+     * @param token Raw command token.
+     * @return Interned, lowercase command token.
+     */
+    static String internToken(final String token) {
+        return token.trim().toLowerCase().intern();
+    }
+
+    private static Set<String> buildTriggerStrings(final String mainCommand, final Set<String> aliases) {
+        final Set<String> triggers = new HashSet<>(aliases);
+        triggers.add(internToken(mainCommand));
+        return Collections.unmodifiableSet(triggers);
+    }
+
+    private static Set<String> buildIdentifiers(final String name, final Set<String> aliases) {
+        final Set<String> identifiers = new HashSet<>(aliases);
+        identifiers.add(name);
+        return Collections.unmodifiableSet(identifiers);
+    }
+
+    private static Set<List<String>> buildCommandTree(final String[] splitName, final Set<String> triggers) {
+        final List<String> subCommands = Arrays.stream(splitName, 1, splitName.length)
+            .map(Command::internToken)
+            .collect(Collectors.toList());
+
+        final Set<List<String>> tree = new HashSet<>();
+        for (final String trigger : triggers) {
+            final List<String> branch = new ArrayList<>(subCommands.size() + 1);
+            branch.add(trigger);
+            branch.addAll(subCommands);
+            tree.add(Collections.unmodifiableList(branch));
+        }
+        return Collections.unmodifiableSet(tree);
+    }
 
-        thisAliases.retainAll(otherAliases);
-        return !thisAliases.isEmpty();
+    private static List<String> buildCommandPrefixes(final Set<List<String>> tree) {
+        return tree.stream()
+            .map(branch -> COMMAND_PREFIX + String.join(" ", branch))
+            .sorted(Comparator.comparingInt(String::length).reversed())
+            .collect(Collectors.collectingAndThen(Collectors.toList(), Collections::unmodifiableList));
     }
 }
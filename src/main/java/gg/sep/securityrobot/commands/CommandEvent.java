@@ -1,10 +1,9 @@
 package gg.sep.securityrobot.commands;
 
-import static gg.sep.securityrobot.SecurityRobot.COMMAND_PREFIX;
-
-import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 
@@ -23,6 +22,36 @@ public class CommandEvent {
     private Command command;
     private CommandManager commandManager;
     private TwitchChannelMessage channelMessage;
+    @Getter(AccessLevel.NONE)
+    private final CompletableFuture<Void> cancellation = new CompletableFuture<>();
+
+    /**
+     * Returns whether the command has been cancelled, because it timed out or the bot is shutting down. Long running
+     * asynchronous commands should stop their work once it is.
+     * @return <code>true</code> if the command has been cancelled; <code>false</code> otherwise.
+     */
+    public boolean isCancelled() {
+        return cancellation.isDone();
+    }
+
+    /**
+     * Ties a call made by the command to the command, so the call is cancelled when the command is. Only pass calls
+     * owned by this command, never futures shared with other callers.
+     * @param call Future of the call, eg from {@link gg.sep.securityrobot.twitch.AsyncTwitchAPI}.
+     * @param <T> Type of the call's result.
+     * @return The same future, for chaining.
+     */
+    public <T> CompletableFuture<T> cancellable(final CompletableFuture<T> call) {
+        cancellation.thenRun(() -> call.cancel(true));
+        return call;
+    }
+
+    /**
+     * Cancels the command, and every call tied to it with {@link #cancellable(CompletableFuture)}.
+     */
+    void cancel() {
+        cancellation.complete(null);
+    }
 
     /**
      * Returns the text of the command message after the prefix + command name.
@@ -33,9 +62,8 @@ public class CommandEvent {
         final String trimmedMsg = channelMessage.getMessage().trim();
         final String searchMsg = trimmedMsg.toLowerCase();
 
-        // build a string out of each of the command tree branches
-        for (final List<String> branch : command.getCommandTree()) {
-            final String branchPrefix = COMMAND_PREFIX + String.join(" ", branch);
+        // each of the command tree branches has a precomputed prefix string, longest first
+        for (final String branchPrefix : command.getCommandPrefixes()) {
             if (searchMsg.startsWith(branchPrefix)) {
                 return Optional.of(trimmedMsg.substring(branchPrefix.length()).trim());
             }
@@ -9,23 +9,31 @@ import gg.sep.securityrobot.models.twitch.tmi.TwitchChannelUser;
 
 /**
  * Which chatters can execute a command.
- * For future scaling, it might be better to implement this with bit fields and an EnumSet.
+ *
+ * Each level is precompiled into a mask of the {@link Role}s which satisfy it, so checking whether a chatter can run
+ * a command is a single AND against the chatter's role mask. The double values are kept for levels stored with
+ * custom commands.
  */
 @Log4j2
 public enum CommandLevel {
-    ALL(Double.NEGATIVE_INFINITY),
-    FOLLOWER(100),
-    SUB(200),
-    MOD(300),
-    BROADCASTER(9001),
-    BOT_OWNER(Double.MAX_VALUE),
+    ALL(Double.NEGATIVE_INFINITY, Role.VIEWER),
+    FOLLOWER(100, Role.FOLLOWER, Role.SUBSCRIBER, Role.SUB_TIER_2, Role.SUB_TIER_3, Role.FOUNDER,
+        Role.MOD, Role.BROADCASTER, Role.BOT_OWNER),
+    SUB(200, Role.SUBSCRIBER, Role.SUB_TIER_2, Role.SUB_TIER_3, Role.FOUNDER, Role.MOD, Role.BROADCASTER,
+        Role.BOT_OWNER),
+    MOD(300, Role.MOD, Role.BROADCASTER, Role.BOT_OWNER),
+    BROADCASTER(9001, Role.BROADCASTER, Role.BOT_OWNER),
+    BOT_OWNER(Double.MAX_VALUE, Role.BOT_OWNER),
     DISABLED(Double.POSITIVE_INFINITY);
 
     @Getter
     private final double level;
+    @Getter
+    private final int requiredRoles;
 
-    CommandLevel(final double level) {
+    CommandLevel(final double level, final Role... requiredRoles) {
         this.level = level;
+        this.requiredRoles = Role.mask(requiredRoles);
     }
 
     /**
@@ -86,6 +94,21 @@ public enum CommandLevel {
         return user.getCommandLevel() >= levelValue;
     }
 
+    /**
+     * Returns the highest command level satisfied by a mask of roles.
+     * @param roles Mask of roles.
+     * @return Highest command level the roles can run, or ALL if none other is satisfied.
+     */
+    public static CommandLevel highestLevel(final int roles) {
+        final CommandLevel[] levels = CommandLevel.values();
+        for (int i = levels.length - 1; i >= 0; i--) {
+            if ((levels[i].requiredRoles & roles) != 0) {
+                return levels[i];
+            }
+        }
+        return ALL;
+    }
+
     /**
      * Returns the double value of a channel user's level depending on whether they are a sub, follower, etc.
      *
@@ -4,32 +4,51 @@ import static gg.sep.securityrobot.SecurityRobot.REDIS_PREFIX;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import lombok.Getter;
 import lombok.extern.log4j.Log4j2;
 import org.reflections.Reflections;
 import org.reflections.scanners.MethodAnnotationsScanner;
-import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 
 import gg.sep.securityrobot.SecurityRobot;
 import gg.sep.securityrobot.commands.handlers.custom.CustomCommandMetadata;
 import gg.sep.securityrobot.exceptions.DuplicateCommandException;
 import gg.sep.securityrobot.exceptions.SecurityRobotFatal;
+import gg.sep.securityrobot.exceptions.TwitchApiUnavailableException;
+import gg.sep.securityrobot.jfr.CommandExecutionEvent;
+import gg.sep.securityrobot.jfr.CommandResolvedEvent;
+import gg.sep.securityrobot.jfr.PermissionCheckEvent;
 import gg.sep.securityrobot.models.twitch.tmi.TwitchChannelMessage;
 import gg.sep.securityrobot.models.twitch.tmi.TwitchMessageAuthor;
+import gg.sep.securityrobot.redis.RedisAccess;
+import gg.sep.securityrobot.redis.RedisScript;
 
 /**
  * Command runner and dispatcher for an instance of the bot.
@@ -40,14 +59,32 @@ public class CommandManager {
 
     private static final String G_CUSTOM_COM_KEY = REDIS_PREFIX + "gcustomcom";
     private static final String G_CUSTOM_META_KEY_F = G_CUSTOM_COM_KEY + ":%s:metadata";
+    // KEYS: metadata hash, command set; ARGV: command name, then metadata field/value pairs
+    private static final RedisScript ADD_CUSTOM_COMMAND = new RedisScript("addCustomCommand",
+        "redis.call('HSET', KEYS[1], unpack(ARGV, 2))\n"
+            + "return redis.call('SADD', KEYS[2], ARGV[1])");
+    // KEYS: metadata hash, command set; ARGV: command name
+    private static final RedisScript DEL_CUSTOM_COMMAND = new RedisScript("delCustomCommand",
+        "redis.call('DEL', KEYS[1])\n"
+            + "return redis.call('SREM', KEYS[2], ARGV[1])");
 
     private final SecurityRobot securityRobot;
-    private final JedisPool jedisPool;
-    @Getter private Set<Command> allCommands = new HashSet<>();
-    @Getter private Map<List<String>, Command> commandTriggers = new HashMap<>();
+    private final RedisAccess redis;
+    // replaced, never changed, so command threads read them without a lock; only replaced while holding this lock
+    @Getter private volatile Set<Command> allCommands = Collections.emptySet();
+    @Getter private volatile Map<List<String>, Command> commandTriggers = Collections.emptyMap();
 
     @Getter private Map<String, Map> newTriggers = new HashMap<>();
 
+    private final Map<String, Map<String, String>> customCommandHashes = new ConcurrentHashMap<>();
+    // cooldown and concurrency state of each registered command, which the published commands cannot hold
+    private final Map<Command, CommandState> commandStates = new ConcurrentHashMap<>();
+    private final Set<CompletableFuture<?>> inFlight = ConcurrentHashMap.newKeySet();
+    // runs commands whose permission check had to wait for the Twitch API, off the IRC and Twitch API threads
+    private final ExecutorService deferredCommands = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setNameFormat("deferred-commands-%d").setDaemon(true).build());
+    private volatile boolean shuttingDown;
+
     /**
      * Construct an instance for the specified Bot class.
      * IMPORTANT: All command commandHandlers should be sub-packages of the bot's package,
@@ -56,20 +93,38 @@ public class CommandManager {
      * @throws SecurityRobotFatal Exception thrown if duplicate commands are found while initializing.
      */
     public CommandManager(final SecurityRobot securityRobot) throws SecurityRobotFatal {
+        this(securityRobot, null);
+    }
+
+    /**
+     * Construct an instance for the specified Bot class, with custom commands from a warm restart snapshot rather
+     * than from Redis. The custom commands should be reconciled with {@link #reloadCustomCommands()} once the bot is
+     * running.
+     * @param securityRobot Instance of the bot to use for the command manager.
+     * @param cachedCustomCommands Redis hashes of the custom commands, keyed by command name, or null to read the
+     *                             custom commands from Redis.
+     * @throws SecurityRobotFatal Exception thrown if duplicate commands are found while initializing.
+     */
+    public CommandManager(final SecurityRobot securityRobot,
+                          final Map<String, Map<String, String>> cachedCustomCommands) throws SecurityRobotFatal {
         this.securityRobot = securityRobot;
-        this.jedisPool = securityRobot.getJedisPool();
+        this.redis = securityRobot.getRedis();
 
         // get built in bot commands and map each of the triggers to the command
         final Set<Command> builtInCommands = getBuiltInCommands();
-        builtInCommands.forEach(c -> c.getCommandTree().forEach(t -> commandTriggers.put(t, c)));
+        final Map<List<String>, Command> triggers = new HashMap<>();
+        builtInCommands.forEach(c -> c.getCommandTree().forEach(t -> triggers.put(t, c)));
 
         // get all custom commands and check for collisions with the built in
         // built in commands will always win
+        this.customCommandHashes.putAll(cachedCustomCommands != null ? cachedCustomCommands
+            : readCustomCommandHashes());
         final Set<Command> customCommands = removeDuplicates(builtInCommands, getCustomCommands());
-        customCommands.forEach(c -> c.getCommandTree().forEach(t -> commandTriggers.put(t, c)));
+        customCommands.forEach(c -> c.getCommandTree().forEach(t -> triggers.put(t, c)));
 
-        allCommands.addAll(builtInCommands);
-        allCommands.addAll(customCommands);
+        final Set<Command> commands = new HashSet<>(builtInCommands);
+        commands.addAll(customCommands);
+        publish(commands, triggers);
     }
 
     /**
@@ -80,7 +135,7 @@ public class CommandManager {
      * @return Whether the command currently exists based on the criteria.
      */
     public boolean commandExists(final String commandName, final boolean matchCustom) {
-        Stream<Map.Entry<List<String>, Command>> stream = commandTriggers.entrySet().stream()
+        Stream<Map.Entry<List<String>, Command>> stream = this.commandTriggers.entrySet().stream()
             .filter(e -> e.getKey().get(0).equalsIgnoreCase(commandName));
 
         if (matchCustom) {
@@ -101,46 +156,52 @@ public class CommandManager {
      * @param response Text to respond to the user when it is triggered.
      * @param level Default level needed to invoke the command.
      */
-    public void addCustomCommand(final String commandName, final String response, final double level) {
+    public synchronized void addCustomCommand(final String commandName, final String response, final double level) {
         final String cleanName = commandName.trim().toLowerCase();
         final String metadataKey = String.format(G_CUSTOM_META_KEY_F, cleanName);
         final Map<String, String> metadata = new HashMap<>();
         metadata.put("level", String.valueOf(level));
         metadata.put("response", response);
 
-        try (Jedis jedis = jedisPool.getResource()) {
-            jedis.hset(metadataKey, metadata);
-            jedis.sadd(G_CUSTOM_COM_KEY, cleanName);
-        }
+        final List<String> args = new ArrayList<>();
+        args.add(cleanName);
+        metadata.forEach((field, value) -> {
+            args.add(field);
+            args.add(value);
+        });
+        // the metadata and the command set are written atomically, so a command is never listed without metadata
+        redis.eval(ADD_CUSTOM_COMMAND, Arrays.asList(metadataKey, G_CUSTOM_COM_KEY), args);
+        customCommandHashes.put(cleanName, metadata);
         // add it to the command set and triggers
         final CustomCommandMetadata commandMetadata = parseMetadata(cleanName, metadata);
         final Command command = Command.fromCommandMetadata(commandMetadata);
-        allCommands.add(command);
-        command.getCommandTree().forEach(t -> commandTriggers.put(t, command));
+        final Set<Command> commands = new HashSet<>(allCommands);
+        final Map<List<String>, Command> triggers = new HashMap<>(commandTriggers);
+        unregisterCustomCommand(cleanName, commands, triggers);
+        commands.add(command);
+        command.getCommandTree().forEach(t -> triggers.put(t, command));
+        publish(commands, triggers);
     }
 
     /**
      * Deletes a global custom command by its name or one of its aliases.
      * @param commandName Name or alias of the command to delete.
      */
-    public void delCustomCommand(final String commandName) {
-        final String cleanName = commandName.trim().toLowerCase();
+    public synchronized void delCustomCommand(final String commandName) {
+        // an alias deletes the command it belongs to, which is stored under the command's own name
+        final String cleanName = findCustomCommand(commandName.trim().toLowerCase(), commandTriggers)
+            .map(Command::getName)
+            .orElse(commandName)
+            .trim().toLowerCase();
         final String metadataKey = String.format(G_CUSTOM_META_KEY_F, cleanName);
 
-        try (Jedis jedis = jedisPool.getResource()) {
-            jedis.del(metadataKey);
-            jedis.srem(G_CUSTOM_COM_KEY, cleanName);
-        }
-        // remove it from the command set
-        final Optional<Command> curCommand = allCommands.stream()
-            .filter(Command::isCustom) // only delete custom commandsl,,sz
-            .filter(c -> c.getTriggerStrings().contains(cleanName))
-            .findFirst();
-        // remove all the aliases and the command
-        if (curCommand.isPresent()) {
-            curCommand.get().getCommandTree().forEach(t -> commandTriggers.remove(t));
-            allCommands.remove(curCommand.get());
-        }
+        redis.eval(DEL_CUSTOM_COMMAND, Arrays.asList(metadataKey, G_CUSTOM_COM_KEY),
+            Collections.singletonList(cleanName));
+        customCommandHashes.remove(cleanName);
+        final Set<Command> commands = new HashSet<>(allCommands);
+        final Map<List<String>, Command> triggers = new HashMap<>(commandTriggers);
+        unregisterCustomCommand(cleanName, commands, triggers);
+        publish(commands, triggers);
     }
 
     private Set<Command> getBuiltInCommands() throws SecurityRobotFatal {
@@ -161,16 +222,127 @@ public class CommandManager {
 
     private Set<Command> getCustomCommands() {
         final Set<Command> customCommands = new HashSet<>();
-        try (Jedis jedis = jedisPool.getResource()) {
+        customCommandHashes.forEach((name, hash) -> customCommands.add(
+            Command.fromCommandMetadata(parseMetadata(name, hash))));
+        return customCommands;
+    }
+
+    private Map<String, Map<String, String>> readCustomCommandHashes() {
+        return redis.execute("readCustomCommands", jedis -> {
+            final Map<String, Map<String, String>> hashes = new HashMap<>();
             final Set<String> commandNames = jedis.smembers(G_CUSTOM_COM_KEY);
-            if (!commandNames.isEmpty()) {
-                for (final String commandName : commandNames) {
-                    final Optional<CustomCommandMetadata> metadata = getMetadata(commandName);
-                    metadata.ifPresent(m -> customCommands.add(Command.fromCommandMetadata(m)));
+            if (commandNames.isEmpty()) {
+                return hashes;
+            }
+            // read every command's metadata in a single round trip
+            final Pipeline pipeline = jedis.pipelined();
+            final Map<String, Response<Map<String, String>>> responses = new HashMap<>();
+            for (final String commandName : commandNames) {
+                final String cleanName = commandName.trim().toLowerCase();
+                responses.put(cleanName, pipeline.hgetAll(String.format(G_CUSTOM_META_KEY_F, cleanName)));
+            }
+            pipeline.sync();
+            responses.forEach((name, response) -> {
+                if (!response.get().isEmpty()) {
+                    hashes.put(name, response.get());
                 }
+            });
+            return hashes;
+        });
+    }
+
+    /**
+     * Reads the global custom commands from Redis again, and registers any which were added, changed or removed
+     * since they were last read, eg after starting from a warm restart snapshot.
+     * @return Number of custom commands which were added, changed or removed.
+     */
+    public synchronized int reloadCustomCommands() {
+        final Map<String, Map<String, String>> current = readCustomCommandHashes();
+        final Set<Command> commands = new HashSet<>(allCommands);
+        final Map<List<String>, Command> triggers = new HashMap<>(commandTriggers);
+        final Set<Command> builtInCommands = commands.stream()
+            .filter(c -> !c.isCustom())
+            .collect(Collectors.toSet());
+        int changed = 0;
+        for (final String name : new ArrayList<>(customCommandHashes.keySet())) {
+            if (!current.containsKey(name)) {
+                unregisterCustomCommand(name, commands, triggers);
+                customCommandHashes.remove(name);
+                changed++;
             }
         }
-        return customCommands;
+        for (final Map.Entry<String, Map<String, String>> hash : current.entrySet()) {
+            if (hash.getValue().equals(customCommandHashes.get(hash.getKey()))) {
+                continue;
+            }
+            unregisterCustomCommand(hash.getKey(), commands, triggers);
+            customCommandHashes.put(hash.getKey(), hash.getValue());
+            final Command command = Command.fromCommandMetadata(parseMetadata(hash.getKey(), hash.getValue()));
+            if (builtInCommands.stream().anyMatch(command::isDuplicate)) {
+                log.error("Custom command conflicts with internal command. It will not be loaded. Command: {}",
+                    command.getName());
+            } else {
+                commands.add(command);
+                command.getCommandTree().forEach(t -> triggers.put(t, command));
+            }
+            changed++;
+        }
+        if (changed > 0) {
+            publish(commands, triggers);
+            log.info("Reloaded custom commands. changed={}, total={}", changed, customCommandHashes.size());
+        }
+        return changed;
+    }
+
+    /**
+     * Returns the Redis hashes of every global custom command, eg for a warm restart snapshot.
+     * @return Redis hashes of the custom commands, keyed by command name.
+     */
+    public Map<String, Map<String, String>> getCustomCommandHashes() {
+        return new HashMap<>(customCommandHashes);
+    }
+
+    private static void unregisterCustomCommand(final String cleanName, final Set<Command> commands,
+                                                final Map<List<String>, Command> triggers) {
+        // remove all the aliases and the command
+        findCustomCommand(cleanName, triggers).ifPresent(curCommand -> {
+            curCommand.getCommandTree().forEach(triggers::remove);
+            commands.remove(curCommand);
+        });
+    }
+
+    /**
+     * Finds the custom command which has a name or alias as one of its first word triggers.
+     * @param cleanName Trimmed, lowercase name or alias of the command.
+     * @param triggers Every trigger of the registered commands.
+     * @return The custom command, or empty if no custom command is triggered by the name.
+     */
+    static Optional<Command> findCustomCommand(final String cleanName, final Map<List<String>, Command> triggers) {
+        // single word commands are found directly by their trigger, others by their first word triggers
+        final Command command = triggers.get(Collections.singletonList(cleanName));
+        if (command != null) {
+            return command.isCustom() ? Optional.of(command) : Optional.empty();
+        }
+        return triggers.values().stream()
+            .filter(Command::isCustom)
+            .filter(c -> c.getTriggerStrings().contains(cleanName))
+            .findFirst();
+    }
+
+    /**
+     * Replaces the registered commands with new copies, which are never changed once published.
+     * @param commands Every registered command.
+     * @param triggers Every trigger of the registered commands.
+     */
+    private void publish(final Set<Command> commands, final Map<List<String>, Command> triggers) {
+        this.commandTriggers = Collections.unmodifiableMap(triggers);
+        this.allCommands = Collections.unmodifiableSet(commands);
+        // state of removed commands is dropped; a command replaced by an equal one keeps its cooldown
+        commandStates.keySet().retainAll(commands);
+    }
+
+    private CommandState stateOf(final Command command) {
+        return commandStates.computeIfAbsent(command, CommandState::new);
     }
 
     private Set<Command> removeDuplicates(final Set<Command> builtIn, final Set<Command> custom) {
@@ -189,22 +361,6 @@ public class CommandManager {
         return duplicatesRemoved;
     }
 
-    private Optional<CustomCommandMetadata> getMetadata(final String commandName) {
-        final String cleanName = commandName.trim().toLowerCase();
-        try (Jedis jedis = jedisPool.getResource()) {
-            if (!customCommandExists(jedis, cleanName)) {
-                return Optional.empty();
-            }
-            final String metadataKey = String.format(G_CUSTOM_META_KEY_F, cleanName);
-            final Map<String, String> metadata = jedis.hgetAll(metadataKey);
-            return Optional.of(parseMetadata(cleanName, metadata));
-        }
-    }
-
-    private boolean customCommandExists(final Jedis jedis, final String commandName) {
-        return jedis.sismember(G_CUSTOM_COM_KEY, commandName.toLowerCase());
-    }
-
     private CustomCommandMetadata parseMetadata(final String commandName, final Map<String, String> metadata) {
         final Gson gson = new Gson();
         final JsonElement jsonElement = gson.toJsonTree(metadata);
@@ -221,50 +377,201 @@ public class CommandManager {
      * @param message Twitch chat message which triggered the command.
      */
     public void parseCommand(final TwitchChannelMessage message) {
+        final CommandResolvedEvent resolved = new CommandResolvedEvent();
+        resolved.begin();
         final Optional<Command> command = extractCommand(message);
+        resolved.end();
+        if (resolved.shouldCommit()) {
+            resolved.setChannel(message.getCleanChannelName());
+            resolved.setCommand(command.map(Command::getName).orElse(null));
+            resolved.commit();
+        }
         command.ifPresent(com -> invokeCommand(new CommandEvent(this.securityRobot, com, this, message)));
     }
 
     private Optional<Command> extractCommand(final TwitchChannelMessage message) {
-        if (!message.getMessage().startsWith(SecurityRobot.COMMAND_PREFIX)) {
+        return resolveCommand(this.commandTriggers, message.getMessage());
+    }
+
+    /**
+     * Finds the command triggered by a chat message, trying the shortest command tree branch first.
+     * @param triggers Every trigger of the registered commands.
+     * @param message Text of the chat message.
+     * @return The command triggered by the message, or empty if the message does not trigger a command.
+     */
+    static Optional<Command> resolveCommand(final Map<List<String>, Command> triggers, final String message) {
+        if (!message.startsWith(SecurityRobot.COMMAND_PREFIX)) {
             return Optional.empty();
         }
 
-        final String[] splitMsg = message.getMessage().split(" ");
-        final List<String> commandTree = new LinkedList<>();
+        final String[] splitMsg = message.split(" ");
+        final List<String> commandTree = new ArrayList<>(splitMsg.length);
 
         for (int i = 0; i < splitMsg.length; i++) {
             String searchMsg = splitMsg[i];
             if (i == 0) {
-                searchMsg = searchMsg
-                    .replaceFirst("\\" + SecurityRobot.COMMAND_PREFIX, "")
-                    .trim().toLowerCase();
+                searchMsg = searchMsg.substring(SecurityRobot.COMMAND_PREFIX.length());
             }
-            commandTree.add(searchMsg);
+            // command tree tokens are always trimmed and lowercase
+            commandTree.add(searchMsg.trim().toLowerCase());
 
-            if (commandTriggers.containsKey(commandTree)) {
-                return Optional.ofNullable(commandTriggers.get(commandTree));
+            final Command command = triggers.get(commandTree);
+            if (command != null) {
+                return Optional.of(command);
             }
         }
         return Optional.empty();
     }
 
+    /**
+     * Runs a command if its author may. The permission check is usually decided from the message's own roles or a
+     * cached follow, and the command runs straight away on the calling thread. Otherwise, the command runs once the
+     * Twitch API says whether the author follows the channel, so the IRC thread never waits for it.
+     */
     private void invokeCommand(final CommandEvent event) {
-        if (commandCanRun(event)) {
+        final CompletableFuture<Boolean> permitted = commandCanRun(event);
+        if (permitted.isDone()) {
+            if (permitted.join()) {
+                runCommand(event);
+            }
+            return;
+        }
+        permitted.thenAcceptAsync(allowed -> {
+            if (allowed && !shuttingDown) {
+                runCommand(event);
+            }
+        }, deferredCommands).exceptionally(e -> {
+            log.error("Unable to run command after checking its permissions. command={}",
+                event.getCommand().getName(), e);
+            return null;
+        });
+    }
+
+    private void runCommand(final CommandEvent event) {
+        final CommandExecutionEvent execution = new CommandExecutionEvent();
+        execution.begin();
+        try {
+            // if it's a custom command, return the response
+            if (event.getCommand().isCustom()) {
+                final String response = event.getCommand().getCustomMetadata().getResponse();
+                event.reply(response);
+                stateOf(event.getCommand()).executed();
+                commitExecution(execution, event, "completed");
+                return;
+            }
+            if (event.getCommand().isAsync()) {
+                // commits the execution event once the command completes
+                invokeAsyncCommand(event, execution);
+                return;
+            }
+            // otherwise, invoke the internal command method
+            event.getCommand().getMethod().invoke(null, event);
+            stateOf(event.getCommand()).executed();
+            commitExecution(execution, event, "completed");
+        } catch (final ReflectiveOperationException e) {
+            log.error(e);
+            if (!event.getCommand().isAsync()) {
+                commitExecution(execution, event, "failed");
+            }
+        }
+    }
+
+    private void invokeAsyncCommand(final CommandEvent event,
+                                    final CommandExecutionEvent execution) throws ReflectiveOperationException {
+        final Command command = event.getCommand();
+        final CommandState state = stateOf(command);
+        if (shuttingDown) {
+            commitExecution(execution, event, "cancelled");
+            return;
+        }
+        if (!state.tryAcquire()) {
+            event.errorMention("That command is busy, please try again in a moment.");
+            commitExecution(execution, event, "rejected");
+            return;
+        }
+        final CompletableFuture<?> future;
+        try {
+            final CompletionStage<?> stage = (CompletionStage<?>) command.getMethod().invoke(null, event);
+            future = (stage == null) ? CompletableFuture.completedFuture(null) : stage.toCompletableFuture();
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            state.release();
+            commitExecution(execution, event, "failed");
+            throw e;
+        }
+        state.executed();
+        // the permit is held until the command's own work has really finished, even if it times out or is cancelled
+        future.whenComplete((result, error) -> state.release());
+
+        // time out and cancel a copy, so the command's own future is left to finish its work
+        final CompletableFuture<?> guarded = future.copy().orTimeout(command.getTimeout(), TimeUnit.SECONDS);
+        inFlight.add(guarded);
+        guarded.whenComplete((result, error) -> {
+            inFlight.remove(guarded);
+            if (error == null) {
+                commitExecution(execution, event, "completed");
+                return;
+            }
+            final Throwable cause = (error instanceof CompletionException) ? error.getCause() : error;
+            if (cause instanceof TimeoutException || cause instanceof CancellationException) {
+                // tell the command's own work to stop
+                event.cancel();
+            }
+            commitExecution(execution, event, cause instanceof TimeoutException ? "timed out"
+                : cause instanceof CancellationException ? "cancelled" : "failed");
+            if (cause instanceof TimeoutException) {
+                log.warn("Command timed out. command={}, timeoutSeconds={}", command.getName(), command.getTimeout());
+                event.errorMention("That command took too long, please try again later.");
+            } else if (cause instanceof TwitchApiUnavailableException) {
+                log.warn("Command failed because the Twitch API is unavailable. command={}, reason={}",
+                    command.getName(), cause.getMessage());
+                event.errorMention("The Twitch API is busy right now, please try again in a moment.");
+            } else if (!(cause instanceof CancellationException)) {
+                log.error("Error in asynchronous command. command={}", command.getName(), cause);
+            }
+        });
+    }
+
+    /**
+     * Stops accepting asynchronous commands, and commands still waiting for a follower lookup, and waits for the
+     * asynchronous commands which are still running to finish. Commands which are still running at the deadline are
+     * cancelled.
+     * @param deadlineNanos {@link System#nanoTime()} by which the running commands must have finished.
+     * @return Number of commands which were cancelled.
+     */
+    public int drainInFlight(final long deadlineNanos) {
+        shuttingDown = true;
+        deferredCommands.shutdown();
+        final CompletableFuture<?>[] running = inFlight.toArray(new CompletableFuture<?>[0]);
+        if (running.length > 0) {
+            log.info("Waiting for running asynchronous commands. running={}", running.length);
             try {
-                // if it's a custom command, return the response
-                if (event.getCommand().isCustom()) {
-                    final String response = event.getCommand().getCustomMetadata().getResponse();
-                    event.reply(response);
-                    return;
-                }
-                // otherwise, invoke the internal command method
-                event.getCommand().getMethod().invoke(null, event);
-                event.getCommand().getLastExecuted().reset().start();
-            } catch (final ReflectiveOperationException e) {
-                log.error(e);
+                CompletableFuture.allOf(running).get(Math.max(0, deadlineNanos - System.nanoTime()),
+                    TimeUnit.NANOSECONDS);
+            } catch (final ExecutionException | TimeoutException e) {
+                // failures are handled by each command; anything still running is cancelled below
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
         }
+        return cancelInFlight();
+    }
+
+    /**
+     * Stops accepting asynchronous commands and cancels every asynchronous command which is still running.
+     * @return Number of commands which were cancelled.
+     */
+    public int cancelInFlight() {
+        shuttingDown = true;
+        int cancelled = 0;
+        for (final CompletableFuture<?> future : inFlight) {
+            if (future.cancel(true)) {
+                cancelled++;
+            }
+        }
+        if (cancelled > 0) {
+            log.info("Cancelled running asynchronous commands. cancelled={}", cancelled);
+        }
+        return cancelled;
     }
 
     private Optional<ChatCommand> checkValidCommand(final SecurityRobot bot,
@@ -275,6 +582,13 @@ public class CommandManager {
         }
         final Command newCommand = Command.fromAnnotation(annotation, method);
 
+        if (method.getReturnType() != void.class && !CompletionStage.class.isAssignableFrom(method.getReturnType())) {
+            final String reason = String.format(
+                "Command [%s:%s(%s)] must return either void or a CompletionStage.",
+                method.getDeclaringClass().getSimpleName(), method.getName(), getMethodSignature(method));
+            shutdownAndThrow(bot, reason);
+        }
+
         if (!Modifier.isStatic(method.getModifiers())) {
             final String reason = String.format(
                 "Command [%s:%s(%s)] is not declared as static. Commands methods must be static.",
@@ -296,11 +610,38 @@ public class CommandManager {
         return Optional.of(annotation);
     }
 
-    private boolean commandCanRun(final CommandEvent event) {
+    private CompletableFuture<Boolean> commandCanRun(final CommandEvent event) {
         final TwitchMessageAuthor author = event.getChannelMessage().getAuthor();
         final Command command = event.getCommand();
 
-        return author.canRunCommandLevel(event.getCommand().getLevel()) && command.cooldownElapsed();
+        final PermissionCheckEvent check = new PermissionCheckEvent();
+        check.begin();
+        final int requiredRoles = securityRobot.getCommandRoleOverrides()
+            .requiredRoles(event.getChannelMessage().getCleanChannelName(), command);
+        return author.hasAnyRoleAsync(requiredRoles).thenApply(hasRole -> {
+            final boolean allowed = hasRole && stateOf(command).cooldownElapsed(command.getCooldown());
+            check.end();
+            if (check.shouldCommit()) {
+                check.setChannel(event.getChannelMessage().getCleanChannelName());
+                check.setCommand(command.getName());
+                check.setAllowed(allowed);
+                check.setFollowerApiCall(author.isFollowerApiCall());
+                check.commit();
+            }
+            return allowed;
+        });
+    }
+
+    private static void commitExecution(final CommandExecutionEvent execution, final CommandEvent event,
+                                        final String outcome) {
+        execution.end();
+        if (execution.shouldCommit()) {
+            execution.setChannel(event.getChannelMessage().getCleanChannelName());
+            execution.setCommand(event.getCommand().getName());
+            execution.setAsync(event.getCommand().isAsync());
+            execution.setOutcome(outcome);
+            execution.commit();
+        }
     }
 
     private static String getMethodSignature(final Method method) {
@@ -314,4 +655,53 @@ public class CommandManager {
         bot.shutdown(reason);
         throw new DuplicateCommandException(reason);
     }
+
+    /**
+     * Cooldown and concurrency state of a single command.
+     */
+    private static final class CommandState {
+        private final Semaphore concurrencyPermits;
+        private volatile boolean executed;
+        private volatile long lastExecutedNanos;
+
+        private CommandState(final Command command) {
+            final int maxConcurrent = command.getMaxConcurrent();
+            this.concurrencyPermits = (maxConcurrent > 0) ? new Semaphore(maxConcurrent) : null;
+        }
+
+        /**
+         * Checks whether the time between the last command execution and now has elapsed.
+         * @param cooldownSeconds Cooldown of the command, in seconds.
+         * @return Whether the cooldown has expired.
+         */
+        private boolean cooldownElapsed(final int cooldownSeconds) {
+            return !executed || System.nanoTime() - lastExecutedNanos >= TimeUnit.SECONDS.toNanos(cooldownSeconds);
+        }
+
+        /**
+         * Records that the command was just executed, starting its cooldown.
+         */
+        private void executed() {
+            lastExecutedNanos = System.nanoTime();
+            executed = true;
+        }
+
+        /**
+         * Reserves one of the command's concurrent invocation slots.
+         * @return <code>true</code> if a slot was reserved, or the command has no concurrency limit;
+         *         <code>false</code> if the limit has been reached.
+         */
+        private boolean tryAcquire() {
+            return concurrencyPermits == null || concurrencyPermits.tryAcquire();
+        }
+
+        /**
+         * Releases a concurrent invocation slot reserved with {@link #tryAcquire()}.
+         */
+        private void release() {
+            if (concurrencyPermits != null) {
+                concurrencyPermits.release();
+            }
+        }
+    }
 }
@@ -0,0 +1,92 @@
+package gg.sep.securityrobot.commands;
+
+import java.util.Collection;
+import java.util.Optional;
+
+import lombok.Getter;
+
+/**
+ * Roles a chatter can hold in a channel, each represented by a single bit.
+ *
+ * A chatter's roles are combined into an int mask once per message, and commands carry a precompiled mask of the
+ * roles which may run them, so a permission check is a single AND of the two masks.
+ */
+public enum Role {
+    VIEWER,
+    FOLLOWER,
+    SUBSCRIBER,
+    SUB_TIER_2,
+    SUB_TIER_3,
+    FOUNDER,
+    VIP,
+    MOD,
+    BROADCASTER,
+    BOT_OWNER;
+
+    @Getter
+    private final int mask = 1 << ordinal();
+
+    /**
+     * Combines roles into a single mask.
+     * @param roles Roles to combine.
+     * @return Mask with the bit of every role set.
+     */
+    public static int mask(final Role... roles) {
+        int mask = 0;
+        for (final Role role : roles) {
+            mask |= role.getMask();
+        }
+        return mask;
+    }
+
+    /**
+     * Combines roles into a single mask.
+     * @param roles Roles to combine.
+     * @return Mask with the bit of every role set.
+     */
+    public static int mask(final Collection<Role> roles) {
+        return mask(roles.toArray(new Role[0]));
+    }
+
+    /**
+     * Returns <code>true</code> if a mask contains this role.
+     * @param roles Mask of roles.
+     * @return <code>true</code> if this role's bit is set in the mask; <code>false</code> otherwise.
+     */
+    public boolean isIn(final int roles) {
+        return (roles & mask) != 0;
+    }
+
+    /**
+     * Parses a role from its name, ignoring case. Dashes and spaces are treated as underscores.
+     * @param name Name of the role, eg "vip" or "sub-tier-2".
+     * @return Role of the name, or empty if there is no such role.
+     */
+    public static Optional<Role> fromName(final String name) {
+        final String normalized = name.trim().toUpperCase().replace('-', '_').replace(' ', '_');
+        for (final Role role : values()) {
+            if (role.name().equals(normalized)) {
+                return Optional.of(role);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Converts a mask back into the names of its roles, for display.
+     * @param roles Mask of roles.
+     * @return Comma separated, lowercase names of the roles in the mask.
+     */
+    public static String names(final int roles) {
+        final StringBuilder names = new StringBuilder();
+        for (final Role role : values()) {
+            if (role.isIn(roles)) {
+                if (names.length() > 0) {
+                    names.append(',');
+                }
+                names.append(role.name().toLowerCase());
+            }
+        }
+        return names.toString();
+    }
+}
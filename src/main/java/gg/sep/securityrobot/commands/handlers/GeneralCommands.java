@@ -2,6 +2,8 @@ package gg.sep.securityrobot.commands.handlers;
 
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.stream.Collectors;
 
 import lombok.experimental.UtilityClass;
@@ -73,25 +75,30 @@ public class GeneralCommands {
     }
 
     /**
-     * Replies with the help message for the given command.
+     * Replies with the help message for the given command, if the author may run it.
      * @param event Command event constructed from the chat message.
+     * @return Stage which completes once the author's roles have been checked, which may need a follower lookup.
      */
     @ChatCommand(value = "help", description = "help command desc", level = CommandLevel.ALL)
-    public static void help(final CommandEvent event) {
+    public static CompletionStage<Void> help(final CommandEvent event) {
         final Optional<String> commandName = event.getCommandText();
         final TwitchMessageAuthor author = event.getChannelMessage().getAuthor();
         if (commandName.isEmpty()) {
             event.mention("You need to specify a command!");
-            return;
+            return CompletableFuture.completedFuture(null);
         }
 
         final Command command = event.getCommandManager().getCommandTriggers().get(commandName.get());
-        if (command != null) {
-            if (author.canRunCommandLevel(command.getLevel())) {
-                event.mention(command.getHelp());
-            }
-        } else {
+        if (command == null) {
             event.mention("That command was not found.");
+            return CompletableFuture.completedFuture(null);
         }
+        final int requiredRoles = event.getSecurityRobot().getCommandRoleOverrides()
+            .requiredRoles(event.getChannelMessage().getCleanChannelName(), command);
+        return author.hasAnyRoleAsync(requiredRoles).thenAccept(allowed -> {
+            if (allowed) {
+                event.mention(command.getHelp());
+            }
+        });
     }
 }
@@ -1,16 +1,32 @@
 package gg.sep.securityrobot.commands.handlers;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Collectors;
 
 import lombok.experimental.UtilityClass;
 import lombok.extern.log4j.Log4j2;
 
+import gg.sep.securityrobot.SecurityRobot;
+import gg.sep.securityrobot.SecurityRobotClient;
+import gg.sep.securityrobot.chatlogs.ChannelLogPolicies;
 import gg.sep.securityrobot.commands.ChatCommand;
 import gg.sep.securityrobot.commands.CommandEvent;
 import gg.sep.securityrobot.commands.CommandLevel;
 import gg.sep.securityrobot.utils.CommandUtils;
+import gg.sep.securityrobot.utils.IRCUtils;
+import gg.sep.securityrobot.utils.ModelParser;
 import gg.sep.twitchapi.helix.model.user.User;
 
 /**
@@ -20,6 +36,8 @@ import gg.sep.twitchapi.helix.model.user.User;
 @UtilityClass
 public class OwnerCommands {
 
+    private static final int MAX_LISTED_CHANNELS = 10;
+
     /**
      * Beep boop.
      * @param event Command event which triggered the command.
@@ -30,61 +48,218 @@ public class OwnerCommands {
     }
 
     /**
-     * Temporarily join a specified twitch channel, until the next bot restart.
+     * Gracefully shut down the bot, after which the main thread exits the process, eg so it can be restarted by its
+     * supervisor.
+     *
+     * Syntax: [p]shutdown [reason]
+     * @param event Command event which triggered the command.
+     */
+    @ChatCommand(value = "shutdown", level = CommandLevel.BOT_OWNER, showInCommandList = false)
+    public static void shutdown(final CommandEvent event) {
+        final SecurityRobot securityRobot = event.getSecurityRobot();
+        if (securityRobot.getLifecycleManager().isShutdown()) {
+            event.errorMention("Already shutting down.");
+            return;
+        }
+        final String reason = event.getCommandText()
+            .filter(t -> !t.trim().isEmpty())
+            .orElse("Shut down by " + event.getChannelMessage().getAuthor().getUserName());
+        event.mention("Shutting down.");
+
+        // the shutdown waits for running commands and disconnects IRC, so it can't run on an IRC or command thread
+        final Thread shutdown = new Thread(() -> securityRobot.shutdown(reason), "owner-shutdown");
+        shutdown.start();
+    }
+
+    /**
+     * Temporarily join one or more specified twitch channels, until the next bot restart.
+     *
+     * Syntax: [p]tjoin {channel} [channel ...]
+     * @param event Command event which triggered the command.
+     * @return Stage which completes once the channels have been resolved and joined.
+     */
+    @ChatCommand(value = "tjoin", level = CommandLevel.BOT_OWNER, showInCommandList = false, timeout = 30)
+    public static CompletionStage<Void> tjoin(final CommandEvent event) {
+        return botOwnerJoinLeave(event, true, false);
+    }
+
+    /**
+     * Permanently join one or more specified twitch channels, so that they are added to the initial channel list.
+     *
+     * Syntax: [p]pjoin {channel} [channel ...]
      * @param event Command event which triggered the command.
+     * @return Stage which completes once the channels have been resolved and joined.
      */
-    @ChatCommand(value = "tjoin", level = CommandLevel.BOT_OWNER, showInCommandList = false)
-    public static void tjoin(final CommandEvent event) {
-        botOwnerJoinLeave(event, true, false);
+    @ChatCommand(value = "pjoin", level = CommandLevel.BOT_OWNER, showInCommandList = false, timeout = 30)
+    public static CompletionStage<Void> pjoin(final CommandEvent event) {
+        return botOwnerJoinLeave(event, true, true);
     }
 
     /**
-     * Permanently join a specified twitch channel, so that it is added to the initial channel list.
+     * Temporarily leave one or more specified twitch channels, until the next bot restart.
+     *
+     * Syntax: [p]tleave {channel} [channel ...]
      * @param event Command event which triggered the command.
+     * @return Stage which completes once the channels have been resolved and left.
      */
-    @ChatCommand(value = "pjoin", level = CommandLevel.BOT_OWNER, showInCommandList = false)
-    public static void pjoin(final CommandEvent event) {
-        botOwnerJoinLeave(event, true, true);
+    @ChatCommand(value = "tleave", level = CommandLevel.BOT_OWNER, showInCommandList = false, timeout = 30)
+    public static CompletionStage<Void> tleave(final CommandEvent event) {
+        return botOwnerJoinLeave(event, false, false);
     }
 
     /**
-     * Temporarily leave a specified twitch channel, until the next bot restart.
+     * Permanently leave one or more specified twitch channels, so that they are removed from the initial channel
+     * list.
+     *
+     * Syntax: [p]pleave {channel} [channel ...]
      * @param event Command event which triggered the command.
+     * @return Stage which completes once the channels have been resolved and left.
      */
-    @ChatCommand(value = "tleave", level = CommandLevel.BOT_OWNER, showInCommandList = false)
-    public static void tleave(final CommandEvent event) {
-        botOwnerJoinLeave(event, false, false);
+    @ChatCommand(value = "pleave", level = CommandLevel.BOT_OWNER, showInCommandList = false, timeout = 30)
+    public static CompletionStage<Void> pleave(final CommandEvent event) {
+        return botOwnerJoinLeave(event, false, true);
     }
 
     /**
-     * Permanently leave a specified twitch channel, so that it is removed from the initial channel list.
+     * Permanently join every channel listed in a file on the bot's host, one channel per line.
+     *
+     * Blank lines and lines starting with {@code #} are ignored. The file is read off the IRC thread, and the
+     * channels are resolved in batches, so large files only need a few Twitch API calls. The channels are then joined
+     * in the background, paced to stay within Twitch's JOIN rate limit.
+     *
+     * Syntax: [p]importchannels {path}
      * @param event Command event which triggered the command.
+     * @return Stage which completes once the channels have been resolved and joined.
      */
-    @ChatCommand(value = "pleave", level = CommandLevel.BOT_OWNER, showInCommandList = false)
-    public static void pleave(final CommandEvent event) {
-        botOwnerJoinLeave(event, false, true);
+    @ChatCommand(value = "importchannels", level = CommandLevel.BOT_OWNER, showInCommandList = false, timeout = 120)
+    public static CompletionStage<Void> importchannels(final CommandEvent event) {
+        final Optional<String> path = event.getCommandText().map(String::trim).filter(p -> !p.isEmpty());
+        if (!path.isPresent()) {
+            event.errorMention("Invalid format for channel import.");
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // a one-off owner command, so reading the file on the common pool is fine
+        return CompletableFuture.supplyAsync(() -> readChannelImport(path.get())).thenCompose(logins -> {
+            if (!logins.isPresent()) {
+                event.errorMention("Unable to read channel import file: " + path.get());
+                return CompletableFuture.completedFuture(null);
+            }
+            return joinLeave(event, logins.get(), true, true);
+        });
+    }
+
+    private static Optional<List<String>> readChannelImport(final String path) {
+        try {
+            return Optional.of(Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8).stream()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .collect(Collectors.toList()));
+        } catch (final IOException | InvalidPathException e) {
+            log.warn("Unable to read channel import file. path={}", path, e);
+            return Optional.empty();
+        }
     }
 
-    private static void botOwnerJoinLeave(final CommandEvent event, final boolean isJoin, final boolean modifyInitial) {
-        final Optional<String> channel = event.getCommandText();
+    private static CompletionStage<Void> botOwnerJoinLeave(final CommandEvent event, final boolean isJoin,
+                                                           final boolean modifyInitial) {
+        final List<String> logins = event.getCommandText()
+            .map(c -> Arrays.asList(c.trim().split("\\s+")))
+            .orElse(Collections.emptyList());
+        return joinLeave(event, logins, isJoin, modifyInitial);
+    }
 
-        if (channel.isPresent() && channel.get().trim().split(" ").length == 1) {
-            // make sure it's a valid user
-            final String userLogin = channel.get().trim().toLowerCase();
-            final Optional<User> user = event.getSecurityRobot().getTwitchAPI().getHelix()
-                .getUsersAPI().getUserByLogin(userLogin);
+    private static CompletionStage<Void> joinLeave(final CommandEvent event, final List<String> logins,
+                                                   final boolean isJoin, final boolean modifyInitial) {
+        final Set<String> requested = logins.stream()
+            .map(l -> IRCUtils.stripIrcChannel(l.trim()))
+            .filter(l -> !l.isEmpty())
+            .collect(Collectors.toCollection(LinkedHashSet::new));
+        if (requested.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // make sure they're valid users
+        return event.getSecurityRobot().getUserResolver().resolveLogins(requested).thenAccept(users -> {
+            final SecurityRobotClient client = event.getSecurityRobot().getSecurityRobotClient();
+            if (isJoin) {
+                // joins are rate limited by Twitch, so they carry on after the command has replied
+                final List<String> toJoin = users.values().stream().map(User::getLogin).collect(Collectors.toList());
+                client.joinChannelsPaced(toJoin, modifyInitial).whenComplete((joined, e) -> {
+                    if (e != null) {
+                        log.error("Unable to join channels. channels={}", toJoin.size(), e);
+                    } else if (toJoin.size() > 1) {
+                        log.info("Joined channels. joined={}, requested={}", joined, toJoin.size());
+                    }
+                });
+            } else {
+                users.values().forEach(user -> client.leaveChannel(user.getLogin(), modifyInitial));
+            }
 
-            if (user.isPresent()) {
-                if (isJoin) {
-                    event.getSecurityRobot().getSecurityRobotClient().joinChannel(user.get().getLogin(), modifyInitial);
-                    event.mention(String.format("Joining channel: %s", userLogin));
+            if (requested.size() == 1) {
+                final String userLogin = requested.iterator().next();
+                if (users.isEmpty()) {
+                    event.errorMention("That user was not identified as a valid channel/user.");
                 } else {
-                    event.getSecurityRobot().getSecurityRobotClient().leaveChannel(user.get().getLogin(), modifyInitial);
-                    event.mention(String.format("Leaving channel: %s", userLogin));
+                    event.mention(String.format(isJoin ? "Joining channel: %s" : "Leaving channel: %s", userLogin));
                 }
+                return;
+            }
+
+            event.mention(String.format(isJoin ? "Joining %d of %d channels." : "Leaving %d of %d channels.",
+                users.size(), requested.size()));
+            final List<String> missing = requested.stream()
+                .filter(login -> !users.containsKey(login))
+                .collect(Collectors.toList());
+            if (!missing.isEmpty()) {
+                final String shown = String.join(", ", missing.subList(0, Math.min(MAX_LISTED_CHANNELS,
+                    missing.size())));
+                event.errorMention(missing.size() > MAX_LISTED_CHANNELS
+                    ? String.format("Not valid channels/users: %s and %d more", shown,
+                        missing.size() - MAX_LISTED_CHANNELS)
+                    : "Not valid channels/users: " + shown);
+            }
+        });
+    }
+
+    /**
+     * Shows, sets or removes a channel's chat logging policy. Policies are JSON, eg
+     * <code>{"sampleRate": 0.1, "retentionDays": 7, "collection": "sampled_logs"}</code>.
+     *
+     * Syntax: [p]logpolicy {channel} [policy|reset]
+     * @param event Command event which triggered the command.
+     */
+    @ChatCommand(value = "logpolicy", level = CommandLevel.BOT_OWNER, showInCommandList = false)
+    public static void logpolicy(final CommandEvent event) {
+        final List<String> commandParts = event.getCommandText()
+            .map(c -> CommandUtils.splitString(c, 2))
+            .orElse(Collections.emptyList());
+        if (commandParts.isEmpty() || commandParts.get(0).isBlank()) {
+            event.errorMention("A channel must be provided.");
+            return;
+        }
+        final String channel = IRCUtils.stripIrcChannel(commandParts.get(0).trim());
+        final ChannelLogPolicies policies = event.getSecurityRobot().getChannelLogPolicies();
+        if (commandParts.size() < 2 || commandParts.get(1).isBlank()) {
+            event.mention(policies.getPolicy(channel)
+                .map(policy -> String.format("Chat log policy for %s: %s", channel, ModelParser.GSON.toJson(policy)))
+                .orElse("No chat log policy for: " + channel));
+            return;
+        }
+
+        final String policyJson = commandParts.get(1).trim();
+        if ("reset".equalsIgnoreCase(policyJson)) {
+            if (policies.clearPolicy(channel)) {
+                event.successMention("Removed the chat log policy for: " + channel);
             } else {
-                event.errorMention("That user was not identified as a valid channel/user.");
+                event.errorMention("No chat log policy for: " + channel);
             }
+            return;
+        }
+        if (policies.setPolicy(channel, policyJson).isPresent()) {
+            event.successMention("Updated the chat log policy for: " + channel);
+        } else {
+            event.errorMention("That is not a valid chat log policy.");
         }
     }
 
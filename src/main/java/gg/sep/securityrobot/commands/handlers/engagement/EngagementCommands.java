@@ -0,0 +1,240 @@
+package gg.sep.securityrobot.commands.handlers.engagement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Collectors;
+
+import lombok.experimental.UtilityClass;
+
+import gg.sep.securityrobot.SecurityRobot;
+import gg.sep.securityrobot.commands.ChatCommand;
+import gg.sep.securityrobot.commands.CommandEvent;
+import gg.sep.securityrobot.commands.CommandLevel;
+import gg.sep.securityrobot.commands.Role;
+import gg.sep.securityrobot.engagement.EngagementManager;
+import gg.sep.securityrobot.engagement.Poll;
+import gg.sep.securityrobot.engagement.Raffle;
+import gg.sep.securityrobot.engagement.RaffleDraw;
+import gg.sep.securityrobot.permissions.CommandRoleOverrides;
+import gg.sep.securityrobot.permissions.FollowerCache;
+import gg.sep.securityrobot.utils.CommandUtils;
+
+/**
+ * Commands which run polls and raffles in a channel.
+ *
+ * Voting and entering are silent, since large channels can have thousands of chatters voting or entering within
+ * seconds.
+ */
+@UtilityClass
+public class EngagementCommands {
+
+    private static final int MAX_WINNERS = 10;
+
+    /**
+     * Starts a poll in the current channel.
+     *
+     * Syntax: [p]poll start {question} | {option} | {option} [| option ...]
+     * @param event Command event which triggered the command.
+     */
+    @ChatCommand(value = "poll start", level = CommandLevel.MOD)
+    public static void pollStart(final CommandEvent event) {
+        final List<String> parts = event.getCommandText()
+            .map(c -> Arrays.stream(c.split("\\|")).map(String::trim).filter(p -> !p.isEmpty())
+                .collect(Collectors.toList()))
+            .orElse(new ArrayList<>());
+        final int maxOptions = event.getSecurityRobot().getConfig().getEngagement().getMaxPollOptions();
+        if (parts.size() < 3 || parts.size() - 1 > maxOptions) {
+            event.errorMention(String.format("A poll needs a question and 2 to %d options, separated by |.",
+                maxOptions));
+            return;
+        }
+        final Optional<Poll> poll = event.getSecurityRobot().getEngagementManager()
+            .startPoll(event.getChannelMessage().getCleanChannelName(), parts.get(0), parts.subList(1, parts.size()));
+        if (!poll.isPresent()) {
+            event.errorMention("A poll is already running in this channel.");
+            return;
+        }
+        event.reply(String.format("Poll: %s Vote with %svote {number}: %s", parts.get(0), SecurityRobot.COMMAND_PREFIX,
+            formatOptions(poll.get(), null)));
+    }
+
+    /**
+     * Votes in the poll running in the current channel. Each chatter can vote once.
+     *
+     * Syntax: [p]vote {number}
+     * @param event Command event which triggered the command.
+     */
+    @ChatCommand(value = "vote", level = CommandLevel.ALL)
+    public static void vote(final CommandEvent event) {
+        final Optional<Poll> poll = event.getSecurityRobot().getEngagementManager()
+            .getPoll(event.getChannelMessage().getCleanChannelName());
+        final Optional<String> option = event.getCommandText().map(String::trim);
+        if (!poll.isPresent() || !option.isPresent()) {
+            return;
+        }
+        try {
+            poll.get().vote(event.getChannelMessage().getAuthor(), Integer.parseInt(option.get()));
+        } catch (final NumberFormatException e) {
+            // not a vote
+        }
+    }
+
+    /**
+     * Responds with the current results of the poll running in the current channel.
+     *
+     * Syntax: [p]poll results
+     * @param event Command event which triggered the command.
+     */
+    @ChatCommand(value = "poll results", level = CommandLevel.MOD)
+    public static void pollResults(final CommandEvent event) {
+        final Optional<Poll> poll = event.getSecurityRobot().getEngagementManager()
+            .getPoll(event.getChannelMessage().getCleanChannelName());
+        if (!poll.isPresent()) {
+            event.errorMention("There is no poll running in this channel.");
+            return;
+        }
+        event.reply(String.format("Poll: %s Results so far: %s", poll.get().getQuestion(),
+            formatOptions(poll.get(), poll.get().tallies())));
+    }
+
+    /**
+     * Ends the poll running in the current channel and responds with its final results.
+     *
+     * Syntax: [p]poll end
+     * @param event Command event which triggered the command.
+     */
+    @ChatCommand(value = "poll end", level = CommandLevel.MOD)
+    public static void pollEnd(final CommandEvent event) {
+        final Optional<Poll> poll = event.getSecurityRobot().getEngagementManager()
+            .endPoll(event.getChannelMessage().getCleanChannelName());
+        if (!poll.isPresent()) {
+            event.errorMention("There is no poll running in this channel.");
+            return;
+        }
+        event.reply(String.format("Poll closed: %s Final results: %s", poll.get().getQuestion(),
+            formatOptions(poll.get(), poll.get().tallies())));
+    }
+
+    /**
+     * Starts a raffle in the current channel, optionally limited to chatters with some roles.
+     *
+     * Syntax: [p]raffle start [role,role,...]
+     * Roles: viewer, follower, subscriber, sub_tier_2, sub_tier_3, founder, vip, mod, broadcaster.
+     * @param event Command event which triggered the command.
+     */
+    @ChatCommand(value = "raffle start", level = CommandLevel.MOD)
+    public static void raffleStart(final CommandEvent event) {
+        final String roleList = event.getCommandText().map(String::trim).orElse("");
+        final int roles = roleList.isEmpty() ? Role.VIEWER.getMask() : CommandRoleOverrides.parseRoles(roleList);
+        if (roles == 0) {
+            event.errorMention("No valid roles were provided.");
+            return;
+        }
+        final Optional<Raffle> raffle = event.getSecurityRobot().getEngagementManager()
+            .startRaffle(event.getChannelMessage().getCleanChannelName(), roles);
+        if (!raffle.isPresent()) {
+            event.errorMention("A raffle is already running in this channel.");
+            return;
+        }
+        event.reply(String.format("A raffle has started! Type %senter to join. Open to: %s",
+            SecurityRobot.COMMAND_PREFIX, Role.names(roles)));
+    }
+
+    /**
+     * Enters the raffle running in the current channel. Each eligible chatter can enter once.
+     *
+     * Syntax: [p]enter
+     * @param event Command event which triggered the command.
+     */
+    @ChatCommand(value = "enter", level = CommandLevel.ALL)
+    public static void enter(final CommandEvent event) {
+        event.getSecurityRobot().getEngagementManager()
+            .getRaffle(event.getChannelMessage().getCleanChannelName())
+            .ifPresent(raffle -> raffle.enter(event.getChannelMessage().getAuthor()));
+    }
+
+    /**
+     * Draws winners from the raffle running in the current channel. Chatters who already won are not drawn again.
+     *
+     * Syntax: [p]raffle draw [count]
+     * @param event Command event which triggered the command.
+     * @return Stage which completes once the winners have been announced.
+     */
+    @ChatCommand(value = "raffle draw", level = CommandLevel.MOD)
+    public static CompletionStage<Void> raffleDraw(final CommandEvent event) {
+        final Optional<Raffle> raffle = event.getSecurityRobot().getEngagementManager()
+            .getRaffle(event.getChannelMessage().getCleanChannelName());
+        if (!raffle.isPresent()) {
+            event.errorMention("There is no raffle running in this channel.");
+            return CompletableFuture.completedFuture(null);
+        }
+        int count = 1;
+        final Optional<String> countText = event.getCommandText().map(String::trim).filter(c -> !c.isEmpty());
+        if (countText.isPresent()) {
+            try {
+                count = Math.max(1, Math.min(MAX_WINNERS, Integer.parseInt(countText.get())));
+            } catch (final NumberFormatException e) {
+                event.errorMention("The number of winners must be a number.");
+                return CompletableFuture.completedFuture(null);
+            }
+        }
+
+        final String roomId = event.getChannelMessage().getRoomId();
+        final FollowerCache followerCache = event.getSecurityRobot().getFollowerCache();
+        return raffle.get()
+            .draw(count, userId -> event.cancellable(followerCache.isFollowingAsync(Long.toString(userId), roomId)))
+            .thenCompose(draw -> announceWinners(event, raffle.get(), draw));
+    }
+
+    /**
+     * Ends the raffle running in the current channel.
+     *
+     * Syntax: [p]raffle end
+     * @param event Command event which triggered the command.
+     */
+    @ChatCommand(value = "raffle end", level = CommandLevel.MOD)
+    public static void raffleEnd(final CommandEvent event) {
+        final EngagementManager manager = event.getSecurityRobot().getEngagementManager();
+        final Optional<Raffle> raffle = manager.endRaffle(event.getChannelMessage().getCleanChannelName());
+        if (!raffle.isPresent()) {
+            event.errorMention("There is no raffle running in this channel.");
+            return;
+        }
+        event.successMention(String.format("The raffle has ended. %d entered.", raffle.get().entrantCount()));
+    }
+
+    private static CompletionStage<Void> announceWinners(final CommandEvent event, final Raffle raffle,
+                                                         final RaffleDraw draw) {
+        final String unchecked = draw.getUnchecked() == 0 ? "" : String.format(
+            " Unable to check whether %d drawn chatter(s) follow the channel, draw again shortly.",
+            draw.getUnchecked());
+        if (draw.getWinners().isEmpty()) {
+            event.errorMention(draw.getUnchecked() == 0
+                ? String.format("There is nobody left to draw (%d entered).", raffle.entrantCount())
+                : unchecked.trim());
+            return CompletableFuture.completedFuture(null);
+        }
+        final List<CompletableFuture<String>> names = draw.getWinners().stream()
+            .map(userId -> CommandUtils.userMention(event.getSecurityRobot(), userId))
+            .collect(Collectors.toList());
+        return CompletableFuture.allOf(names.toArray(new CompletableFuture<?>[0])).thenRun(() ->
+            event.reply(String.format("Congratulations %s! (%d entered)%s",
+                names.stream().map(CompletableFuture::join).collect(Collectors.joining(", ")),
+                raffle.entrantCount(), unchecked)));
+    }
+
+    private static String formatOptions(final Poll poll, final long[] tallies) {
+        final List<String> options = poll.getOptions();
+        final List<String> formatted = new ArrayList<>(options.size());
+        for (int i = 0; i < options.size(); i++) {
+            formatted.add(tallies == null
+                ? String.format("[%d] %s", i + 1, options.get(i))
+                : String.format("[%d] %s: %d", i + 1, options.get(i), tallies[i]));
+        }
+        return String.join(" ", formatted);
+    }
+}
@@ -0,0 +1,163 @@
+package gg.sep.securityrobot.commands.handlers.moderation;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import lombok.experimental.UtilityClass;
+
+import gg.sep.securityrobot.commands.ChatCommand;
+import gg.sep.securityrobot.commands.Command;
+import gg.sep.securityrobot.commands.CommandEvent;
+import gg.sep.securityrobot.commands.CommandLevel;
+import gg.sep.securityrobot.commands.Role;
+import gg.sep.securityrobot.config.models.SearchConfig;
+import gg.sep.securityrobot.history.ChatHistoryEntry;
+import gg.sep.securityrobot.permissions.CommandRoleOverrides;
+import gg.sep.securityrobot.search.SearchQuery;
+import gg.sep.securityrobot.search.SearchResult;
+import gg.sep.securityrobot.utils.CommandUtils;
+import gg.sep.securityrobot.utils.TimeUtils;
+
+/**
+ * Commands which help moderators review and manage a channel's chat.
+ */
+@UtilityClass
+public class ModerationCommands {
+
+    private static final int MAX_LAST_MESSAGES = 5;
+    private static final Pattern SEARCH_WINDOW = Pattern.compile("(\\d{1,6})([mh])");
+
+    /**
+     * Responds with the most recent messages a user sent in the current channel.
+     *
+     * Syntax: [p]lastmessage {userName} [count]
+     * @param event Command event which triggered the command.
+     */
+    @ChatCommand(value = "lastmessage", aliases = {"lastmsg"}, level = CommandLevel.MOD)
+    public static void lastmessage(final CommandEvent event) {
+        final List<String> commandParts = event.getCommandText()
+            .map(c -> CommandUtils.splitString(c, 2))
+            .orElse(Collections.emptyList());
+        if (commandParts.isEmpty() || commandParts.get(0).isBlank()) {
+            event.errorMention("A user name must be provided.");
+            return;
+        }
+        final String userName = commandParts.get(0).replaceFirst("^@", "").toLowerCase();
+        int count = 1;
+        if (commandParts.size() > 1) {
+            try {
+                count = Math.max(1, Math.min(MAX_LAST_MESSAGES, Integer.parseInt(commandParts.get(1).trim())));
+            } catch (final NumberFormatException e) {
+                event.errorMention("The message count must be a number.");
+                return;
+            }
+        }
+
+        final List<ChatHistoryEntry> entries = event.getSecurityRobot().getChatHistory()
+            .lastMessagesFromUser(event.getChannelMessage().getCleanChannelName(), userName, count);
+        if (entries.isEmpty()) {
+            event.mention(String.format("No recent messages found from %s.", userName));
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        final String messages = entries.stream()
+            .map(e -> String.format("[%s ago] %s", TimeUtils.msToYDHMS(now - e.getMessageTime()), e.getMessage()))
+            .collect(Collectors.joining(" | "));
+        event.mention(String.format("%s: %s", userName, messages));
+    }
+
+    /**
+     * Searches the current channel's recent chat for messages containing every term and quoted phrase, and responds
+     * with the newest matches.
+     *
+     * Syntax: [p]search [{minutes}m|{hours}h] {query}
+     * @param event Command event which triggered the command.
+     */
+    @ChatCommand(value = "search", level = CommandLevel.MOD, cooldown = 5)
+    public static void search(final CommandEvent event) {
+        final SearchConfig config = event.getSecurityRobot().getConfig().getSearch();
+        if (!event.getSecurityRobot().getChatSearchIndex().isIndexed(event.getChannelMessage().getCleanChannelName())) {
+            event.errorMention("Chat search is not enabled for this channel.");
+            return;
+        }
+        final List<String> commandParts = event.getCommandText()
+            .map(c -> CommandUtils.splitString(c.trim(), 2))
+            .orElse(Collections.emptyList());
+        long windowMillis = TimeUnit.HOURS.toMillis(config.getRetentionHours());
+        String queryText = String.join(" ", commandParts);
+        if (commandParts.size() == 2) {
+            final Matcher window = SEARCH_WINDOW.matcher(commandParts.get(0).toLowerCase());
+            if (window.matches()) {
+                final long amount = Long.parseLong(window.group(1));
+                windowMillis = "m".equals(window.group(2)) ? TimeUnit.MINUTES.toMillis(amount)
+                    : TimeUnit.HOURS.toMillis(amount);
+                queryText = commandParts.get(1);
+            }
+        }
+        final Optional<SearchQuery> query = SearchQuery.parse(queryText);
+        if (query.isEmpty()) {
+            event.errorMention("A search query of words or \"quoted phrases\" must be provided.");
+            return;
+        }
+
+        final long now = System.currentTimeMillis();
+        final SearchResult result = event.getSecurityRobot().getChatSearchIndex().search(
+            event.getChannelMessage().getCleanChannelName(), query.get(), now - windowMillis, now + 1,
+            config.getCommandResults());
+        if (result.getHits().isEmpty()) {
+            event.mention(String.format("No messages found in the last %s.", TimeUtils.msToYDHMS(windowMillis)));
+            return;
+        }
+        final String hits = result.getHits().stream()
+            .map(h -> String.format("[%s ago] %s: %s", TimeUtils.msToYDHMS(now - h.getMessageTime()),
+                h.getUserName(), h.getMessage()))
+            .collect(Collectors.joining(" | "));
+        event.mention(hits);
+    }
+
+    /**
+     * Overrides which roles may run a command in the current channel, or resets it to the command's default.
+     *
+     * Syntax: [p]cmdroles {command} {role,role,...|reset}
+     * Roles: viewer, follower, subscriber, sub_tier_2, sub_tier_3, founder, vip, mod, broadcaster.
+     * @param event Command event which triggered the command.
+     */
+    @ChatCommand(value = "cmdroles", level = CommandLevel.BROADCASTER)
+    public static void cmdroles(final CommandEvent event) {
+        final List<String> commandParts = event.getCommandText()
+            .map(c -> Arrays.asList(c.trim().toLowerCase().split("\\s+")))
+            .orElse(Collections.emptyList());
+        if (commandParts.size() < 2) {
+            event.errorMention("A command and a list of roles (or reset) must be provided.");
+            return;
+        }
+        final Command command = event.getCommandManager().getCommandTriggers()
+            .get(commandParts.subList(0, commandParts.size() - 1));
+        if (command == null) {
+            event.errorMention("That command was not found.");
+            return;
+        }
+        final String channel = event.getChannelMessage().getCleanChannelName();
+        final CommandRoleOverrides overrides = event.getSecurityRobot().getCommandRoleOverrides();
+        final String roleList = commandParts.get(commandParts.size() - 1);
+        if ("reset".equals(roleList)) {
+            overrides.clearOverride(channel, command.getName());
+            event.successMention(String.format("%s can be run by its default roles again: %s",
+                command.getName(), Role.names(command.getRequiredRoles())));
+            return;
+        }
+        final int roles = CommandRoleOverrides.parseRoles(roleList);
+        if (roles == 0) {
+            event.errorMention("No valid roles were provided.");
+            return;
+        }
+        overrides.setOverride(channel, command.getName(), roles);
+        event.successMention(String.format("%s can now be run by: %s", command.getName(), Role.names(roles)));
+    }
+}
@@ -0,0 +1,161 @@
+package gg.sep.securityrobot.commands.handlers.points;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Collectors;
+
+import lombok.experimental.UtilityClass;
+import lombok.extern.log4j.Log4j2;
+import redis.clients.jedis.exceptions.JedisException;
+
+import gg.sep.securityrobot.commands.ChatCommand;
+import gg.sep.securityrobot.commands.CommandEvent;
+import gg.sep.securityrobot.commands.CommandLevel;
+import gg.sep.securityrobot.points.LoyaltyPoints;
+import gg.sep.securityrobot.utils.CommandUtils;
+
+/**
+ * Commands which show and manage the loyalty points of a channel's chatters.
+ */
+@Log4j2
+@UtilityClass
+public class PointsCommands {
+
+    /**
+     * Responds with the points balance of the author, or of another user.
+     *
+     * Syntax: [p]points [user]
+     * @param event Command event which triggered the command.
+     * @return Stage which completes once the balance has been sent.
+     */
+    @ChatCommand(value = "points", level = CommandLevel.ALL)
+    public static CompletionStage<Void> points(final CommandEvent event) {
+        if (!isEnabled(event)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final String channel = event.getChannelMessage().getCleanChannelName();
+        final Optional<String> login = event.getCommandText().map(String::trim).filter(c -> !c.isEmpty())
+            .map(PointsCommands::stripAtSign);
+        if (!login.isPresent()) {
+            final Optional<Long> balance = balance(event, channel, event.getChannelMessage().getAuthor().getUserId());
+            balance.ifPresent(b -> event.mention(String.format("You have %d points.", b)));
+            return CompletableFuture.completedFuture(null);
+        }
+        return event.getSecurityRobot().getUserResolver().resolveLogin(login.get()).thenAccept(user -> {
+            if (!user.isPresent()) {
+                event.errorMention(String.format("Unable to find the user %s.", login.get()));
+                return;
+            }
+            balance(event, channel, user.get().getId())
+                .ifPresent(b -> event.mention(String.format("%s has %d points.", user.get().getLogin(), b)));
+        });
+    }
+
+    /**
+     * Gives points to (or, with a negative amount, takes points from) a user.
+     *
+     * Syntax: [p]givepoints {user} {amount}
+     * @param event Command event which triggered the command.
+     * @return Stage which completes once the points have been given.
+     */
+    @ChatCommand(value = "givepoints", level = CommandLevel.BROADCASTER)
+    public static CompletionStage<Void> givePoints(final CommandEvent event) {
+        if (!isEnabled(event)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final List<String> commandParts = event.getCommandText()
+            .map(c -> CommandUtils.splitString(c.trim(), 2))
+            .orElse(Collections.emptyList());
+        if (commandParts.size() < 2) {
+            event.errorMention("Invalid format for givepoints.");
+            return CompletableFuture.completedFuture(null);
+        }
+        final long amount;
+        try {
+            amount = Long.parseLong(commandParts.get(1).trim());
+        } catch (final NumberFormatException e) {
+            event.errorMention("The amount of points must be a number.");
+            return CompletableFuture.completedFuture(null);
+        }
+
+        final String login = stripAtSign(commandParts.get(0));
+        final String channel = event.getChannelMessage().getCleanChannelName();
+        return event.getSecurityRobot().getUserResolver().resolveLogin(login).thenAccept(user -> {
+            if (!user.isPresent()) {
+                event.errorMention(String.format("Unable to find the user %s.", login));
+                return;
+            }
+            try {
+                final long balance = event.getSecurityRobot().getLoyaltyPoints()
+                    .addPoints(channel, user.get().getId(), amount);
+                event.successMention(String.format("%s now has %d points.", user.get().getLogin(), balance));
+            } catch (final JedisException e) {
+                log.error("Unable to give points. channel={}, user={}", channel, login, e);
+                event.errorMention("Unable to give points right now.");
+            }
+        });
+    }
+
+    /**
+     * Responds with the users who have the most points in the current channel.
+     *
+     * Syntax: [p]leaderboard
+     * @param event Command event which triggered the command.
+     * @return Stage which completes once the leaderboard has been sent.
+     */
+    @ChatCommand(value = "leaderboard", level = CommandLevel.ALL)
+    public static CompletionStage<Void> leaderboard(final CommandEvent event) {
+        if (!isEnabled(event)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final String channel = event.getChannelMessage().getCleanChannelName();
+        final Map<String, Long> leaderboard;
+        try {
+            leaderboard = event.getSecurityRobot().getLoyaltyPoints()
+                .getLeaderboard(channel, event.getSecurityRobot().getConfig().getPoints().getLeaderboardSize());
+        } catch (final JedisException e) {
+            log.error("Unable to read the points leaderboard. channel={}", channel, e);
+            event.errorMention("Unable to read the leaderboard right now.");
+            return CompletableFuture.completedFuture(null);
+        }
+        if (leaderboard.isEmpty()) {
+            event.mention("Nobody has earned any points yet.");
+            return CompletableFuture.completedFuture(null);
+        }
+
+        final List<CompletableFuture<String>> entries = leaderboard.entrySet().stream()
+            .map(entry -> CommandUtils.userMention(event.getSecurityRobot(), Long.parseLong(entry.getKey()))
+                .thenApply(mention -> String.format("%s (%d)", mention, entry.getValue())))
+            .collect(Collectors.toList());
+        return CompletableFuture.allOf(entries.toArray(new CompletableFuture<?>[0])).thenRun(() ->
+            event.reply(String.format("Top chatters: %s",
+                entries.stream().map(CompletableFuture::join).collect(Collectors.joining(", ")))));
+    }
+
+    private static boolean isEnabled(final CommandEvent event) {
+        if (!event.getSecurityRobot().getConfig().getPoints().isEnabled()) {
+            event.errorMention("Loyalty points are not enabled.");
+            return false;
+        }
+        return true;
+    }
+
+    private static String stripAtSign(final String login) {
+        return login.startsWith("@") ? login.substring(1) : login;
+    }
+
+    private static Optional<Long> balance(final CommandEvent event, final String channel, final String userId) {
+        final LoyaltyPoints loyaltyPoints = event.getSecurityRobot().getLoyaltyPoints();
+        try {
+            return Optional.of(loyaltyPoints.getBalance(channel, userId));
+        } catch (final JedisException e) {
+            log.error("Unable to read points balance. channel={}, user={}", channel, userId, e);
+            event.errorMention("Unable to read points right now.");
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package gg.sep.securityrobot.commands.handlers.stats;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Optional;
+
+import lombok.experimental.UtilityClass;
+
+import gg.sep.securityrobot.activity.UserActivity;
+import gg.sep.securityrobot.analytics.ChatStatsSnapshot;
+import gg.sep.securityrobot.commands.ChatCommand;
+import gg.sep.securityrobot.commands.CommandEvent;
+import gg.sep.securityrobot.commands.CommandLevel;
+import gg.sep.securityrobot.utils.TimeUtils;
+
+/**
+ * Commands which report statistics about a channel's chat.
+ */
+@UtilityClass
+public class ChatStatsCommands {
+
+    private static final int TOP_ITEMS_SHOWN = 3;
+    private static final DateTimeFormatter SEEN_DTF = DateTimeFormatter.ofPattern("yyyy-MM-dd")
+        .withZone(ZoneOffset.UTC);
+
+    /**
+     * Responds with the live chat statistics of the current channel.
+     * @param event Command event which triggered the command.
+     */
+    @ChatCommand(value = "chatstats", level = CommandLevel.ALL, cooldown = 30)
+    public static void chatstats(final CommandEvent event) {
+        final Optional<ChatStatsSnapshot> snapshot = event.getSecurityRobot().getChatAnalytics()
+            .getSnapshot(event.getChannelMessage().getCleanChannelName());
+        if (snapshot.isEmpty()) {
+            event.mention("No chat statistics are available yet.");
+            return;
+        }
+        final ChatStatsSnapshot stats = snapshot.get();
+        event.mention(String.format(
+            "%d messages in the last minute (%.1f/min avg), %d active chatters, ~%d unique chatters in the last hour. "
+                + "Top words: %s. Top emotes: %s.",
+            stats.getMessagesLastMinute(), stats.getMessagesPerMinute(), stats.getActiveChatters(),
+            stats.getUniqueChattersLastHour(),
+            String.join(", ", stats.getTopWords().keySet().stream().limit(TOP_ITEMS_SHOWN)
+                .toArray(String[]::new)),
+            String.join(", ", stats.getTopEmotes().keySet().stream().limit(TOP_ITEMS_SHOWN)
+                .toArray(String[]::new))));
+    }
+
+    /**
+     * Responds with when and where a user was last seen chatting.
+     *
+     * Syntax: [p]lastseen {userName}
+     * @param event Command event which triggered the command.
+     */
+    @ChatCommand(value = "lastseen", level = CommandLevel.ALL, cooldown = 5)
+    public static void lastseen(final CommandEvent event) {
+        findActivity(event).ifPresent(a -> event.mention(String.format("%s was last seen %s ago in #%s.",
+            a.getUserName(), TimeUtils.msToYDHMS(System.currentTimeMillis() - a.getLastSeen()),
+            a.getLastChannel())));
+    }
+
+    /**
+     * Responds with when a user was first seen chatting, and how many messages they have sent since.
+     *
+     * Syntax: [p]firstseen {userName}
+     * @param event Command event which triggered the command.
+     */
+    @ChatCommand(value = "firstseen", level = CommandLevel.ALL, cooldown = 5)
+    public static void firstseen(final CommandEvent event) {
+        findActivity(event).ifPresent(a -> event.mention(String.format(
+            "%s was first seen %s ago (%s) and has sent %d messages since.",
+            a.getUserName(), TimeUtils.msToYDHMS(System.currentTimeMillis() - a.getFirstSeen()),
+            SEEN_DTF.format(Instant.ofEpochMilli(a.getFirstSeen())), a.getMessageCount())));
+    }
+
+    /**
+     * Responds with the number of chatters currently in the channel.
+     *
+     * Twitch only reports chatters joining and leaving every few seconds, so the count is approximate.
+     * @param event Command event which triggered the command.
+     */
+    @ChatCommand(value = "chatters", level = CommandLevel.ALL, cooldown = 30)
+    public static void chatters(final CommandEvent event) {
+        event.mention(String.format("There are about %d chatters here.", event.getSecurityRobot().getPresenceTracker()
+            .count(event.getChannelMessage().getCleanChannelName())));
+    }
+
+    private static Optional<UserActivity> findActivity(final CommandEvent event) {
+        final Optional<String> userName = event.getCommandText()
+            .map(t -> t.trim().split(" ")[0].replaceFirst("^@", ""))
+            .filter(t -> !t.isEmpty());
+        if (userName.isEmpty()) {
+            event.errorMention("A user name must be provided.");
+            return Optional.empty();
+        }
+        final Optional<UserActivity> activity = event.getSecurityRobot().getUserActivityIndex()
+            .getByLogin(userName.get());
+        if (activity.isEmpty()) {
+            event.mention(String.format("I have not seen %s chatting.", userName.get()));
+        }
+        return activity;
+    }
+}
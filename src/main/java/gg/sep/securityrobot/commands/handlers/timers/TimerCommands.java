@@ -0,0 +1,133 @@
+package gg.sep.securityrobot.commands.handlers.timers;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import lombok.experimental.UtilityClass;
+import lombok.extern.log4j.Log4j2;
+import redis.clients.jedis.exceptions.JedisException;
+
+import gg.sep.securityrobot.commands.ChatCommand;
+import gg.sep.securityrobot.commands.CommandEvent;
+import gg.sep.securityrobot.commands.CommandLevel;
+import gg.sep.securityrobot.config.models.TimersConfig;
+import gg.sep.securityrobot.timers.TimedMessage;
+import gg.sep.securityrobot.timers.TimedMessages;
+import gg.sep.securityrobot.utils.CommandUtils;
+
+/**
+ * Commands which manage a channel's timed messages.
+ */
+@Log4j2
+@UtilityClass
+public class TimerCommands {
+
+    /**
+     * Adds a timed message to the current channel, or replaces the one with the same name.
+     *
+     * The message is sent every {minutes}, but only if at least {minMessages} chat messages have been sent in the
+     * channel since it was last sent.
+     *
+     * Syntax: [p]timer add {name} {minutes} {minMessages} {message}
+     * @param event Command event which triggered the command.
+     */
+    @ChatCommand(value = "timer add", level = CommandLevel.MOD)
+    public static void timerAdd(final CommandEvent event) {
+        final List<String> commandParts = event.getCommandText()
+            .map(c -> CommandUtils.splitString(c.trim(), 4))
+            .orElse(Collections.emptyList());
+        if (commandParts.size() < 4 || commandParts.get(3).isBlank()) {
+            event.errorMention("Invalid format for timer add.");
+            return;
+        }
+        final String name = commandParts.get(0).toLowerCase();
+        final int minutes;
+        final int minMessages;
+        try {
+            minutes = Integer.parseInt(commandParts.get(1));
+            minMessages = Math.max(0, Integer.parseInt(commandParts.get(2)));
+        } catch (final NumberFormatException e) {
+            event.errorMention("The interval and message count must be numbers.");
+            return;
+        }
+
+        final TimersConfig config = event.getSecurityRobot().getConfig().getTimers();
+        if (minutes * 60L < config.getMinIntervalSeconds()) {
+            event.errorMention(String.format("Timers can run at most every %d seconds.",
+                config.getMinIntervalSeconds()));
+            return;
+        }
+        final String channel = event.getChannelMessage().getCleanChannelName();
+        final TimedMessages timedMessages = event.getSecurityRobot().getTimedMessages();
+        final List<TimedMessage> existing = timedMessages.getTimers(channel);
+        if (existing.size() >= config.getMaxTimersPerChannel()
+            && existing.stream().noneMatch(t -> t.getName().equals(name))) {
+            event.errorMention(String.format("Channels can have at most %d timers.", config.getMaxTimersPerChannel()));
+            return;
+        }
+
+        try {
+            timedMessages.addTimer(channel, TimedMessage.builder()
+                .name(name)
+                .message(commandParts.get(3).trim())
+                .intervalSeconds((int) Math.min(Integer.MAX_VALUE, minutes * 60L))
+                .minMessages(minMessages)
+                .build());
+        } catch (final JedisException e) {
+            log.error("Unable to save timed message. channel={}, timer={}", channel, name, e);
+            event.errorMention("Unable to save the timer right now.");
+            return;
+        }
+        event.successMention(String.format("Timer %s will run every %d minute(s).", name, minutes));
+    }
+
+    /**
+     * Removes a timed message from the current channel.
+     *
+     * Syntax: [p]timer del {name}
+     * @param event Command event which triggered the command.
+     */
+    @ChatCommand(value = "timer del", level = CommandLevel.MOD)
+    public static void timerDel(final CommandEvent event) {
+        final String name = event.getCommandText().map(c -> c.trim().toLowerCase()).orElse("");
+        if (name.isEmpty()) {
+            event.errorMention("A timer name must be provided.");
+            return;
+        }
+        final String channel = event.getChannelMessage().getCleanChannelName();
+        final boolean removed;
+        try {
+            removed = event.getSecurityRobot().getTimedMessages().removeTimer(channel, name);
+        } catch (final JedisException e) {
+            log.error("Unable to remove timed message. channel={}, timer={}", channel, name, e);
+            event.errorMention("Unable to remove the timer right now.");
+            return;
+        }
+        if (removed) {
+            event.successMention("Removed timer: " + name);
+        } else {
+            event.errorMention("Did not find a timer: " + name);
+        }
+    }
+
+    /**
+     * Responds with the timed messages of the current channel.
+     *
+     * Syntax: [p]timer list
+     * @param event Command event which triggered the command.
+     */
+    @ChatCommand(value = "timer list", level = CommandLevel.MOD)
+    public static void timerList(final CommandEvent event) {
+        final List<TimedMessage> timers = event.getSecurityRobot().getTimedMessages()
+            .getTimers(event.getChannelMessage().getCleanChannelName());
+        if (timers.isEmpty()) {
+            event.mention("This channel has no timers.");
+            return;
+        }
+        event.mention("Timers: " + timers.stream()
+            .map(t -> String.format("%s (every %dm, %d msgs)", t.getName(), t.getIntervalSeconds() / 60,
+                t.getMinMessages()))
+            .collect(Collectors.joining(", ")));
+    }
+}
@@ -3,6 +3,8 @@ package gg.sep.securityrobot.commands.handlers.twitch;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 import lombok.experimental.UtilityClass;
 
@@ -10,10 +12,7 @@ import gg.sep.securityrobot.commands.ChatCommand;
 import gg.sep.securityrobot.commands.CommandEvent;
 import gg.sep.securityrobot.commands.CommandLevel;
 import gg.sep.securityrobot.utils.TimeUtils;
-import gg.sep.twitchapi.helix.model.stream.Stream;
-import gg.sep.twitchapi.kraken.api.channels.ChannelsAPI;
 import gg.sep.twitchapi.kraken.model.channel.Channel;
-import gg.sep.twitchapi.kraken.model.user.User;
 
 /**
  * Commands for stream info and managing a stream.
@@ -27,50 +26,46 @@ public class StreamCommands {
      * Sets the Stream's title via the Twitch API.
      * @param event Command event which triggered the command.
      */
-    @ChatCommand(value = "settitle", aliases = {"title"}, level = CommandLevel.MOD)
-    public static void settitle(final CommandEvent event) {
+    @ChatCommand(value = "settitle", aliases = {"title"}, level = CommandLevel.MOD, maxConcurrent = 1)
+    public static CompletionStage<Void> settitle(final CommandEvent event) {
         final String channelId = event.getChannelMessage().getRoomId();
         final Optional<String> title = event.getCommandText();
 
-        final ChannelsAPI channelsAPI = event.getChannelMessage().getSecurityRobot().getTwitchAPI()
-            .getKraken().getChannelsAPI();
-
-        title.ifPresentOrElse(t -> {
-            final Channel putChannel = Channel.builder()
-                .id(Long.valueOf(channelId))
-                .status(t).build();
-
-            final Optional<Channel> channel = channelsAPI.updateChannel(putChannel);
-
-            channel.ifPresentOrElse(c ->
-                    event.mention(String.format("Title set to: %s", t)),
-                () -> event.mention("An error occurred while updating the title"));
-        }, () -> event.mention("Title must be provided"));
+        if (title.isEmpty()) {
+            event.mention("Title must be provided");
+            return CompletableFuture.completedFuture(null);
+        }
+        final Channel putChannel = Channel.builder()
+            .id(Long.valueOf(channelId))
+            .status(title.get()).build();
+
+        return event.cancellable(event.getSecurityRobot().getAsyncTwitchAPI().updateChannel(putChannel))
+            .thenAccept(channel -> channel.ifPresentOrElse(c ->
+                    event.mention(String.format("Title set to: %s", title.get())),
+                () -> event.mention("An error occurred while updating the title")));
     }
 
     /**
      * Sets the Stream's game via the Twitch API.
      * @param event Command event which triggered the command.
      */
-    @ChatCommand(value = "setgame", level = CommandLevel.MOD)
-    public static void setgame(final CommandEvent event) {
+    @ChatCommand(value = "setgame", level = CommandLevel.MOD, maxConcurrent = 1)
+    public static CompletionStage<Void> setgame(final CommandEvent event) {
         final String channelId = event.getChannelMessage().getRoomId();
         final Optional<String> game = event.getCommandText();
 
-        final ChannelsAPI channelsAPI = event.getChannelMessage().getSecurityRobot().getTwitchAPI()
-            .getKraken().getChannelsAPI();
-
-        game.ifPresentOrElse(g -> {
-            final Channel putChannel = Channel.builder()
-                .id(Long.valueOf(channelId))
-                .game(g).build();
-
-            final Optional<Channel> channel = channelsAPI.updateChannel(putChannel);
-
-            channel.ifPresentOrElse(c ->
-                    event.mention(String.format("Game set to: %s", g)),
-                () -> event.mention("An error occurred while updating the game."));
-        }, () -> event.mention("Game name must be provided"));
+        if (game.isEmpty()) {
+            event.mention("Game name must be provided");
+            return CompletableFuture.completedFuture(null);
+        }
+        final Channel putChannel = Channel.builder()
+            .id(Long.valueOf(channelId))
+            .game(game.get()).build();
+
+        return event.cancellable(event.getSecurityRobot().getAsyncTwitchAPI().updateChannel(putChannel))
+            .thenAccept(channel -> channel.ifPresentOrElse(c ->
+                    event.mention(String.format("Game set to: %s", game.get())),
+                () -> event.mention("An error occurred while updating the game.")));
     }
 
     /**
@@ -78,16 +73,16 @@ public class StreamCommands {
      * @param event Command event which triggered the command.
      */
     @ChatCommand(value = "uptime", level = CommandLevel.ALL, cooldown = 20)
-    public static void uptime(final CommandEvent event) {
+    public static CompletionStage<Void> uptime(final CommandEvent event) {
         final String channelId = event.getChannelMessage().getRoomId();
-        final Optional<Stream> stream = event.getSecurityRobot().getTwitchAPI().getHelix().getStreamsAPI()
-            .getStreamByUserId(channelId);
-
-        if (stream.isEmpty()) {
-            event.mention(event.getChannelMessage().getCleanChannelName() + " is not currently live.");
-            return;
-        }
-        event.mention("The stream has been live for " + TimeUtils.uptimeString(stream.get().getStartedAt()));
+        return event.cancellable(event.getSecurityRobot().getAsyncTwitchAPI().getStreamByUserId(channelId))
+            .thenAccept(stream -> {
+                if (stream.isEmpty()) {
+                    event.mention(event.getChannelMessage().getCleanChannelName() + " is not currently live.");
+                    return;
+                }
+                event.mention("The stream has been live for " + TimeUtils.uptimeString(stream.get().getStartedAt()));
+            });
     }
 
     /**
@@ -95,16 +90,17 @@ public class StreamCommands {
      * @param event Command event which triggered the command.
      */
     @ChatCommand(value = "viewers", aliases = {"views"}, level = CommandLevel.ALL, cooldown = 20)
-    public static void viewers(final CommandEvent event) {
+    public static CompletionStage<Void> viewers(final CommandEvent event) {
         final String channelId = event.getChannelMessage().getRoomId();
-        final Optional<Stream> stream = event.getSecurityRobot().getTwitchAPI().getHelix().getStreamsAPI()
-            .getStreamByUserId(channelId);
-
-        if (stream.isEmpty()) {
-            event.mention(event.getChannelMessage().getCleanChannelName() + " is not currently live.");
-            return;
-        }
-        event.mention(String.format("There are currently %s viewers of the stream", stream.get().getViewerCount()));
+        return event.cancellable(event.getSecurityRobot().getAsyncTwitchAPI().getStreamByUserId(channelId))
+            .thenAccept(stream -> {
+                if (stream.isEmpty()) {
+                    event.mention(event.getChannelMessage().getCleanChannelName() + " is not currently live.");
+                    return;
+                }
+                event.mention(String.format("There are currently %s viewers of the stream",
+                    stream.get().getViewerCount()));
+            });
     }
 
     /**
@@ -112,16 +108,17 @@ public class StreamCommands {
      * @param event Command event which triggered the command.
      */
     @ChatCommand(value = "age", aliases = {"channelage"}, level = CommandLevel.ALL, cooldown = 60)
-    public static void age(final CommandEvent event) {
+    public static CompletionStage<Void> age(final CommandEvent event) {
         final String channelId = event.getChannelMessage().getRoomId();
-        final Optional<User> user = event.getSecurityRobot().getTwitchAPI().getKraken()
-            .getUsersAPI().getUser(channelId);
-        if (user.isPresent()) {
-            final ZonedDateTime createdAt = user.get().getCreatedAt();
-            final String ageString = TimeUtils.uptimeString(createdAt);
-            event.mention(String.format("This channel was created %s ago (%s)", ageString,
-                createdAt.format(AGE_DTF)));
-        }
+        return event.cancellable(event.getSecurityRobot().getAsyncTwitchAPI().getKrakenUser(channelId))
+            .thenAccept(user -> {
+                if (user.isPresent()) {
+                    final ZonedDateTime createdAt = user.get().getCreatedAt();
+                    final String ageString = TimeUtils.uptimeString(createdAt);
+                    event.mention(String.format("This channel was created %s ago (%s)", ageString,
+                        createdAt.format(AGE_DTF)));
+                }
+            });
     }
 
     /**
@@ -129,15 +126,16 @@ public class StreamCommands {
      * @param event Command event which triggered the command.
      */
     @ChatCommand(value = "myage", level = CommandLevel.ALL, cooldown = 3)
-    public static void myage(final CommandEvent event) {
+    public static CompletionStage<Void> myage(final CommandEvent event) {
         final String userId = event.getChannelMessage().getAuthor().getUserId();
-        final Optional<User> user = event.getSecurityRobot().getTwitchAPI().getKraken()
-            .getUsersAPI().getUser(userId);
-        if (user.isPresent()) {
-            final ZonedDateTime createdAt = user.get().getCreatedAt();
-            final String ageString = TimeUtils.uptimeString(createdAt);
-            event.mention(String.format("Your account was created %s ago (%s)", ageString,
-                createdAt.format(AGE_DTF)));
-        }
+        return event.cancellable(event.getSecurityRobot().getAsyncTwitchAPI().getKrakenUser(userId))
+            .thenAccept(user -> {
+                if (user.isPresent()) {
+                    final ZonedDateTime createdAt = user.get().getCreatedAt();
+                    final String ageString = TimeUtils.uptimeString(createdAt);
+                    event.mention(String.format("Your account was created %s ago (%s)", ageString,
+                        createdAt.format(AGE_DTF)));
+                }
+            });
     }
 }
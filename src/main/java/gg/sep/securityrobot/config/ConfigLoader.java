@@ -5,9 +5,15 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.Map;
+import java.util.Optional;
 
 import com.google.common.base.Charsets;
 import com.google.common.io.CharStreams;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
 import lombok.experimental.UtilityClass;
 import lombok.extern.log4j.Log4j2;
 
@@ -21,8 +27,9 @@ import gg.sep.securityrobot.utils.ModelParser;
 @UtilityClass
 public class ConfigLoader {
 
-    private static final String CONFIG_FILE_NAME = "configuration/app.json";
-    private static final String CONFIG_OVERRIDE_FILE_NAME = "configuration/app_override.json";
+    static final String CONFIG_DIRECTORY = "configuration";
+    static final String CONFIG_FILE_NAME = CONFIG_DIRECTORY + "/app.json";
+    static final String CONFIG_OVERRIDE_FILE_NAME = CONFIG_DIRECTORY + "/app_override.json";
 
     /**
      * Loads the Application config files off of the disk and returns a new Application Config instance.
@@ -34,21 +41,51 @@ public class ConfigLoader {
     }
 
     /**
-     * Attempt to load the override configuration file from the disk.
-     * @return Raw config json contents.
+     * Loads the Application config files off of the disk, with a JSON document merged over them, eg overrides kept
+     * in Redis.
+     *
+     * Objects in the overlay are merged into the objects of the config file field by field, and any other values in
+     * the overlay replace those of the config file.
+     * @param overlayJson JSON object merged over the config file, or null to load the config file as it is.
+     * @return Loaded Application Config instance, or empty if the files or the overlay cannot be read or parsed.
      */
-    private static String getConfigFileContents() {
+    public static Optional<ApplicationConfig> loadConfig(final String overlayJson) {
         try {
-            final InputStream configInputStream;
-
-            final File overrideFile = new File(CONFIG_OVERRIDE_FILE_NAME);
-            final File mainConfigFile = new File(CONFIG_FILE_NAME);
+            final JsonObject config = new JsonParser().parse(getConfigFileContents()).getAsJsonObject();
+            if (overlayJson != null && !overlayJson.trim().isEmpty()) {
+                merge(config, new JsonParser().parse(overlayJson).getAsJsonObject());
+            }
+            return Optional.of(ModelParser.GSON.fromJson(config, ApplicationConfig.class));
+        } catch (final JsonParseException | IllegalStateException e) {
+            log.error("Error parsing the configuration. error={}", e.getMessage());
+            return Optional.empty();
+        } catch (final RuntimeException e) {
+            log.error("Error loading the configuration files.", e);
+            return Optional.empty();
+        }
+    }
 
-            if (overrideFile.exists()) {
-                configInputStream = new FileInputStream(overrideFile);
+    private static void merge(final JsonObject target, final JsonObject overlay) {
+        for (final Map.Entry<String, JsonElement> entry : overlay.entrySet()) {
+            final JsonElement existing = target.get(entry.getKey());
+            if (existing != null && existing.isJsonObject() && entry.getValue().isJsonObject()) {
+                merge(existing.getAsJsonObject(), entry.getValue().getAsJsonObject());
             } else {
-                configInputStream = new FileInputStream(mainConfigFile);
+                target.add(entry.getKey(), entry.getValue());
             }
+        }
+    }
+
+    /**
+     * Attempt to load the override configuration file from the disk.
+     * @return Raw config json contents.
+     */
+    private static String getConfigFileContents() {
+        final File overrideFile = new File(CONFIG_OVERRIDE_FILE_NAME);
+        final File mainConfigFile = new File(CONFIG_FILE_NAME);
+
+        try (InputStream configInputStream = new FileInputStream(overrideFile.exists()
+            ? overrideFile : mainConfigFile)) {
             return CharStreams.toString(new InputStreamReader(configInputStream, Charsets.UTF_8));
         } catch (final IOException e) {
             log.error("Error loading the configuration files.");
@@ -0,0 +1,213 @@
+package gg.sep.securityrobot.config;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.log4j.Log4j2;
+import redis.clients.jedis.exceptions.JedisException;
+
+import gg.sep.securityrobot.config.models.ApplicationConfig;
+import gg.sep.securityrobot.config.models.ReloadConfig;
+import gg.sep.securityrobot.redis.RedisAccess;
+import gg.sep.securityrobot.utils.ModelParser;
+
+/**
+ * Holds the running application configuration, and reloads it while the bot is running.
+ *
+ * Configuration models are never changed once they are parsed, so the running configuration is swapped as a whole,
+ * and everything read from one {@link #get()} call is consistent. The config files are watched for changes, and an
+ * optional Redis key holding a JSON object of overrides is polled. A changed configuration is validated by
+ * {@link ConfigValidator}, and only replaces the running one if it is valid; subscribers are then told about the
+ * change, so they can reconfigure themselves.
+ */
+@Log4j2
+public class ConfigManager {
+
+    /**
+     * Receives changes to the running configuration.
+     */
+    @FunctionalInterface
+    public interface ConfigListener {
+
+        /**
+         * Called after the running configuration has been replaced.
+         * @param previous Configuration which was replaced.
+         * @param current Configuration which is now running.
+         */
+        void onConfigChange(ApplicationConfig previous, ApplicationConfig current);
+    }
+
+    private final AtomicReference<ApplicationConfig> current;
+    private final List<ConfigListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile String redisOverlay;
+    private ScheduledExecutorService scheduler;
+    private WatchService watchService;
+    private RedisAccess redis;
+
+    /**
+     * Create a new config manager, loading the configuration from the config files.
+     */
+    public ConfigManager() {
+        this.current = new AtomicReference<>(ConfigLoader.loadConfig());
+    }
+
+    /**
+     * Returns the running configuration.
+     * @return Running configuration.
+     */
+    public ApplicationConfig get() {
+        return current.get();
+    }
+
+    /**
+     * Subscribes to changes of the running configuration.
+     * @param listener Listener called, on the reloading thread, after each change.
+     */
+    public void subscribe(final ConfigListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Reloads the configuration from the config files and the Redis overrides last read, and replaces the running
+     * configuration if the result is valid.
+     * @param source What caused the reload, for logging.
+     * @return <code>true</code> if the running configuration was replaced; <code>false</code> otherwise.
+     */
+    public synchronized boolean reload(final String source) {
+        final Optional<ApplicationConfig> loaded = ConfigLoader.loadConfig(redisOverlay);
+        if (!loaded.isPresent()) {
+            log.error("Not reloading the configuration, it could not be loaded. source={}", source);
+            return false;
+        }
+        final List<String> problems = ConfigValidator.validate(loaded.get());
+        if (!problems.isEmpty()) {
+            log.error("Not reloading the configuration, it is invalid. source={}, problems={}", source, problems);
+            return false;
+        }
+        final ApplicationConfig previous = current.getAndSet(loaded.get());
+        log.info("Reloaded the configuration. source={}", source);
+        for (final ConfigListener listener : listeners) {
+            try {
+                listener.onConfigChange(previous, loaded.get());
+            } catch (final RuntimeException e) {
+                log.error("Error applying the reloaded configuration.", e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether a section of the configuration differs between two configurations.
+     * @param previous Section of the previous configuration.
+     * @param current Section of the current configuration.
+     * @return <code>true</code> if the sections differ; <code>false</code> otherwise.
+     */
+    public static boolean changed(final Object previous, final Object current) {
+        return !Objects.equals(ModelParser.GSON.toJsonTree(previous), ModelParser.GSON.toJsonTree(current));
+    }
+
+    /**
+     * Starts watching the config files, and polling the Redis overrides if a key is configured.
+     *
+     * Failing to watch the config files is logged, but does not stop the bot.
+     * @param redisAccess Redis the overrides are read from.
+     */
+    public synchronized void start(final RedisAccess redisAccess) {
+        if (scheduler != null) {
+            return;
+        }
+        this.redis = redisAccess;
+        final ReloadConfig config = get().getReload();
+        scheduler = Executors.newScheduledThreadPool(2,
+            new ThreadFactoryBuilder().setNameFormat("config-reload-%d").setDaemon(true).build());
+        if (config.isWatchFiles()) {
+            try {
+                watchService = FileSystems.getDefault().newWatchService();
+                Paths.get(ConfigLoader.CONFIG_DIRECTORY).register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+                final WatchService watching = watchService;
+                scheduler.execute(() -> watchFiles(watching, config.getDebounceMillis()));
+            } catch (final IOException e) {
+                log.error("Unable to watch the configuration files.", e);
+            }
+        }
+        if (config.getRedisKey() != null && !config.getRedisKey().isEmpty()) {
+            scheduler.scheduleWithFixedDelay(() -> pollRedis(config.getRedisKey()), 0,
+                config.getRedisPollSeconds(), TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Stops watching the config files and polling the Redis overrides.
+     */
+    public synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        scheduler = null;
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (final IOException e) {
+                log.warn("Unable to stop watching the configuration files.", e);
+            }
+            watchService = null;
+        }
+    }
+
+    private void watchFiles(final WatchService watching, final int debounceMillis) {
+        final Path configFile = Paths.get(ConfigLoader.CONFIG_FILE_NAME).getFileName();
+        final Path overrideFile = Paths.get(ConfigLoader.CONFIG_OVERRIDE_FILE_NAME).getFileName();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                final WatchKey key = watching.take();
+                // editors often save in several steps, so wait for the file to settle before reading it
+                Thread.sleep(debounceMillis);
+                boolean relevant = false;
+                for (final WatchEvent<?> event : key.pollEvents()) {
+                    final Object changed = event.context();
+                    relevant |= event.kind() == StandardWatchEventKinds.OVERFLOW
+                        || configFile.equals(changed) || overrideFile.equals(changed);
+                }
+                key.reset();
+                if (relevant) {
+                    reload("file");
+                }
+            }
+        } catch (final InterruptedException | ClosedWatchServiceException e) {
+            // stopped
+        }
+    }
+
+    private void pollRedis(final String key) {
+        final String overlay;
+        try {
+            overlay = redis.execute("readConfigOverrides", jedis -> jedis.get(key));
+        } catch (final JedisException e) {
+            log.warn("Unable to read configuration overrides from Redis. key={}, error={}", key, e.getMessage());
+            return;
+        }
+        if (!Objects.equals(overlay, redisOverlay)) {
+            redisOverlay = overlay;
+            reload("redis");
+        }
+    }
+}
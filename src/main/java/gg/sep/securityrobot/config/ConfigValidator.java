@@ -0,0 +1,67 @@
+package gg.sep.securityrobot.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.experimental.UtilityClass;
+
+import gg.sep.securityrobot.config.models.ApplicationConfig;
+import gg.sep.securityrobot.config.models.OutboundConfig;
+import gg.sep.securityrobot.config.models.SearchConfig;
+
+/**
+ * Checks a reloaded configuration before it replaces the running one.
+ *
+ * Only values which would break the running bot are checked; anything else is left to the component using it.
+ */
+@UtilityClass
+public class ConfigValidator {
+
+    private static final int MAX_PORT = 65535;
+
+    /**
+     * Returns every problem found with a configuration.
+     * @param config Configuration to check.
+     * @return Descriptions of the problems found, or an empty list if the configuration is valid.
+     */
+    public static List<String> validate(final ApplicationConfig config) {
+        final List<String> problems = new ArrayList<>();
+        if (config.getTwitch() == null) {
+            problems.add("twitch section is missing");
+        } else {
+            if (isBlank(config.getTwitch().getIrcNickname())) {
+                problems.add("twitch.ircNickname is missing");
+            }
+            if (config.getTwitch().getApiRateLimit() <= 0) {
+                problems.add("twitch.apiRateLimit must be positive");
+            }
+            if (config.getTwitch().getJoinsPerWindow() <= 0 || config.getTwitch().getJoinWindowSeconds() <= 0) {
+                problems.add("twitch.joinsPerWindow and twitch.joinWindowSeconds must be positive");
+            }
+        }
+        if (config.getRedis() == null || isBlank(config.getRedis().getHost())) {
+            problems.add("redis.host is missing");
+        } else if (config.getRedis().getPort() <= 0 || config.getRedis().getPort() > MAX_PORT) {
+            problems.add("redis.port is out of range");
+        } else if (config.getRedis().getMaxTotal() <= 0 || config.getRedis().getBatchMaxCommands() <= 0) {
+            problems.add("redis.maxTotal and redis.batchMaxCommands must be positive");
+        }
+        if (config.getMongodb() == null || isBlank(config.getMongodb().getHost())) {
+            problems.add("mongodb.host is missing");
+        }
+        final OutboundConfig outbound = config.getOutbound();
+        if (outbound == null || outbound.getMessagesPerWindow() <= 0 || outbound.getWindowSeconds() <= 0
+            || outbound.getDrainIntervalMillis() <= 0) {
+            problems.add("outbound rate limits must be positive");
+        }
+        final SearchConfig search = config.getSearch();
+        if (search != null && search.getMaxDocsPerChannel() < search.getMergeMaxDocs()) {
+            problems.add("search.maxDocsPerChannel must be at least search.mergeMaxDocs");
+        }
+        return problems;
+    }
+
+    private static boolean isBlank(final String value) {
+        return value == null || value.trim().isEmpty();
+    }
+}
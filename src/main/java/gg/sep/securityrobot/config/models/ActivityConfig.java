@@ -0,0 +1,12 @@
+package gg.sep.securityrobot.config.models;
+
+import lombok.Getter;
+
+/**
+ * Model for the user activity (first/last seen) index section of the app config file.
+ */
+@Getter
+public class ActivityConfig {
+    private int maxUsersInMemory = 200000;
+    private int flushIntervalSeconds = 10;
+}
@@ -0,0 +1,16 @@
+package gg.sep.securityrobot.config.models;
+
+import lombok.Getter;
+
+/**
+ * Model for the live chat analytics section of the app config file.
+ */
+@Getter
+public class AnalyticsConfig {
+    private int topK = 10;
+    private int maxActiveChatters = 10000;
+    private int activeWindowSeconds = 600;
+    private int decayIntervalSeconds = 600;
+    private int snapshotIntervalSeconds = 30;
+    private int snapshotTtlSeconds = 600;
+}
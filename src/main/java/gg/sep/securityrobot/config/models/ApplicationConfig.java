@@ -11,4 +11,25 @@ public class ApplicationConfig {
     private TwitchConfig twitch;
     private MongoDBConfig mongodb;
     private RedisConfig redis;
+    private ChatHistoryConfig chatHistory = new ChatHistoryConfig();
+    private AnalyticsConfig analytics = new AnalyticsConfig();
+    private ActivityConfig activity = new ActivityConfig();
+    private HttpConfig http = new HttpConfig();
+    private ArchiveConfig archive = new ArchiveConfig();
+    private IdentityConfig identity = new IdentityConfig();
+    private PermissionsConfig permissions = new PermissionsConfig();
+    private ResilienceConfig resilience = new ResilienceConfig();
+    private UserResolverConfig userResolver = new UserResolverConfig();
+    private OutboundConfig outbound = new OutboundConfig();
+    private TimersConfig timers = new TimersConfig();
+    private EngagementConfig engagement = new EngagementConfig();
+    private PointsConfig points = new PointsConfig();
+    private PresenceConfig presence = new PresenceConfig();
+    private ChatLogsConfig chatLogs = new ChatLogsConfig();
+    private SearchConfig search = new SearchConfig();
+    private JfrConfig jfr = new JfrConfig();
+    private StartupConfig startup = new StartupConfig();
+    private ShutdownConfig shutdown = new ShutdownConfig();
+    private SnapshotConfig snapshot = new SnapshotConfig();
+    private ReloadConfig reload = new ReloadConfig();
 }
@@ -0,0 +1,17 @@
+package gg.sep.securityrobot.config.models;
+
+import lombok.Getter;
+
+/**
+ * Model for the local chat archive section of the app config file.
+ */
+@Getter
+public class ArchiveConfig {
+    private boolean enabled = false;
+    private String directory = "archive";
+    private int blockRecords = 4096;
+    private int segmentRecords = 1000000;
+    private int segmentMaxAgeSeconds = 3600;
+    private int compressionLevel = 1;
+    private int queueCapacity = 10000;
+}
@@ -0,0 +1,12 @@
+package gg.sep.securityrobot.config.models;
+
+import lombok.Getter;
+
+/**
+ * Model for the in-memory chat history section of the app config file.
+ */
+@Getter
+public class ChatHistoryConfig {
+    private int maxMessagesPerChannel = 2000;
+    private int maxBytesPerChannel = 256 * 1024;
+}
@@ -0,0 +1,11 @@
+package gg.sep.securityrobot.config.models;
+
+import lombok.Getter;
+
+/**
+ * Model for the per-channel chat logging section of the app config file.
+ */
+@Getter
+public class ChatLogsConfig {
+    private int policyPollSeconds = 10;
+}
@@ -0,0 +1,14 @@
+package gg.sep.securityrobot.config.models;
+
+import lombok.Getter;
+
+/**
+ * Model for the polls and raffles section of the app config file.
+ */
+@Getter
+public class EngagementConfig {
+    private int maxEntrants = 1000000;
+    private int maxPollOptions = 10;
+    private int checkpointIntervalMillis = 1000;
+    private int ttlSeconds = 604800;
+}
@@ -0,0 +1,13 @@
+package gg.sep.securityrobot.config.models;
+
+import lombok.Getter;
+
+/**
+ * Model for the embedded HTTP API section of the app config file.
+ */
+@Getter
+public class HttpConfig {
+    private boolean enabled = false;
+    private String bindAddress = "127.0.0.1";
+    private int port = 8080;
+}
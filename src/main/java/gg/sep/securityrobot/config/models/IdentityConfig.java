@@ -0,0 +1,12 @@
+package gg.sep.securityrobot.config.models;
+
+import lombok.Getter;
+
+/**
+ * Model for the channel/user identity table section of the app config file.
+ */
+@Getter
+public class IdentityConfig {
+    private int maxIdleSeconds = 3600;
+    private int sweepIntervalSeconds = 300;
+}
@@ -0,0 +1,14 @@
+package gg.sep.securityrobot.config.models;
+
+import lombok.Getter;
+
+/**
+ * Model for the Java Flight Recorder section of the app config file.
+ */
+@Getter
+public class JfrConfig {
+    private boolean enabled = false;
+    private String directory = "recordings";
+    private int maxAgeMinutes = 60;
+    private int maxSizeMb = 250;
+}
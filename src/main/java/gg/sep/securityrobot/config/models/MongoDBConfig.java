@@ -12,4 +12,9 @@ public class MongoDBConfig {
     private String database;
     private String user;
     private String password;
+    private String logDatabase = "beastielogs";
+    private String logLayout = "document";
+    private String logCollection = "security_robot_logs";
+    private int logBucketSeconds = 60;
+    private int logRetentionDays = 0;
 }
@@ -0,0 +1,15 @@
+package gg.sep.securityrobot.config.models;
+
+import lombok.Getter;
+
+/**
+ * Model for the outbound message rate limit section of the app config file.
+ */
+@Getter
+public class OutboundConfig {
+    private int messagesPerWindow = 20;
+    private int windowSeconds = 30;
+    private int channelIntervalMillis = 1100;
+    private int maxQueued = 1000;
+    private int drainIntervalMillis = 100;
+}
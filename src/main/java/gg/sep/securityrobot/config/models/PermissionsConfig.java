@@ -0,0 +1,13 @@
+package gg.sep.securityrobot.config.models;
+
+import lombok.Getter;
+
+/**
+ * Model for the command permissions section of the app config file.
+ */
+@Getter
+public class PermissionsConfig {
+    private int followerCacheSeconds = 300;
+    private int followerCacheSize = 100000;
+    private int overrideCacheSeconds = 60;
+}
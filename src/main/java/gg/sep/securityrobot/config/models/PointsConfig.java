@@ -0,0 +1,18 @@
+package gg.sep.securityrobot.config.models;
+
+import lombok.Getter;
+
+/**
+ * Model for the loyalty points section of the app config file.
+ */
+@Getter
+public class PointsConfig {
+    private boolean enabled = false;
+    private int intervalSeconds = 300;
+    private int pointsPerInterval = 10;
+    private boolean onlyWhenLive = true;
+    private int pipelineBatchSize = 1000;
+    private int cacheSize = 100000;
+    private int cacheSeconds = 600;
+    private int leaderboardSize = 10;
+}
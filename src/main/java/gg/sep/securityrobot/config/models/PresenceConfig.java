@@ -0,0 +1,12 @@
+package gg.sep.securityrobot.config.models;
+
+import lombok.Getter;
+
+/**
+ * Model for the channel presence (JOIN/PART) tracking section of the app config file.
+ */
+@Getter
+public class PresenceConfig {
+    private int drainIntervalMillis = 250;
+    private int maxQueued = 200000;
+}
@@ -10,4 +10,15 @@ public class RedisConfig {
     private String host;
     private int port;
     private String password;
+    private int database = 0;
+    private int timeoutMillis = 2000;
+    private int maxTotal = 32;
+    private int maxIdle = 16;
+    private int minIdle = 4;
+    private long maxWaitMillis = 2000;
+    private boolean testWhileIdle = true;
+    private long evictionRunMillis = 30000;
+    private long minEvictableIdleMillis = 60000;
+    private int batchMaxCommands = 256;
+    private int batchLingerMicros = 0;
 }
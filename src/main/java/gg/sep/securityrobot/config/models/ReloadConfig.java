@@ -0,0 +1,14 @@
+package gg.sep.securityrobot.config.models;
+
+import lombok.Getter;
+
+/**
+ * Model for the configuration reload section of the app config file.
+ */
+@Getter
+public class ReloadConfig {
+    private boolean watchFiles = true;
+    private int debounceMillis = 500;
+    private String redisKey = "";
+    private int redisPollSeconds = 10;
+}
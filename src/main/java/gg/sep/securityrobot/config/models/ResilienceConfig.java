@@ -0,0 +1,21 @@
+package gg.sep.securityrobot.config.models;
+
+import lombok.Getter;
+
+/**
+ * Model for the Twitch API resilience (circuit breaker, retry and bulkhead) section of the app config file.
+ */
+@Getter
+public class ResilienceConfig {
+    private int failureThreshold = 5;
+    private int openSeconds = 30;
+    private int maxAttempts = 3;
+    private int baseDelayMillis = 200;
+    private int maxDelayMillis = 2000;
+    private double retryBudgetRatio = 0.2;
+    private int minRetriesPerSecond = 1;
+    private int maxConcurrentPerEndpoint = 4;
+    private int callTimeoutSeconds = 5;
+    private int faultLatencyMillis = 0;
+    private double faultErrorRate = 0.0;
+}
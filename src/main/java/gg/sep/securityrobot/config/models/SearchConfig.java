@@ -0,0 +1,23 @@
+package gg.sep.securityrobot.config.models;
+
+import java.util.Collections;
+import java.util.List;
+
+import lombok.Getter;
+
+/**
+ * Model for the chat search index section of the app config file.
+ */
+@Getter
+public class SearchConfig {
+    private int segmentMinutes = 15;
+    private int mergeMaxDocs = 50000;
+    private int mergeMaxMinutes = 240;
+    private int retentionHours = 24;
+    private int maintenanceSeconds = 60;
+    private int maxResults = 100;
+    private int commandResults = 3;
+    private int maxDocsPerChannel = 200000;
+    private boolean indexStreamChannel = true;
+    private List<String> channels = Collections.emptyList();
+}
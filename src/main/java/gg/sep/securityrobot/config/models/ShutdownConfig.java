@@ -0,0 +1,11 @@
+package gg.sep.securityrobot.config.models;
+
+import lombok.Getter;
+
+/**
+ * Model for the shutdown section of the app config file.
+ */
+@Getter
+public class ShutdownConfig {
+    private int drainTimeoutSeconds = 10;
+}
@@ -0,0 +1,14 @@
+package gg.sep.securityrobot.config.models;
+
+import lombok.Getter;
+
+/**
+ * Model for the warm restart snapshot section of the app config file.
+ */
+@Getter
+public class SnapshotConfig {
+    private boolean enabled = true;
+    private String file = "state/warm-restart.snap";
+    private int intervalSeconds = 60;
+    private int maxAgeMinutes = 1440;
+}
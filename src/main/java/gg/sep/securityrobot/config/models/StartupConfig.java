@@ -0,0 +1,14 @@
+package gg.sep.securityrobot.config.models;
+
+import lombok.Getter;
+
+/**
+ * Model for the startup section of the app config file.
+ */
+@Getter
+public class StartupConfig {
+    private int threads = 4;
+    private int timeoutSeconds = 120;
+    private int maxBufferedEvents = 10000;
+    private int redisWarmConnections = 4;
+}
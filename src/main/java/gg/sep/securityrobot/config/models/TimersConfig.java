@@ -0,0 +1,15 @@
+package gg.sep.securityrobot.config.models;
+
+import lombok.Getter;
+
+/**
+ * Model for the timed messages section of the app config file.
+ */
+@Getter
+public class TimersConfig {
+    private int tickMillis = 1000;
+    private int wheelSize = 512;
+    private int minIntervalSeconds = 60;
+    private int maxTimersPerChannel = 20;
+    private boolean onlyWhenLive = true;
+}
@@ -19,16 +19,21 @@ public class TwitchConfig {
     private String apiOauthToken;
     private double apiRateLimit;
     private String streamChannel;
+    private int apiThreads = 8;
+    private int streamStatusCacheSeconds = 60;
+    private int joinsPerWindow = 20;
+    private int joinWindowSeconds = 10;
 
     /**
      * Convert the configuration into an API config appropriate for use in {@link TwitchAPI}.
+     * @param jedisPool The bot's Redis pool, shared with the Twitch API client.
      * @return Built Twitch API config appropriate for use in {@link TwitchAPI}.
      */
-    public TwitchAPIConfig buildAPIConfig() {
+    public TwitchAPIConfig buildAPIConfig(final JedisPool jedisPool) {
         return TwitchAPIConfig.builder()
             .apiRateLimit(apiRateLimit)
             .clientId(apiClientId)
-            .jedisPool(new JedisPool())
+            .jedisPool(jedisPool)
             .login(ircNickname.toLowerCase())
             .build();
     }
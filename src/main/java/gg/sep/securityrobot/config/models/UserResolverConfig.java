@@ -0,0 +1,15 @@
+package gg.sep.securityrobot.config.models;
+
+import lombok.Getter;
+
+/**
+ * Model for the Twitch user resolver section of the app config file.
+ */
+@Getter
+public class UserResolverConfig {
+    private int batchWindowMillis = 50;
+    private int maxBatchSize = 100;
+    private int maxBatchesInFlight = 2;
+    private int cacheSeconds = 3600;
+    private int cacheSize = 100000;
+}
@@ -0,0 +1,421 @@
+package gg.sep.securityrobot.db;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.Sorts;
+import lombok.extern.log4j.Log4j2;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+
+import gg.sep.securityrobot.jfr.ChatLogFlushEvent;
+import gg.sep.securityrobot.models.db.TwitchChannelMessageLog;
+import gg.sep.securityrobot.utils.IRCUtils;
+
+/**
+ * Time-bucketed chat log layout: one document per channel per time bucket (one minute by default).
+ *
+ * Channel names are stored once per bucket instead of once per message, and authors are dictionary coded: each bucket
+ * holds the list of its distinct author IDs and names, and each message only refers to its author's index in that
+ * list. Messages are collected in memory and each bucket is written with a single insert once it closes.
+ *
+ * Closed buckets are kept in memory until they are written, and queries read them (and the open buckets) from memory,
+ * so messages are never missing from query results while they wait to be written. Buckets are inserted unordered, and
+ * only the buckets which failed are retried, up to {@value #MAX_WRITE_ATTEMPTS} attempts. Each bucket's ID is fixed
+ * when it closes, so a retry of a bucket which was written after all is recognised as a duplicate and not written
+ * twice. Only one caller writes at a time, so the scheduled writes and {@link #flush()} never insert the same bucket
+ * at once.
+ *
+ * Buckets carry an {@code expireAt} date when retention is configured, which is enforced by a TTL index.
+ */
+@Log4j2
+public class BucketedChatLogStore implements ChatLogStore {
+
+    private static final long CLOSE_GRACE_SECONDS = 5;
+    private static final int MAX_WRITE_ATTEMPTS = 5;
+    private static final int DUPLICATE_KEY_ERROR = 11000;
+
+    private final MongoCollection<Document> bucketCollection;
+    private final int bucketSeconds;
+    private final int retentionDays;
+    // guarded by this
+    private final Map<String, Bucket> openBuckets = new HashMap<>();
+    // closed buckets which have not been written yet, oldest first; guarded by this
+    private final List<Bucket> pendingBuckets = new ArrayList<>();
+    // held while writing pending buckets, so each is written by one caller at a time
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Create a store over the specified collection.
+     * @param mongoDatabase Mongo Database object to be used for logging.
+     * @param collectionName Name of the collection the buckets are stored in.
+     * @param bucketSeconds Length of each time bucket, in seconds.
+     * @param retentionDays Number of days to keep buckets for, or 0 to keep them forever.
+     */
+    public BucketedChatLogStore(final MongoDatabase mongoDatabase, final String collectionName,
+                                final int bucketSeconds, final int retentionDays) {
+        this.bucketCollection = mongoDatabase.getCollection(collectionName);
+        this.bucketSeconds = bucketSeconds;
+        this.retentionDays = retentionDays;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void createIndexes() {
+        bucketCollection.createIndex(Indexes.compoundIndex(Indexes.ascending("roomId"), Indexes.ascending("start")));
+        bucketCollection.createIndex(Indexes.compoundIndex(Indexes.ascending("authors"), Indexes.ascending("start")));
+        bucketCollection.createIndex(Indexes.ascending("expireAt"),
+            new IndexOptions().expireAfter(0L, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Starts periodically closing and writing buckets whose time has passed.
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("chat-log-buckets-%d").setDaemon(true).build());
+        scheduler.scheduleWithFixedDelay(() -> closeBuckets(false),
+            bucketSeconds, Math.max(1, bucketSeconds / 2), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the periodic bucket writes and writes every open bucket.
+     */
+    public void stop() {
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+        }
+        flush();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+        stop();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void write(final TwitchChannelMessageLog messageLog) {
+        final long messageTime = messageLog.getMessageTime();
+        final long bucketStart = messageTime - Math.floorMod(messageTime, bucketSeconds);
+        final Bucket open = openBuckets.get(messageLog.getRoomId());
+        Bucket bucket = open;
+        if (open == null || open.bucketStart < bucketStart) {
+            if (open != null) {
+                pendingBuckets.add(open.seal(retentionDays));
+            }
+            bucket = new Bucket(messageLog.getRoomId(), messageLog.getCleanChannelName(), bucketStart);
+            openBuckets.put(messageLog.getRoomId(), bucket);
+        }
+        // late messages are kept in the open bucket, which records its actual time range
+        bucket.add(messageLog);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flush() {
+        closeBuckets(true);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<TwitchChannelMessageLog> messagesInChannel(final String roomId, final Instant from,
+                                                           final Instant to, final int limit) {
+        return query(Filters.eq("roomId", roomId), from, to, limit, author -> true,
+            bucket -> bucket.roomId.equals(roomId));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<TwitchChannelMessageLog> messagesByUser(final String userId, final Instant from,
+                                                        final Instant to, final int limit) {
+        return query(Filters.eq("authors", userId), from, to, limit, userId::equals,
+            bucket -> bucket.authorIndex.containsKey(userId));
+    }
+
+    private List<TwitchChannelMessageLog> query(final Bson filter, final Instant from, final Instant to,
+                                                final int limit, final Predicate<String> authorFilter,
+                                                final Predicate<Bucket> bucketFilter) {
+        // read unwritten buckets first, and leave them out of the database query, so a bucket written while the query
+        // runs is read once, from memory
+        final List<TwitchChannelMessageLog> messages = new ArrayList<>();
+        final List<ObjectId> unwritten = new ArrayList<>();
+        synchronized (this) {
+            for (final Bucket pending : pendingBuckets) {
+                if (bucketFilter.test(pending)) {
+                    pending.collect(from, to, limit, authorFilter, messages);
+                    unwritten.add(pending.id);
+                }
+            }
+            for (final Bucket open : openBuckets.values()) {
+                if (bucketFilter.test(open)) {
+                    open.collect(from, to, limit, authorFilter, messages);
+                }
+            }
+        }
+        messages.addAll(find(unwritten.isEmpty() ? filter : Filters.and(filter, Filters.nin("_id", unwritten)),
+            from, to, limit, authorFilter));
+        if (messages.size() <= 1) {
+            return messages;
+        }
+        // stable, so messages with the same time keep their bucket order
+        messages.sort(Comparator.comparingLong(TwitchChannelMessageLog::getMessageTime));
+        return messages.size() > limit ? new ArrayList<>(messages.subList(0, limit)) : messages;
+    }
+
+    private void closeBuckets(final boolean all) {
+        flushLock.lock();
+        try {
+            writePending(all);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void writePending(final boolean all) {
+        final long closeBefore = Instant.now().getEpochSecond() - bucketSeconds - CLOSE_GRACE_SECONDS;
+        final List<Bucket> batch;
+        synchronized (this) {
+            final Iterator<Bucket> buckets = openBuckets.values().iterator();
+            while (buckets.hasNext()) {
+                final Bucket bucket = buckets.next();
+                if (all || bucket.bucketStart < closeBefore) {
+                    pendingBuckets.add(bucket.seal(retentionDays));
+                    buckets.remove();
+                }
+            }
+            if (pendingBuckets.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(pendingBuckets);
+        }
+        final List<Document> documents = new ArrayList<>(batch.size());
+        batch.forEach(bucket -> documents.add(bucket.document));
+
+        final ChatLogFlushEvent flush = new ChatLogFlushEvent();
+        flush.begin();
+        final Set<Integer> failed = new HashSet<>();
+        try {
+            bucketCollection.insertMany(documents, new InsertManyOptions().ordered(false));
+        } catch (final MongoBulkWriteException e) {
+            for (final BulkWriteError error : e.getWriteErrors()) {
+                // a duplicate means an earlier attempt at the bucket was written after all
+                if (error.getCode() != DUPLICATE_KEY_ERROR) {
+                    failed.add(error.getIndex());
+                }
+            }
+        } catch (final MongoException e) {
+            log.error("Unable to write chat log buckets. buckets={}", documents.size(), e);
+            for (int i = 0; i < documents.size(); i++) {
+                failed.add(i);
+            }
+        }
+
+        // written buckets, and failed buckets out of attempts, are no longer pending
+        final Set<Bucket> done = Collections.newSetFromMap(new IdentityHashMap<>());
+        int dropped = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            final Bucket bucket = batch.get(i);
+            if (!failed.contains(i)) {
+                done.add(bucket);
+            } else if (++bucket.attempts >= MAX_WRITE_ATTEMPTS) {
+                done.add(bucket);
+                dropped++;
+            }
+        }
+        synchronized (this) {
+            pendingBuckets.removeIf(done::contains);
+        }
+        if (!failed.isEmpty()) {
+            log.error("Unable to write some chat log buckets. failed={}, retrying={}, dropped={}", failed.size(),
+                failed.size() - dropped, dropped);
+        }
+        flush.setSucceeded(failed.isEmpty());
+        flush.setStore("bucketed");
+        flush.setDocuments(documents.size());
+        flush.commit();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<TwitchChannelMessageLog> find(final Bson filter, final Instant from, final Instant to,
+                                               final int limit, final Predicate<String> authorFilter) {
+        final Bson query = Filters.and(filter,
+            Filters.lt("start", Date.from(to)),
+            Filters.gt("end", Date.from(from)));
+
+        final List<TwitchChannelMessageLog> messages = new ArrayList<>();
+        for (final Document bucket : bucketCollection.find(query).sort(Sorts.ascending("start"))) {
+            final String roomId = bucket.getString("roomId");
+            final String channel = bucket.getString("channel");
+            final long bucketStart = bucket.getDate("bucket").toInstant().getEpochSecond();
+            final List<String> authors = (List<String>) bucket.get("authors");
+            final List<String> authorNames = (List<String>) bucket.get("authorNames");
+
+            for (final Document message : (List<Document>) bucket.get("messages")) {
+                final long messageTime = bucketStart + message.getInteger("t");
+                final int author = message.getInteger("a");
+                if (messageTime < from.getEpochSecond() || messageTime >= to.getEpochSecond()
+                    || !authorFilter.test(authors.get(author))) {
+                    continue;
+                }
+                messages.add(toLog(roomId, channel, messageTime, authors.get(author), authorNames.get(author),
+                    message.getString("id"), message.getString("m")));
+                if (messages.size() >= limit) {
+                    return messages;
+                }
+            }
+        }
+        return messages;
+    }
+
+    private static TwitchChannelMessageLog toLog(final String roomId, final String channel, final long messageTime,
+                                                 final String authorId, final String authorName,
+                                                 final String twitchId, final String message) {
+        return TwitchChannelMessageLog.builder()
+            .twitchId(twitchId)
+            .message(message)
+            .roomId(roomId)
+            .messageTime(messageTime)
+            .authorId(authorId)
+            .authorDisplayName(authorName)
+            .channelName(IRCUtils.ircify(channel))
+            .cleanChannelName(channel)
+            .build();
+    }
+
+    /**
+     * A single time bucket of messages for one channel, either open or waiting to be written.
+     */
+    private static final class Bucket {
+        private final String roomId;
+        private final String channel;
+        private final long bucketStart;
+        private final Map<String, Integer> authorIndex = new HashMap<>();
+        private final List<String> authors = new ArrayList<>();
+        private final List<String> authorNames = new ArrayList<>();
+        private final List<TwitchChannelMessageLog> messages = new ArrayList<>();
+        private final List<Integer> messageAuthors = new ArrayList<>();
+        private long minTime = Long.MAX_VALUE;
+        private long maxTime = Long.MIN_VALUE;
+        // set once the bucket closes
+        private ObjectId id;
+        private Document document;
+        // failed writes so far
+        private int attempts;
+
+        private Bucket(final String roomId, final String channel, final long bucketStart) {
+            this.roomId = roomId;
+            this.channel = channel;
+            this.bucketStart = bucketStart;
+        }
+
+        private void add(final TwitchChannelMessageLog messageLog) {
+            final int author = authorIndex.computeIfAbsent(messageLog.getAuthorId(), id -> {
+                authors.add(id);
+                authorNames.add(messageLog.getAuthorDisplayName());
+                return authors.size() - 1;
+            });
+            messages.add(messageLog);
+            messageAuthors.add(author);
+            minTime = Math.min(minTime, messageLog.getMessageTime());
+            maxTime = Math.max(maxTime, messageLog.getMessageTime());
+        }
+
+        private void collect(final Instant from, final Instant to, final int limit,
+                             final Predicate<String> authorFilter, final List<TwitchChannelMessageLog> results) {
+            for (final TwitchChannelMessageLog message : messages) {
+                if (results.size() >= limit) {
+                    return;
+                }
+                if (message.getMessageTime() >= from.getEpochSecond() && message.getMessageTime() < to.getEpochSecond()
+                    && authorFilter.test(message.getAuthorId())) {
+                    results.add(message);
+                }
+            }
+        }
+
+        /**
+         * Closes the bucket to new messages, and encodes it for writing.
+         * @param retentionDays Number of days to keep the bucket for, or 0 to keep it forever.
+         * @return This bucket.
+         */
+        private Bucket seal(final int retentionDays) {
+            this.id = new ObjectId();
+            this.document = toDocument(retentionDays);
+            return this;
+        }
+
+        private Document toDocument(final int retentionDays) {
+            final List<Document> encoded = new ArrayList<>(messages.size());
+            for (int i = 0; i < messages.size(); i++) {
+                final TwitchChannelMessageLog message = messages.get(i);
+                encoded.add(new Document("t", (int) (message.getMessageTime() - bucketStart))
+                    .append("a", messageAuthors.get(i))
+                    .append("id", message.getTwitchId())
+                    .append("m", message.getMessage()));
+            }
+            final Instant end = Instant.ofEpochSecond(maxTime + 1);
+            final Document encodedBucket = new Document("_id", id)
+                .append("roomId", roomId)
+                .append("channel", channel)
+                .append("bucket", Date.from(Instant.ofEpochSecond(bucketStart)))
+                .append("start", Date.from(Instant.ofEpochSecond(minTime)))
+                .append("end", Date.from(end))
+                .append("count", messages.size())
+                .append("authors", authors)
+                .append("authorNames", authorNames)
+                .append("messages", encoded);
+            if (retentionDays > 0) {
+                encodedBucket.append("expireAt", Date.from(end.plus(retentionDays, ChronoUnit.DAYS)));
+            }
+            return encodedBucket;
+        }
+    }
+}
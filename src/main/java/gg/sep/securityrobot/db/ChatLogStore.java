@@ -0,0 +1,58 @@
+package gg.sep.securityrobot.db;
+
+import java.time.Instant;
+import java.util.List;
+
+import gg.sep.securityrobot.models.db.TwitchChannelMessageLog;
+
+/**
+ * Storage and query API for logged Twitch channel messages.
+ *
+ * Implementations decide the document layout used in MongoDB, and are responsible for creating the indexes their
+ * queries rely on.
+ */
+public interface ChatLogStore {
+
+    /**
+     * Creates any indexes needed by the store's queries and retention. Safe to call on every startup.
+     */
+    void createIndexes();
+
+    /**
+     * Stores a single channel message. Implementations may buffer the message and write it later.
+     * @param messageLog Channel message to store.
+     */
+    void write(TwitchChannelMessageLog messageLog);
+
+    /**
+     * Writes any buffered messages to the database.
+     */
+    void flush();
+
+    /**
+     * Stops any background work of the store and writes any buffered messages, eg before its client is closed.
+     */
+    default void close() {
+        flush();
+    }
+
+    /**
+     * Returns the messages sent in a channel within a time range, oldest first.
+     * @param roomId Twitch room ID of the channel.
+     * @param from Start of the time range, inclusive.
+     * @param to End of the time range, exclusive.
+     * @param limit Maximum number of messages to return.
+     * @return Messages sent in the channel within the time range.
+     */
+    List<TwitchChannelMessageLog> messagesInChannel(String roomId, Instant from, Instant to, int limit);
+
+    /**
+     * Returns the messages sent by a user in any channel within a time range, oldest first.
+     * @param userId Twitch user ID of the author.
+     * @param from Start of the time range, inclusive.
+     * @param to End of the time range, exclusive.
+     * @param limit Maximum number of messages to return.
+     * @return Messages sent by the user within the time range.
+     */
+    List<TwitchChannelMessageLog> messagesByUser(String userId, Instant from, Instant to, int limit);
+}
@@ -0,0 +1,67 @@
+package gg.sep.securityrobot.db;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.Getter;
+
+import gg.sep.securityrobot.config.models.MongoDBConfig;
+
+/**
+ * Chat log stores for each collection and retention that channels are logged with.
+ *
+ * Most channels are logged to the configured collection with the configured retention, by the default store. Stores
+ * for other collections or retentions are built the first time a message is written to them, and kept until the bot
+ * stops.
+ */
+public class ChatLogStores {
+
+    private final MongoWrapper mongoWrapper;
+    private final String databaseName;
+    @Getter private final ChatLogStore defaultStore;
+    private final Map<String, ChatLogStore> stores = new ConcurrentHashMap<>();
+
+    /**
+     * Create the chat log stores, building the default store.
+     * @param mongoWrapper MongoDB client the stores write to.
+     */
+    public ChatLogStores(final MongoWrapper mongoWrapper) {
+        this.mongoWrapper = mongoWrapper;
+        this.databaseName = mongoWrapper.getMongoDBConfig().getLogDatabase();
+        this.defaultStore = mongoWrapper.buildChatLogStore(databaseName);
+    }
+
+    /**
+     * Returns the store for a collection and retention, building it if it does not exist yet.
+     * @param collectionName Name of the collection, or null for the configured collection.
+     * @param retentionDays Number of days to keep chat logs for, or a negative number for the configured retention.
+     * @return Chat log store for the collection and retention.
+     */
+    public ChatLogStore get(final String collectionName, final int retentionDays) {
+        final MongoDBConfig config = mongoWrapper.getMongoDBConfig();
+        final String collection = collectionName == null || collectionName.isEmpty()
+            ? config.getLogCollection() : collectionName;
+        final int retention = retentionDays < 0 ? config.getLogRetentionDays() : retentionDays;
+        if (collection.equals(config.getLogCollection()) && retention == config.getLogRetentionDays()) {
+            return defaultStore;
+        }
+        return stores.computeIfAbsent(collection + ":" + retention,
+            key -> mongoWrapper.buildChatLogStore(databaseName, collection, retention));
+    }
+
+    /**
+     * Writes any buffered messages of every store to the database.
+     */
+    public void flush() {
+        defaultStore.flush();
+        stores.values().forEach(ChatLogStore::flush);
+    }
+
+    /**
+     * Stops every store and writes their buffered messages, eg before the MongoDB client is closed.
+     */
+    public void close() {
+        defaultStore.close();
+        stores.values().forEach(ChatLogStore::close);
+    }
+}
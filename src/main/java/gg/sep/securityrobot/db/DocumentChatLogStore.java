@@ -0,0 +1,114 @@
+package gg.sep.securityrobot.db;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Sorts;
+import lombok.extern.log4j.Log4j2;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import gg.sep.securityrobot.jfr.ChatLogFlushEvent;
+import gg.sep.securityrobot.models.db.TwitchChannelMessageLog;
+
+/**
+ * Original chat log layout: one document per message in a single collection.
+ *
+ * Every message is written immediately. Since {@code messageTime} is stored as epoch seconds rather than a date,
+ * this layout cannot use a TTL index for retention.
+ */
+@Log4j2
+public class DocumentChatLogStore implements ChatLogStore {
+
+    private final MongoCollection<Document> logCollection;
+
+    /**
+     * Create a store over the specified collection.
+     * @param mongoDatabase Mongo Database object to be used for logging.
+     * @param collectionName Name of the collection the messages are stored in.
+     */
+    public DocumentChatLogStore(final MongoDatabase mongoDatabase, final String collectionName) {
+        this.logCollection = mongoDatabase.getCollection(collectionName);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void createIndexes() {
+        logCollection.createIndex(Indexes.compoundIndex(Indexes.ascending("roomId"),
+            Indexes.ascending("messageTime")));
+        logCollection.createIndex(Indexes.compoundIndex(Indexes.ascending("authorId"),
+            Indexes.ascending("messageTime")));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(final TwitchChannelMessageLog messageLog) {
+        final ChatLogFlushEvent flush = new ChatLogFlushEvent();
+        flush.begin();
+        try {
+            logCollection.insertOne(Document.parse(messageLog.toJson()));
+            flush.setSucceeded(true);
+        } finally {
+            flush.setStore("document");
+            flush.setDocuments(1);
+            flush.commit();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flush() {
+        // messages are never buffered
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<TwitchChannelMessageLog> messagesInChannel(final String roomId, final Instant from,
+                                                           final Instant to, final int limit) {
+        return find(Filters.eq("roomId", roomId), from, to, limit);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<TwitchChannelMessageLog> messagesByUser(final String userId, final Instant from,
+                                                        final Instant to, final int limit) {
+        return find(Filters.eq("authorId", userId), from, to, limit);
+    }
+
+    private List<TwitchChannelMessageLog> find(final Bson filter, final Instant from, final Instant to,
+                                               final int limit) {
+        final Bson query = Filters.and(filter,
+            Filters.gte("messageTime", from.getEpochSecond()),
+            Filters.lt("messageTime", to.getEpochSecond()));
+
+        final List<TwitchChannelMessageLog> messages = new ArrayList<>();
+        for (final Document document : logCollection.find(query).sort(Sorts.ascending("messageTime")).limit(limit)) {
+            messages.add(TwitchChannelMessageLog.builder()
+                .twitchId(document.getString("twitchId"))
+                .message(document.getString("message"))
+                .roomId(document.getString("roomId"))
+                .messageTime(((Number) document.get("messageTime")).longValue())
+                .authorId(document.getString("authorId"))
+                .authorDisplayName(document.getString("authorDisplayName"))
+                .channelName(document.getString("channelName"))
+                .cleanChannelName(document.getString("cleanChannelName"))
+                .build());
+        }
+        return messages;
+    }
+}
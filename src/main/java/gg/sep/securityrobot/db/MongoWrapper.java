@@ -3,16 +3,22 @@ package gg.sep.securityrobot.db;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoClientOptions;
 import com.mongodb.MongoCredential;
+import com.mongodb.MongoException;
 import com.mongodb.ServerAddress;
+import com.mongodb.client.MongoDatabase;
 import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
 
 import gg.sep.securityrobot.config.models.MongoDBConfig;
 
 /**
  * Wrapper around a MongoDB client.
  */
+@Log4j2
 public class MongoWrapper {
 
+    private static final String BUCKETED_LAYOUT = "bucketed";
+
     @Getter private final MongoClient mongoClient;
     @Getter private final MongoDBConfig mongoDBConfig;
 
@@ -35,4 +41,45 @@ public class MongoWrapper {
             .build();
         this.mongoClient = new MongoClient(address, creds, options);
     }
+
+    /**
+     * Builds the chat log store for the layout selected in the MongoDB configuration, and creates its indexes.
+     *
+     * The {@code bucketed} layout stores its buckets in a separate collection, suffixed with {@code _buckets}.
+     * @param databaseName Name of the database the chat logs are stored in.
+     * @return Chat log store for the configured layout.
+     */
+    public ChatLogStore buildChatLogStore(final String databaseName) {
+        return buildChatLogStore(databaseName, mongoDBConfig.getLogCollection(), mongoDBConfig.getLogRetentionDays());
+    }
+
+    /**
+     * Builds a chat log store over a specific collection, for the layout selected in the MongoDB configuration, and
+     * creates its indexes.
+     *
+     * Retention only applies to the {@code bucketed} layout, which enforces it with a TTL index.
+     * @param databaseName Name of the database the chat logs are stored in.
+     * @param collectionName Name of the collection the chat logs are stored in.
+     * @param retentionDays Number of days to keep chat logs for, or 0 to keep them forever.
+     * @return Chat log store for the configured layout.
+     */
+    public ChatLogStore buildChatLogStore(final String databaseName, final String collectionName,
+                                          final int retentionDays) {
+        final MongoDatabase database = mongoClient.getDatabase(databaseName);
+        final ChatLogStore store;
+        if (BUCKETED_LAYOUT.equalsIgnoreCase(mongoDBConfig.getLogLayout())) {
+            final BucketedChatLogStore bucketedStore = new BucketedChatLogStore(database,
+                collectionName + "_buckets", mongoDBConfig.getLogBucketSeconds(), retentionDays);
+            bucketedStore.start();
+            store = bucketedStore;
+        } else {
+            store = new DocumentChatLogStore(database, collectionName);
+        }
+        try {
+            store.createIndexes();
+        } catch (final MongoException e) {
+            log.error("Unable to create chat log indexes.", e);
+        }
+        return store;
+    }
 }
@@ -0,0 +1,332 @@
+package gg.sep.securityrobot.engagement;
+
+import static gg.sep.securityrobot.SecurityRobot.REDIS_PREFIX;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.reflect.TypeToken;
+import lombok.extern.log4j.Log4j2;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisException;
+
+import gg.sep.securityrobot.config.models.EngagementConfig;
+import gg.sep.securityrobot.redis.RedisAccess;
+import gg.sep.securityrobot.utils.IRCUtils;
+import gg.sep.securityrobot.utils.ModelParser;
+
+/**
+ * Runs the polls and raffles of every channel, at most one of each per channel.
+ *
+ * Entering and voting only touch lock-free in-memory structures. A single background thread checkpoints new
+ * entrants, voters and tallies to Redis every {@link EngagementConfig#getCheckpointIntervalMillis()}, and the same
+ * thread writes and deletes poll and raffle metadata, so Redis writes for a channel are never reordered. Polls and
+ * raffles which were running when the bot stopped are restored from their last checkpoint on start.
+ */
+@Log4j2
+public class EngagementManager {
+
+    private static final String RAFFLES_KEY = REDIS_PREFIX + "raffles";
+    private static final String RAFFLE_KEY_F = REDIS_PREFIX + "raffle:%s";
+    private static final String RAFFLE_ENTRANTS_KEY_F = REDIS_PREFIX + "raffle:%s:entrants";
+    private static final String POLLS_KEY = REDIS_PREFIX + "polls";
+    private static final String POLL_KEY_F = REDIS_PREFIX + "poll:%s";
+    private static final String POLL_VOTERS_KEY_F = REDIS_PREFIX + "poll:%s:voters";
+    private static final String VOTES_FIELD_F = "votes:%d";
+
+    private final EngagementConfig config;
+    private final RedisAccess redis;
+    private final Map<String, Raffle> raffles = new ConcurrentHashMap<>();
+    private final Map<String, Poll> polls = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Create a new engagement manager with no polls or raffles.
+     * @param config Polls and raffles configuration.
+     * @param redis Redis which polls and raffles are checkpointed to.
+     */
+    public EngagementManager(final EngagementConfig config, final RedisAccess redis) {
+        this.config = config;
+        this.redis = redis;
+    }
+
+    /**
+     * Restores the polls and raffles which were running when the bot stopped, and starts checkpointing.
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        restore();
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("engagement-%d").setDaemon(true).build());
+        scheduler.scheduleWithFixedDelay(this::checkpoint, config.getCheckpointIntervalMillis(),
+            config.getCheckpointIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes a final checkpoint and stops checkpointing.
+     */
+    public synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            if (scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
+                checkpoint();
+            } else {
+                scheduler.shutdownNow();
+            }
+        } catch (final InterruptedException e) {
+            scheduler.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        scheduler = null;
+    }
+
+    /**
+     * Starts a raffle in a channel.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     * @param requiredRoles Mask of the roles which may enter the raffle.
+     * @return The new raffle, or empty if the channel already has one running.
+     */
+    public Optional<Raffle> startRaffle(final String channel, final int requiredRoles) {
+        final String cleanChannel = IRCUtils.stripIrcChannel(channel);
+        final Raffle raffle = new Raffle(cleanChannel, requiredRoles, System.currentTimeMillis(),
+            config.getMaxEntrants(), Collections.emptyList());
+        if (raffles.putIfAbsent(cleanChannel, raffle) != null) {
+            return Optional.empty();
+        }
+        submit(() -> redis.execute("startRaffle", jedis -> {
+            final Pipeline pipeline = jedis.pipelined();
+            final String key = String.format(RAFFLE_KEY_F, cleanChannel);
+            pipeline.del(key, String.format(RAFFLE_ENTRANTS_KEY_F, cleanChannel));
+            pipeline.hset(key, "requiredRoles", Integer.toString(requiredRoles));
+            pipeline.hset(key, "startedAt", Long.toString(raffle.getStartedAtMillis()));
+            pipeline.expire(key, config.getTtlSeconds());
+            pipeline.sadd(RAFFLES_KEY, cleanChannel);
+            pipeline.sync();
+            return null;
+        }));
+        return Optional.of(raffle);
+    }
+
+    /**
+     * Returns the raffle running in a channel.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     * @return The channel's raffle, or empty if it has none running.
+     */
+    public Optional<Raffle> getRaffle(final String channel) {
+        return Optional.ofNullable(raffles.get(IRCUtils.stripIrcChannel(channel)));
+    }
+
+    /**
+     * Ends the raffle running in a channel and deletes its checkpoint.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     * @return The ended raffle, or empty if the channel had none running.
+     */
+    public Optional<Raffle> endRaffle(final String channel) {
+        final String cleanChannel = IRCUtils.stripIrcChannel(channel);
+        final Raffle raffle = raffles.remove(cleanChannel);
+        if (raffle != null) {
+            submit(() -> delete("endRaffle", RAFFLES_KEY, cleanChannel, String.format(RAFFLE_KEY_F, cleanChannel),
+                String.format(RAFFLE_ENTRANTS_KEY_F, cleanChannel)));
+        }
+        return Optional.ofNullable(raffle);
+    }
+
+    /**
+     * Starts a poll in a channel.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     * @param question Question being asked.
+     * @param options Options which can be voted for.
+     * @return The new poll, or empty if the channel already has one running.
+     */
+    public Optional<Poll> startPoll(final String channel, final String question, final List<String> options) {
+        final String cleanChannel = IRCUtils.stripIrcChannel(channel);
+        final Poll poll = new Poll(cleanChannel, question, new ArrayList<>(options), System.currentTimeMillis(),
+            config.getMaxEntrants(), new long[0], Collections.emptyList());
+        if (polls.putIfAbsent(cleanChannel, poll) != null) {
+            return Optional.empty();
+        }
+        submit(() -> redis.execute("startPoll", jedis -> {
+            final Pipeline pipeline = jedis.pipelined();
+            final String key = String.format(POLL_KEY_F, cleanChannel);
+            pipeline.del(key, String.format(POLL_VOTERS_KEY_F, cleanChannel));
+            pipeline.hset(key, "question", question);
+            pipeline.hset(key, "options", ModelParser.GSON.toJson(poll.getOptions()));
+            pipeline.hset(key, "startedAt", Long.toString(poll.getStartedAtMillis()));
+            pipeline.expire(key, config.getTtlSeconds());
+            pipeline.sadd(POLLS_KEY, cleanChannel);
+            pipeline.sync();
+            return null;
+        }));
+        return Optional.of(poll);
+    }
+
+    /**
+     * Returns the poll running in a channel.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     * @return The channel's poll, or empty if it has none running.
+     */
+    public Optional<Poll> getPoll(final String channel) {
+        return Optional.ofNullable(polls.get(IRCUtils.stripIrcChannel(channel)));
+    }
+
+    /**
+     * Ends the poll running in a channel and deletes its checkpoint.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     * @return The ended poll, or empty if the channel had none running.
+     */
+    public Optional<Poll> endPoll(final String channel) {
+        final String cleanChannel = IRCUtils.stripIrcChannel(channel);
+        final Poll poll = polls.remove(cleanChannel);
+        if (poll != null) {
+            submit(() -> delete("endPoll", POLLS_KEY, cleanChannel, String.format(POLL_KEY_F, cleanChannel),
+                String.format(POLL_VOTERS_KEY_F, cleanChannel)));
+        }
+        return Optional.ofNullable(poll);
+    }
+
+    private void submit(final Runnable redisWrite) {
+        final ScheduledExecutorService current = scheduler;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.execute(() -> {
+                try {
+                    redisWrite.run();
+                } catch (final JedisException e) {
+                    log.error("Unable to write poll/raffle to Redis.", e);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            log.warn("Poll/raffle write rejected, the bot is shutting down.");
+        }
+    }
+
+    private void delete(final String command, final String indexKey, final String cleanChannel,
+                        final String... keys) {
+        redis.execute(command, jedis -> {
+            final Pipeline pipeline = jedis.pipelined();
+            pipeline.srem(indexKey, cleanChannel);
+            pipeline.del(keys);
+            pipeline.sync();
+            return null;
+        });
+    }
+
+    private void checkpoint() {
+        if (raffles.isEmpty() && polls.isEmpty()) {
+            return;
+        }
+        final Map<EntrantSet, Integer> written = new HashMap<>();
+        try {
+            redis.execute("checkpointEngagement", jedis -> {
+                final Pipeline pipeline = jedis.pipelined();
+                for (final Raffle raffle : raffles.values()) {
+                    final String key = String.format(RAFFLE_ENTRANTS_KEY_F, raffle.getChannel());
+                    written.put(raffle.getEntrants(), pushEntrants(pipeline, key, raffle.getEntrants()));
+                }
+                for (final Poll poll : polls.values()) {
+                    final String key = String.format(POLL_KEY_F, poll.getChannel());
+                    final long[] tallies = poll.tallies();
+                    for (int i = 0; i < tallies.length; i++) {
+                        pipeline.hset(key, String.format(VOTES_FIELD_F, i), Long.toString(tallies[i]));
+                    }
+                    final String votersKey = String.format(POLL_VOTERS_KEY_F, poll.getChannel());
+                    written.put(poll.getVoters(), pushEntrants(pipeline, votersKey, poll.getVoters()));
+                }
+                pipeline.sync();
+                return null;
+            });
+        } catch (final JedisException e) {
+            log.error("Unable to checkpoint polls and raffles to Redis.", e);
+            return;
+        }
+        written.forEach(EntrantSet::markCheckpointed);
+    }
+
+    private int pushEntrants(final Pipeline pipeline, final String key, final EntrantSet entrants) {
+        final long[] userIds = entrants.uncheckpointed();
+        if (userIds.length > 0) {
+            pipeline.rpush(key, Arrays.stream(userIds).mapToObj(Long::toString).toArray(String[]::new));
+            pipeline.expire(key, config.getTtlSeconds());
+        }
+        return userIds.length;
+    }
+
+    private void restore() {
+        final Map<String, Response<Map<String, String>>> raffleMeta = new HashMap<>();
+        final Map<String, Response<List<String>>> raffleEntrants = new HashMap<>();
+        final Map<String, Response<Map<String, String>>> pollMeta = new HashMap<>();
+        final Map<String, Response<List<String>>> pollVoters = new HashMap<>();
+        try {
+            redis.execute("restoreEngagement", jedis -> {
+                final Set<String> raffleChannels = jedis.smembers(RAFFLES_KEY);
+                final Set<String> pollChannels = jedis.smembers(POLLS_KEY);
+                final Pipeline pipeline = jedis.pipelined();
+                for (final String channel : raffleChannels) {
+                    raffleMeta.put(channel, pipeline.hgetAll(String.format(RAFFLE_KEY_F, channel)));
+                    raffleEntrants.put(channel,
+                        pipeline.lrange(String.format(RAFFLE_ENTRANTS_KEY_F, channel), 0, -1));
+                }
+                for (final String channel : pollChannels) {
+                    pollMeta.put(channel, pipeline.hgetAll(String.format(POLL_KEY_F, channel)));
+                    pollVoters.put(channel, pipeline.lrange(String.format(POLL_VOTERS_KEY_F, channel), 0, -1));
+                }
+                pipeline.sync();
+                return null;
+            });
+        } catch (final JedisException e) {
+            log.error("Unable to restore polls and raffles from Redis.", e);
+            return;
+        }
+
+        raffleMeta.forEach((channel, response) -> {
+            final Map<String, String> meta = response.get();
+            if (!meta.containsKey("requiredRoles")) {
+                return; // expired
+            }
+            raffles.put(channel, new Raffle(channel, Integer.parseInt(meta.get("requiredRoles")),
+                Long.parseLong(meta.getOrDefault("startedAt", "0")), config.getMaxEntrants(),
+                parseUserIds(raffleEntrants.get(channel).get())));
+        });
+        pollMeta.forEach((channel, response) -> {
+            final Map<String, String> meta = response.get();
+            if (!meta.containsKey("options")) {
+                return; // expired
+            }
+            final List<String> options = ModelParser.GSON.fromJson(meta.get("options"),
+                new TypeToken<List<String>>() { }.getType());
+            final long[] votes = new long[options.size()];
+            for (int i = 0; i < votes.length; i++) {
+                votes[i] = Long.parseLong(meta.getOrDefault(String.format(VOTES_FIELD_F, i), "0"));
+            }
+            polls.put(channel, new Poll(channel, meta.get("question"), options,
+                Long.parseLong(meta.getOrDefault("startedAt", "0")), config.getMaxEntrants(), votes,
+                parseUserIds(pollVoters.get(channel).get())));
+        });
+        log.info("Restored polls and raffles. polls={}, raffles={}", polls.size(), raffles.size());
+    }
+
+    private static List<Long> parseUserIds(final List<String> userIds) {
+        return userIds.stream().map(Long::valueOf).collect(Collectors.toList());
+    }
+}
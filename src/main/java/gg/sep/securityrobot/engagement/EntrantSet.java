@@ -0,0 +1,161 @@
+package gg.sep.securityrobot.engagement;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import gg.sep.securityrobot.identity.TwitchUserIdentity;
+
+/**
+ * Lock-free set of the users who entered a raffle or voted in a poll.
+ *
+ * Users are deduplicated by their Twitch user ID in a concurrent set, and the IDs of new entrants are appended to a
+ * paged log of slots claimed with a single atomic increment, so concurrent entries never block each other. The log
+ * gives the unbiased, indexable view used to draw winners, and is what gets checkpointed to Redis.
+ *
+ * User IDs are used rather than identity ordinals, since ordinals are reused once a user has been idle long enough to
+ * be evicted from the identity table, which may happen while a long poll or raffle is running.
+ *
+ * Entrants whose eligibility has not been checked yet are logged, and checkpointed, as their negated user ID, since
+ * Twitch user IDs are always positive.
+ */
+final class EntrantSet {
+
+    private static final int PAGE_SHIFT = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+    private final Set<Long> userIds;
+    private final AtomicReferenceArray<AtomicLongArray> pages;
+    private final AtomicInteger claimed = new AtomicInteger();
+    private final int capacity;
+    private int checkpointed; // only touched by the checkpoint thread
+
+    /**
+     * Create a new entrant set.
+     * @param capacity Maximum number of entrants.
+     * @param restoredIds User IDs of entrants restored from a checkpoint, already stored in it, negated for entrants
+     *                    whose eligibility has not been checked.
+     */
+    EntrantSet(final int capacity, final Collection<Long> restoredIds) {
+        this.capacity = Math.max(capacity, restoredIds.size());
+        this.pages = new AtomicReferenceArray<>((this.capacity + PAGE_SIZE - 1) >>> PAGE_SHIFT);
+        this.userIds = ConcurrentHashMap.newKeySet(Math.min(this.capacity, PAGE_SIZE));
+        for (final long entry : restoredIds) {
+            if (userIds.add(Math.abs(entry))) {
+                append(entry);
+            }
+        }
+        this.checkpointed = claimed.get();
+    }
+
+    /**
+     * Adds a user to the set.
+     * @param identity Identity of the user.
+     * @return {@link EntryResult#ADDED} if the user was added, {@link EntryResult#DUPLICATE} if they were already in
+     *         the set, or {@link EntryResult#FULL} if the set is full.
+     */
+    EntryResult add(final TwitchUserIdentity identity) {
+        return add(identity, true);
+    }
+
+    /**
+     * Adds a user to the set, whose eligibility may still need to be checked.
+     * @param identity Identity of the user.
+     * @param checked <code>false</code> if the user's eligibility must be checked before they can win.
+     * @return {@link EntryResult#ADDED} if the user was added, {@link EntryResult#DUPLICATE} if they were already in
+     *         the set, or {@link EntryResult#FULL} if the set is full.
+     */
+    EntryResult add(final TwitchUserIdentity identity, final boolean checked) {
+        if (!userIds.add(identity.getUserId())) {
+            return EntryResult.DUPLICATE;
+        }
+        if (!append(checked ? identity.getUserId() : -identity.getUserId())) {
+            // not logged, so they are told the set is full again rather than that they already entered
+            userIds.remove(identity.getUserId());
+            return EntryResult.FULL;
+        }
+        return EntryResult.ADDED;
+    }
+
+    /**
+     * Number of users in the set.
+     * @return Number of users.
+     */
+    int size() {
+        return Math.min(claimed.get(), capacity);
+    }
+
+    /**
+     * Returns the user IDs of every entrant whose entry has been fully written.
+     * @return User IDs, negated for entrants whose eligibility has not been checked, in the order the users entered.
+     */
+    long[] snapshot() {
+        final int size = size();
+        final long[] userIds = new long[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            final long userId = slot(i);
+            if (userId != 0) {
+                userIds[count++] = userId;
+            }
+        }
+        return count == size ? userIds : Arrays.copyOf(userIds, count);
+    }
+
+    /**
+     * Returns the user IDs of the entrants which have not been checkpointed yet, up to the first entry which is still
+     * being written. Must only be called from the checkpoint thread.
+     * @return User IDs to checkpoint, negated for entrants whose eligibility has not been checked, in the order the
+     *         users entered.
+     */
+    long[] uncheckpointed() {
+        final int size = size();
+        final long[] userIds = new long[Math.max(0, size - checkpointed)];
+        int count = 0;
+        for (int i = checkpointed; i < size; i++) {
+            final long userId = slot(i);
+            if (userId == 0) {
+                break;
+            }
+            userIds[count++] = userId;
+        }
+        return count == userIds.length ? userIds : Arrays.copyOf(userIds, count);
+    }
+
+    /**
+     * Records that entrants returned by {@link #uncheckpointed()} were written to the checkpoint. Must only be
+     * called from the checkpoint thread.
+     * @param count Number of entrants which were written.
+     */
+    void markCheckpointed(final int count) {
+        checkpointed += count;
+    }
+
+    private boolean append(final long userId) {
+        // checked first, so entries refused once full do not keep counting towards an overflow
+        if (claimed.get() >= capacity) {
+            return false;
+        }
+        final int index = claimed.getAndIncrement();
+        if (index >= capacity) {
+            return false;
+        }
+        final int pageIndex = index >>> PAGE_SHIFT;
+        AtomicLongArray page = pages.get(pageIndex);
+        if (page == null) {
+            final AtomicLongArray created = new AtomicLongArray(PAGE_SIZE);
+            page = pages.compareAndSet(pageIndex, null, created) ? created : pages.get(pageIndex);
+        }
+        page.set(index & (PAGE_SIZE - 1), userId);
+        return true;
+    }
+
+    private long slot(final int index) {
+        final AtomicLongArray page = pages.get(index >>> PAGE_SHIFT);
+        return page == null ? 0 : page.get(index & (PAGE_SIZE - 1));
+    }
+}
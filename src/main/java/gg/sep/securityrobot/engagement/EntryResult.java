@@ -0,0 +1,12 @@
+package gg.sep.securityrobot.engagement;
+
+/**
+ * Outcome of a chatter entering a raffle or voting in a poll.
+ */
+public enum EntryResult {
+    ADDED,
+    DUPLICATE,
+    INELIGIBLE,
+    INVALID,
+    FULL
+}
@@ -0,0 +1,73 @@
+package gg.sep.securityrobot.engagement;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import gg.sep.securityrobot.models.twitch.tmi.TwitchMessageAuthor;
+
+/**
+ * A poll running in a channel, in which every chatter can vote once.
+ *
+ * Votes are tallied in one {@link LongAdder} per option, so thousands of concurrent votes do not contend on a
+ * single counter.
+ */
+@Getter
+public class Poll {
+
+    private final String channel;
+    private final String question;
+    private final List<String> options;
+    private final long startedAtMillis;
+    @Getter(AccessLevel.NONE) private final LongAdder[] votes;
+    @Getter(AccessLevel.PACKAGE) private final EntrantSet voters;
+
+    Poll(final String channel, final String question, final List<String> options, final long startedAtMillis,
+         final int maxVoters, final long[] restoredVotes, final Collection<Long> restoredVoters) {
+        this.channel = channel;
+        this.question = question;
+        this.options = Collections.unmodifiableList(options);
+        this.startedAtMillis = startedAtMillis;
+        this.votes = new LongAdder[options.size()];
+        for (int i = 0; i < votes.length; i++) {
+            votes[i] = new LongAdder();
+            if (i < restoredVotes.length) {
+                votes[i].add(restoredVotes[i]);
+            }
+        }
+        this.voters = new EntrantSet(maxVoters, restoredVoters);
+    }
+
+    /**
+     * Records the vote of the author of a message.
+     * @param author Author of the message which voted.
+     * @param option Number of the option voted for, starting at 1.
+     * @return Result of the vote.
+     */
+    public EntryResult vote(final TwitchMessageAuthor author, final int option) {
+        if (author.getIdentity() == null || option < 1 || option > votes.length) {
+            return EntryResult.INVALID;
+        }
+        final EntryResult result = voters.add(author.getIdentity());
+        if (result == EntryResult.ADDED) {
+            votes[option - 1].increment();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the current number of votes for each option.
+     * @return Number of votes, indexed by option starting at 0.
+     */
+    public long[] tallies() {
+        final long[] tallies = new long[votes.length];
+        for (int i = 0; i < votes.length; i++) {
+            tallies[i] = votes[i].sum();
+        }
+        return tallies;
+    }
+}
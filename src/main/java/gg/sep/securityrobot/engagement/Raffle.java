@@ -0,0 +1,149 @@
+package gg.sep.securityrobot.engagement;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongFunction;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import gg.sep.securityrobot.commands.Role;
+import gg.sep.securityrobot.models.twitch.tmi.TwitchMessageAuthor;
+
+/**
+ * A raffle running in a channel, which chatters with the required roles can enter once each.
+ */
+@Getter
+public class Raffle {
+
+    private static final Random RANDOM = new SecureRandom();
+    // rounds of drawing replacements for winners who turn out not to follow the channel
+    private static final int MAX_DRAW_ROUNDS = 5;
+
+    private final String channel;
+    private final int requiredRoles;
+    private final long startedAtMillis;
+    @Getter(AccessLevel.PACKAGE) private final EntrantSet entrants;
+    // entrants who won, or were found to be ineligible when drawn, and are not drawn again
+    @Getter(AccessLevel.NONE) private final Set<Long> drawn = ConcurrentHashMap.newKeySet();
+
+    Raffle(final String channel, final int requiredRoles, final long startedAtMillis, final int maxEntrants,
+           final Collection<Long> restoredEntrants) {
+        this.channel = channel;
+        this.requiredRoles = requiredRoles;
+        this.startedAtMillis = startedAtMillis;
+        this.entrants = new EntrantSet(maxEntrants, restoredEntrants);
+    }
+
+    /**
+     * Enters the author of a message into the raffle.
+     *
+     * Eligibility is checked with the author's roles. In follower raffles, authors who are only eligible by following
+     * the channel, and whose follow is not cached yet, are entered unchecked, and checked once they are drawn. This
+     * keeps entry from calling the Twitch API, which would refuse most calls during a burst of entries.
+     * @param author Author of the message which entered the raffle.
+     * @return Result of the entry.
+     */
+    public EntryResult enter(final TwitchMessageAuthor author) {
+        if (author.getIdentity() == null) {
+            return EntryResult.INVALID;
+        }
+        if (author.hasAnyRole(requiredRoles & ~Role.FOLLOWER.getMask())) {
+            return entrants.add(author.getIdentity());
+        }
+        if (!Role.FOLLOWER.isIn(requiredRoles)) {
+            return EntryResult.INELIGIBLE;
+        }
+        final Optional<Boolean> follows = author.getKnownFollower();
+        if (follows.isPresent() && !follows.get()) {
+            return EntryResult.INELIGIBLE;
+        }
+        return entrants.add(author.getIdentity(), follows.isPresent());
+    }
+
+    /**
+     * Number of chatters who entered the raffle.
+     * @return Number of entrants.
+     */
+    public int entrantCount() {
+        return entrants.size();
+    }
+
+    /**
+     * Draws winners uniformly at random from the entrants who have not already been drawn.
+     *
+     * Unchecked entrants are looked up once drawn. Those who do not follow the channel are passed over and replaced
+     * by drawing again. Those whose follow cannot be looked up, eg because the Twitch API is degraded, are put back
+     * and counted in {@link RaffleDraw#getUnchecked()}, rather than being treated as ineligible.
+     * @param count Number of winners to draw.
+     * @param isFollowing Looks up whether a user, by their ID, follows the raffle's channel.
+     * @return Future of the draw, with fewer winners than requested if there are not enough eligible entrants left.
+     */
+    public CompletableFuture<RaffleDraw> draw(final int count,
+                                              final LongFunction<CompletableFuture<Boolean>> isFollowing) {
+        return drawRound(count, isFollowing, new ArrayList<>(count), MAX_DRAW_ROUNDS);
+    }
+
+    private CompletableFuture<RaffleDraw> drawRound(final int count,
+                                                    final LongFunction<CompletableFuture<Boolean>> isFollowing,
+                                                    final List<Long> winners, final int rounds) {
+        final long[] picked = pick(count - winners.size());
+        final List<CompletableFuture<Boolean>> checks = new ArrayList<>(picked.length);
+        for (final long entry : picked) {
+            checks.add(entry > 0 ? CompletableFuture.completedFuture(true) : isFollowing.apply(-entry));
+        }
+        // wait for every check whether it failed or not, each is inspected on its own below
+        return CompletableFuture.allOf(checks.toArray(new CompletableFuture<?>[0]))
+            .handle((ignored, error) -> checks)
+            .thenCompose(completed -> {
+                int unchecked = 0;
+                boolean passedOver = false;
+                for (int i = 0; i < picked.length; i++) {
+                    final long userId = Math.abs(picked[i]);
+                    if (completed.get(i).isCompletedExceptionally()) {
+                        drawn.remove(userId);
+                        unchecked++;
+                    } else if (completed.get(i).join()) {
+                        winners.add(userId);
+                    } else {
+                        passedOver = true;
+                    }
+                }
+                if (unchecked == 0 && passedOver && winners.size() < count && rounds > 1) {
+                    return drawRound(count, isFollowing, winners, rounds - 1);
+                }
+                return CompletableFuture.completedFuture(new RaffleDraw(winners, unchecked));
+            });
+    }
+
+    /**
+     * Picks entrants who have not been drawn yet, and marks them as drawn.
+     * @param count Number of entrants to pick.
+     * @return Picked entries, negated for unchecked entrants; fewer than requested if there are not enough left.
+     */
+    private synchronized long[] pick(final int count) {
+        final long[] pool = entrants.snapshot();
+        int remaining = 0;
+        for (final long entry : pool) {
+            if (!drawn.contains(Math.abs(entry))) {
+                pool[remaining++] = entry;
+            }
+        }
+        // partial Fisher-Yates shuffle: each pick is uniform over the entrants not drawn yet
+        final long[] picked = new long[Math.max(0, Math.min(count, remaining))];
+        for (int i = 0; i < picked.length; i++) {
+            final int pick = RANDOM.nextInt(remaining);
+            picked[i] = pool[pick];
+            pool[pick] = pool[--remaining];
+            drawn.add(Math.abs(picked[i]));
+        }
+        return picked;
+    }
+}
@@ -0,0 +1,17 @@
+package gg.sep.securityrobot.engagement;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Outcome of drawing winners from a raffle.
+ */
+@Getter
+@AllArgsConstructor
+public class RaffleDraw {
+    private final List<Long> winners;
+    // drawn entrants whose eligibility could not be checked, who were put back to be drawn again
+    private final int unchecked;
+}
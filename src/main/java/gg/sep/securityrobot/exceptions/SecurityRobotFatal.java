@@ -14,4 +14,13 @@ public class SecurityRobotFatal extends IOException {
     public SecurityRobotFatal(final String message) {
         super(message);
     }
+
+    /**
+     * Construct the exception with the specified message and cause.
+     * @param message Error message for the exception.
+     * @param cause Cause of the exception.
+     */
+    public SecurityRobotFatal(final String message, final Throwable cause) {
+        super(message, cause);
+    }
 }
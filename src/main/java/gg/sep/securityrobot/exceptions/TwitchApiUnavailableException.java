@@ -0,0 +1,25 @@
+package gg.sep.securityrobot.exceptions;
+
+/**
+ * Exception thrown when a Twitch API call is refused or fails after its retries, eg because the endpoint's circuit
+ * breaker is open or too many calls to it are already in flight.
+ */
+public class TwitchApiUnavailableException extends RuntimeException {
+
+    /**
+     * Construct the exception with the specified message.
+     * @param message Error message for the exception.
+     */
+    public TwitchApiUnavailableException(final String message) {
+        super(message);
+    }
+
+    /**
+     * Construct the exception with the specified message and cause.
+     * @param message Error message for the exception.
+     * @param cause Failure of the last attempt of the call.
+     */
+    public TwitchApiUnavailableException(final String message, final Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,264 @@
+package gg.sep.securityrobot.history;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import lombok.Getter;
+
+import gg.sep.securityrobot.utils.collections.LongIntHashMap;
+
+/**
+ * Fixed size ring buffer of the most recent chat messages in a single channel.
+ *
+ * Message summaries are stored column-wise in primitive arrays, and message text is stored UTF-8 encoded in a
+ * single circular byte arena. The buffer is bounded both by the number of messages and by the number of text
+ * bytes, so its memory footprint is fixed at construction no matter how busy the channel is.
+ *
+ * Every entry also links to the previous entry from the same user, and the latest entry of each user is indexed
+ * by their user ID, so "last N messages from a user" walks at most N entries.
+ */
+public final class ChannelHistoryBuffer {
+
+    private static final int NO_SLOT = -1;
+    private static final int MAX_MESSAGE_BYTES = 2048;
+
+    @Getter private final int capacity;
+    private final int maxMessageBytes;
+
+    private final long[] sequences;
+    private final long[] messageTimes;
+    private final long[] userIds;
+    private final long[] idMostSigBits;
+    private final long[] idLeastSigBits;
+    private final int[] textOffsets;
+    private final int[] textLengths;
+    private final int[] previousUserSlots;
+    private final long[] previousUserSequences;
+    private final String[] userNames;
+    private final byte[] text;
+
+    private final LongIntHashMap latestSlotByUser;
+    private final Map<String, Long> userIdByName;
+
+    private long nextSequence;
+    private int count;
+    private int textWritePosition;
+
+    /**
+     * Create a new channel history buffer.
+     * @param maxMessages Maximum number of messages retained by the buffer.
+     * @param maxBytes Maximum number of bytes of message text retained by the buffer.
+     */
+    public ChannelHistoryBuffer(final int maxMessages, final int maxBytes) {
+        if (maxMessages <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("Chat history buffers must have a positive message and byte size.");
+        }
+        this.capacity = maxMessages;
+        this.maxMessageBytes = Math.min(MAX_MESSAGE_BYTES, maxBytes);
+
+        this.sequences = new long[maxMessages];
+        this.messageTimes = new long[maxMessages];
+        this.userIds = new long[maxMessages];
+        this.idMostSigBits = new long[maxMessages];
+        this.idLeastSigBits = new long[maxMessages];
+        this.textOffsets = new int[maxMessages];
+        this.textLengths = new int[maxMessages];
+        this.previousUserSlots = new int[maxMessages];
+        this.previousUserSequences = new long[maxMessages];
+        this.userNames = new String[maxMessages];
+        this.text = new byte[maxBytes];
+
+        this.latestSlotByUser = new LongIntHashMap(maxMessages);
+        this.userIdByName = new HashMap<>();
+    }
+
+    /**
+     * Records a message into the buffer, evicting the oldest messages if the buffer is out of message
+     * slots or text bytes.
+     * @param messageId Twitch message ID (a UUID string), or {@code null} if unknown.
+     * @param userId Twitch user ID of the message author.
+     * @param userName Login name of the message author.
+     * @param messageTime Time the message was sent, in epoch milliseconds.
+     * @param message Text of the message.
+     */
+    public synchronized void record(final String messageId, final long userId, final String userName,
+                                    final long messageTime, final String message) {
+        final byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        final int length = truncatedLength(bytes, maxMessageBytes);
+        // every entry reserves at least one byte so that arena offsets stay strictly ordered
+        final int span = Math.max(length, 1);
+
+        if (count == capacity) {
+            evictOldest();
+        }
+
+        final int previousWritePosition = textWritePosition;
+        final boolean wrapped = previousWritePosition + span > text.length;
+        final int start = wrapped ? 0 : previousWritePosition;
+        while (count > 0) {
+            final int oldest = slotOf(oldestSequence());
+            final boolean inSkippedTail = wrapped && textOffsets[oldest] >= previousWritePosition;
+            if (!inSkippedTail && !overlaps(oldest, start, span)) {
+                break;
+            }
+            evictOldest();
+        }
+
+        final long sequence = nextSequence++;
+        final int slot = slotOf(sequence);
+        final int previousSlot = latestSlotByUser.get(userId, NO_SLOT);
+
+        System.arraycopy(bytes, 0, text, start, length);
+        sequences[slot] = sequence;
+        messageTimes[slot] = messageTime;
+        userIds[slot] = userId;
+        textOffsets[slot] = start;
+        textLengths[slot] = length;
+        userNames[slot] = userName;
+        previousUserSlots[slot] = previousSlot;
+        previousUserSequences[slot] = (previousSlot == NO_SLOT) ? NO_SLOT : sequences[previousSlot];
+        storeMessageId(slot, messageId);
+
+        latestSlotByUser.put(userId, slot);
+        userIdByName.put(userName, userId);
+        textWritePosition = start + span;
+        count++;
+    }
+
+    /**
+     * Returns the most recent messages from a user, newest first.
+     * @param userId Twitch user ID of the user.
+     * @param limit Maximum number of messages to return.
+     * @return The most recent messages from the user, newest first.
+     */
+    public synchronized List<ChatHistoryEntry> lastMessagesFromUser(final long userId, final int limit) {
+        int slot = latestSlotByUser.get(userId, NO_SLOT);
+        if (slot == NO_SLOT || limit <= 0) {
+            return Collections.emptyList();
+        }
+        final List<ChatHistoryEntry> entries = new ArrayList<>(Math.min(limit, count));
+        long sequence = sequences[slot];
+        while (slot != NO_SLOT && entries.size() < limit && isLive(sequence) && sequences[slot] == sequence) {
+            entries.add(toEntry(slot));
+            sequence = previousUserSequences[slot];
+            slot = previousUserSlots[slot];
+        }
+        return entries;
+    }
+
+    /**
+     * Returns the most recent messages from a user, by their login name, newest first.
+     * @param userName Login name of the user.
+     * @param limit Maximum number of messages to return.
+     * @return The most recent messages from the user, newest first.
+     */
+    public synchronized List<ChatHistoryEntry> lastMessagesFromUser(final String userName, final int limit) {
+        final Long userId = userIdByName.get(userName.toLowerCase());
+        if (userId == null) {
+            return Collections.emptyList();
+        }
+        return lastMessagesFromUser(userId, limit);
+    }
+
+    /**
+     * Returns the most recent messages in the channel, newest first.
+     * @param limit Maximum number of messages to return.
+     * @return The most recent messages in the channel, newest first.
+     */
+    public synchronized List<ChatHistoryEntry> recentMessages(final int limit) {
+        final int size = Math.min(limit, count);
+        final List<ChatHistoryEntry> entries = new ArrayList<>(Math.max(size, 0));
+        for (int i = 1; i <= size; i++) {
+            entries.add(toEntry(slotOf(nextSequence - i)));
+        }
+        return entries;
+    }
+
+    /**
+     * Returns the number of messages currently retained in the buffer.
+     * @return Number of messages currently retained in the buffer.
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    private void evictOldest() {
+        final int slot = slotOf(oldestSequence());
+        final long userId = userIds[slot];
+        if (latestSlotByUser.get(userId, NO_SLOT) == slot) {
+            latestSlotByUser.remove(userId);
+            userIdByName.remove(userNames[slot], userId);
+        }
+        userNames[slot] = null;
+        count--;
+    }
+
+    private boolean overlaps(final int slot, final int start, final int span) {
+        final int offset = textOffsets[slot];
+        final int entrySpan = Math.max(textLengths[slot], 1);
+        return offset < start + span && start < offset + entrySpan;
+    }
+
+    /**
+     * Returns how many bytes of UTF-8 text fit within a byte budget without splitting a character.
+     * @param bytes UTF-8 encoded text.
+     * @param maxBytes Maximum number of bytes to keep.
+     * @return Number of bytes to keep, which ends on a character boundary.
+     */
+    private static int truncatedLength(final byte[] bytes, final int maxBytes) {
+        if (bytes.length <= maxBytes) {
+            return bytes.length;
+        }
+        int length = maxBytes;
+        // back off over continuation bytes (10xxxxxx), so the cut is before the start of a character
+        while (length > 0 && (bytes[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        return length;
+    }
+
+    private boolean isLive(final long sequence) {
+        return sequence >= oldestSequence() && sequence < nextSequence;
+    }
+
+    private long oldestSequence() {
+        return nextSequence - count;
+    }
+
+    private int slotOf(final long sequence) {
+        return (int) (sequence % capacity);
+    }
+
+    private void storeMessageId(final int slot, final String messageId) {
+        long most = 0;
+        long least = 0;
+        if (messageId != null) {
+            try {
+                final UUID uuid = UUID.fromString(messageId);
+                most = uuid.getMostSignificantBits();
+                least = uuid.getLeastSignificantBits();
+            } catch (final IllegalArgumentException e) {
+                // unknown ID format, it will be reported as missing
+            }
+        }
+        idMostSigBits[slot] = most;
+        idLeastSigBits[slot] = least;
+    }
+
+    private ChatHistoryEntry toEntry(final int slot) {
+        final boolean hasId = idMostSigBits[slot] != 0 || idLeastSigBits[slot] != 0;
+        return ChatHistoryEntry.builder()
+            .sequence(sequences[slot])
+            .messageId(hasId ? new UUID(idMostSigBits[slot], idLeastSigBits[slot]).toString() : null)
+            .userId(userIds[slot])
+            .userName(userNames[slot])
+            .messageTime(messageTimes[slot])
+            .message(new String(text, textOffsets[slot], textLengths[slot], StandardCharsets.UTF_8))
+            .build();
+    }
+}
@@ -0,0 +1,82 @@
+package gg.sep.securityrobot.history;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.extern.log4j.Log4j2;
+
+import gg.sep.securityrobot.config.models.ChatHistoryConfig;
+import gg.sep.securityrobot.listeners.ChannelMessageConsumer;
+import gg.sep.securityrobot.models.twitch.tmi.TwitchChannelMessage;
+import gg.sep.securityrobot.utils.IRCUtils;
+
+/**
+ * In-memory history of the most recent chat messages in every channel the bot has joined.
+ *
+ * Each channel has its own fixed size {@link ChannelHistoryBuffer}, so lookups such as a user's last messages
+ * never need to go to the database.
+ */
+@Log4j2
+public class ChatHistory implements ChannelMessageConsumer {
+
+    private final ChatHistoryConfig config;
+    private final Map<String, ChannelHistoryBuffer> channels = new ConcurrentHashMap<>();
+
+    /**
+     * Create a new chat history using the buffer sizes from the configuration.
+     * @param config Chat history configuration.
+     */
+    public ChatHistory(final ChatHistoryConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Records a parsed channel message into its channel's history buffer.
+     * @param message Parsed Twitch channel message.
+     */
+    @Override
+    public void accept(final TwitchChannelMessage message) {
+        final String userId = message.getAuthor().getUserId();
+        if (userId == null) {
+            return;
+        }
+        final ChannelHistoryBuffer buffer = channels.computeIfAbsent(message.getCleanChannelName(),
+            c -> new ChannelHistoryBuffer(config.getMaxMessagesPerChannel(), config.getMaxBytesPerChannel()));
+
+        buffer.record(message.getId(), Long.parseLong(userId), message.getAuthor().getUserName(),
+            message.getMessageTime().toInstant().toEpochMilli(), message.getMessage());
+    }
+
+    /**
+     * Returns the history buffer of a channel, if any messages have been recorded for it.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     * @return The history buffer of the channel, or empty if nothing has been recorded.
+     */
+    public Optional<ChannelHistoryBuffer> getChannel(final String channel) {
+        return Optional.ofNullable(channels.get(IRCUtils.stripIrcChannel(channel)));
+    }
+
+    /**
+     * Returns the most recent messages from a user in a channel, newest first.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     * @param userName Login name of the user.
+     * @param limit Maximum number of messages to return.
+     * @return The most recent messages from the user, newest first.
+     */
+    public List<ChatHistoryEntry> lastMessagesFromUser(final String channel, final String userName, final int limit) {
+        return getChannel(channel)
+            .map(b -> b.lastMessagesFromUser(userName, limit))
+            .orElse(Collections.emptyList());
+    }
+
+    /**
+     * Drops the history of a channel, eg when the bot leaves it.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     */
+    public void removeChannel(final String channel) {
+        channels.remove(IRCUtils.stripIrcChannel(channel));
+    }
+}
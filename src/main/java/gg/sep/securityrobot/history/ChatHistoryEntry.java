@@ -0,0 +1,18 @@
+package gg.sep.securityrobot.history;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Summary of a single chat message retained in the in-memory chat history.
+ */
+@Builder
+@Getter
+public class ChatHistoryEntry {
+    private final long sequence;
+    private final String messageId;
+    private final long userId;
+    private final String userName;
+    private final long messageTime;
+    private final String message;
+}
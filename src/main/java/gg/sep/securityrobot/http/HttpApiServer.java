@@ -0,0 +1,114 @@
+package gg.sep.securityrobot.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.log4j.Log4j2;
+
+import gg.sep.securityrobot.config.models.HttpConfig;
+import gg.sep.securityrobot.utils.ModelParser;
+
+/**
+ * Small embedded read-only HTTP API, used to expose bot state such as live chat statistics to dashboards.
+ *
+ * Built on the JDK's HTTP server so that no additional dependencies are needed.
+ */
+@Log4j2
+public class HttpApiServer {
+
+    private static final int SERVER_THREADS = 2;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Create a new HTTP API server bound to the configured address. The server is not started.
+     * @param config HTTP API configuration.
+     * @throws IOException If the server cannot bind to the configured address.
+     */
+    public HttpApiServer(final HttpConfig config) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(config.getBindAddress(), config.getPort()), 0);
+        this.executor = Executors.newFixedThreadPool(SERVER_THREADS,
+            new ThreadFactoryBuilder().setNameFormat("http-api-%d").setDaemon(true).build());
+        this.server.setExecutor(executor);
+    }
+
+    /**
+     * Adds a JSON route which handles every GET request under the specified prefix.
+     * @param prefix Path prefix of the route, eg {@code /chatstats}.
+     * @param handler Handler of the route.
+     */
+    public void addRoute(final String prefix, final JsonRouteHandler handler) {
+        server.createContext(prefix, exchange -> handle(exchange, prefix, handler));
+    }
+
+    /**
+     * Starts serving requests.
+     */
+    public void start() {
+        server.start();
+        log.info("HTTP API listening on {}", server.getAddress());
+    }
+
+    /**
+     * Stops serving requests, waiting up to a second for in-flight requests to finish.
+     */
+    public void stop() {
+        server.stop(1);
+        executor.shutdownNow();
+    }
+
+    private void handle(final HttpExchange exchange, final String prefix, final JsonRouteHandler handler)
+        throws IOException {
+        try {
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                respond(exchange, 405, "{\"error\":\"Method not allowed\"}");
+                return;
+            }
+            final String path = exchange.getRequestURI().getPath().substring(prefix.length()).replaceAll("^/+", "");
+            final Optional<?> response = handler.handle(path, parseQuery(exchange.getRequestURI().getRawQuery()));
+            if (response.isPresent()) {
+                respond(exchange, 200, ModelParser.GSON.toJson(response.get()));
+            } else {
+                respond(exchange, 404, "{\"error\":\"Not found\"}");
+            }
+        } catch (final RuntimeException e) {
+            log.error("Error handling HTTP API request. uri={}", exchange.getRequestURI(), e);
+            respond(exchange, 500, "{\"error\":\"Internal error\"}");
+        }
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final String body) throws IOException {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> parseQuery(final String rawQuery) {
+        final Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (final String pair : rawQuery.split("&")) {
+            final int equals = pair.indexOf('=');
+            final String key = (equals < 0) ? pair : pair.substring(0, equals);
+            final String value = (equals < 0) ? "" : pair.substring(equals + 1);
+            query.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+}
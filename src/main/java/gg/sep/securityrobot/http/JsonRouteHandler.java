@@ -0,0 +1,19 @@
+package gg.sep.securityrobot.http;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Handler of a single JSON route on the {@link HttpApiServer}.
+ */
+@FunctionalInterface
+public interface JsonRouteHandler {
+
+    /**
+     * Handles a GET request to the route.
+     * @param path Remainder of the request path after the route's prefix, without leading slashes.
+     * @param query Decoded query string parameters of the request.
+     * @return Object which will be serialized as the JSON response, or empty for a 404 response.
+     */
+    Optional<?> handle(String path, Map<String, String> query);
+}
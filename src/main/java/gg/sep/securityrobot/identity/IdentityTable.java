@@ -0,0 +1,293 @@
+package gg.sep.securityrobot.identity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.log4j.Log4j2;
+
+import gg.sep.securityrobot.config.models.IdentityConfig;
+import gg.sep.securityrobot.models.twitch.tmi.TwitchTags;
+import gg.sep.securityrobot.utils.collections.LongIntHashMap;
+
+/**
+ * Table of canonical channel and user identities, keyed by their Twitch numeric IDs.
+ *
+ * Messages from a user who is already in the table resolve to the same {@link TwitchUserIdentity} instance without
+ * allocating, so the user's ID, login, display name and mention strings are shared between all of their messages.
+ * A new identity only replaces the existing one (keeping its ordinal) when the user's login or display name changes.
+ * Users who have not been seen for a configured amount of time are evicted by a periodic sweep.
+ */
+@Log4j2
+public class IdentityTable {
+
+    private static final int NO_ORDINAL = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final IdentityConfig config;
+    private final Map<String, TwitchChannelIdentity> channels = new ConcurrentHashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private ScheduledExecutorService scheduler;
+
+    // guarded by lock
+    private final LongIntHashMap ordinalsByUser = new LongIntHashMap(INITIAL_CAPACITY);
+    private TwitchUserIdentity[] usersByOrdinal = new TwitchUserIdentity[INITIAL_CAPACITY];
+    private int[] freeOrdinals = new int[0];
+    private int freeCount;
+    private int nextOrdinal;
+
+    /**
+     * Create a new, empty identity table.
+     * @param config Identity table configuration.
+     */
+    public IdentityTable(final IdentityConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Resolves the canonical identity of a channel.
+     * @param channelName Name of the channel, in either IRC or non-IRC form.
+     * @param roomId Numeric ID of the channel, or a negative number if it is not known.
+     * @return Canonical identity of the channel.
+     */
+    public TwitchChannelIdentity resolveChannel(final String channelName, final long roomId) {
+        final TwitchChannelIdentity existing = channels.get(channelName);
+        if (existing != null && (roomId < 0 || existing.getRoomId() == roomId)) {
+            return existing;
+        }
+        final TwitchChannelIdentity identity = new TwitchChannelIdentity(channelName, roomId < 0 && existing != null
+            ? existing.getRoomId() : roomId);
+        channels.put(channelName, identity);
+        return identity;
+    }
+
+    /**
+     * Resolves the canonical identity of the author of a message.
+     * @param userId Numeric ID of the user.
+     * @param login Login (IRC nick) of the user.
+     * @param tags Tags of the message, which hold the user's display name.
+     * @return Canonical identity of the user.
+     */
+    public TwitchUserIdentity resolveUser(final long userId, final String login, final TwitchTags tags) {
+        final long now = System.currentTimeMillis();
+        lock.readLock().lock();
+        try {
+            final TwitchUserIdentity existing = userByIdLocked(userId);
+            if (existing != null && login != null && login.equalsIgnoreCase(existing.getLogin())
+                && tags.displayNameEquals(existing.getDisplayName())) {
+                existing.touch(now);
+                return existing;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        lock.writeLock().lock();
+        try {
+            int ordinal = ordinalsByUser.get(userId, NO_ORDINAL);
+            if (ordinal == NO_ORDINAL) {
+                ordinal = allocateOrdinal();
+                ordinalsByUser.put(userId, ordinal);
+            }
+            final TwitchUserIdentity identity = new TwitchUserIdentity(userId, login, tags.getDisplayName(), ordinal);
+            usersByOrdinal[ordinal] = identity;
+            return identity;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the identity of a user, if they are in the table.
+     * @param userId Numeric ID of the user.
+     * @return Identity of the user, or empty if they are not in the table.
+     */
+    public Optional<TwitchUserIdentity> getUser(final long userId) {
+        lock.readLock().lock();
+        try {
+            return Optional.ofNullable(userByIdLocked(userId));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the identity of the user currently holding an ordinal.
+     * @param ordinal Ordinal of the user.
+     * @return Identity of the user, or empty if no user holds the ordinal.
+     */
+    public Optional<TwitchUserIdentity> getUserByOrdinal(final int ordinal) {
+        lock.readLock().lock();
+        try {
+            return (ordinal < 0 || ordinal >= nextOrdinal)
+                ? Optional.empty() : Optional.ofNullable(usersByOrdinal[ordinal]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the identity of a channel, if any message has been seen in it.
+     * @param channelName Name of the channel, in either IRC or non-IRC form.
+     * @return Identity of the channel, or empty if it is not in the table.
+     */
+    public Optional<TwitchChannelIdentity> getChannel(final String channelName) {
+        final TwitchChannelIdentity identity = channels.get(channelName);
+        return identity != null ? Optional.of(identity) : channels.values().stream()
+            .filter(c -> c.getCleanName().equals(channelName) || c.getIrcName().equals(channelName))
+            .findFirst();
+    }
+
+    /**
+     * Removes a channel from the table, e.g. after leaving it.
+     * @param channelName Name of the channel, in either IRC or non-IRC form.
+     */
+    public void removeChannel(final String channelName) {
+        getChannel(channelName).ifPresent(identity -> channels.values().remove(identity));
+    }
+
+    /**
+     * Adds a user to the table without a message, eg from a warm restart snapshot. Users who are already in the
+     * table are left as they are.
+     * @param userId Numeric ID of the user.
+     * @param login Login (IRC nick) of the user.
+     * @param displayName Display name of the user.
+     * @param lastSeenMillis Time the user was last seen, which idle eviction is based on.
+     */
+    public void restoreUser(final long userId, final String login, final String displayName,
+                            final long lastSeenMillis) {
+        lock.writeLock().lock();
+        try {
+            if (ordinalsByUser.get(userId, NO_ORDINAL) != NO_ORDINAL) {
+                return;
+            }
+            final int ordinal = allocateOrdinal();
+            ordinalsByUser.put(userId, ordinal);
+            usersByOrdinal[ordinal] = new TwitchUserIdentity(userId, login, displayName, ordinal, lastSeenMillis);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns every user currently in the table.
+     * @return Identities of the users, in ordinal order.
+     */
+    public List<TwitchUserIdentity> getUsers() {
+        lock.readLock().lock();
+        try {
+            final List<TwitchUserIdentity> users = new ArrayList<>(ordinalsByUser.size());
+            for (int ordinal = 0; ordinal < nextOrdinal; ordinal++) {
+                if (usersByOrdinal[ordinal] != null) {
+                    users.add(usersByOrdinal[ordinal]);
+                }
+            }
+            return users;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns every channel currently in the table.
+     * @return Identities of the channels.
+     */
+    public Collection<TwitchChannelIdentity> getChannels() {
+        return new ArrayList<>(channels.values());
+    }
+
+    /**
+     * Number of users currently in the table.
+     * @return Number of users.
+     */
+    public int userCount() {
+        lock.readLock().lock();
+        try {
+            return ordinalsByUser.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Starts periodically evicting users who have not been seen for the configured idle time.
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("identity-table-%d").setDaemon(true).build());
+        scheduler.scheduleWithFixedDelay(this::evictIdle,
+            config.getSweepIntervalSeconds(), config.getSweepIntervalSeconds(), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops evicting idle users.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Evicts all users who have not been seen for the configured idle time.
+     * @return Number of evicted users.
+     */
+    public int evictIdle() {
+        final long cutoff = System.currentTimeMillis() - config.getMaxIdleSeconds() * 1000L;
+        int evicted = 0;
+        lock.writeLock().lock();
+        try {
+            for (int ordinal = 0; ordinal < nextOrdinal; ordinal++) {
+                final TwitchUserIdentity identity = usersByOrdinal[ordinal];
+                if (identity != null && identity.lastSeenMillis() < cutoff) {
+                    ordinalsByUser.remove(identity.getUserId());
+                    usersByOrdinal[ordinal] = null;
+                    releaseOrdinal(ordinal);
+                    evicted++;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (evicted > 0) {
+            log.debug("Evicted idle identities. evicted={}, remaining={}", evicted, userCount());
+        }
+        return evicted;
+    }
+
+    private TwitchUserIdentity userByIdLocked(final long userId) {
+        final int ordinal = ordinalsByUser.get(userId, NO_ORDINAL);
+        return ordinal == NO_ORDINAL ? null : usersByOrdinal[ordinal];
+    }
+
+    private int allocateOrdinal() {
+        if (freeCount > 0) {
+            return freeOrdinals[--freeCount];
+        }
+        if (nextOrdinal == usersByOrdinal.length) {
+            usersByOrdinal = Arrays.copyOf(usersByOrdinal, usersByOrdinal.length * 2);
+        }
+        return nextOrdinal++;
+    }
+
+    private void releaseOrdinal(final int ordinal) {
+        if (freeCount == freeOrdinals.length) {
+            freeOrdinals = Arrays.copyOf(freeOrdinals, Math.max(16, freeOrdinals.length * 2));
+        }
+        freeOrdinals[freeCount++] = ordinal;
+    }
+}
@@ -0,0 +1,23 @@
+package gg.sep.securityrobot.identity;
+
+import lombok.Getter;
+
+import gg.sep.securityrobot.utils.IRCUtils;
+
+/**
+ * Canonical identity of a Twitch channel, shared by every message sent in the channel.
+ */
+@Getter
+public final class TwitchChannelIdentity {
+    private final String ircName;
+    private final String cleanName;
+    private final long roomId;
+    private final String roomIdString;
+
+    TwitchChannelIdentity(final String channelName, final long roomId) {
+        this.cleanName = IRCUtils.stripIrcChannel(channelName);
+        this.ircName = IRCUtils.ircify(this.cleanName);
+        this.roomId = roomId;
+        this.roomIdString = roomId < 0 ? null : Long.toString(roomId);
+    }
+}
@@ -0,0 +1,49 @@
+package gg.sep.securityrobot.identity;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * Canonical identity of a Twitch user, shared by every message the user sends while they are in the identity table.
+ *
+ * Holds the user's precomputed display forms, so that messages do not need to build them again. The ordinal is a
+ * small, dense number which is unique among the users currently in the table, for use as an index into arrays and
+ * bit sets. Ordinals of evicted users are reused.
+ */
+@Getter
+public final class TwitchUserIdentity {
+    private final long userId;
+    private final String userIdString;
+    private final String login;
+    private final String displayName;
+    private final String mention;
+    private final int ordinal;
+    @Getter(AccessLevel.NONE) private volatile long lastSeenMillis;
+
+    TwitchUserIdentity(final long userId, final String login, final String displayName, final int ordinal) {
+        this(userId, login, displayName, ordinal, System.currentTimeMillis());
+    }
+
+    TwitchUserIdentity(final long userId, final String login, final String displayName, final int ordinal,
+                       final long lastSeenMillis) {
+        this.userId = userId;
+        this.userIdString = Long.toString(userId);
+        this.login = login;
+        this.displayName = displayName;
+        this.mention = "@" + this.displayName;
+        this.ordinal = ordinal;
+        this.lastSeenMillis = lastSeenMillis;
+    }
+
+    void touch(final long nowMillis) {
+        this.lastSeenMillis = nowMillis;
+    }
+
+    /**
+     * Time the user was last seen, eg for a warm restart snapshot.
+     * @return Epoch millis of the user's last message.
+     */
+    public long lastSeenMillis() {
+        return this.lastSeenMillis;
+    }
+}
@@ -0,0 +1,30 @@
+package gg.sep.securityrobot.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import lombok.Setter;
+
+/**
+ * Flight Recorder event for chat log documents being written to MongoDB.
+ */
+@Name("gg.sep.securityrobot.ChatLogFlush")
+@Label("Chat Log Flush")
+@Category({"SecurityRobot", "Storage"})
+@Description("Chat log documents were written to MongoDB.")
+@StackTrace(false)
+@Setter
+public class ChatLogFlushEvent extends Event {
+
+    @Label("Store")
+    private String store;
+
+    @Label("Documents")
+    private int documents;
+
+    @Label("Succeeded")
+    private boolean succeeded;
+}
@@ -0,0 +1,35 @@
+package gg.sep.securityrobot.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import lombok.Setter;
+
+/**
+ * Flight Recorder event for a command handler running. For asynchronous commands the duration of the event lasts
+ * until the returned stage completes, and the event is committed by the thread which completed it.
+ */
+@Name("gg.sep.securityrobot.CommandExecution")
+@Label("Command Execution")
+@Category({"SecurityRobot", "Commands"})
+@Description("A command handler ran.")
+@StackTrace(false)
+@Setter
+public class CommandExecutionEvent extends Event {
+
+    @Label("Channel")
+    private String channel;
+
+    @Label("Command")
+    private String command;
+
+    @Label("Asynchronous")
+    private boolean async;
+
+    @Label("Outcome")
+    @Description("How the command finished: completed, failed, timed out, cancelled or rejected.")
+    private String outcome;
+}
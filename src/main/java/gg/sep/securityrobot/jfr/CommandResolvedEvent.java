@@ -0,0 +1,29 @@
+package gg.sep.securityrobot.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import lombok.Setter;
+
+/**
+ * Flight Recorder event for a prefixed message being looked up in the command triggers. The duration of the event
+ * is the lookup time.
+ */
+@Name("gg.sep.securityrobot.CommandResolved")
+@Label("Command Resolved")
+@Category({"SecurityRobot", "Commands"})
+@Description("A prefixed message was looked up in the command triggers.")
+@StackTrace(false)
+@Setter
+public class CommandResolvedEvent extends Event {
+
+    @Label("Channel")
+    private String channel;
+
+    @Label("Command")
+    @Description("Name of the command which was found, or null if the message did not match a command.")
+    private String command;
+}
@@ -0,0 +1,93 @@
+package gg.sep.securityrobot.jfr;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import lombok.extern.log4j.Log4j2;
+
+import gg.sep.securityrobot.config.models.JfrConfig;
+
+/**
+ * Continuous Java Flight Recorder recording of the bot, using the bundled {@value #SETTINGS_RESOURCE} settings.
+ *
+ * The recording keeps a rolling window of the last {@link JfrConfig#getMaxAgeMinutes()} minutes on disk, and is
+ * dumped to the configured directory when it is stopped or the JVM exits. The same settings can be used without
+ * enabling this, eg {@code -XX:StartFlightRecording=settings=/path/to/securityrobot.jfc}, or from JDK Mission
+ * Control.
+ */
+@Log4j2
+public class FlightRecording {
+
+    private static final String SETTINGS_RESOURCE = "/jfr/securityrobot.jfc";
+    private static final DateTimeFormatter FILE_DTF = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final JfrConfig config;
+    private Recording recording;
+
+    /**
+     * Create a new flight recording, which is not started yet.
+     * @param config Flight recorder configuration.
+     */
+    public FlightRecording(final JfrConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Starts recording, if it is enabled in the configuration.
+     *
+     * Failing to start the recording is logged, but does not stop the bot.
+     */
+    public synchronized void start() {
+        if (recording != null || !config.isEnabled()) {
+            return;
+        }
+        try (InputStream settings = FlightRecording.class.getResourceAsStream(SETTINGS_RESOURCE);
+             Reader reader = new InputStreamReader(settings, StandardCharsets.UTF_8)) {
+            final Path directory = Paths.get(config.getDirectory());
+            Files.createDirectories(directory);
+            final Recording newRecording = new Recording(Configuration.create(reader));
+            newRecording.setName("securityrobot");
+            newRecording.setToDisk(true);
+            newRecording.setMaxAge(Duration.ofMinutes(config.getMaxAgeMinutes()));
+            newRecording.setMaxSize(config.getMaxSizeMb() * 1024L * 1024L);
+            newRecording.setDumpOnExit(true);
+            newRecording.setDestination(directory.resolve(
+                String.format("securityrobot-%s.jfr", FILE_DTF.format(LocalDateTime.now()))));
+            newRecording.start();
+            recording = newRecording;
+            log.info("Started flight recording. destination={}", newRecording.getDestination());
+        } catch (final IOException | ParseException | RuntimeException e) {
+            log.error("Unable to start the flight recording.", e);
+        }
+    }
+
+    /**
+     * Stops recording, and writes the recording to its destination.
+     */
+    public synchronized void stop() {
+        if (recording == null) {
+            return;
+        }
+        try {
+            recording.stop();
+            log.info("Wrote flight recording. destination={}", recording.getDestination());
+        } catch (final RuntimeException e) {
+            log.error("Unable to write the flight recording.", e);
+        } finally {
+            recording.close();
+            recording = null;
+        }
+    }
+}
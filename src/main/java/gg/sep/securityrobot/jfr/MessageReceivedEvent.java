@@ -0,0 +1,29 @@
+package gg.sep.securityrobot.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import lombok.Setter;
+
+/**
+ * Flight Recorder event for a channel message being received and parsed. The duration of the event is the time
+ * taken to parse the message's tags and resolve its channel and author identities.
+ */
+@Name("gg.sep.securityrobot.MessageReceived")
+@Label("Message Received")
+@Category({"SecurityRobot", "Ingest"})
+@Description("A channel message was received and its tags were parsed.")
+@StackTrace(false)
+@Setter
+public class MessageReceivedEvent extends Event {
+
+    @Label("Channel")
+    private String channel;
+
+    @Label("Consumers")
+    @Description("Number of ingest consumers the message was handed to.")
+    private int consumers;
+}
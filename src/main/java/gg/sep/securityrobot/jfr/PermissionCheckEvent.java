@@ -0,0 +1,34 @@
+package gg.sep.securityrobot.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import lombok.Setter;
+
+/**
+ * Flight Recorder event for checking whether a chatter may run a command.
+ */
+@Name("gg.sep.securityrobot.PermissionCheck")
+@Label("Permission Check")
+@Category({"SecurityRobot", "Commands"})
+@Description("The roles and cooldown of a command were checked for a chatter.")
+@StackTrace(false)
+@Setter
+public class PermissionCheckEvent extends Event {
+
+    @Label("Channel")
+    private String channel;
+
+    @Label("Command")
+    private String command;
+
+    @Label("Allowed")
+    private boolean allowed;
+
+    @Label("Follower API Call")
+    @Description("Whether the check had to ask the Twitch Helix API if the chatter follows the channel.")
+    private boolean followerApiCall;
+}
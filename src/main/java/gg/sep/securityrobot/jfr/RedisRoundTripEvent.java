@@ -0,0 +1,24 @@
+package gg.sep.securityrobot.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import lombok.Setter;
+
+/**
+ * Flight Recorder event for a synchronous round trip to Redis made while handling chat or commands.
+ */
+@Name("gg.sep.securityrobot.RedisRoundTrip")
+@Label("Redis Round Trip")
+@Category({"SecurityRobot", "Storage"})
+@Description("A synchronous round trip to Redis.")
+@StackTrace(false)
+@Setter
+public class RedisRoundTripEvent extends Event {
+
+    @Label("Operation")
+    private String operation;
+}
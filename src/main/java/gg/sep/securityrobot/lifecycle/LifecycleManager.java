@@ -0,0 +1,147 @@
+package gg.sep.securityrobot.lifecycle;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.LogManager;
+
+/**
+ * Shuts the bot down in order, once, whether it is asked to by a command, a failed startup, or a signal.
+ *
+ * Shutdown steps run in the order they were added, so intake is stopped first, then queued and running work is
+ * drained, then write-behind state is flushed, and finally connections are closed. Draining steps are given a shared
+ * deadline, after which anything left is dropped and counted, so a stuck queue can't hold up the flushes behind it.
+ * Flushing and closing steps always run, even once the deadline has passed. A step which fails is logged and skipped.
+ *
+ * SIGTERM and SIGINT run the JVM's shutdown hooks, so {@link #installShutdownHook()} covers signals. Other
+ * shutdowns, eg by a command, do not end the JVM themselves: the main thread waits in {@link #awaitShutdown()}, and
+ * decides how the process exits from the report.
+ */
+@Log4j2
+public class LifecycleManager {
+
+    /**
+     * Work done by a shutdown step.
+     */
+    @FunctionalInterface
+    public interface ShutdownStep {
+
+        /**
+         * Runs the step.
+         * @param deadlineNanos {@link System#nanoTime()} by which any draining done by the step must be finished.
+         * @return Number of items (eg messages, events or commands) which were dropped by the step.
+         * @throws Exception If the step failed, which is logged but does not stop the following steps.
+         */
+        long run(long deadlineNanos) throws Exception;
+    }
+
+    private final long drainTimeoutNanos;
+    private final Map<String, ShutdownStep> steps = new LinkedHashMap<>();
+    private volatile String shutdownReason;
+    private ShutdownReport report; // guarded by this
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    /**
+     * Create a new lifecycle manager, with no shutdown steps.
+     * @param drainTimeoutSeconds Maximum time draining queues and running work can take during a shutdown.
+     */
+    public LifecycleManager(final int drainTimeoutSeconds) {
+        this.drainTimeoutNanos = TimeUnit.SECONDS.toNanos(drainTimeoutSeconds);
+    }
+
+    /**
+     * Adds a step to the end of the shutdown.
+     * @param name Name of the step, used in the shutdown report.
+     * @param step Work done by the step.
+     * @throws IllegalArgumentException If the name is already used.
+     */
+    public synchronized void step(final String name, final ShutdownStep step) {
+        if (steps.putIfAbsent(name, step) != null) {
+            throw new IllegalArgumentException("Duplicate shutdown step: " + name);
+        }
+    }
+
+    /**
+     * Adds a JVM shutdown hook, which shuts the bot down if it hasn't been already, and then stops logging.
+     */
+    public void installShutdownHook() {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            shutdown("JVM shutting down");
+            LogManager.shutdown();
+        }, "shutdown-hook"));
+    }
+
+    /**
+     * Returns whether the bot has been shut down, or is shutting down.
+     * @return <code>true</code> if a shutdown has started; <code>false</code> otherwise.
+     */
+    public boolean isShutdown() {
+        return shutdownReason != null;
+    }
+
+    /**
+     * Returns the reason the bot is shutting down, eg for steps which pass it on.
+     * @return Reason for shutting down, or null if no shutdown has started.
+     */
+    public String getShutdownReason() {
+        return shutdownReason;
+    }
+
+    /**
+     * Waits until the bot has been shut down, however the shutdown was started.
+     * @return Report of the shutdown.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public ShutdownReport awaitShutdown() throws InterruptedException {
+        finished.await();
+        synchronized (this) {
+            return report;
+        }
+    }
+
+    /**
+     * Runs every shutdown step in order. Only the first call shuts down; later calls wait for it to finish, and
+     * return its report.
+     * @param reason Reason for shutting down.
+     * @return Report of the shutdown.
+     */
+    public synchronized ShutdownReport shutdown(final String reason) {
+        if (report != null) {
+            return report;
+        }
+        shutdownReason = reason;
+        log.info("Shutting down. reason={}", reason);
+        final long started = System.nanoTime();
+        final long deadline = started + drainTimeoutNanos;
+        final Map<String, Long> dropped = new LinkedHashMap<>();
+        final List<String> failed = new ArrayList<>();
+        for (final Map.Entry<String, ShutdownStep> step : steps.entrySet()) {
+            final long stepStarted = System.nanoTime();
+            try {
+                final long stepDropped = step.getValue().run(deadline);
+                if (stepDropped > 0) {
+                    dropped.put(step.getKey(), stepDropped);
+                }
+            } catch (final Exception e) {
+                log.error("Shutdown step failed. step={}", step.getKey(), e);
+                failed.add(step.getKey());
+            }
+            log.debug("Shutdown step finished. step={}, millis={}", step.getKey(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - stepStarted));
+        }
+        final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        report = new ShutdownReport(reason, millis, dropped, failed);
+        if (report.isClean()) {
+            log.info("Shut down cleanly. millis={}", millis);
+        } else {
+            log.warn("Shut down. millis={}, dropped={}, failedSteps={}", millis, dropped, failed);
+        }
+        finished.countDown();
+        return report;
+    }
+}
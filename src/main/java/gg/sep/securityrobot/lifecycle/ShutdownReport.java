@@ -0,0 +1,27 @@
+package gg.sep.securityrobot.lifecycle;
+
+import java.util.List;
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Summary of a shutdown of the bot: how long it took, what was dropped, and which steps failed.
+ */
+@Getter
+@AllArgsConstructor
+public class ShutdownReport {
+    private final String reason;
+    private final long durationMillis;
+    private final Map<String, Long> dropped;
+    private final List<String> failedSteps;
+
+    /**
+     * Returns whether nothing was dropped, and every step of the shutdown succeeded.
+     * @return <code>true</code> if the shutdown was clean; <code>false</code> otherwise.
+     */
+    public boolean isClean() {
+        return failedSteps.isEmpty() && dropped.values().stream().allMatch(d -> d == 0);
+    }
+}
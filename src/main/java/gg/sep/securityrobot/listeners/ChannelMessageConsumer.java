@@ -0,0 +1,29 @@
+package gg.sep.securityrobot.listeners;
+
+import gg.sep.securityrobot.models.twitch.tmi.TwitchChannelMessage;
+
+/**
+ * Consumer of parsed Twitch channel messages, fed by the shared {@link IngestListener}.
+ *
+ * Consumers are invoked on the IRC event thread, so they should do as little work as possible. A consumer which
+ * only wants some channels says so in {@link #accepts(String)}, which is checked before the message is parsed.
+ */
+@FunctionalInterface
+public interface ChannelMessageConsumer {
+
+    /**
+     * Receives a single parsed channel message.
+     * @param message Parsed Twitch channel message.
+     */
+    void accept(TwitchChannelMessage message);
+
+    /**
+     * Decides from the raw channel name, before the message is parsed, whether the consumer wants a message.
+     * Messages which no consumer wants are not parsed at all.
+     * @param ircChannel Channel name in IRC form, as received, eg "#channel".
+     * @return <code>true</code> if {@link #accept(TwitchChannelMessage)} should receive the message.
+     */
+    default boolean accepts(final String ircChannel) {
+        return true;
+    }
+}
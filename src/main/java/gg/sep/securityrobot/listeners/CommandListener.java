@@ -1,19 +1,17 @@
 package gg.sep.securityrobot.listeners;
 
 import lombok.extern.log4j.Log4j2;
-import net.engio.mbassy.listener.Handler;
-import org.kitteh.irc.client.library.event.channel.ChannelMessageEvent;
 
 import gg.sep.securityrobot.SecurityRobot;
 import gg.sep.securityrobot.commands.CommandManager;
 import gg.sep.securityrobot.models.twitch.tmi.TwitchChannelMessage;
 
 /**
- * IRC Event listener for handling bot commands.
- * Listens to the {@link ChannelMessageEvent} event.
+ * Channel message consumer for handling bot commands.
+ * Fed by the shared {@link IngestListener}, so messages are not parsed again for commands.
  */
 @Log4j2
-public class CommandListener {
+public class CommandListener implements ChannelMessageConsumer {
 
     private SecurityRobot securityRobot;
 
@@ -26,17 +24,16 @@ public class CommandListener {
     }
 
     /**
-     * Receives all channel message events and determines whether the message has the bot's command prefix.
+     * Receives all parsed channel messages and determines whether the message has the bot's command prefix.
      *
      * If the message is prefixed, the message is sent over to the
      * {@link CommandManager#parseCommand(TwitchChannelMessage)} method to verify
      * and dispatch/invoke the command.
-     * @param event Raw Kitteh channel message event.
+     * @param message Parsed Twitch channel message.
      */
-    @Handler
-    public void commandTrigger(final ChannelMessageEvent event) {
-        final TwitchChannelMessage message = new TwitchChannelMessage(event, securityRobot);
-        System.out.println(message.getMessageTime());
+    @Override
+    public void accept(final TwitchChannelMessage message) {
+        log.trace("Channel message. channel={}, time={}", message.getCleanChannelName(), message.getMessageTime());
 
         if (message.getMessage().startsWith(getPrefix())) {
             securityRobot.getCommandManager().parseCommand(message);
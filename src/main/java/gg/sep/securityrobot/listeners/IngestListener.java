@@ -0,0 +1,92 @@
+package gg.sep.securityrobot.listeners;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import lombok.extern.log4j.Log4j2;
+import net.engio.mbassy.listener.Handler;
+import org.kitteh.irc.client.library.event.channel.ChannelMessageEvent;
+
+import gg.sep.securityrobot.SecurityRobot;
+import gg.sep.securityrobot.jfr.MessageReceivedEvent;
+import gg.sep.securityrobot.models.twitch.tmi.TwitchChannelMessage;
+
+/**
+ * IRC Event listener which is the shared ingest path for channel messages.
+ *
+ * Each {@link ChannelMessageEvent} is parsed into a {@link TwitchChannelMessage} once, and then handed to every
+ * registered {@link ChannelMessageConsumer} which {@link ChannelMessageConsumer#accepts(String) accepts} its
+ * channel. The consumers are asked on the raw channel name first, and a message none of them wants is not parsed.
+ */
+@Log4j2
+public class IngestListener {
+
+    private final SecurityRobot securityRobot;
+    private final List<ChannelMessageConsumer> consumers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Create a new Ingest Listener instance for the specified bot.
+     * @param securityRobot Bot instance which receives the messages.
+     */
+    public IngestListener(final SecurityRobot securityRobot) {
+        this.securityRobot = securityRobot;
+    }
+
+    /**
+     * Registers a consumer which will receive every parsed channel message.
+     * @param consumer Consumer of parsed channel messages.
+     */
+    public void addConsumer(final ChannelMessageConsumer consumer) {
+        consumers.add(consumer);
+    }
+
+    /**
+     * Receives all channel message events, parses them and dispatches them to the registered consumers.
+     *
+     * A failing consumer is logged and does not prevent the remaining consumers from receiving the message.
+     * Messages which arrive before the bot is ready are held back until it is.
+     * @param event Raw Kitteh channel message event.
+     */
+    @Handler
+    public void ingest(final ChannelMessageEvent event) {
+        securityRobot.getReadyGate().execute(() -> dispatch(event));
+    }
+
+    private void dispatch(final ChannelMessageEvent event) {
+        final String ircChannel = event.getChannel().getLowerCaseName();
+        if (!anyAccepts(ircChannel)) {
+            return;
+        }
+        final MessageReceivedEvent received = new MessageReceivedEvent();
+        received.begin();
+        final TwitchChannelMessage message = new TwitchChannelMessage(event, securityRobot);
+        received.end();
+        if (received.shouldCommit()) {
+            received.setChannel(message.getCleanChannelName());
+            received.setConsumers(consumers.size());
+            received.commit();
+        }
+        for (final ChannelMessageConsumer consumer : consumers) {
+            try {
+                if (consumer.accepts(ircChannel)) {
+                    consumer.accept(message);
+                }
+            } catch (final RuntimeException e) {
+                log.error("Error in channel message consumer. consumer={}", consumer.getClass().getSimpleName(), e);
+            }
+        }
+    }
+
+    private boolean anyAccepts(final String ircChannel) {
+        for (final ChannelMessageConsumer consumer : consumers) {
+            try {
+                if (consumer.accepts(ircChannel)) {
+                    return true;
+                }
+            } catch (final RuntimeException e) {
+                log.error("Error in channel message consumer. consumer={}", consumer.getClass().getSimpleName(), e);
+            }
+        }
+        return false;
+    }
+}
@@ -1,22 +1,40 @@
 package gg.sep.securityrobot.listeners;
 
+import lombok.extern.log4j.Log4j2;
 import net.engio.mbassy.listener.Handler;
 import org.kitteh.irc.client.library.event.channel.ChannelJoinEvent;
 import org.kitteh.irc.client.library.event.channel.ChannelPartEvent;
 
+import gg.sep.securityrobot.presence.PresenceTracker;
+
 /**
  * IRC Event listener for handling join/part IRC events.
- * Listens to {@link ChannelJoinEvent} and {@link ChannelPartEvent} events.
+ * Listens to {@link ChannelJoinEvent} and {@link ChannelPartEvent} events, and queues them in the
+ * {@link PresenceTracker}.
  */
+@Log4j2
 public class JoinPartListener {
 
+    private final PresenceTracker presenceTracker;
+
+    /**
+     * Create a new join/part listener.
+     * @param presenceTracker Presence tracker which join/part events are queued in.
+     */
+    public JoinPartListener(final PresenceTracker presenceTracker) {
+        this.presenceTracker = presenceTracker;
+    }
+
     /**
      * Receives all channel join events and handles them accordingly.
      * @param event Raw Kitteh channel join event.
      */
     @Handler
     public void joinEvent(final ChannelJoinEvent event) {
-        System.out.println(String.format("Channel Join: %s, User: %s", event.getChannel().getName(), event.getUser().getNick()));
+        log.trace("Channel join. channel={}, user={}", event.getChannel().getName(), event.getUser().getNick());
+        if (!isSelf(event.getClient().getNick(), event.getUser().getNick())) {
+            presenceTracker.join(event.getChannel().getName(), event.getUser().getNick());
+        }
     }
 
     /**
@@ -25,6 +43,15 @@ public class JoinPartListener {
      */
     @Handler
     public void leaveEvent(final ChannelPartEvent event) {
-        System.out.println(String.format("Channel Leave: %s, User: %s", event.getChannel().getName(), event.getUser().getNick()));
+        log.trace("Channel part. channel={}, user={}", event.getChannel().getName(), event.getUser().getNick());
+        if (isSelf(event.getClient().getNick(), event.getUser().getNick())) {
+            presenceTracker.clear(event.getChannel().getName());
+        } else {
+            presenceTracker.part(event.getChannel().getName(), event.getUser().getNick());
+        }
+    }
+
+    private static boolean isSelf(final String botNick, final String nick) {
+        return botNick.equalsIgnoreCase(nick);
     }
 }
@@ -1,44 +1,53 @@
 package gg.sep.securityrobot.listeners;
 
-import com.mongodb.client.MongoCollection;
-import com.mongodb.client.MongoDatabase;
-import net.engio.mbassy.listener.Handler;
-import org.bson.Document;
-import org.kitteh.irc.client.library.event.channel.ChannelMessageEvent;
+import java.util.function.Supplier;
 
-import gg.sep.securityrobot.SecurityRobot;
+import gg.sep.securityrobot.chatlogs.ChannelLogPolicies;
+import gg.sep.securityrobot.chatlogs.ChannelLogPolicy;
+import gg.sep.securityrobot.db.ChatLogStores;
 import gg.sep.securityrobot.models.twitch.tmi.TwitchChannelMessage;
 
 /**
- * IRC Event listener for handling logging of channel messages when appropriate.
- * Listens to {@link ChannelMessageEvent} events.
+ * Channel message consumer for handling logging of channel messages when appropriate.
+ * Fed by the shared {@link IngestListener}, so messages are not parsed again for logging, and channels whose policy
+ * does not log them are turned away on the raw channel name before the message is parsed.
  */
-public class LoggingListener {
+public class LoggingListener implements ChannelMessageConsumer {
 
-    private SecurityRobot securityRobot;
-    private MongoCollection<Document> logCollection;
+    private ChannelLogPolicies policies;
+    private Supplier<ChatLogStores> chatLogStores;
 
     /**
-     * Create an instance of the Logging Listener for the specified bot instance, and the database.
-     * @param securityRobot Bot instance which will use the listener.
-     * @param mongoDatabase Mongo Database object to be used for logging.
+     * Create an instance of the Logging Listener for the specified channel policies and chat log stores.
+     * @param policies Policies deciding which channels are logged, and how.
+     * @param chatLogStores Current chat log stores the messages are written to, which are replaced when the MongoDB
+     *                      configuration is reloaded.
      */
-    public LoggingListener(final SecurityRobot securityRobot, final MongoDatabase mongoDatabase) {
-        this.securityRobot = securityRobot;
-        logCollection = mongoDatabase.getCollection("security_robot_logs");
+    public LoggingListener(final ChannelLogPolicies policies, final Supplier<ChatLogStores> chatLogStores) {
+        this.policies = policies;
+        this.chatLogStores = chatLogStores;
     }
 
     /**
-     * Receives all channel message events and logs them in the database.
-     * @param event Raw Kitteh channel message event.
+     * Accepts messages of channels whose policy logs them, before applying the channel's sample rate.
+     * @param ircChannel Channel name in IRC form, as received, eg "#channel".
+     * @return <code>true</code> if the channel's messages may be logged; <code>false</code> otherwise.
      */
-    @Handler
-    public void logChannelMessage(final ChannelMessageEvent event) {
-        final TwitchChannelMessage message = new TwitchChannelMessage(event, this.securityRobot);
-
-        if (message.getCleanChannelName().equals(securityRobot.getConfig().getTwitch().getStreamChannel())) {
-            logCollection.insertOne(Document.parse(message.toLog().toJson()));
+    @Override
+    public boolean accepts(final String ircChannel) {
+        return policies.isLogged(ircChannel);
+    }
 
+    /**
+     * Receives parsed channel messages of logged channels and logs them in the database, applying the channel's
+     * sample rate.
+     * @param message Parsed Twitch channel message.
+     */
+    @Override
+    public void accept(final TwitchChannelMessage message) {
+        final ChannelLogPolicy policy = policies.sample(message.getChannel().getLowerCaseName());
+        if (policy != null) {
+            chatLogStores.get().get(policy.getCollection(), policy.getRetentionDays()).write(message.toLog());
         }
     }
 }
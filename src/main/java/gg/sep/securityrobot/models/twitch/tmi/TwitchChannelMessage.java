@@ -3,19 +3,18 @@ package gg.sep.securityrobot.models.twitch.tmi;
 import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
-import java.util.HashMap;
 import java.util.Map;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.extern.log4j.Log4j2;
 import org.kitteh.irc.client.library.element.Channel;
-import org.kitteh.irc.client.library.element.MessageTag;
 import org.kitteh.irc.client.library.element.ServerMessage;
 import org.kitteh.irc.client.library.event.channel.ChannelMessageEvent;
 
 import gg.sep.securityrobot.SecurityRobot;
+import gg.sep.securityrobot.identity.TwitchChannelIdentity;
 import gg.sep.securityrobot.models.db.TwitchChannelMessageLog;
-import gg.sep.securityrobot.utils.IRCUtils;
 
 /**
  * Represents a Twitch Channel message. Wraps and parses raw IRC message events.
@@ -28,32 +27,68 @@ public final class TwitchChannelMessage {
     private String id;
     private String message;
     private Channel channel;
+    private TwitchChannelIdentity channelIdentity;
     private String cleanChannelName;
     private String roomId;
     private TwitchMessageAuthor author;
     private ChannelMessageEvent event;
     private OffsetDateTime messageTime;
     private ServerMessage serverMessage;
-    private Map<String, String> tagMap;
+    private String emotes;
+    @Getter(AccessLevel.NONE) private TwitchTags tags;
+    @Getter(AccessLevel.NONE) private Map<String, String> tagMap;
 
     /**
      * Construct a channel message object from the specified raw Kitteh channel message event and bot.
+     *
+     * The tags of the message are parsed into the thread's shared {@link TwitchTags}, and the values the message and
+     * its author need are read from it straight away.
      * @param event Raw Kitteh channel message event.
      * @param securityRobot Bot instance which received the message.
      */
     public TwitchChannelMessage(final ChannelMessageEvent event, final SecurityRobot securityRobot) {
         this.securityRobot = securityRobot;
         this.serverMessage = event.getSource();
-        this.tagMap = parseTagMap(this.serverMessage);
-        this.id = this.tagMap.get("id");
-        this.roomId = this.tagMap.get("room-id");
-        this.messageTime = parseMessageTime(this.tagMap);
+        final TwitchTags sharedTags = TwitchTags.parseShared(rawLine());
+        this.id = sharedTags.getId();
+        this.messageTime = parseMessageTime(sharedTags);
+        this.emotes = sharedTags.getEmotes();
 
         this.event = event;
         this.message = event.getMessage();
         this.channel = event.getChannel();
-        this.cleanChannelName = cleanChannelName(this.channel);
-        this.author = new TwitchMessageAuthor(this);
+        this.channelIdentity = securityRobot.getIdentityTable()
+            .resolveChannel(this.channel.getLowerCaseName(), sharedTags.getRoomIdAsLong());
+        this.cleanChannelName = this.channelIdentity.getCleanName();
+        this.roomId = this.channelIdentity.getRoomIdString();
+        this.author = new TwitchMessageAuthor(this, sharedTags);
+    }
+
+    /**
+     * Returns the parsed tags of the message.
+     *
+     * The tags are parsed again from the raw line the first time they are requested, since those parsed when the
+     * message was received are reused for the next message.
+     * @return Parsed tags of the message.
+     */
+    public TwitchTags getTags() {
+        if (this.tags == null) {
+            this.tags = TwitchTags.parse(rawLine());
+        }
+        return this.tags;
+    }
+
+    /**
+     * Returns all tags of the message as a map of tag name to unescaped value.
+     *
+     * The map is only built the first time it is requested; prefer the typed accessors of {@link #getTags()}.
+     * @return Map of all tags of the message.
+     */
+    public Map<String, String> getTagMap() {
+        if (this.tagMap == null) {
+            this.tagMap = getTags().toMap();
+        }
+        return this.tagMap;
     }
 
     /**
@@ -73,28 +108,13 @@ public final class TwitchChannelMessage {
             .build();
     }
 
-    private static String cleanChannelName(final Channel channel) {
-        return IRCUtils.stripIrcChannel(channel.getLowerCaseName());
-    }
-
-    private static Map<String, String> parseTagMap(final ServerMessage message) {
-        final Map<String, String> parsedMap = new HashMap<>();
-
-        if (message == null) {
-            return parsedMap;
-        }
-
-        for (final MessageTag tag : message.getTags()) {
-            if (tag.getValue().isPresent()) {
-                parsedMap.put(tag.getName(), tag.getValue().get());
-            }
-        }
-        return parsedMap;
+    private String rawLine() {
+        return (this.serverMessage == null) ? null : this.serverMessage.getMessage();
     }
 
-    private static OffsetDateTime parseMessageTime(final Map<String, String> tagMap) {
-        final String tmiSentTs = tagMap.get("tmi-sent-ts");
-        final Instant instant = (tmiSentTs == null) ? Instant.now() : Instant.ofEpochMilli(Long.parseLong(tmiSentTs));
+    private static OffsetDateTime parseMessageTime(final TwitchTags tags) {
+        final long tmiSentTs = tags.getSentTimestamp(-1);
+        final Instant instant = (tmiSentTs < 0) ? Instant.now() : Instant.ofEpochMilli(tmiSentTs);
         return OffsetDateTime.ofInstant(instant, ZoneOffset.UTC);
     }
 }
@@ -1,6 +1,7 @@
 package gg.sep.securityrobot.models.twitch.tmi;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.kitteh.irc.client.library.element.Channel;
 import org.kitteh.irc.client.library.feature.twitch.messagetag.Badges;
@@ -76,6 +77,28 @@ public interface TwitchChannelUser {
      */
     boolean canRunCommandLevel(CommandLevel level);
 
+    /**
+     * Returns the mask of {@link gg.sep.securityrobot.commands.Role}s the user currently holds in the channel.
+     * @return Mask of the user's roles.
+     */
+    int getRoles();
+
+    /**
+     * Returns <code>true</code> if the user holds any of the roles in a mask.
+     * @param requiredRoles Mask of {@link gg.sep.securityrobot.commands.Role}s, any of which is sufficient.
+     * @return <code>true</code> if the user holds at least one of the roles;
+     *         <code>false</code> otherwise.
+     */
+    boolean hasAnyRole(int requiredRoles);
+
+    /**
+     * Returns whether the user holds any of the roles in a mask, without blocking the calling thread.
+     * @param requiredRoles Mask of {@link gg.sep.securityrobot.commands.Role}s, any of which is sufficient.
+     * @return Future which is <code>true</code> if the user holds at least one of the roles;
+     *         <code>false</code> otherwise.
+     */
+    CompletableFuture<Boolean> hasAnyRoleAsync(int requiredRoles);
+
     /**
      * Returns the command level associated with the user to determine if the user can run a command.
      * @return The command level associated with a user.
@@ -2,9 +2,10 @@ package gg.sep.securityrobot.models.twitch.tmi;
 
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.extern.log4j.Log4j2;
 import org.kitteh.irc.client.library.element.Channel;
@@ -14,6 +15,9 @@ import org.kitteh.irc.client.library.feature.twitch.messagetag.Badges;
 
 import gg.sep.securityrobot.SecurityRobot;
 import gg.sep.securityrobot.commands.CommandLevel;
+import gg.sep.securityrobot.commands.Role;
+import gg.sep.securityrobot.identity.TwitchUserIdentity;
+import gg.sep.securityrobot.permissions.FollowerCache;
 
 /**
  * Representation of the author of a Twitch Chat message.
@@ -25,6 +29,9 @@ import gg.sep.securityrobot.commands.CommandLevel;
 @Getter
 public final class TwitchMessageAuthor implements TwitchIRCUser, TwitchChannelUser {
 
+    private static final int SUB_TIER_2_BADGE = 2000;
+    private static final int SUB_TIER_3_BADGE = 3000;
+
     // IRC User fields
     private String userId;
     private String userName;
@@ -38,37 +45,62 @@ public final class TwitchMessageAuthor implements TwitchIRCUser, TwitchChannelUs
     private boolean isSub;
     private List<Badges.Badge> badges;
     private String color;
+    private int roles;
+    @Getter(AccessLevel.NONE) private boolean followerResolved;
+    private boolean followerApiCall;
 
+    private TwitchUserIdentity identity;
     private TwitchChannelMessage channelMessage;
     private SecurityRobot securityRobot;
 
     /**
      * Construct the Message Author from the specified Twitch Channel message.
      * @param channelMessage Twitch Channel Chat message.
+     * @param tags Parsed tags of the message, which are only read during construction.
      */
-    public TwitchMessageAuthor(final TwitchChannelMessage channelMessage) {
+    public TwitchMessageAuthor(final TwitchChannelMessage channelMessage, final TwitchTags tags) {
 
-        final Map<String, String> tagMap = channelMessage.getTagMap();
         this.channelMessage = channelMessage;
         this.securityRobot = channelMessage.getSecurityRobot();
-        this.userId = tagMap.get("user-id");
-        this.userName = channelMessage.getEvent().getActor().getNick();
-        this.displayName = tagMap.get("display-name");
-        this.mention = "@" + this.displayName;
-        this.isTurbo = "1".equals(tagMap.get("turbo"));
-        this.isMod = "1".equals(tagMap.get("mod"));
-        this.isSub = "1".equals(tagMap.get("subscriber"));
+        final String nick = channelMessage.getEvent().getActor().getNick();
+        final long numericUserId = tags.getUserIdAsLong();
+        if (numericUserId >= 0) {
+            this.identity = this.securityRobot.getIdentityTable().resolveUser(numericUserId, nick, tags);
+            this.userId = this.identity.getUserIdString();
+            this.userName = this.identity.getLogin();
+            this.displayName = this.identity.getDisplayName();
+            this.mention = this.identity.getMention();
+        } else {
+            this.userId = tags.getUserId();
+            this.userName = nick;
+            this.displayName = tags.getDisplayName();
+            this.mention = "@" + this.displayName;
+        }
+        this.isTurbo = tags.isTurbo();
+        this.isMod = tags.isMod();
+        this.isSub = tags.isSubscriber();
         this.channel = channelMessage.getChannel();
-        this.color = tagMap.get("color");  // TODO: Implement this as non-string;
+        this.color = tags.getColor();  // TODO: Implement this as non-string;
+        this.roles = parseRoles(tags);
+    }
 
-        this.badges = parseBadges(channelMessage.getServerMessage());
+    /**
+     * {@inheritDoc}
+     *
+     * Badges are only parsed the first time they are requested.
+     */
+    public List<Badges.Badge> getBadges() {
+        if (this.badges == null) {
+            this.badges = parseBadges(channelMessage.getServerMessage());
+        }
+        return this.badges;
     }
 
     /**
      * {@inheritDoc}
      */
     public boolean isBotOwner() {
-        return this.getUserId().equals(securityRobot.getConfig().getBotOwnerId());
+        return Role.BOT_OWNER.isIn(this.roles);
     }
 
     /**
@@ -78,20 +110,88 @@ public final class TwitchMessageAuthor implements TwitchIRCUser, TwitchChannelUs
      *         <code>false</code> otherwise.
      */
     public boolean isBroadcaster() {
-        return this.getChannelMessage().getRoomId().equals(this.getUserId());
+        return Role.BROADCASTER.isIn(this.roles);
     }
 
     /**
      * Returns <code>true</code> if the author is following the channel.
      *
-     * NOTE: This makes an API call to Twitch.
+     * NOTE: This may make an API call to Twitch the first time it is called for a message. The result is cached in
+     * the author's {@link Role#FOLLOWER} bit.
      *
      * @return <code>true</code> if the author is following the channel;
      *         <code>false</code> otherwise.
      */
     public boolean isFollower() {
-        return getSecurityRobot().getTwitchAPI().getHelix().getUsersAPI()
-            .getFollowsAPI().userIsFollowing(this.getUserId(), channelMessage.getRoomId());
+        if (!this.followerResolved) {
+            final FollowerCache followerCache = getSecurityRobot().getFollowerCache();
+            this.followerApiCall = !followerCache.isCached(this.getUserId(), channelMessage.getRoomId());
+            if (followerCache.isFollowing(this.getUserId(), channelMessage.getRoomId())) {
+                this.roles |= Role.FOLLOWER.getMask();
+            }
+            this.followerResolved = true;
+        }
+        return Role.FOLLOWER.isIn(this.roles);
+    }
+
+    /**
+     * Returns whether the author follows the channel, if it is already known, without calling the Twitch API.
+     * @return Whether the author follows the channel, or empty if it has not been looked up or cached yet.
+     */
+    public Optional<Boolean> getKnownFollower() {
+        if (Role.FOLLOWER.isIn(this.roles) || this.followerResolved) {
+            return Optional.of(Role.FOLLOWER.isIn(this.roles));
+        }
+        return getSecurityRobot().getFollowerCache().getCached(this.getUserId(), channelMessage.getRoomId());
+    }
+
+    /**
+     * Returns <code>true</code> if the author holds any of the roles in a mask.
+     *
+     * The follower bit is only looked up if the mask requires it and no other role in the mask is held.
+     * @param requiredRoles Mask of roles, any of which is sufficient.
+     * @return <code>true</code> if the author holds at least one of the roles; <code>false</code> otherwise.
+     */
+    public boolean hasAnyRole(final int requiredRoles) {
+        if ((this.roles & requiredRoles) != 0) {
+            return true;
+        }
+        return Role.FOLLOWER.isIn(requiredRoles) && isFollower();
+    }
+
+    /**
+     * Looks up whether the author holds any of the roles in a mask, without blocking the calling thread.
+     *
+     * The future is already complete unless the mask requires following, no other role in the mask is held, and
+     * the follow is not cached, in which case it completes once the Twitch API answers. As with
+     * {@link #isFollower()}, a failed lookup is treated as not following, and the result is kept in the author's
+     * {@link Role#FOLLOWER} bit.
+     * @param requiredRoles Mask of roles, any of which is sufficient.
+     * @return Future which is <code>true</code> if the author holds at least one of the roles; <code>false</code>
+     *         otherwise. It never fails.
+     */
+    public CompletableFuture<Boolean> hasAnyRoleAsync(final int requiredRoles) {
+        if ((this.roles & requiredRoles) != 0) {
+            return CompletableFuture.completedFuture(true);
+        }
+        if (!Role.FOLLOWER.isIn(requiredRoles) || this.followerResolved) {
+            return CompletableFuture.completedFuture(false);
+        }
+        final FollowerCache followerCache = getSecurityRobot().getFollowerCache();
+        this.followerApiCall = !followerCache.isCached(this.getUserId(), channelMessage.getRoomId());
+        return followerCache.isFollowingAsync(this.getUserId(), channelMessage.getRoomId())
+            .handle((following, error) -> {
+                if (error != null) {
+                    log.warn("Unable to check if user follows channel. userId={}, roomId={}, error={}",
+                        this.getUserId(), channelMessage.getRoomId(), error.toString());
+                }
+                final boolean follows = error == null && following;
+                if (follows) {
+                    this.roles |= Role.FOLLOWER.getMask();
+                }
+                this.followerResolved = true;
+                return follows;
+            });
     }
 
     /**
@@ -101,7 +201,7 @@ public final class TwitchMessageAuthor implements TwitchIRCUser, TwitchChannelUs
      *         <code>false</code> otherwise.
      */
     public boolean canRunCommandLevel(final CommandLevel level) {
-        return getCommandLevel() >= level.getLevel();
+        return hasAnyRole(level.getRequiredRoles());
     }
 
     /**
@@ -109,10 +209,46 @@ public final class TwitchMessageAuthor implements TwitchIRCUser, TwitchChannelUs
      * @return Double value associated with this user's command level.
      */
     public double getCommandLevel() {
-        return CommandLevel.getCommandLevel(this);
+        if (!hasAnyRole(CommandLevel.FOLLOWER.getRequiredRoles())) {
+            return Double.MIN_VALUE;
+        }
+        return CommandLevel.highestLevel(this.roles).getLevel();
+    }
+
+    private int parseRoles(final TwitchTags tags) {
+        int parsed = Role.VIEWER.getMask();
+        if (this.userId != null && this.userId.equals(securityRobot.getConfig().getBotOwnerId())) {
+            parsed |= Role.BOT_OWNER.getMask();
+        }
+        final long numericUserId = tags.getUserIdAsLong();
+        if ((numericUserId >= 0 && numericUserId == tags.getRoomIdAsLong()) || tags.badgeVersion("broadcaster") >= 0) {
+            parsed |= Role.BROADCASTER.getMask();
+        }
+        if (tags.isMod()) {
+            parsed |= Role.MOD.getMask();
+        }
+        if (tags.badgeVersion("vip") >= 0) {
+            parsed |= Role.VIP.getMask();
+        }
+        if (tags.badgeVersion("founder") >= 0) {
+            parsed |= Role.FOUNDER.getMask() | Role.SUBSCRIBER.getMask();
+        }
+        if (tags.isSubscriber()) {
+            parsed |= Role.SUBSCRIBER.getMask();
+            final int subscriberBadge = tags.badgeVersion("subscriber");
+            if (subscriberBadge >= SUB_TIER_3_BADGE) {
+                parsed |= Role.SUB_TIER_3.getMask();
+            } else if (subscriberBadge >= SUB_TIER_2_BADGE) {
+                parsed |= Role.SUB_TIER_2.getMask();
+            }
+        }
+        return parsed;
     }
 
     private List<Badges.Badge> parseBadges(final ServerMessage serverMessage) {
+        if (serverMessage == null) {
+            return Collections.emptyList();
+        }
         final Optional<MessageTag> badgeTag = serverMessage.getTag("badges");
 
         return badgeTag.map(messageTag -> ((Badges) messageTag).getBadges()).orElse(Collections.emptyList());
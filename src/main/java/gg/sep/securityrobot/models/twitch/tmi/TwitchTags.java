@@ -0,0 +1,426 @@
+package gg.sep.securityrobot.models.twitch.tmi;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * IRCv3 message tags of a raw Twitch IRC line, parsed without building a map of tags.
+ *
+ * Parsing only records the offsets of each tag's value within the raw line. Known Twitch tags are stored in fixed
+ * slots, and values are only decoded (including IRCv3 escapes) the first time they are accessed. Flag tags such as
+ * {@code mod} and {@code subscriber} are read directly from the line without creating any strings.
+ *
+ * Tags without a value are treated as absent. Instances are not thread safe. Those from {@link #parse(String)}
+ * belong to the line they were parsed from and can be kept. {@link #parseShared(String)} instead reuses one instance
+ * per thread, so parsing a line allocates nothing until a value is decoded; it is only valid until the thread's next
+ * call to {@link #parseShared(String)}, and must not be kept or handed to another thread.
+ */
+public final class TwitchTags {
+
+    private static final String[] KNOWN_TAGS = {
+        "id", "room-id", "user-id", "tmi-sent-ts", "mod", "subscriber", "turbo", "badges", "badge-info", "color",
+        "emotes", "display-name", "flags", "user-type", "bits"
+    };
+    private static final int ID = 0;
+    private static final int ROOM_ID = 1;
+    private static final int USER_ID = 2;
+    private static final int TMI_SENT_TS = 3;
+    private static final int MOD = 4;
+    private static final int SUBSCRIBER = 5;
+    private static final int TURBO = 6;
+    private static final int BADGES = 7;
+    private static final int COLOR = 9;
+    private static final int EMOTES = 10;
+    private static final int DISPLAY_NAME = 11;
+    private static final int BITS = 14;
+
+    private static final int KNOWN_SLOTS = KNOWN_TAGS.length * 2;
+    private static final ThreadLocal<TwitchTags> SHARED = ThreadLocal.withInitial(TwitchTags::new);
+
+    private String line;
+    // value start/end of each known tag, followed by name start/name end/value start/value end of other tags
+    private int[] offsets = new int[KNOWN_SLOTS + 4 * 8];
+    private int otherCount;
+    private String[] decoded;
+
+    /**
+     * Parses the tags of a raw IRC line into a new instance.
+     * @param rawLine Raw IRC line, including the leading tag section if there is one. May be null.
+     * @return Parsed tags of the line.
+     */
+    public static TwitchTags parse(final String rawLine) {
+        final TwitchTags tags = new TwitchTags();
+        tags.reset(rawLine);
+        return tags;
+    }
+
+    /**
+     * Parses the tags of a raw IRC line into the calling thread's shared instance.
+     *
+     * The returned tags are overwritten by the thread's next call, so read the values needed from them straight away.
+     * @param rawLine Raw IRC line, including the leading tag section if there is one. May be null.
+     * @return Parsed tags of the line, valid until the next call on the same thread.
+     */
+    public static TwitchTags parseShared(final String rawLine) {
+        final TwitchTags tags = SHARED.get();
+        tags.reset(rawLine);
+        return tags;
+    }
+
+    private TwitchTags() {
+    }
+
+    private void reset(final String rawLine) {
+        this.line = (rawLine == null) ? "" : rawLine;
+        Arrays.fill(offsets, 0, KNOWN_SLOTS, -1);
+        otherCount = 0;
+        if (decoded != null) {
+            Arrays.fill(decoded, null);
+        }
+        if (line.isEmpty() || line.charAt(0) != '@') {
+            return;
+        }
+
+        int end = line.indexOf(' ');
+        if (end < 0) {
+            end = line.length();
+        }
+        int start = 1;
+        while (start < end) {
+            int tagEnd = line.indexOf(';', start);
+            if (tagEnd < 0 || tagEnd > end) {
+                tagEnd = end;
+            }
+            int equals = line.indexOf('=', start);
+            if (equals < 0 || equals > tagEnd) {
+                equals = tagEnd;
+            }
+            if (equals + 1 < tagEnd) {
+                addTag(start, equals, equals + 1, tagEnd);
+            }
+            start = tagEnd + 1;
+        }
+    }
+
+    /**
+     * Unique ID of the message, from the {@code id} tag.
+     * @return ID of the message, or null if the tag is absent.
+     */
+    public String getId() {
+        return known(ID);
+    }
+
+    /**
+     * ID of the channel the message was sent in, from the {@code room-id} tag.
+     * @return ID of the channel, or null if the tag is absent.
+     */
+    public String getRoomId() {
+        return known(ROOM_ID);
+    }
+
+    /**
+     * ID of the user who sent the message, from the {@code user-id} tag.
+     * @return ID of the user, or null if the tag is absent.
+     */
+    public String getUserId() {
+        return known(USER_ID);
+    }
+
+    /**
+     * Numeric ID of the channel the message was sent in, parsed without creating a string.
+     * @return ID of the channel, or -1 if the tag is absent or not a number.
+     */
+    public long getRoomIdAsLong() {
+        return knownLong(ROOM_ID, -1);
+    }
+
+    /**
+     * Numeric ID of the user who sent the message, parsed without creating a string.
+     * @return ID of the user, or -1 if the tag is absent or not a number.
+     */
+    public long getUserIdAsLong() {
+        return knownLong(USER_ID, -1);
+    }
+
+    /**
+     * Returns <code>true</code> if the {@code display-name} tag equals a display name, without creating a string.
+     *
+     * An absent or empty tag matches a null display name.
+     * @param displayName Display name to compare the tag against.
+     * @return <code>true</code> if the tag equals the display name; <code>false</code> otherwise.
+     */
+    public boolean displayNameEquals(final String displayName) {
+        final int start = offsets[DISPLAY_NAME * 2];
+        if (start < 0 || displayName == null) {
+            return start < 0 && displayName == null;
+        }
+        final int length = offsets[DISPLAY_NAME * 2 + 1] - start;
+        final int escape = line.indexOf('\\', start);
+        if (escape >= 0 && escape < start + length) {
+            return displayName.equals(getDisplayName());
+        }
+        return length == displayName.length() && line.regionMatches(start, displayName, 0, length);
+    }
+
+    /**
+     * Display name of the user who sent the message, from the {@code display-name} tag.
+     * @return Display name of the user, or null if the tag is absent.
+     */
+    public String getDisplayName() {
+        return known(DISPLAY_NAME);
+    }
+
+    /**
+     * Chat color of the user who sent the message, from the {@code color} tag.
+     * @return Hex color of the user, or null if the tag is absent.
+     */
+    public String getColor() {
+        return known(COLOR);
+    }
+
+    /**
+     * Raw emote positions of the message, from the {@code emotes} tag.
+     * @return Raw emotes tag value, or null if the tag is absent.
+     */
+    public String getEmotes() {
+        return known(EMOTES);
+    }
+
+    /**
+     * Raw badges of the user who sent the message, from the {@code badges} tag.
+     * @return Raw badges tag value, or null if the tag is absent.
+     */
+    public String getBadges() {
+        return known(BADGES);
+    }
+
+    /**
+     * Version of a badge in the {@code badges} tag, read without creating strings.
+     *
+     * For the subscriber badge, versions of 2000 and 3000 and above are tier 2 and tier 3 subscriptions.
+     * @param badge Name of the badge, eg "vip" or "subscriber".
+     * @return Numeric version of the badge, 0 if its version is not a number, or -1 if the user does not have it.
+     */
+    public int badgeVersion(final String badge) {
+        final int start = offsets[BADGES * 2];
+        if (start < 0) {
+            return -1;
+        }
+        final int end = offsets[BADGES * 2 + 1];
+        int position = start;
+        while (position < end) {
+            int badgeEnd = line.indexOf(',', position);
+            if (badgeEnd < 0 || badgeEnd > end) {
+                badgeEnd = end;
+            }
+            final int slash = line.indexOf('/', position);
+            final int nameEnd = (slash < 0 || slash > badgeEnd) ? badgeEnd : slash;
+            if (nameEnd - position == badge.length() && line.regionMatches(position, badge, 0, badge.length())) {
+                int version = 0;
+                for (int i = nameEnd + 1; i < badgeEnd; i++) {
+                    final char c = line.charAt(i);
+                    if (c < '0' || c > '9' || i - nameEnd > 9) {
+                        return 0;
+                    }
+                    version = version * 10 + (c - '0');
+                }
+                return version;
+            }
+            position = badgeEnd + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Number of bits cheered with the message, from the {@code bits} tag.
+     * @return Number of bits cheered, or 0 if the tag is absent.
+     */
+    public long getBits() {
+        return knownLong(BITS, 0);
+    }
+
+    /**
+     * Time the message was sent by the Twitch servers, from the {@code tmi-sent-ts} tag.
+     * @param missing Value to return if the tag is absent or not a number.
+     * @return Epoch milliseconds at which the message was sent.
+     */
+    public long getSentTimestamp(final long missing) {
+        return knownLong(TMI_SENT_TS, missing);
+    }
+
+    /**
+     * Returns <code>true</code> if the {@code mod} tag is set to 1.
+     * @return <code>true</code> if the user is a moderator of the channel; <code>false</code> otherwise.
+     */
+    public boolean isMod() {
+        return knownFlag(MOD);
+    }
+
+    /**
+     * Returns <code>true</code> if the {@code subscriber} tag is set to 1.
+     * @return <code>true</code> if the user is subscribed to the channel; <code>false</code> otherwise.
+     */
+    public boolean isSubscriber() {
+        return knownFlag(SUBSCRIBER);
+    }
+
+    /**
+     * Returns <code>true</code> if the {@code turbo} tag is set to 1.
+     * @return <code>true</code> if the user has Twitch Turbo; <code>false</code> otherwise.
+     */
+    public boolean isTurbo() {
+        return knownFlag(TURBO);
+    }
+
+    /**
+     * Returns the unescaped value of any tag.
+     * @param name Name of the tag.
+     * @return Unescaped value of the tag, or null if the tag is absent.
+     */
+    public String get(final String name) {
+        final int known = knownIndex(name, 0, name.length());
+        if (known >= 0) {
+            return known(known);
+        }
+        for (int i = 0; i < otherCount; i++) {
+            final int base = KNOWN_SLOTS + i * 4;
+            final int nameLength = offsets[base + 1] - offsets[base];
+            if (nameLength == name.length() && line.regionMatches(offsets[base], name, 0, nameLength)) {
+                return unescape(offsets[base + 2], offsets[base + 3]);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Number of tags with a value on the line.
+     * @return Number of tags.
+     */
+    public int size() {
+        int size = otherCount;
+        for (int i = 0; i < KNOWN_TAGS.length; i++) {
+            size += (offsets[i * 2] >= 0) ? 1 : 0;
+        }
+        return size;
+    }
+
+    /**
+     * Copies all tags with a value into a new map of tag name to unescaped value.
+     * @return New map of all tags.
+     */
+    public Map<String, String> toMap() {
+        final Map<String, String> map = new HashMap<>();
+        for (int i = 0; i < KNOWN_TAGS.length; i++) {
+            if (offsets[i * 2] >= 0) {
+                map.put(KNOWN_TAGS[i], known(i));
+            }
+        }
+        for (int i = 0; i < otherCount; i++) {
+            final int base = KNOWN_SLOTS + i * 4;
+            map.put(line.substring(offsets[base], offsets[base + 1]), unescape(offsets[base + 2], offsets[base + 3]));
+        }
+        return map;
+    }
+
+    private void addTag(final int nameStart, final int nameEnd, final int valueStart, final int valueEnd) {
+        final int known = knownIndex(line, nameStart, nameEnd);
+        if (known >= 0) {
+            offsets[known * 2] = valueStart;
+            offsets[known * 2 + 1] = valueEnd;
+            return;
+        }
+        final int base = KNOWN_SLOTS + otherCount * 4;
+        if (base + 4 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[base] = nameStart;
+        offsets[base + 1] = nameEnd;
+        offsets[base + 2] = valueStart;
+        offsets[base + 3] = valueEnd;
+        otherCount++;
+    }
+
+    private String known(final int index) {
+        final int start = offsets[index * 2];
+        if (start < 0) {
+            return null;
+        }
+        if (decoded == null) {
+            decoded = new String[KNOWN_TAGS.length];
+        }
+        if (decoded[index] == null) {
+            decoded[index] = unescape(start, offsets[index * 2 + 1]);
+        }
+        return decoded[index];
+    }
+
+    private boolean knownFlag(final int index) {
+        final int start = offsets[index * 2];
+        return start >= 0 && offsets[index * 2 + 1] == start + 1 && line.charAt(start) == '1';
+    }
+
+    private long knownLong(final int index, final long missing) {
+        final int start = offsets[index * 2];
+        if (start < 0) {
+            return missing;
+        }
+        long value = 0;
+        for (int i = start; i < offsets[index * 2 + 1]; i++) {
+            final char c = line.charAt(i);
+            if (c < '0' || c > '9' || i - start >= 18) {
+                return missing;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private String unescape(final int start, final int end) {
+        final int escape = line.indexOf('\\', start);
+        if (escape < 0 || escape >= end) {
+            return line.substring(start, end);
+        }
+        final StringBuilder builder = new StringBuilder(end - start);
+        builder.append(line, start, escape);
+        int i = escape;
+        while (i < end) {
+            final char c = line.charAt(i++);
+            if (c != '\\') {
+                builder.append(c);
+                continue;
+            }
+            if (i == end) {
+                break;
+            }
+            final char escaped = line.charAt(i++);
+            switch (escaped) {
+                case ':':
+                    builder.append(';');
+                    break;
+                case 's':
+                    builder.append(' ');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 'n':
+                    builder.append('\n');
+                    break;
+                default:
+                    builder.append(escaped);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static int knownIndex(final String source, final int start, final int end) {
+        final int length = end - start;
+        for (int i = 0; i < KNOWN_TAGS.length; i++) {
+            if (KNOWN_TAGS[i].length() == length && source.regionMatches(start, KNOWN_TAGS[i], 0, length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,229 @@
+package gg.sep.securityrobot.outbound;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.log4j.Log4j2;
+
+import gg.sep.securityrobot.config.models.OutboundConfig;
+import gg.sep.securityrobot.utils.IRCUtils;
+
+/**
+ * Rate limited queue of messages the bot sends to channels on its own, eg timed messages.
+ *
+ * Twitch drops (and eventually locks out) bots which send too many messages, so queued messages are sent at most
+ * {@link OutboundConfig#getMessagesPerWindow()} per sliding window across all channels, and no closer together than
+ * {@link OutboundConfig#getChannelIntervalMillis()} in a single channel. A message waiting for its channel does not
+ * hold up messages to other channels. When the queue is full, new messages are dropped.
+ */
+@Log4j2
+public class OutboundMessageQueue {
+
+    private volatile OutboundConfig config;
+    private final BiConsumer<String, String> sender;
+    private final Queue<OutboundMessage> incoming = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    // only touched by the drain thread, or by stopAndDrain once the drain thread has stopped
+    private final Deque<OutboundMessage> waiting = new ArrayDeque<>();
+    private final Deque<Long> sendTimes = new ArrayDeque<>();
+    private final Map<String, Long> lastSentByChannel = new HashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Create a new, empty outbound message queue.
+     * @param config Outbound message configuration.
+     * @param sender Sends a message to an IRC channel, given the channel name and the message.
+     */
+    public OutboundMessageQueue(final OutboundConfig config, final BiConsumer<String, String> sender) {
+        this.config = config;
+        this.sender = sender;
+    }
+
+    /**
+     * Replaces the rate limits and the queue size, eg after the configuration has been reloaded. The new limits apply
+     * from the next drain; the drain interval only changes when the queue is started again.
+     * @param outboundConfig New outbound message configuration.
+     */
+    public void reconfigure(final OutboundConfig outboundConfig) {
+        this.config = outboundConfig;
+    }
+
+    /**
+     * Queues a message to be sent to a channel as soon as the rate limits allow.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     * @param message Message to send.
+     * @return <code>true</code> if the message was queued; <code>false</code> if the queue is full.
+     */
+    public boolean enqueue(final String channel, final String message) {
+        if (queued.incrementAndGet() > config.getMaxQueued()) {
+            queued.decrementAndGet();
+            dropped.increment();
+            log.warn("Outbound message queue is full, dropping message. channel={}", channel);
+            return false;
+        }
+        incoming.add(new OutboundMessage(IRCUtils.ircify(channel), message));
+        return true;
+    }
+
+    /**
+     * Number of messages waiting to be sent.
+     * @return Number of queued messages.
+     */
+    public int size() {
+        return queued.get();
+    }
+
+    /**
+     * Number of messages sent since the queue was created.
+     * @return Number of sent messages.
+     */
+    public long sentCount() {
+        return sent.sum();
+    }
+
+    /**
+     * Number of messages dropped because the queue was full.
+     * @return Number of dropped messages.
+     */
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Starts sending queued messages.
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("outbound-messages-%d").setDaemon(true).build());
+        scheduler.scheduleWithFixedDelay(this::drain, config.getDrainIntervalMillis(),
+            config.getDrainIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops sending queued messages. Messages still in the queue are not sent.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Stops sending queued messages on a schedule, and keeps sending the queued messages, within the rate limits,
+     * until the queue is empty or the deadline passes. Messages which could not be sent in time are dropped.
+     * @param deadlineNanos {@link System#nanoTime()} by which the queued messages must have been sent.
+     * @return Number of messages which were dropped because they could not be sent in time.
+     */
+    public int stopAndDrain(final long deadlineNanos) {
+        final ScheduledExecutorService stopped;
+        synchronized (this) {
+            stopped = scheduler;
+            scheduler = null;
+        }
+        if (stopped != null) {
+            stopped.shutdown();
+            try {
+                // the drain thread owns the waiting messages until it has finished
+                stopped.awaitTermination(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        final boolean owned = stopped == null || stopped.isTerminated();
+        if (!owned) {
+            stopped.shutdownNow();
+        }
+        try {
+            while (owned && queued.get() > 0 && System.nanoTime() < deadlineNanos) {
+                drain();
+                if (queued.get() > 0) {
+                    Thread.sleep(config.getDrainIntervalMillis());
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        final int unsent = queued.getAndSet(0);
+        incoming.clear();
+        if (owned) {
+            waiting.clear();
+        }
+        dropped.add(unsent);
+        if (unsent > 0) {
+            log.warn("Dropped outbound messages which could not be sent before shutting down. dropped={}", unsent);
+        }
+        return unsent;
+    }
+
+    private void drain() {
+        try {
+            OutboundMessage next;
+            while ((next = incoming.poll()) != null) {
+                waiting.add(next);
+            }
+            if (waiting.isEmpty()) {
+                return;
+            }
+            final OutboundConfig limits = config;
+            final long now = System.currentTimeMillis();
+            final long windowStart = now - limits.getWindowSeconds() * 1000L;
+            while (!sendTimes.isEmpty() && sendTimes.peekFirst() <= windowStart) {
+                sendTimes.pollFirst();
+            }
+            final Iterator<OutboundMessage> messages = waiting.iterator();
+            while (messages.hasNext() && sendTimes.size() < limits.getMessagesPerWindow()) {
+                final OutboundMessage message = messages.next();
+                final Long lastSent = lastSentByChannel.get(message.channel);
+                if (lastSent != null && now - lastSent < limits.getChannelIntervalMillis()) {
+                    continue;
+                }
+                messages.remove();
+                queued.decrementAndGet();
+                sendTimes.addLast(now);
+                lastSentByChannel.put(message.channel, now);
+                send(message);
+            }
+            lastSentByChannel.values().removeIf(lastSent -> now - lastSent >= limits.getChannelIntervalMillis());
+        } catch (final RuntimeException e) {
+            log.error("Error draining the outbound message queue.", e);
+        }
+    }
+
+    private void send(final OutboundMessage message) {
+        try {
+            sender.accept(message.channel, message.message);
+            sent.increment();
+        } catch (final RuntimeException e) {
+            log.error("Unable to send outbound message. channel={}", message.channel, e);
+        }
+    }
+
+    private static final class OutboundMessage {
+        private final String channel;
+        private final String message;
+
+        private OutboundMessage(final String channel, final String message) {
+            this.channel = channel;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package gg.sep.securityrobot.permissions;
+
+import static gg.sep.securityrobot.SecurityRobot.REDIS_PREFIX;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.log4j.Log4j2;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.exceptions.JedisException;
+
+import gg.sep.securityrobot.commands.Command;
+import gg.sep.securityrobot.commands.Role;
+import gg.sep.securityrobot.config.models.PermissionsConfig;
+import gg.sep.securityrobot.redis.RedisAccess;
+import gg.sep.securityrobot.utils.IRCUtils;
+
+/**
+ * Per-channel overrides of which roles may run a command, stored in Redis.
+ *
+ * Each channel has one Redis hash of command name to a comma separated list of role names. Every channel's hash is
+ * loaded up front as precompiled role masks, and read again every {@link PermissionsConfig#getOverrideCacheSeconds()}
+ * on a background thread, so overrides changed in Redis by hand apply without a restart, and command permission
+ * checks never go to Redis. Overrides changed through this class apply immediately.
+ */
+@Log4j2
+public class CommandRoleOverrides {
+
+    private static final String OVERRIDES_KEY_F = REDIS_PREFIX + "command_roles:%s";
+    private static final int SCAN_COUNT = 1000;
+
+    private final PermissionsConfig config;
+    private final RedisAccess redis;
+    // replaced, never changed, so permission checks read it without a lock; only replaced while holding this lock
+    private volatile Map<String, Map<String, Integer>> overrides = Collections.emptyMap();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Create a new role override store, and load every channel's overrides from Redis.
+     * @param config Permissions configuration.
+     * @param redis Redis which overrides are stored in.
+     */
+    public CommandRoleOverrides(final PermissionsConfig config, final RedisAccess redis) {
+        this.config = config;
+        this.redis = redis;
+        reload();
+    }
+
+    /**
+     * Returns the mask of roles which may run a command in a channel.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     * @param command Command being run.
+     * @return The channel's override mask if there is one, otherwise the command's own required roles.
+     */
+    public int requiredRoles(final String channel, final Command command) {
+        return getOverride(channel, command.getName()).orElse(command.getRequiredRoles());
+    }
+
+    /**
+     * Returns a channel's override of a command's roles, if it has one.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     * @param commandName Name of the command.
+     * @return Mask of roles which may run the command in the channel, or empty if it is not overridden.
+     */
+    public Optional<Integer> getOverride(final String channel, final String commandName) {
+        final Map<String, Integer> channelOverrides = overrides.get(IRCUtils.stripIrcChannel(channel));
+        return channelOverrides == null ? Optional.empty()
+            : Optional.ofNullable(channelOverrides.get(commandName.toLowerCase()));
+    }
+
+    /**
+     * Overrides which roles may run a command in a channel.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     * @param commandName Name of the command.
+     * @param roles Mask of roles which may run the command.
+     */
+    public synchronized void setOverride(final String channel, final String commandName, final int roles) {
+        final String cleanChannel = IRCUtils.stripIrcChannel(channel);
+        final String cleanCommand = commandName.toLowerCase();
+        redis.execute("setRoleOverride", jedis -> jedis.hset(String.format(OVERRIDES_KEY_F, cleanChannel),
+            cleanCommand, Role.names(roles)));
+        update(cleanChannel, masks -> masks.put(cleanCommand, roles));
+    }
+
+    /**
+     * Removes a channel's override of a command's roles.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     * @param commandName Name of the command.
+     * @return <code>true</code> if the command was overridden; <code>false</code> otherwise.
+     */
+    public synchronized boolean clearOverride(final String channel, final String commandName) {
+        final String cleanChannel = IRCUtils.stripIrcChannel(channel);
+        final String cleanCommand = commandName.toLowerCase();
+        final long removed = redis.execute("clearRoleOverride",
+            jedis -> jedis.hdel(String.format(OVERRIDES_KEY_F, cleanChannel), cleanCommand));
+        update(cleanChannel, masks -> masks.remove(cleanCommand));
+        return removed > 0;
+    }
+
+    /**
+     * Reads every channel's overrides from Redis again. Failing to read them keeps the overrides already loaded.
+     */
+    public synchronized void reload() {
+        final Map<String, Map<String, Integer>> latest = new HashMap<>();
+        try {
+            redis.execute("readRoleOverrides", jedis -> {
+                final String prefix = String.format(OVERRIDES_KEY_F, "");
+                final ScanParams params = new ScanParams().match(prefix + '*').count(SCAN_COUNT);
+                final Map<String, Response<Map<String, String>>> stored = new HashMap<>();
+                final Pipeline pipeline = jedis.pipelined();
+                String cursor = ScanParams.SCAN_POINTER_START;
+                do {
+                    final ScanResult<String> page = jedis.scan(cursor, params);
+                    page.getResult().forEach(key -> stored.put(key.substring(prefix.length()),
+                        pipeline.hgetAll(key)));
+                    cursor = page.getCursor();
+                } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+                pipeline.sync();
+                stored.forEach((channel, hash) -> {
+                    final Map<String, Integer> masks = new HashMap<>();
+                    hash.get().forEach((command, roleNames) -> masks.put(command, parseRoles(roleNames)));
+                    if (!masks.isEmpty()) {
+                        latest.put(channel, masks);
+                    }
+                });
+                return null;
+            });
+        } catch (final JedisException e) {
+            log.warn("Unable to load command role overrides from Redis. error={}", e.getMessage());
+            return;
+        }
+        this.overrides = latest;
+        log.debug("Loaded command role overrides. channels={}", latest.size());
+    }
+
+    /**
+     * Starts reading the overrides from Redis on a schedule.
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("command-role-overrides-%d").setDaemon(true).build());
+        scheduler.scheduleWithFixedDelay(this::reload, config.getOverrideCacheSeconds(),
+            config.getOverrideCacheSeconds(), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops reading the overrides from Redis.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private void update(final String cleanChannel, final Consumer<Map<String, Integer>> change) {
+        final Map<String, Map<String, Integer>> latest = new HashMap<>(overrides);
+        final Map<String, Integer> masks = new HashMap<>(latest.getOrDefault(cleanChannel, Collections.emptyMap()));
+        change.accept(masks);
+        if (masks.isEmpty()) {
+            latest.remove(cleanChannel);
+        } else {
+            latest.put(cleanChannel, masks);
+        }
+        this.overrides = latest;
+    }
+
+    /**
+     * Parses a comma or space separated list of role names into a mask. Unknown role names are ignored.
+     * @param roleNames List of role names, eg "vip,mod".
+     * @return Mask of the named roles.
+     */
+    public static int parseRoles(final String roleNames) {
+        int mask = 0;
+        for (final String name : roleNames.split("[,\\s]+")) {
+            if (!name.isEmpty()) {
+                mask |= Role.fromName(name).map(Role::getMask).orElse(0);
+            }
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,144 @@
+package gg.sep.securityrobot.permissions;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.extern.log4j.Log4j2;
+
+import gg.sep.securityrobot.config.models.PermissionsConfig;
+import gg.sep.securityrobot.twitch.AsyncTwitchAPI;
+
+/**
+ * Short lived cache of whether users follow channels, so that follower checks do not call the Twitch API for every
+ * command a chatter runs.
+ */
+@Log4j2
+public class FollowerCache {
+
+    private final AsyncTwitchAPI twitchAPI;
+    private final Cache<String, Boolean> follows;
+    private final long cacheMillis;
+
+    /**
+     * Create a new, empty follower cache.
+     * @param config Permissions configuration.
+     * @param twitchAPI Twitch API used to look up follows which are not cached.
+     */
+    public FollowerCache(final PermissionsConfig config, final AsyncTwitchAPI twitchAPI) {
+        this.twitchAPI = twitchAPI;
+        this.cacheMillis = TimeUnit.SECONDS.toMillis(config.getFollowerCacheSeconds());
+        this.follows = CacheBuilder.newBuilder()
+            .maximumSize(config.getFollowerCacheSize())
+            .expireAfterWrite(config.getFollowerCacheSeconds(), TimeUnit.SECONDS)
+            .build();
+    }
+
+    /**
+     * Returns <code>true</code> if a user follows a channel.
+     *
+     * NOTE: This makes an API call to Twitch if the follow is not cached. Failed lookups, including calls refused
+     * because the Twitch API is degraded, are treated as not following and are not cached.
+     * @param userId ID of the user.
+     * @param roomId ID of the channel.
+     * @return <code>true</code> if the user follows the channel; <code>false</code> otherwise, or if the lookup fails.
+     */
+    public boolean isFollowing(final String userId, final String roomId) {
+        if (userId == null || roomId == null) {
+            return false;
+        }
+        try {
+            return follows.get(roomId + ':' + userId,
+                () -> twitchAPI.userIsFollowing(userId, roomId).join());
+        } catch (final ExecutionException | RuntimeException e) {
+            log.warn("Unable to check if user follows channel. userId={}, roomId={}, error={}", userId, roomId,
+                e.toString());
+            return false;
+        }
+    }
+
+    /**
+     * Looks up whether a user follows a channel without blocking the calling thread.
+     * @param userId ID of the user.
+     * @param roomId ID of the channel.
+     * @return Future which is <code>true</code> if the user follows the channel, and which fails if the lookup fails,
+     *         eg because the Twitch API refused the call. Failed lookups are not cached.
+     */
+    public CompletableFuture<Boolean> isFollowingAsync(final String userId, final String roomId) {
+        if (userId == null || roomId == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        final String key = roomId + ':' + userId;
+        final Boolean cached = follows.getIfPresent(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return twitchAPI.userIsFollowing(userId, roomId).thenApply(following -> {
+            follows.put(key, following);
+            return following;
+        });
+    }
+
+    /**
+     * Returns whether a user follows a channel if it is cached, without calling the Twitch API.
+     * @param userId ID of the user.
+     * @param roomId ID of the channel.
+     * @return Whether the user follows the channel, or empty if it is not cached.
+     */
+    public Optional<Boolean> getCached(final String userId, final String roomId) {
+        if (userId == null || roomId == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(follows.getIfPresent(roomId + ':' + userId));
+    }
+
+    /**
+     * Returns <code>true</code> if whether a user follows a channel is cached, so checking it will not call the
+     * Twitch API.
+     * @param userId ID of the user.
+     * @param roomId ID of the channel.
+     * @return <code>true</code> if the follow is cached; <code>false</code> otherwise.
+     */
+    public boolean isCached(final String userId, final String roomId) {
+        return userId != null && roomId != null && follows.getIfPresent(roomId + ':' + userId) != null;
+    }
+
+    /**
+     * Forgets a cached follow, eg after a follow or unfollow event.
+     * @param userId ID of the user.
+     * @param roomId ID of the channel.
+     */
+    public void invalidate(final String userId, final String roomId) {
+        follows.invalidate(roomId + ':' + userId);
+    }
+
+    /**
+     * Returns every cached follow, for a warm restart snapshot.
+     * @return Whether users follow channels, keyed by the channel's ID and the user's ID.
+     */
+    public Map<String, Boolean> snapshot() {
+        return new HashMap<>(follows.asMap());
+    }
+
+    /**
+     * Restores cached follows from a warm restart snapshot, if the snapshot is younger than the cache time.
+     *
+     * Restored follows are cached for the full cache time again, so they can be up to the snapshot's age older than
+     * follows looked up normally.
+     * @param cached Whether users follow channels, as returned by {@link #snapshot()}.
+     * @param ageMillis Age of the snapshot.
+     * @return Number of restored follows.
+     */
+    public int restore(final Map<String, Boolean> cached, final long ageMillis) {
+        if (ageMillis >= cacheMillis) {
+            return 0;
+        }
+        follows.putAll(cached);
+        return cached.size();
+    }
+}
@@ -0,0 +1,240 @@
+package gg.sep.securityrobot.points;
+
+import static gg.sep.securityrobot.SecurityRobot.REDIS_PREFIX;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import lombok.extern.log4j.Log4j2;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Tuple;
+import redis.clients.jedis.exceptions.JedisException;
+
+import gg.sep.securityrobot.analytics.ChatAnalytics;
+import gg.sep.securityrobot.config.models.PointsConfig;
+import gg.sep.securityrobot.identity.IdentityTable;
+import gg.sep.securityrobot.identity.TwitchChannelIdentity;
+import gg.sep.securityrobot.redis.RedisAccess;
+import gg.sep.securityrobot.redis.RedisScript;
+import gg.sep.securityrobot.twitch.StreamStatusCache;
+import gg.sep.securityrobot.utils.IRCUtils;
+
+/**
+ * Loyalty points, which chatters earn for being active in a channel.
+ *
+ * Every {@link PointsConfig#getIntervalSeconds()}, each recently active chatter of every (live) channel earns
+ * {@link PointsConfig#getPointsPerInterval()} points. The accruals of a tick are collected in memory and applied as
+ * pipelined {@code HINCRBY} (balance) and {@code ZINCRBY} (leaderboard) batches, so a tick costs a few round trips
+ * however many chatters there are, and leaderboards are kept sorted by Redis as they change. Single changes update the
+ * balance and the leaderboard atomically with a script. Balances returned by Redis are written through to a local
+ * cache, which serves balance reads.
+ */
+@Log4j2
+public class LoyaltyPoints {
+
+    private static final String POINTS_KEY_F = REDIS_PREFIX + "points:%s";
+    private static final String LEADERBOARD_KEY_F = REDIS_PREFIX + "points_leaderboard:%s";
+    // KEYS: balances hash, leaderboard sorted set; ARGV: user ID, amount
+    private static final RedisScript ADD_POINTS = new RedisScript("addPoints",
+        "local balance = redis.call('HINCRBY', KEYS[1], ARGV[1], ARGV[2])\n"
+            + "redis.call('ZINCRBY', KEYS[2], ARGV[2], ARGV[1])\n"
+            + "return balance");
+
+    private final PointsConfig config;
+    private final RedisAccess redis;
+    private final ChatAnalytics chatAnalytics;
+    private final IdentityTable identityTable;
+    private final StreamStatusCache streamStatus;
+    private final Cache<String, Long> balances;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Create a new loyalty points subsystem.
+     * @param config Loyalty points configuration.
+     * @param redis Redis which balances and leaderboards are stored in.
+     * @param chatAnalytics Chat analytics, which track the recently active chatters of each channel.
+     * @param identityTable Identity table used to find the room IDs of channels.
+     * @param streamStatus Cache used to check whether channels are live.
+     */
+    public LoyaltyPoints(final PointsConfig config, final RedisAccess redis, final ChatAnalytics chatAnalytics,
+                         final IdentityTable identityTable, final StreamStatusCache streamStatus) {
+        this.config = config;
+        this.redis = redis;
+        this.chatAnalytics = chatAnalytics;
+        this.identityTable = identityTable;
+        this.streamStatus = streamStatus;
+        this.balances = CacheBuilder.newBuilder()
+            .maximumSize(config.getCacheSize())
+            .expireAfterWrite(config.getCacheSeconds(), TimeUnit.SECONDS)
+            .build();
+    }
+
+    /**
+     * Starts accruing points, if they are enabled in the configuration.
+     */
+    public synchronized void start() {
+        if (scheduler != null || !config.isEnabled()) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("loyalty-points-%d").setDaemon(true).build());
+        scheduler.scheduleAtFixedRate(this::accrue, config.getIntervalSeconds(), config.getIntervalSeconds(),
+            TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops accruing points.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Returns a user's balance in a channel.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     * @param userId ID of the user.
+     * @return The user's balance; zero if they have never earned points in the channel.
+     * @throws JedisException If the balance was not cached and could not be read from Redis.
+     */
+    public long getBalance(final String channel, final String userId) {
+        final String cleanChannel = IRCUtils.stripIrcChannel(channel);
+        try {
+            return balances.get(cacheKey(cleanChannel, userId), () -> {
+                final String balance = redis.execute("readPointsBalance",
+                    jedis -> jedis.hget(String.format(POINTS_KEY_F, cleanChannel), userId));
+                return balance == null ? 0L : Long.parseLong(balance);
+            });
+        } catch (final ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof JedisException) {
+                throw (JedisException) e.getCause();
+            }
+            throw new JedisException("Unable to read points balance.", e.getCause());
+        }
+    }
+
+    /**
+     * Adds points to (or, with a negative amount, removes points from) a user's balance in a channel.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     * @param userId ID of the user.
+     * @param amount Number of points to add.
+     * @return The user's new balance.
+     * @throws JedisException If the balance could not be updated in Redis.
+     */
+    public long addPoints(final String channel, final String userId, final long amount) {
+        final String cleanChannel = IRCUtils.stripIrcChannel(channel);
+        final long balance = (Long) redis.eval(ADD_POINTS, Arrays.asList(String.format(POINTS_KEY_F, cleanChannel),
+            String.format(LEADERBOARD_KEY_F, cleanChannel)), Arrays.asList(userId, Long.toString(amount)));
+        balances.put(cacheKey(cleanChannel, userId), balance);
+        return balance;
+    }
+
+    /**
+     * Returns the users with the most points in a channel.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     * @param count Maximum number of users to return.
+     * @return Map of user ID to balance, highest balance first.
+     * @throws JedisException If the leaderboard could not be read from Redis.
+     */
+    public Map<String, Long> getLeaderboard(final String channel, final int count) {
+        final Map<String, Long> leaderboard = new LinkedHashMap<>();
+        for (final Tuple entry : redis.execute("readPointsLeaderboard", jedis -> jedis.zrevrangeWithScores(
+            String.format(LEADERBOARD_KEY_F, IRCUtils.stripIrcChannel(channel)), 0, count - 1))) {
+            leaderboard.put(entry.getElement(), (long) entry.getScore());
+        }
+        return leaderboard;
+    }
+
+    private void accrue() {
+        try {
+            final Map<String, long[]> accruals = new ConcurrentHashMap<>();
+            final List<CompletableFuture<?>> liveChecks = new ArrayList<>();
+            for (final String channel : chatAnalytics.getChannels()) {
+                final long[] activeUserIds = chatAnalytics.getActiveUserIds(channel);
+                if (activeUserIds.length == 0) {
+                    continue;
+                }
+                if (!config.isOnlyWhenLive()) {
+                    accruals.put(channel, activeUserIds);
+                    continue;
+                }
+                final Optional<String> roomId = identityTable.getChannel(IRCUtils.ircify(channel))
+                    .map(TwitchChannelIdentity::getRoomIdString);
+                if (roomId.isPresent()) {
+                    liveChecks.add(streamStatus.isLive(roomId.get()).handle((live, error) -> {
+                        if (error == null && live) {
+                            accruals.put(channel, activeUserIds);
+                        }
+                        return null;
+                    }));
+                }
+            }
+            CompletableFuture.allOf(liveChecks.toArray(new CompletableFuture<?>[0])).join();
+            apply(accruals);
+        } catch (final RuntimeException e) {
+            log.error("Unable to accrue loyalty points.", e);
+        }
+    }
+
+    private void apply(final Map<String, long[]> accruals) {
+        if (accruals.isEmpty()) {
+            return;
+        }
+        final long points = config.getPointsPerInterval();
+        final Map<String, Response<Long>> batch = new LinkedHashMap<>();
+        final int users;
+        try {
+            users = redis.execute("accruePoints", jedis -> {
+                final Pipeline pipeline = jedis.pipelined();
+                int applied = 0;
+                for (final Map.Entry<String, long[]> channel : accruals.entrySet()) {
+                    final String pointsKey = String.format(POINTS_KEY_F, channel.getKey());
+                    final String leaderboardKey = String.format(LEADERBOARD_KEY_F, channel.getKey());
+                    for (final long userId : channel.getValue()) {
+                        final String member = Long.toString(userId);
+                        batch.put(cacheKey(channel.getKey(), member), pipeline.hincrBy(pointsKey, member, points));
+                        pipeline.zincrby(leaderboardKey, points, member);
+                        if (batch.size() >= config.getPipelineBatchSize()) {
+                            applied += flush(pipeline, batch);
+                        }
+                    }
+                }
+                return applied + flush(pipeline, batch);
+            });
+        } catch (final JedisException e) {
+            log.error("Unable to write loyalty points to Redis.", e);
+            return;
+        }
+        log.debug("Accrued loyalty points. channels={}, users={}", accruals.size(), users);
+    }
+
+    private int flush(final Pipeline pipeline, final Map<String, Response<Long>> batch) {
+        pipeline.sync();
+        // write through the new balances
+        batch.forEach((key, balance) -> balances.put(key, balance.get()));
+        final int flushed = batch.size();
+        batch.clear();
+        return flushed;
+    }
+
+    private static String cacheKey(final String cleanChannel, final String userId) {
+        return cleanChannel + ':' + userId;
+    }
+}
@@ -0,0 +1,25 @@
+package gg.sep.securityrobot.presence;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A queued change to the chatters present in a channel.
+ */
+@Getter
+@AllArgsConstructor
+final class PresenceEvent {
+
+    /**
+     * Types of presence change.
+     */
+    enum Type {
+        JOIN,
+        PART,
+        CLEAR
+    }
+
+    private final Type type;
+    private final String channel;
+    private final String login;
+}
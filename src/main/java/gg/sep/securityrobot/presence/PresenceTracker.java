@@ -0,0 +1,270 @@
+package gg.sep.securityrobot.presence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.log4j.Log4j2;
+
+import gg.sep.securityrobot.config.models.PresenceConfig;
+import gg.sep.securityrobot.utils.IRCUtils;
+import gg.sep.securityrobot.utils.collections.CompactIntSet;
+
+/**
+ * Tracks which chatters are present in each channel, from the JOIN and PART events sent by Twitch.
+ *
+ * Twitch sends JOIN and PART events in large bursts on big channels, so the IRC threads only queue them, and a
+ * single thread applies everything queued in one batch under one write lock. Logins are interned to small ints, which
+ * are reused once a login is not present in any channel, and each channel's chatters are kept as a
+ * {@link CompactIntSet} of interned logins. Chatter counts are constant time, and membership queries are a hash
+ * lookup followed by a constant time set lookup.
+ *
+ * Twitch itself batches JOIN and PART events every few seconds, so presence is approximate by nature.
+ */
+@Log4j2
+public class PresenceTracker {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final PresenceConfig config;
+    private final Queue<PresenceEvent> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private ScheduledExecutorService scheduler;
+
+    // guarded by lock
+    private final Map<String, CompactIntSet> channels = new HashMap<>();
+    private final Map<String, Integer> idsByLogin = new HashMap<>(INITIAL_CAPACITY);
+    private String[] loginsById = new String[INITIAL_CAPACITY];
+    private int[] channelCounts = new int[INITIAL_CAPACITY];
+    private int[] freeIds = new int[0];
+    private int freeCount;
+    private int nextId;
+
+    /**
+     * Create a new presence tracker, with no chatters present.
+     * @param config Presence tracking configuration.
+     */
+    public PresenceTracker(final PresenceConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Queues a chatter joining a channel.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     * @param login Login of the chatter.
+     */
+    public void join(final String channel, final String login) {
+        enqueue(new PresenceEvent(PresenceEvent.Type.JOIN, IRCUtils.stripIrcChannel(channel), login.toLowerCase()));
+    }
+
+    /**
+     * Queues a chatter leaving a channel.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     * @param login Login of the chatter.
+     */
+    public void part(final String channel, final String login) {
+        enqueue(new PresenceEvent(PresenceEvent.Type.PART, IRCUtils.stripIrcChannel(channel), login.toLowerCase()));
+    }
+
+    /**
+     * Queues forgetting every chatter of a channel, eg after the bot leaves it.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     */
+    public void clear(final String channel) {
+        enqueue(new PresenceEvent(PresenceEvent.Type.CLEAR, IRCUtils.stripIrcChannel(channel), null));
+    }
+
+    /**
+     * Returns the number of chatters present in a channel.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     * @return Number of chatters present.
+     */
+    public int count(final String channel) {
+        lock.readLock().lock();
+        try {
+            final CompactIntSet chatters = channels.get(IRCUtils.stripIrcChannel(channel));
+            return chatters == null ? 0 : chatters.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns whether a chatter is present in a channel.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     * @param login Login of the chatter.
+     * @return <code>true</code> if the chatter is present; <code>false</code> otherwise.
+     */
+    public boolean isPresent(final String channel, final String login) {
+        lock.readLock().lock();
+        try {
+            final CompactIntSet chatters = channels.get(IRCUtils.stripIrcChannel(channel));
+            final Integer id = idsByLogin.get(login.toLowerCase());
+            return chatters != null && id != null && chatters.contains(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the logins of every chatter present in a channel.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     * @return Logins of the chatters present.
+     */
+    public List<String> getChatters(final String channel) {
+        lock.readLock().lock();
+        try {
+            final CompactIntSet chatters = channels.get(IRCUtils.stripIrcChannel(channel));
+            if (chatters == null) {
+                return new ArrayList<>();
+            }
+            final List<String> logins = new ArrayList<>(chatters.size());
+            chatters.forEach(id -> logins.add(loginsById[id]));
+            return logins;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of events dropped because too many were queued.
+     * @return Number of dropped events.
+     */
+    public long droppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Starts applying queued events.
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("presence-tracker-%d").setDaemon(true).build());
+        scheduler.scheduleWithFixedDelay(this::drain, config.getDrainIntervalMillis(),
+            config.getDrainIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops applying queued events.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private void enqueue(final PresenceEvent event) {
+        if (queued.incrementAndGet() > config.getMaxQueued()) {
+            queued.decrementAndGet();
+            dropped.incrementAndGet();
+            return;
+        }
+        queue.add(event);
+    }
+
+    private void drain() {
+        if (queue.isEmpty()) {
+            return;
+        }
+        // only apply what is queued now, so a steady stream of events can't hold the lock forever
+        final int batch = queued.get();
+        int applied = 0;
+        lock.writeLock().lock();
+        try {
+            PresenceEvent event;
+            while (applied < batch && (event = queue.poll()) != null) {
+                queued.decrementAndGet();
+                apply(event);
+                applied++;
+            }
+            log.trace("Applied presence events. events={}, logins={}", applied, idsByLogin.size());
+        } catch (final RuntimeException e) {
+            log.error("Unable to apply presence events.", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(final PresenceEvent event) {
+        switch (event.getType()) {
+            case JOIN:
+                final int id = intern(event.getLogin());
+                if (channels.computeIfAbsent(event.getChannel(), c -> new CompactIntSet()).add(id)) {
+                    channelCounts[id]++;
+                } else {
+                    release(id);
+                }
+                break;
+            case PART:
+                final CompactIntSet chatters = channels.get(event.getChannel());
+                final Integer partedId = idsByLogin.get(event.getLogin());
+                if (chatters != null && partedId != null && chatters.remove(partedId)) {
+                    channelCounts[partedId]--;
+                    release(partedId);
+                }
+                break;
+            case CLEAR:
+                final CompactIntSet cleared = channels.remove(event.getChannel());
+                if (cleared != null) {
+                    cleared.forEach(clearedId -> {
+                        channelCounts[clearedId]--;
+                        release(clearedId);
+                    });
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private int intern(final String login) {
+        final Integer existing = idsByLogin.get(login);
+        if (existing != null) {
+            return existing;
+        }
+        final int id;
+        if (freeCount > 0) {
+            id = freeIds[--freeCount];
+        } else {
+            if (nextId == loginsById.length) {
+                loginsById = Arrays.copyOf(loginsById, loginsById.length * 2);
+                channelCounts = Arrays.copyOf(channelCounts, channelCounts.length * 2);
+            }
+            id = nextId++;
+        }
+        loginsById[id] = login;
+        idsByLogin.put(login, id);
+        return id;
+    }
+
+    // frees the ID of a login once it is not present in any channel
+    private void release(final int id) {
+        if (channelCounts[id] > 0) {
+            return;
+        }
+        idsByLogin.remove(loginsById[id]);
+        loginsById[id] = null;
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, Math.max(16, freeIds.length * 2));
+        }
+        freeIds[freeCount++] = id;
+    }
+}
@@ -0,0 +1,36 @@
+package gg.sep.securityrobot.redis;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the Redis commands run under a single name.
+ */
+final class CommandMetrics {
+    final LongAdder calls = new LongAdder();
+    final LongAdder failures = new LongAdder();
+    final LongAdder latencyMicrosTotal = new LongAdder();
+    final LongAccumulator latencyMicrosMax = new LongAccumulator(Math::max, 0);
+
+    void record(final long startNanos, final boolean failed) {
+        final long micros = (System.nanoTime() - startNanos) / 1_000L;
+        calls.increment();
+        if (failed) {
+            failures.increment();
+        }
+        latencyMicrosTotal.add(micros);
+        latencyMicrosMax.accumulate(micros);
+    }
+
+    Map<String, Object> snapshot() {
+        final Map<String, Object> snapshot = new LinkedHashMap<>();
+        final long callCount = calls.sum();
+        snapshot.put("calls", callCount);
+        snapshot.put("failures", failures.sum());
+        snapshot.put("avgLatencyMicros", callCount == 0 ? 0 : latencyMicrosTotal.sum() / callCount);
+        snapshot.put("maxLatencyMicros", latencyMicrosMax.get());
+        return snapshot;
+    }
+}
@@ -0,0 +1,369 @@
+package gg.sep.securityrobot.redis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisException;
+
+import gg.sep.securityrobot.config.models.RedisConfig;
+import gg.sep.securityrobot.jfr.RedisRoundTripEvent;
+
+/**
+ * Single point of access to Redis: the connection pool, batched and synchronous commands, Lua scripts, and latency
+ * metrics for each named command.
+ *
+ * Commands submitted with {@link #submit(String, Function)} are queued, and a single thread sends everything queued
+ * as one pipeline on one connection, so many concurrent commands cost one round trip rather than one each. The
+ * batching thread never waits for commands unless {@link RedisConfig#getBatchLingerMicros()} is set, so a lone
+ * command is sent straight away, and batches grow by themselves while a previous batch is in flight.
+ *
+ * Components which already pipeline their own work, eg periodic write-behind, send their pipeline from
+ * {@link #execute(String, Function)}, so it is measured as one named command. Only the Twitch API library, which
+ * manages its own connections, is given the {@link #getPool() pool} itself.
+ *
+ * The pool is replaced by {@link #reconfigure(RedisConfig)} when the Redis configuration is reloaded. Connections
+ * already borrowed from the previous pool are returned to it as usual, and the previous pool is closed once they have
+ * all been returned, so work in flight is not cut off.
+ */
+@Log4j2
+public class RedisAccess {
+
+    private static final String BATCH_OPERATION = "batch";
+    private static final long POLL_MILLIS = 100;
+    private static final long RETIRE_GRACE_NANOS = TimeUnit.SECONDS.toNanos(2);
+    private static final long RETIRE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    // replaced when the Redis configuration is reloaded, so callers look it up on each use rather than keeping it
+    @Getter private volatile JedisPool pool;
+    private volatile RedisConfig config;
+    // replaced pools, by the System#nanoTime() they were replaced at, closed once every connection is returned
+    private final Map<JedisPool, Long> retiredPools = new ConcurrentHashMap<>();
+    private final BlockingQueue<PendingCommand<?>> queue = new LinkedBlockingQueue<>();
+    private final Map<String, CommandMetrics> metrics = new ConcurrentHashMap<>();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedCommands = new LongAdder();
+    private final Thread batcher;
+    private volatile boolean closed;
+
+    /**
+     * Create the connection pool from the Redis configuration, and start the batching thread.
+     * @param config Redis configuration.
+     */
+    public RedisAccess(final RedisConfig config) {
+        this.config = config;
+        this.pool = buildPool(config);
+        this.batcher = new Thread(this::runBatches, "redis-batcher");
+        this.batcher.setDaemon(true);
+        this.batcher.start();
+    }
+
+    /**
+     * Opens connections up front, so the first commands do not pay for connecting.
+     * @param connections Number of connections to open.
+     */
+    public void warmUp(final int connections) {
+        final List<Jedis> opened = new ArrayList<>();
+        try {
+            for (int i = 0; i < connections; i++) {
+                final Jedis jedis = pool.getResource();
+                opened.add(jedis);
+                jedis.ping();
+            }
+        } finally {
+            opened.forEach(Jedis::close);
+        }
+    }
+
+    /**
+     * Connects with a reloaded Redis configuration, and replaces the pool once the new one answers. The previous pool
+     * is closed once every connection borrowed from it has been returned.
+     * @param redisConfig New Redis configuration.
+     * @throws JedisException If Redis cannot be reached with the new configuration, in which case the current pool
+     *                        is kept.
+     */
+    public synchronized void reconfigure(final RedisConfig redisConfig) {
+        if (closed) {
+            return;
+        }
+        final JedisPool replacement = buildPool(redisConfig);
+        try (Jedis jedis = replacement.getResource()) {
+            jedis.ping();
+        } catch (final JedisException e) {
+            replacement.close();
+            throw e;
+        }
+        final JedisPool previous = this.pool;
+        this.config = redisConfig;
+        this.pool = replacement;
+        retiredPools.put(previous, System.nanoTime());
+        log.info("Connected to reloaded Redis configuration. host={}, port={}, database={}",
+            redisConfig.getHost(), redisConfig.getPort(), redisConfig.getDatabase());
+    }
+
+    /**
+     * Queues a command to be sent in the next pipelined batch.
+     * @param command Name of the command, used for metrics, eg "sadd".
+     * @param operation Adds the command to the batch's pipeline, returning its response.
+     * @param <T> Type of the command's reply.
+     * @return Future of the command's reply, which fails if Redis rejects the command or cannot be reached.
+     */
+    public <T> CompletableFuture<T> submit(final String command, final Function<Pipeline, Response<T>> operation) {
+        final PendingCommand<T> pending = new PendingCommand<>(command, operation);
+        if (closed) {
+            pending.future.completeExceptionally(new IllegalStateException("Redis access is closed"));
+            return pending.future;
+        }
+        queue.add(pending);
+        if (closed && queue.remove(pending)) {
+            // closed while queueing, and the batching thread may have already stopped
+            pending.future.completeExceptionally(new IllegalStateException("Redis access is closed"));
+        }
+        return pending.future;
+    }
+
+    /**
+     * Runs commands synchronously on a pooled connection.
+     * @param command Name of the command, used for metrics.
+     * @param operation Commands to run on the connection.
+     * @param <T> Type of the result.
+     * @return Result of the operation.
+     * @throws JedisException If Redis rejects a command or cannot be reached.
+     */
+    public <T> T execute(final String command, final Function<Jedis, T> operation) {
+        final RedisRoundTripEvent roundTrip = new RedisRoundTripEvent();
+        roundTrip.begin();
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try (Jedis jedis = pool.getResource()) {
+            final T result = operation.apply(jedis);
+            failed = false;
+            return result;
+        } finally {
+            metricsFor(command).record(start, failed);
+            commitRoundTrip(roundTrip, command);
+        }
+    }
+
+    /**
+     * Runs a Lua script synchronously. The script is sent by its SHA-1, and only sent in full if Redis does not have
+     * it cached yet.
+     * @param script Script to run.
+     * @param keys Keys the script reads or writes.
+     * @param args Other arguments of the script.
+     * @return Reply of the script.
+     * @throws JedisException If the script fails or Redis cannot be reached.
+     */
+    public Object eval(final RedisScript script, final List<String> keys, final List<String> args) {
+        return execute(script.getName(), jedis -> {
+            try {
+                return jedis.evalsha(script.getSha1(), keys, args);
+            } catch (final JedisDataException e) {
+                if (e.getMessage() == null || !e.getMessage().startsWith("NOSCRIPT")) {
+                    throw e;
+                }
+                // EVAL caches the script, so later calls find it by its SHA-1
+                return jedis.eval(script.getSource(), keys, args);
+            }
+        });
+    }
+
+    /**
+     * Returns the latency and failure counters of every named command, and of the batching.
+     * @return Map of command name to its metrics.
+     */
+    public Map<String, Object> getMetrics() {
+        final Map<String, Object> snapshot = new TreeMap<>();
+        metrics.forEach((name, commandMetrics) -> snapshot.put(name, commandMetrics.snapshot()));
+        final long batchCount = batches.sum();
+        snapshot.put("_batches", batchCount);
+        snapshot.put("_avgBatchSize", batchCount == 0 ? 0 : batchedCommands.sum() / (double) batchCount);
+        snapshot.put("_queued", queue.size());
+        snapshot.put("_poolActive", pool.getNumActive());
+        snapshot.put("_poolIdle", pool.getNumIdle());
+        snapshot.put("_poolWaiters", pool.getNumWaiters());
+        return snapshot;
+    }
+
+    /**
+     * Stops accepting batched commands, sends those already queued until the deadline, and closes the pool.
+     * @param deadlineNanos {@link System#nanoTime()} by which the queued commands must have been sent.
+     * @return Number of queued commands which were dropped because they could not be sent in time.
+     */
+    public int close(final long deadlineNanos) {
+        closed = true;
+        try {
+            batcher.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime())));
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        batcher.interrupt();
+        final List<PendingCommand<?>> unsent = new ArrayList<>();
+        queue.drainTo(unsent);
+        unsent.forEach(p -> p.future.completeExceptionally(new IllegalStateException("Redis access is closed")));
+        if (!unsent.isEmpty()) {
+            log.warn("Dropped Redis commands which could not be sent before shutting down. dropped={}", unsent.size());
+        }
+        retiredPools.keySet().forEach(JedisPool::close);
+        retiredPools.clear();
+        pool.close();
+        return unsent.size();
+    }
+
+    private static JedisPool buildPool(final RedisConfig redisConfig) {
+        final JedisPoolConfig poolConfig = new JedisPoolConfig();
+        poolConfig.setMaxTotal(redisConfig.getMaxTotal());
+        poolConfig.setMaxIdle(redisConfig.getMaxIdle());
+        poolConfig.setMinIdle(redisConfig.getMinIdle());
+        poolConfig.setMaxWaitMillis(redisConfig.getMaxWaitMillis());
+        poolConfig.setTestWhileIdle(redisConfig.isTestWhileIdle());
+        poolConfig.setTimeBetweenEvictionRunsMillis(redisConfig.getEvictionRunMillis());
+        poolConfig.setMinEvictableIdleTimeMillis(redisConfig.getMinEvictableIdleMillis());
+        return new JedisPool(poolConfig, redisConfig.getHost(), redisConfig.getPort(), redisConfig.getTimeoutMillis(),
+            redisConfig.getPassword(), redisConfig.getDatabase());
+    }
+
+    /**
+     * Closes replaced pools once every connection borrowed from them has been returned, or once they have been
+     * replaced for too long. The grace period covers callers which looked the pool up just before it was replaced.
+     */
+    private void closeRetiredPools() {
+        if (retiredPools.isEmpty()) {
+            return;
+        }
+        final long now = System.nanoTime();
+        retiredPools.entrySet().removeIf(retired -> {
+            final long retiredFor = now - retired.getValue();
+            final boolean drained = retiredFor >= RETIRE_GRACE_NANOS && retired.getKey().getNumActive() == 0;
+            if (!drained && retiredFor < RETIRE_TIMEOUT_NANOS) {
+                return false;
+            }
+            if (!drained) {
+                log.warn("Closing replaced Redis pool with connections still borrowed. active={}",
+                    retired.getKey().getNumActive());
+            }
+            retired.getKey().close();
+            return true;
+        });
+    }
+
+    private void runBatches() {
+        final List<PendingCommand<?>> batch = new ArrayList<>(config.getBatchMaxCommands());
+        try {
+            while (!closed || !queue.isEmpty()) {
+                closeRetiredPools();
+                final int maxCommands = config.getBatchMaxCommands();
+                final PendingCommand<?> first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxCommands - batch.size());
+                if (config.getBatchLingerMicros() > 0 && batch.size() < maxCommands) {
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(config.getBatchLingerMicros()));
+                    queue.drainTo(batch, maxCommands - batch.size());
+                }
+                sendBatch(batch);
+                batch.clear();
+            }
+        } catch (final InterruptedException e) {
+            // closing
+        }
+    }
+
+    private void sendBatch(final List<PendingCommand<?>> batch) {
+        final RedisRoundTripEvent roundTrip = new RedisRoundTripEvent();
+        roundTrip.begin();
+        batches.increment();
+        batchedCommands.add(batch.size());
+        try (Jedis jedis = pool.getResource()) {
+            final Pipeline pipeline = jedis.pipelined();
+            for (final PendingCommand<?> pending : batch) {
+                pending.queue(pipeline);
+            }
+            pipeline.sync();
+            batch.forEach(PendingCommand::complete);
+        } catch (final RuntimeException e) {
+            log.error("Unable to send a batch of Redis commands. commands={}, error={}", batch.size(),
+                e.getMessage());
+            batch.forEach(pending -> pending.fail(e));
+        } finally {
+            commitRoundTrip(roundTrip, BATCH_OPERATION);
+        }
+    }
+
+    private CommandMetrics metricsFor(final String command) {
+        return metrics.computeIfAbsent(command, c -> new CommandMetrics());
+    }
+
+    private static void commitRoundTrip(final RedisRoundTripEvent roundTrip, final String operation) {
+        roundTrip.end();
+        if (roundTrip.shouldCommit()) {
+            roundTrip.setOperation(operation);
+            roundTrip.commit();
+        }
+    }
+
+    /**
+     * Command waiting in the queue for the next batch.
+     * @param <T> Type of the command's reply.
+     */
+    private final class PendingCommand<T> {
+        private final String command;
+        private final Function<Pipeline, Response<T>> operation;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final long enqueuedNanos = System.nanoTime();
+        private Response<T> response;
+
+        private PendingCommand(final String command, final Function<Pipeline, Response<T>> operation) {
+            this.command = command;
+            this.operation = operation;
+        }
+
+        private void queue(final Pipeline pipeline) {
+            try {
+                response = operation.apply(pipeline);
+            } catch (final RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        private void complete() {
+            if (response == null) {
+                return;
+            }
+            final T reply;
+            try {
+                reply = response.get();
+            } catch (final JedisDataException e) {
+                fail(e);
+                return;
+            }
+            metricsFor(command).record(enqueuedNanos, false);
+            future.complete(reply);
+        }
+
+        private void fail(final Throwable e) {
+            if (future.completeExceptionally(e)) {
+                metricsFor(command).record(enqueuedNanos, true);
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package gg.sep.securityrobot.redis;
+
+import java.nio.charset.StandardCharsets;
+
+import com.google.common.hash.Hashing;
+import lombok.Getter;
+
+/**
+ * Lua script run atomically by Redis, eg to change several keys at once.
+ *
+ * The script's SHA-1 is computed up front, so it is normally run by {@code EVALSHA} without sending its source, and
+ * only sent in full the first time a Redis server sees it.
+ */
+@Getter
+public final class RedisScript {
+
+    private final String name;
+    private final String source;
+    private final String sha1;
+
+    /**
+     * Create a script.
+     * @param name Name of the script, used for metrics.
+     * @param source Lua source of the script.
+     */
+    public RedisScript(final String name, final String source) {
+        this.name = name;
+        this.source = source;
+        this.sha1 = Hashing.sha1().hashString(source, StandardCharsets.UTF_8).toString();
+    }
+}
@@ -0,0 +1,392 @@
+package gg.sep.securityrobot.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.log4j.Log4j2;
+
+import gg.sep.securityrobot.config.models.SearchConfig;
+import gg.sep.securityrobot.listeners.ChannelMessageConsumer;
+import gg.sep.securityrobot.models.twitch.tmi.TwitchChannelMessage;
+import gg.sep.securityrobot.utils.IRCUtils;
+
+/**
+ * Full-text index of the recent chat of selected channels, fed from the shared ingest path.
+ *
+ * Only channels listed in {@link SearchConfig#getChannels()}, the stream channel if
+ * {@link SearchConfig#isIndexStreamChannel()} is set, and channels whose chat log policy enables search are indexed,
+ * so the cost of every other channel is a couple of lookups on the raw channel name. Each indexed channel keeps at
+ * most about {@link SearchConfig#getMaxDocsPerChannel()} messages; its oldest segments are dropped to stay within
+ * it, even before they reach the retention.
+ *
+ * Each channel's messages are indexed into time partitioned segments. Messages are added to a segment covering the
+ * current {@link SearchConfig#getSegmentMinutes()} window, which is sealed into an immutable, compressed
+ * {@link IndexSegment} once the window has passed. Small neighbouring segments are merged until they reach
+ * {@link SearchConfig#getMergeMaxDocs()} messages or span {@link SearchConfig#getMergeMaxMinutes()}, so a day of a
+ * quiet channel is only a few segments, and segments older than the retention are dropped whole.
+ *
+ * Queries intersect the posting lists of their terms, smallest first, in each segment overlapping the time range,
+ * newest segment first, and stop as soon as enough hits are found. Phrases are checked against the matching messages
+ * themselves, so the index does not need to store term positions.
+ */
+@Log4j2
+public class ChatSearchIndex implements ChannelMessageConsumer {
+
+    private final SearchConfig config;
+    private final Set<String> configuredChannels;
+    private final Predicate<String> enabledByPolicy;
+    private final Supplier<String> streamChannel;
+    private final Map<String, ChannelIndex> channels = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Create a new, empty chat search index.
+     * @param config Chat search configuration.
+     * @param enabledByPolicy Tests whether a channel, by its IRC name, has a chat log policy which enables search.
+     * @param streamChannel Supplies the name of the stream channel.
+     */
+    public ChatSearchIndex(final SearchConfig config, final Predicate<String> enabledByPolicy,
+                           final Supplier<String> streamChannel) {
+        this.config = config;
+        this.configuredChannels = config.getChannels().stream()
+            .map(c -> IRCUtils.ircify(c.trim()))
+            .collect(Collectors.toSet());
+        this.enabledByPolicy = enabledByPolicy;
+        this.streamChannel = streamChannel;
+    }
+
+    /**
+     * Accepts messages of indexed channels only.
+     * @param ircChannel Channel name in IRC form, as received, eg "#channel".
+     * @return <code>true</code> if the channel is indexed; <code>false</code> otherwise.
+     */
+    @Override
+    public boolean accepts(final String ircChannel) {
+        return indexed(ircChannel);
+    }
+
+    /**
+     * Indexes a parsed channel message of an indexed channel.
+     * @param message Parsed Twitch channel message.
+     */
+    @Override
+    public void accept(final TwitchChannelMessage message) {
+        final String userId = message.getAuthor().getUserId();
+        if (userId == null) {
+            return;
+        }
+        final long time = message.getMessageTime().toInstant().toEpochMilli();
+        // add within compute, so that maintenance cannot remove the channel's index while a message is added to it
+        channels.compute(message.getCleanChannelName(), (channel, index) -> {
+            final ChannelIndex channelIndex = index == null ? new ChannelIndex() : index;
+            channelIndex.add(time, Long.parseLong(userId), message.getAuthor().getUserName(), message.getMessage());
+            return channelIndex;
+        });
+    }
+
+    /**
+     * Returns whether a channel's chat is added to the index.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     * @return <code>true</code> if the channel is indexed; <code>false</code> otherwise.
+     */
+    public boolean isIndexed(final String channel) {
+        return indexed(IRCUtils.ircify(channel));
+    }
+
+    /**
+     * Searches a channel's recent chat.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     * @param query Parsed search query.
+     * @param fromMillis Start of the time range, in epoch milliseconds, inclusive.
+     * @param toMillis End of the time range, in epoch milliseconds, exclusive.
+     * @param limit Maximum number of hits, capped by {@link SearchConfig#getMaxResults()}.
+     * @return Matching messages, newest first.
+     */
+    public SearchResult search(final String channel, final SearchQuery query, final long fromMillis,
+                               final long toMillis, final int limit) {
+        final long start = System.nanoTime();
+        final String cleanChannel = IRCUtils.stripIrcChannel(channel);
+        final int maxHits = Math.max(0, Math.min(limit, config.getMaxResults()));
+        final List<SearchHit> hits = new ArrayList<>();
+        int searched = 0;
+        final ChannelIndex index = channels.get(cleanChannel);
+        if (index != null && maxHits > 0) {
+            searched = index.search(cleanChannel, query, fromMillis, toMillis, maxHits, hits);
+        }
+        return SearchResult.builder()
+            .channel(cleanChannel)
+            .query(query.getText())
+            .fromMillis(fromMillis)
+            .toMillis(toMillis)
+            .segmentsSearched(searched)
+            .tookMicros(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start))
+            .hits(hits)
+            .build();
+    }
+
+    /**
+     * Returns the size of a channel's index, eg for the HTTP API.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     * @return Number of segments, messages, compressed posting bytes and messages evicted to stay within the limit of
+     *         the channel, or empty if it has no index.
+     */
+    public Optional<Map<String, Long>> getStats(final String channel) {
+        final ChannelIndex index = channels.get(IRCUtils.stripIrcChannel(channel));
+        return Optional.ofNullable(index).map(ChannelIndex::stats);
+    }
+
+    /**
+     * Seals segments whose window has passed, merges small neighbouring segments, drops segments older than the
+     * retention, and drops channels which are no longer indexed.
+     */
+    public void maintain() {
+        final long now = System.currentTimeMillis();
+        final long retainFrom = now - TimeUnit.HOURS.toMillis(config.getRetentionHours());
+        channels.forEach((channel, index) -> {
+            if (!isIndexed(channel)) {
+                channels.remove(channel);
+                return;
+            }
+            index.maintain(now, retainFrom);
+            // remove within computeIfPresent, so that a message being added keeps the channel's index
+            channels.computeIfPresent(channel, (c, i) -> i.isEmpty() ? null : i);
+        });
+    }
+
+    /**
+     * Starts the periodic index maintenance.
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("chat-search-%d").setDaemon(true).build());
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                maintain();
+            } catch (final RuntimeException e) {
+                log.error("Error maintaining the chat search index.", e);
+            }
+        }, config.getMaintenanceSeconds(), config.getMaintenanceSeconds(), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the periodic index maintenance.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private boolean indexed(final String ircChannel) {
+        if (configuredChannels.contains(ircChannel) || enabledByPolicy.test(ircChannel)) {
+            return true;
+        }
+        final String stream = config.isIndexStreamChannel() ? streamChannel.get() : null;
+        // compare in place, since this runs for every message in every channel
+        return stream != null && ircChannel.length() == stream.length() + 1
+            && ircChannel.regionMatches(true, 1, stream, 0, stream.length());
+    }
+
+    private static void searchSegment(final Segment segment, final String channel, final SearchQuery query,
+                                      final long fromMillis, final long toMillis, final int limit,
+                                      final List<SearchHit> hits) {
+        final List<int[]> postings = new ArrayList<>(query.getTerms().size());
+        for (final String term : query.getTerms()) {
+            final int[] docs = segment.postings(term);
+            if (docs.length == 0) {
+                return;
+            }
+            postings.add(docs);
+        }
+        postings.sort(Comparator.comparingInt(docs -> docs.length));
+        int[] candidates = postings.get(0);
+        for (int i = 1; i < postings.size() && candidates.length > 0; i++) {
+            candidates = PostingLists.intersect(candidates, postings.get(i));
+        }
+        for (int i = candidates.length - 1; i >= 0 && hits.size() < limit; i--) {
+            final int doc = candidates[i];
+            final long time = segment.messageTime(doc);
+            if (time < fromMillis || time >= toMillis) {
+                continue;
+            }
+            if (!query.getPhrases().isEmpty() && !query.matchesPhrases(Tokenizer.tokenize(segment.message(doc)))) {
+                continue;
+            }
+            hits.add(SearchHit.builder()
+                .channel(channel)
+                .messageTime(time)
+                .userId(segment.userId(doc))
+                .userName(segment.userName(doc))
+                .message(segment.message(doc))
+                .build());
+        }
+    }
+
+    private static boolean overlaps(final Segment segment, final long fromMillis, final long toMillis) {
+        return segment.docCount() > 0 && segment.maxTime() >= fromMillis && segment.minTime() < toMillis;
+    }
+
+    private static boolean startsWith(final List<IndexSegment> segments, final List<IndexSegment> prefix) {
+        if (segments.size() < prefix.size()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.size(); i++) {
+            if (segments.get(i) != prefix.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Segments of a single channel: the segment still being added to, and the sealed segments, oldest first.
+     */
+    private final class ChannelIndex {
+
+        // guarded by this
+        private SegmentBuilder active;
+        // replaced, never changed, so searches can read it without the lock; only changed under the lock
+        private volatile List<IndexSegment> sealed = Collections.emptyList();
+        // messages in the sealed segments, and messages dropped to stay within the limit; guarded by this
+        private long sealedDocs;
+        private long evictedDocs;
+
+        private synchronized void add(final long time, final long userId, final String userName,
+                                      final String message) {
+            if (active == null || !active.accepts(time) || active.docCount() >= config.getMergeMaxDocs()) {
+                sealActive();
+                final long segmentMillis = TimeUnit.MINUTES.toMillis(config.getSegmentMinutes());
+                active = new SegmentBuilder(time - Math.floorMod(time, segmentMillis) + segmentMillis);
+            }
+            active.add(time, userId, userName, message);
+            if (sealedDocs + active.docCount() > config.getMaxDocsPerChannel()) {
+                evictOldest();
+            }
+        }
+
+        private int search(final String channel, final SearchQuery query, final long fromMillis,
+                           final long toMillis, final int limit, final List<SearchHit> hits) {
+            int searched = 0;
+            synchronized (this) {
+                if (active != null && overlaps(active, fromMillis, toMillis)) {
+                    searchSegment(active, channel, query, fromMillis, toMillis, limit, hits);
+                    searched++;
+                }
+            }
+            final List<IndexSegment> segments = sealed;
+            for (int i = segments.size() - 1; i >= 0 && hits.size() < limit; i--) {
+                if (overlaps(segments.get(i), fromMillis, toMillis)) {
+                    searchSegment(segments.get(i), channel, query, fromMillis, toMillis, limit, hits);
+                    searched++;
+                }
+            }
+            return searched;
+        }
+
+        private void maintain(final long now, final long retainFrom) {
+            synchronized (this) {
+                if (active != null && !active.accepts(now)) {
+                    sealActive();
+                }
+            }
+            // merged without the lock; segments are only appended meanwhile, unless the channel goes over its limit
+            final List<IndexSegment> snapshot = sealed;
+            final List<IndexSegment> kept = new ArrayList<>(snapshot.size());
+            final long mergeMaxMillis = TimeUnit.MINUTES.toMillis(config.getMergeMaxMinutes());
+            for (final IndexSegment segment : snapshot) {
+                if (segment.maxTime() < retainFrom) {
+                    continue;
+                }
+                final int last = kept.size() - 1;
+                if (last >= 0 && kept.get(last).docCount() + segment.docCount() <= config.getMergeMaxDocs()
+                    && segment.maxTime() - kept.get(last).minTime() <= mergeMaxMillis) {
+                    kept.set(last, IndexSegment.merge(kept.get(last), segment));
+                } else {
+                    kept.add(segment);
+                }
+            }
+            synchronized (this) {
+                final List<IndexSegment> current = sealed;
+                if (!startsWith(current, snapshot)) {
+                    return; // segments were evicted while merging, so merge again on the next run
+                }
+                kept.addAll(current.subList(snapshot.size(), current.size()));
+                sealed = Collections.unmodifiableList(kept);
+                sealedDocs = kept.stream().mapToLong(IndexSegment::docCount).sum();
+                if (sealedDocs + (active == null ? 0 : active.docCount()) > config.getMaxDocsPerChannel()) {
+                    evictOldest();
+                }
+            }
+        }
+
+        private synchronized void sealActive() {
+            if (active == null || active.docCount() == 0) {
+                return;
+            }
+            final IndexSegment segment = active.seal();
+            final List<IndexSegment> segments = new ArrayList<>(sealed);
+            segments.add(segment);
+            sealed = Collections.unmodifiableList(segments);
+            sealedDocs += segment.docCount();
+            active = null;
+        }
+
+        /**
+         * Drops the oldest sealed segments until the channel is within its message limit. The active segment is
+         * never dropped; it is sealed once it reaches {@link SearchConfig#getMergeMaxDocs()} messages, which is at
+         * most the limit.
+         */
+        private synchronized void evictOldest() {
+            final long activeDocs = active == null ? 0 : active.docCount();
+            final List<IndexSegment> segments = sealed;
+            int drop = 0;
+            long docs = sealedDocs;
+            while (drop < segments.size() && docs + activeDocs > config.getMaxDocsPerChannel()) {
+                docs -= segments.get(drop++).docCount();
+            }
+            if (drop == 0) {
+                return;
+            }
+            evictedDocs += sealedDocs - docs;
+            sealed = Collections.unmodifiableList(new ArrayList<>(segments.subList(drop, segments.size())));
+            sealedDocs = docs;
+        }
+
+        private synchronized boolean isEmpty() {
+            return active == null && sealed.isEmpty();
+        }
+
+        private synchronized Map<String, Long> stats() {
+            final Map<String, Long> stats = new LinkedHashMap<>();
+            long docs = active == null ? 0 : active.docCount();
+            long bytes = 0;
+            for (final IndexSegment segment : sealed) {
+                docs += segment.docCount();
+                bytes += segment.postingsBytes();
+            }
+            stats.put("segments", (long) sealed.size() + (active == null ? 0 : 1));
+            stats.put("messages", docs);
+            stats.put("postingsBytes", bytes);
+            stats.put("evictedMessages", evictedDocs);
+            return stats;
+        }
+    }
+}
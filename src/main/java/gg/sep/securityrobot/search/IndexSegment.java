@@ -0,0 +1,165 @@
+package gg.sep.securityrobot.search;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable segment, with its posting lists compressed by {@link PostingLists} into a single byte array.
+ *
+ * Terms are sorted, so a term's postings are found by a binary search. Segments are safe to read from any thread.
+ */
+final class IndexSegment implements Segment {
+
+    private final String[] terms;
+    private final int[] docFreqs;
+    private final int[] offsets;
+    private final byte[] postings;
+    private final long[] times;
+    private final long[] userIds;
+    private final String[] userNames;
+    private final String[] messages;
+    private final long minTime;
+    private final long maxTime;
+
+    /**
+     * Create a segment from its sorted terms and their postings, and its message columns.
+     * @param terms Sorted terms.
+     * @param docs Ascending document IDs of each term.
+     * @param times Epoch milliseconds each message was sent at.
+     * @param userIds User ID of the author of each message.
+     * @param userNames Login name of the author of each message.
+     * @param messages Text of each message.
+     */
+    IndexSegment(final String[] terms, final int[][] docs, final long[] times, final long[] userIds,
+                 final String[] userNames, final String[] messages) {
+        this.terms = terms;
+        this.docFreqs = new int[terms.length];
+        this.offsets = new int[terms.length];
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < terms.length; i++) {
+            docFreqs[i] = docs[i].length;
+            offsets[i] = out.size();
+            PostingLists.encode(docs[i], docs[i].length, out);
+        }
+        this.postings = out.toByteArray();
+        this.times = times;
+        this.userIds = userIds;
+        this.userNames = userNames;
+        this.messages = messages;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (final long time : times) {
+            min = Math.min(min, time);
+            max = Math.max(max, time);
+        }
+        this.minTime = min;
+        this.maxTime = max;
+    }
+
+    /**
+     * Merges two segments into one, with the messages of the older segment first.
+     * @param older Segment covering the earlier span of time.
+     * @param newer Segment covering the later span of time.
+     * @return Merged segment.
+     */
+    static IndexSegment merge(final IndexSegment older, final IndexSegment newer) {
+        final int shift = older.docCount();
+        final List<String> terms = new ArrayList<>(older.terms.length + newer.terms.length);
+        final List<int[]> docs = new ArrayList<>(older.terms.length + newer.terms.length);
+        int i = 0;
+        int j = 0;
+        while (i < older.terms.length || j < newer.terms.length) {
+            final int compare = i == older.terms.length ? 1
+                : j == newer.terms.length ? -1 : older.terms[i].compareTo(newer.terms[j]);
+            if (compare < 0) {
+                terms.add(older.terms[i]);
+                docs.add(older.decode(i++));
+            } else if (compare > 0) {
+                terms.add(newer.terms[j]);
+                docs.add(shifted(newer.decode(j++), shift, null));
+            } else {
+                terms.add(older.terms[i]);
+                docs.add(shifted(newer.decode(j++), shift, older.decode(i++)));
+            }
+        }
+        return new IndexSegment(terms.toArray(new String[0]), docs.toArray(new int[0][]),
+            concat(older.times, newer.times), concat(older.userIds, newer.userIds),
+            concat(older.userNames, newer.userNames), concat(older.messages, newer.messages));
+    }
+
+    @Override
+    public int docCount() {
+        return times.length;
+    }
+
+    @Override
+    public long minTime() {
+        return minTime;
+    }
+
+    @Override
+    public long maxTime() {
+        return maxTime;
+    }
+
+    @Override
+    public int[] postings(final String term) {
+        final int index = Arrays.binarySearch(terms, term);
+        return index < 0 ? PostingLists.EMPTY : decode(index);
+    }
+
+    @Override
+    public long messageTime(final int doc) {
+        return times[doc];
+    }
+
+    @Override
+    public long userId(final int doc) {
+        return userIds[doc];
+    }
+
+    @Override
+    public String userName(final int doc) {
+        return userNames[doc];
+    }
+
+    @Override
+    public String message(final int doc) {
+        return messages[doc];
+    }
+
+    /**
+     * Size of the compressed posting lists.
+     * @return Number of bytes of compressed postings.
+     */
+    int postingsBytes() {
+        return postings.length;
+    }
+
+    private int[] decode(final int termIndex) {
+        return PostingLists.decode(postings, offsets[termIndex], docFreqs[termIndex]);
+    }
+
+    private static int[] shifted(final int[] docs, final int shift, final int[] prefix) {
+        final int start = prefix == null ? 0 : prefix.length;
+        final int[] result = prefix == null ? new int[docs.length] : Arrays.copyOf(prefix, start + docs.length);
+        for (int k = 0; k < docs.length; k++) {
+            result[start + k] = docs[k] + shift;
+        }
+        return result;
+    }
+
+    private static long[] concat(final long[] a, final long[] b) {
+        final long[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    private static String[] concat(final String[] a, final String[] b) {
+        final String[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+}
@@ -0,0 +1,88 @@
+package gg.sep.securityrobot.search;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Encodes posting lists, ie the ascending document IDs containing a term, as variable length deltas.
+ *
+ * Each document ID is stored as its difference from the previous one, in 7 bit groups with the high bit set on every
+ * group but the last. Chat terms mostly appear in documents close together, so most deltas take a single byte.
+ */
+@UtilityClass
+class PostingLists {
+
+    static final int[] EMPTY = new int[0];
+
+    /**
+     * Appends an encoded posting list to a buffer.
+     * @param docs Ascending document IDs.
+     * @param count Number of document IDs in the array to encode.
+     * @param out Buffer the encoded list is appended to.
+     */
+    static void encode(final int[] docs, final int count, final ByteArrayOutputStream out) {
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            int delta = docs[i] - previous;
+            previous = docs[i];
+            while ((delta & ~0x7F) != 0) {
+                out.write((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            out.write(delta);
+        }
+    }
+
+    /**
+     * Decodes a posting list.
+     * @param bytes Buffer holding the encoded list.
+     * @param offset Offset of the encoded list in the buffer.
+     * @param count Number of document IDs in the list.
+     * @return Ascending document IDs.
+     */
+    static int[] decode(final byte[] bytes, final int offset, final int count) {
+        final int[] docs = new int[count];
+        int position = offset;
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            previous += delta;
+            docs[i] = previous;
+        }
+        return docs;
+    }
+
+    /**
+     * Intersects two posting lists.
+     * @param a Ascending document IDs.
+     * @param b Ascending document IDs.
+     * @return Ascending document IDs which are in both lists.
+     */
+    static int[] intersect(final int[] a, final int[] b) {
+        final int[] both = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                both[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return count == both.length ? both : Arrays.copyOf(both, count);
+    }
+}
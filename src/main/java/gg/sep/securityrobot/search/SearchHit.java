@@ -0,0 +1,17 @@
+package gg.sep.securityrobot.search;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Single chat message matching a search query.
+ */
+@Builder
+@Getter
+public class SearchHit {
+    private final String channel;
+    private final long messageTime;
+    private final long userId;
+    private final String userName;
+    private final String message;
+}
@@ -0,0 +1,71 @@
+package gg.sep.securityrobot.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import lombok.Getter;
+
+/**
+ * Parsed chat search query: every term must appear in a matching message, and every quoted phrase must appear with
+ * its terms in order, eg <code>gg "nice play"</code>.
+ */
+@Getter
+public final class SearchQuery {
+
+    private static final Pattern CLAUSE = Pattern.compile("\"([^\"]*)\"?|(\\S+)");
+    private static final int MAX_TERMS = 16;
+
+    private final String text;
+    private final List<String> terms;
+    private final List<List<String>> phrases;
+
+    private SearchQuery(final String text, final List<String> terms, final List<List<String>> phrases) {
+        this.text = text;
+        this.terms = Collections.unmodifiableList(terms);
+        this.phrases = Collections.unmodifiableList(phrases);
+    }
+
+    /**
+     * Parses a query of terms and quoted phrases.
+     * @param text Query text.
+     * @return Parsed query, or empty if the query has no searchable terms or too many of them.
+     */
+    public static Optional<SearchQuery> parse(final String text) {
+        final Set<String> terms = new LinkedHashSet<>();
+        final List<List<String>> phrases = new ArrayList<>();
+        final Matcher matcher = CLAUSE.matcher(text);
+        while (matcher.find()) {
+            final boolean quoted = matcher.group(1) != null;
+            final List<String> clause = Tokenizer.tokenize(quoted ? matcher.group(1) : matcher.group(2));
+            terms.addAll(clause);
+            // a quoted single term is just a term, and an unquoted word like "don't" is a phrase of its parts
+            if (clause.size() > 1) {
+                phrases.add(clause);
+            }
+        }
+        if (terms.isEmpty() || terms.size() > MAX_TERMS) {
+            return Optional.empty();
+        }
+        return Optional.of(new SearchQuery(text.trim(), new ArrayList<>(terms), phrases));
+    }
+
+    /**
+     * Returns whether a message contains every phrase of the query.
+     * @param messageTerms Terms of the message, in order.
+     * @return <code>true</code> if every phrase appears in the message; <code>false</code> otherwise.
+     */
+    boolean matchesPhrases(final List<String> messageTerms) {
+        for (final List<String> phrase : phrases) {
+            if (Collections.indexOfSubList(messageTerms, phrase) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,21 @@
+package gg.sep.securityrobot.search;
+
+import java.util.List;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Result of a chat search, newest messages first.
+ */
+@Builder
+@Getter
+public class SearchResult {
+    private final String channel;
+    private final String query;
+    private final long fromMillis;
+    private final long toMillis;
+    private final int segmentsSearched;
+    private final long tookMicros;
+    private final List<SearchHit> hits;
+}
@@ -0,0 +1,62 @@
+package gg.sep.securityrobot.search;
+
+/**
+ * Messages of one channel over a span of time, with an inverted index of their terms.
+ *
+ * Document IDs are the positions of the messages in the segment, in the order they were indexed.
+ */
+interface Segment {
+
+    /**
+     * Number of messages in the segment.
+     * @return Number of messages.
+     */
+    int docCount();
+
+    /**
+     * Earliest message time in the segment.
+     * @return Epoch milliseconds of the earliest message.
+     */
+    long minTime();
+
+    /**
+     * Latest message time in the segment.
+     * @return Epoch milliseconds of the latest message.
+     */
+    long maxTime();
+
+    /**
+     * Returns the messages containing a term.
+     * @param term Lower case term.
+     * @return Ascending document IDs of the messages containing the term.
+     */
+    int[] postings(String term);
+
+    /**
+     * Time a message was sent.
+     * @param doc Document ID of the message.
+     * @return Epoch milliseconds the message was sent at.
+     */
+    long messageTime(int doc);
+
+    /**
+     * Author of a message.
+     * @param doc Document ID of the message.
+     * @return User ID of the author.
+     */
+    long userId(int doc);
+
+    /**
+     * Author of a message.
+     * @param doc Document ID of the message.
+     * @return Login name of the author.
+     */
+    String userName(int doc);
+
+    /**
+     * Text of a message.
+     * @param doc Document ID of the message.
+     * @return Text of the message.
+     */
+    String message(int doc);
+}
@@ -0,0 +1,147 @@
+package gg.sep.securityrobot.search;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Segment which messages are still being added to, covering one fixed window of time.
+ *
+ * Postings are kept as plain growable arrays until the window has passed and the segment is sealed into an
+ * {@link IndexSegment}. Not thread safe; the channel index guards it.
+ */
+final class SegmentBuilder implements Segment {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final long windowEnd;
+    private final Map<String, IntList> postings = new HashMap<>();
+    private long[] times = new long[INITIAL_CAPACITY];
+    private long[] userIds = new long[INITIAL_CAPACITY];
+    private String[] userNames = new String[INITIAL_CAPACITY];
+    private String[] messages = new String[INITIAL_CAPACITY];
+    private int count;
+    private long minTime = Long.MAX_VALUE;
+    private long maxTime = Long.MIN_VALUE;
+
+    /**
+     * Create an empty segment for a window of time.
+     * @param windowEnd Epoch milliseconds at which the window ends, exclusive.
+     */
+    SegmentBuilder(final long windowEnd) {
+        this.windowEnd = windowEnd;
+    }
+
+    /**
+     * Returns whether a message belongs in this segment. Messages arriving late, ie from before the window, are
+     * accepted so that they do not roll the segment over.
+     * @param time Epoch milliseconds the message was sent at.
+     * @return <code>true</code> if the message belongs in this segment; <code>false</code> if its window has passed.
+     */
+    boolean accepts(final long time) {
+        return time < windowEnd;
+    }
+
+    /**
+     * Adds a message to the segment.
+     * @param time Epoch milliseconds the message was sent at.
+     * @param userId User ID of the author.
+     * @param userName Login name of the author.
+     * @param message Text of the message.
+     */
+    void add(final long time, final long userId, final String userName, final String message) {
+        if (count == times.length) {
+            final int capacity = count * 2;
+            times = Arrays.copyOf(times, capacity);
+            userIds = Arrays.copyOf(userIds, capacity);
+            userNames = Arrays.copyOf(userNames, capacity);
+            messages = Arrays.copyOf(messages, capacity);
+        }
+        final int doc = count++;
+        times[doc] = time;
+        userIds[doc] = userId;
+        userNames[doc] = userName;
+        messages[doc] = message;
+        minTime = Math.min(minTime, time);
+        maxTime = Math.max(maxTime, time);
+        for (final String term : Tokenizer.tokenize(message)) {
+            postings.computeIfAbsent(term, t -> new IntList()).addOnce(doc);
+        }
+    }
+
+    /**
+     * Seals the segment into a compressed, immutable segment.
+     * @return Immutable copy of the segment.
+     */
+    IndexSegment seal() {
+        final String[] terms = postings.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+        final int[][] docs = new int[terms.length][];
+        for (int i = 0; i < terms.length; i++) {
+            docs[i] = postings.get(terms[i]).toArray();
+        }
+        return new IndexSegment(terms, docs, Arrays.copyOf(times, count), Arrays.copyOf(userIds, count),
+            Arrays.copyOf(userNames, count), Arrays.copyOf(messages, count));
+    }
+
+    @Override
+    public int docCount() {
+        return count;
+    }
+
+    @Override
+    public long minTime() {
+        return minTime;
+    }
+
+    @Override
+    public long maxTime() {
+        return maxTime;
+    }
+
+    @Override
+    public int[] postings(final String term) {
+        final IntList docs = postings.get(term);
+        return docs == null ? PostingLists.EMPTY : docs.toArray();
+    }
+
+    @Override
+    public long messageTime(final int doc) {
+        return times[doc];
+    }
+
+    @Override
+    public long userId(final int doc) {
+        return userIds[doc];
+    }
+
+    @Override
+    public String userName(final int doc) {
+        return userNames[doc];
+    }
+
+    @Override
+    public String message(final int doc) {
+        return messages[doc];
+    }
+
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        private void addOnce(final int value) {
+            // documents are added in order, so a repeated term in one message is always the last value
+            if (size > 0 && values[size - 1] == value) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        private int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package gg.sep.securityrobot.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Splits chat messages and queries into lower case terms of letters and digits.
+ */
+@UtilityClass
+class Tokenizer {
+
+    private static final int MAX_TERM_LENGTH = 64;
+
+    /**
+     * Splits a text into its terms, in order. Terms longer than {@value #MAX_TERM_LENGTH} characters are dropped.
+     * @param text Text to split.
+     * @return Terms of the text, in order, including duplicates.
+     */
+    static List<String> tokenize(final String text) {
+        final List<String> terms = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isLetterOrDigit(text.charAt(i))) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                addTerm(terms, text, start, i);
+                start = -1;
+            }
+        }
+        if (start >= 0) {
+            addTerm(terms, text, start, text.length());
+        }
+        return terms;
+    }
+
+    private static void addTerm(final List<String> terms, final String text, final int start, final int end) {
+        if (end - start <= MAX_TERM_LENGTH) {
+            terms.add(text.substring(start, end).toLowerCase(Locale.ROOT));
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package gg.sep.securityrobot.snapshot;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Constants of the warm restart snapshot file format.
+ *
+ * A snapshot file is laid out as:
+ * <pre>
+ *   header:   magic (int), version (int), written at epoch millis (long)
+ *   sections: channels, custom commands, follows, live channels, channel room IDs, users
+ *   trailer:  CRC32 of the header and sections (int), magic (int)
+ * </pre>
+ * Each section is an entry count (int) followed by its entries. Strings are a byte length (int) followed by UTF-8
+ * bytes, and booleans are a single byte. Custom commands are their name and their Redis hash fields, so they are
+ * parsed exactly like commands read from Redis.
+ */
+@UtilityClass
+class SnapshotFormat {
+    static final int MAGIC = 0x53525753; // "SRWS"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final int TRAILER_BYTES = 8;
+    static final String IN_PROGRESS_SUFFIX = ".tmp";
+}
@@ -0,0 +1,49 @@
+package gg.sep.securityrobot.snapshot;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * In-memory state of the bot which is expensive to rebuild after a restart: the initial channel list, custom
+ * commands, cached follows and stream statuses, and the identity table.
+ *
+ * Redis remains the source of truth for channels and custom commands; a snapshot only lets the bot start with them
+ * before Redis has been read.
+ */
+@Getter
+@Builder
+public class StateSnapshot {
+    private final long writtenAtMillis;
+    @Builder.Default private final Set<String> channels = Collections.emptySet();
+    @Builder.Default private final Map<String, Map<String, String>> customCommands = Collections.emptyMap();
+    @Builder.Default private final Map<String, Boolean> follows = Collections.emptyMap();
+    @Builder.Default private final Map<String, Boolean> liveChannels = Collections.emptyMap();
+    @Builder.Default private final Map<String, Long> channelRoomIds = Collections.emptyMap();
+    @Builder.Default private final List<User> users = Collections.emptyList();
+
+    /**
+     * Time since the snapshot was written.
+     * @return Age of the snapshot in milliseconds.
+     */
+    public long ageMillis() {
+        return System.currentTimeMillis() - writtenAtMillis;
+    }
+
+    /**
+     * Identity of a user in the snapshot's identity table.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static final class User {
+        private final long userId;
+        private final String login;
+        private final String displayName;
+        private final long lastSeenMillis;
+    }
+}
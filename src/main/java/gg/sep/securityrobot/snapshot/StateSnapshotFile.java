@@ -0,0 +1,223 @@
+package gg.sep.securityrobot.snapshot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Reads and writes {@link StateSnapshot}s in the binary format described by {@link SnapshotFormat}.
+ *
+ * Snapshots are written to a temporary file which is then atomically moved over the previous snapshot, so a crash
+ * while writing never leaves a partial snapshot behind. They are read back through a read-only memory mapping, and a
+ * snapshot with a bad magic, an unknown version or a checksum mismatch is ignored.
+ */
+@Log4j2
+public class StateSnapshotFile {
+
+    private final Path path;
+
+    /**
+     * Create a new snapshot file, which does not need to exist yet.
+     * @param path Path of the snapshot file.
+     */
+    public StateSnapshotFile(final Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Writes a snapshot, replacing the previous one.
+     * @param snapshot Snapshot to write.
+     * @return Size of the written snapshot, in bytes.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    public int write(final StateSnapshot snapshot) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(SnapshotFormat.MAGIC);
+        out.writeInt(SnapshotFormat.VERSION);
+        out.writeLong(snapshot.getWrittenAtMillis());
+
+        out.writeInt(snapshot.getChannels().size());
+        for (final String channel : snapshot.getChannels()) {
+            writeString(out, channel);
+        }
+        out.writeInt(snapshot.getCustomCommands().size());
+        for (final Map.Entry<String, Map<String, String>> command : snapshot.getCustomCommands().entrySet()) {
+            writeString(out, command.getKey());
+            out.writeInt(command.getValue().size());
+            for (final Map.Entry<String, String> field : command.getValue().entrySet()) {
+                writeString(out, field.getKey());
+                writeString(out, field.getValue());
+            }
+        }
+        writeBooleans(out, snapshot.getFollows());
+        writeBooleans(out, snapshot.getLiveChannels());
+        out.writeInt(snapshot.getChannelRoomIds().size());
+        for (final Map.Entry<String, Long> channel : snapshot.getChannelRoomIds().entrySet()) {
+            writeString(out, channel.getKey());
+            out.writeLong(channel.getValue());
+        }
+        out.writeInt(snapshot.getUsers().size());
+        for (final StateSnapshot.User user : snapshot.getUsers()) {
+            out.writeLong(user.getUserId());
+            writeString(out, user.getLogin());
+            writeString(out, user.getDisplayName());
+            out.writeLong(user.getLastSeenMillis());
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+        out.writeInt(SnapshotFormat.MAGIC);
+        out.flush();
+
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        final Path inProgress = path.resolveSibling(path.getFileName() + SnapshotFormat.IN_PROGRESS_SUFFIX);
+        try (FileChannel channel = FileChannel.open(inProgress, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(inProgress, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return bytes.size();
+    }
+
+    /**
+     * Reads the snapshot, if there is a valid one.
+     * @return The snapshot, or empty if there is no snapshot, or it is invalid.
+     */
+    public Optional<StateSnapshot> read() {
+        final MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (final NoSuchFileException e) {
+            return Optional.empty();
+        } catch (final IOException e) {
+            log.warn("Unable to read warm restart snapshot. file={}", path, e);
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(parse(data));
+        } catch (final IllegalStateException | BufferUnderflowException | IllegalArgumentException e) {
+            log.warn("Ignoring invalid warm restart snapshot. file={}, reason={}", path, e.toString());
+            return Optional.empty();
+        }
+    }
+
+    private static StateSnapshot parse(final ByteBuffer data) {
+        final int size = data.capacity();
+        if (size < SnapshotFormat.HEADER_BYTES + SnapshotFormat.TRAILER_BYTES
+            || data.getInt(0) != SnapshotFormat.MAGIC || data.getInt(size - Integer.BYTES) != SnapshotFormat.MAGIC) {
+            throw new IllegalStateException("bad magic");
+        }
+        if (data.getInt(Integer.BYTES) != SnapshotFormat.VERSION) {
+            throw new IllegalStateException("unsupported version " + data.getInt(Integer.BYTES));
+        }
+        final ByteBuffer body = data.duplicate();
+        body.limit(size - SnapshotFormat.TRAILER_BYTES);
+        final CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        if ((int) crc.getValue() != data.getInt(size - SnapshotFormat.TRAILER_BYTES)) {
+            throw new IllegalStateException("checksum mismatch");
+        }
+
+        body.position(2 * Integer.BYTES);
+        final long writtenAtMillis = body.getLong();
+        final int channelCount = body.getInt();
+        final Set<String> channels = new HashSet<>(channelCount * 2);
+        for (int i = 0; i < channelCount; i++) {
+            channels.add(readString(body));
+        }
+        final int commandCount = body.getInt();
+        final Map<String, Map<String, String>> customCommands = new HashMap<>(commandCount * 2);
+        for (int i = 0; i < commandCount; i++) {
+            final String name = readString(body);
+            final int fieldCount = body.getInt();
+            final Map<String, String> fields = new HashMap<>(fieldCount * 2);
+            for (int f = 0; f < fieldCount; f++) {
+                fields.put(readString(body), readString(body));
+            }
+            customCommands.put(name, fields);
+        }
+        final Map<String, Boolean> follows = readBooleans(body);
+        final Map<String, Boolean> liveChannels = readBooleans(body);
+        final int roomCount = body.getInt();
+        final Map<String, Long> channelRoomIds = new HashMap<>(roomCount * 2);
+        for (int i = 0; i < roomCount; i++) {
+            channelRoomIds.put(readString(body), body.getLong());
+        }
+        final int userCount = body.getInt();
+        final List<StateSnapshot.User> users = new ArrayList<>(userCount);
+        for (int i = 0; i < userCount; i++) {
+            users.add(new StateSnapshot.User(body.getLong(), readString(body), readString(body), body.getLong()));
+        }
+        return StateSnapshot.builder()
+            .writtenAtMillis(writtenAtMillis)
+            .channels(channels)
+            .customCommands(customCommands)
+            .follows(follows)
+            .liveChannels(liveChannels)
+            .channelRoomIds(channelRoomIds)
+            .users(users)
+            .build();
+    }
+
+    private static void writeBooleans(final DataOutputStream out, final Map<String, Boolean> values)
+        throws IOException {
+        out.writeInt(values.size());
+        for (final Map.Entry<String, Boolean> value : values.entrySet()) {
+            writeString(out, value.getKey());
+            out.writeBoolean(value.getValue());
+        }
+    }
+
+    private static Map<String, Boolean> readBooleans(final ByteBuffer in) {
+        final int count = in.getInt();
+        final Map<String, Boolean> values = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            values.put(readString(in), in.get() != 0);
+        }
+        return values;
+    }
+
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        final byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(encoded.length);
+        out.write(encoded);
+    }
+
+    private static String readString(final ByteBuffer in) {
+        final int length = in.getInt();
+        if (length < 0 || length > in.remaining()) {
+            throw new IllegalStateException("bad string length " + length);
+        }
+        final byte[] encoded = new byte[length];
+        in.get(encoded);
+        return new String(encoded, StandardCharsets.UTF_8);
+    }
+}
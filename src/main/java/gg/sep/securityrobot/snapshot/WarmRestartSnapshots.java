@@ -0,0 +1,140 @@
+package gg.sep.securityrobot.snapshot;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.log4j.Log4j2;
+
+import gg.sep.securityrobot.config.models.SnapshotConfig;
+
+/**
+ * Periodically snapshots the bot's in-memory state to local disk, so that the next start of the bot can begin from
+ * it instead of from cold caches.
+ *
+ * On start, the snapshot is loaded before anything else is read from Redis or Twitch. Anything Redis is the source of
+ * truth for is then reconciled against Redis in the background, on the snapshot thread, once the bot is ready.
+ */
+@Log4j2
+public class WarmRestartSnapshots {
+
+    private final SnapshotConfig config;
+    private final StateSnapshotFile file;
+    private final Supplier<Optional<StateSnapshot>> capture;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Create a new warm restart snapshotter, which is not started yet.
+     * @param config Warm restart snapshot configuration.
+     * @param capture Captures the current state of the bot, or empty if the bot is not in a state worth keeping,
+     *                eg because it has not finished starting.
+     */
+    public WarmRestartSnapshots(final SnapshotConfig config, final Supplier<Optional<StateSnapshot>> capture) {
+        this.config = config;
+        this.file = new StateSnapshotFile(Paths.get(config.getFile()));
+        this.capture = capture;
+    }
+
+    /**
+     * Loads the last snapshot, if snapshots are enabled and it is recent enough to be useful.
+     * @return The last snapshot, or empty if there is none to start from.
+     */
+    public Optional<StateSnapshot> load() {
+        if (!config.isEnabled()) {
+            return Optional.empty();
+        }
+        final long started = System.nanoTime();
+        final Optional<StateSnapshot> snapshot = file.read()
+            .filter(s -> s.ageMillis() <= TimeUnit.MINUTES.toMillis(config.getMaxAgeMinutes()));
+        snapshot.ifPresent(s -> log.info("Loaded warm restart snapshot. ageSeconds={}, channels={}, commands={}, "
+                + "follows={}, users={}, micros={}", TimeUnit.MILLISECONDS.toSeconds(s.ageMillis()),
+            s.getChannels().size(), s.getCustomCommands().size(), s.getFollows().size(), s.getUsers().size(),
+            TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started)));
+        return snapshot;
+    }
+
+    /**
+     * Captures and writes a snapshot now.
+     * @return <code>true</code> if a snapshot was written; <code>false</code> otherwise.
+     */
+    public boolean write() {
+        if (!config.isEnabled()) {
+            return false;
+        }
+        try {
+            final Optional<StateSnapshot> snapshot = capture.get();
+            if (!snapshot.isPresent()) {
+                return false;
+            }
+            final int bytes = file.write(snapshot.get());
+            log.debug("Wrote warm restart snapshot. bytes={}", bytes);
+            return true;
+        } catch (final IOException | RuntimeException e) {
+            log.error("Unable to write warm restart snapshot.", e);
+            return false;
+        }
+    }
+
+    /**
+     * Runs a reconciliation of the loaded snapshot against Redis in the background.
+     * @param reconciliation Work which reconciles the loaded state against its source of truth.
+     */
+    public synchronized void reconcile(final Runnable reconciliation) {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.execute(() -> {
+            final long started = System.nanoTime();
+            try {
+                reconciliation.run();
+                log.info("Reconciled warm restart snapshot. millis={}",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+            } catch (final RuntimeException e) {
+                log.error("Unable to reconcile warm restart snapshot.", e);
+            }
+        });
+    }
+
+    /**
+     * Starts writing snapshots periodically, if snapshots are enabled.
+     */
+    public synchronized void start() {
+        if (scheduler != null || !config.isEnabled()) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("warm-restart-%d").setDaemon(true).build());
+        scheduler.scheduleWithFixedDelay(this::write, config.getIntervalSeconds(), config.getIntervalSeconds(),
+            TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops writing snapshots periodically, and writes a final snapshot.
+     */
+    public void stop() {
+        final ScheduledExecutorService stopped;
+        synchronized (this) {
+            if (scheduler == null) {
+                return;
+            }
+            stopped = scheduler;
+            scheduler = null;
+        }
+        stopped.shutdown();
+        try {
+            // let a snapshot which is being written finish, rather than write over it
+            if (!stopped.awaitTermination(5, TimeUnit.SECONDS)) {
+                stopped.shutdownNow();
+            }
+        } catch (final InterruptedException e) {
+            stopped.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        write();
+    }
+}
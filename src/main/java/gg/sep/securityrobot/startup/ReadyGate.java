@@ -0,0 +1,123 @@
+package gg.sep.securityrobot.startup;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Barrier which holds back IRC event handling until the bot has finished starting.
+ *
+ * Channels are joined while other parts of the bot may still be starting, so events which arrive before the gate is
+ * opened are buffered, up to a limit, and run in the order they arrived once it is. After that, events run
+ * immediately on the calling thread, at the cost of two volatile reads. Once the bot starts shutting down, the gate is
+ * closed, and events are rejected rather than handled.
+ */
+@Log4j2
+public class ReadyGate {
+
+    private final int maxBuffered;
+    private final Queue<Runnable> buffered = new ArrayDeque<>();
+    private final LongAdder rejected = new LongAdder();
+    private volatile boolean ready;
+    private volatile boolean closed;
+    private long dropped; // guarded by this
+
+    /**
+     * Create a new, closed gate.
+     * @param maxBuffered Maximum number of events buffered before the gate is opened. Further events are dropped.
+     */
+    public ReadyGate(final int maxBuffered) {
+        this.maxBuffered = maxBuffered;
+    }
+
+    /**
+     * Runs an event handler now if the gate is open, or buffers it until the gate is opened. Does nothing once the
+     * gate is closed.
+     * @param handler Handler of the event.
+     */
+    public void execute(final Runnable handler) {
+        if (closed) {
+            rejected.increment();
+            return;
+        }
+        if (!ready) {
+            synchronized (this) {
+                if (closed) {
+                    rejected.increment();
+                    return;
+                }
+                if (!ready) {
+                    if (buffered.size() < maxBuffered) {
+                        buffered.add(handler);
+                    } else {
+                        dropped++;
+                    }
+                    return;
+                }
+            }
+        }
+        handler.run();
+    }
+
+    /**
+     * Returns whether the gate has been opened.
+     * @return <code>true</code> if the gate is open; <code>false</code> otherwise.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Number of events rejected because they arrived after the gate was closed.
+     * @return Number of rejected events.
+     */
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Closes the gate for good, so events which arrive from now on are rejected. Buffered events which have not been
+     * run yet are dropped.
+     */
+    public synchronized void close() {
+        closed = true;
+        if (!buffered.isEmpty()) {
+            log.info("Closed ready gate before it was opened. dropped={}", buffered.size());
+            rejected.add(buffered.size());
+            buffered.clear();
+        }
+    }
+
+    /**
+     * Opens the gate, running every buffered event handler in the order the events arrived.
+     *
+     * Events which arrive while the buffered ones are running are buffered behind them, so ordering is kept.
+     */
+    public void open() {
+        int replayed = 0;
+        while (true) {
+            final Runnable[] batch;
+            synchronized (this) {
+                if (buffered.isEmpty()) {
+                    ready = true;
+                    if (replayed > 0 || dropped > 0) {
+                        log.info("Opened ready gate. replayed={}, dropped={}", replayed, dropped);
+                    }
+                    return;
+                }
+                batch = buffered.toArray(new Runnable[0]);
+                buffered.clear();
+            }
+            for (final Runnable handler : batch) {
+                try {
+                    handler.run();
+                } catch (final RuntimeException e) {
+                    log.error("Error in buffered event handler.", e);
+                }
+                replayed++;
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package gg.sep.securityrobot.startup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.log4j.Log4j2;
+
+import gg.sep.securityrobot.exceptions.SecurityRobotFatal;
+
+/**
+ * Runs the phases of the bot's startup, in parallel wherever their dependencies allow.
+ *
+ * Each phase starts as soon as every phase it depends on has finished, so independent phases (eg connecting to
+ * MongoDB, Redis and Twitch) overlap, and the total startup time is that of the slowest chain of dependent phases
+ * rather than the sum of all of them. Phases must be added after the phases they depend on, which also rules out
+ * cycles. The duration of every phase is recorded and logged.
+ */
+@Log4j2
+public class StartupOrchestrator {
+
+    /**
+     * Work done by a startup phase.
+     */
+    @FunctionalInterface
+    public interface Phase {
+
+        /**
+         * Runs the phase.
+         * @throws Exception If the phase failed, which fails the startup.
+         */
+        void run() throws Exception;
+    }
+
+    private final int threads;
+    private final int timeoutSeconds;
+    private final Map<String, CompletableFuture<Void>> phases = new LinkedHashMap<>();
+    private final Map<String, Long> timings = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final CompletableFuture<Void> begin = new CompletableFuture<>();
+    private ExecutorService executor;
+
+    /**
+     * Create a new startup orchestrator, with no phases.
+     * @param threads Maximum number of phases which can run at the same time.
+     * @param timeoutSeconds Maximum time the whole startup can take.
+     */
+    public StartupOrchestrator(final int threads, final int timeoutSeconds) {
+        this.threads = Math.max(1, threads);
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    /**
+     * Adds a phase to the startup.
+     * @param name Name of the phase, used for its timing and in errors.
+     * @param phase Work done by the phase.
+     * @param dependencies Names of the phases which must finish before this phase starts.
+     * @throws IllegalArgumentException If the name is already used, or a dependency has not been added.
+     */
+    public synchronized void phase(final String name, final Phase phase, final String... dependencies) {
+        if (phases.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate startup phase: " + name);
+        }
+        final List<CompletableFuture<Void>> waitFor = new ArrayList<>(dependencies.length + 1);
+        waitFor.add(begin);
+        for (final String dependency : dependencies) {
+            final CompletableFuture<Void> future = phases.get(dependency);
+            if (future == null) {
+                throw new IllegalArgumentException(String.format(
+                    "Startup phase %s depends on %s, which has not been added.", name, dependency));
+            }
+            waitFor.add(future);
+        }
+        phases.put(name, CompletableFuture.allOf(waitFor.toArray(new CompletableFuture<?>[0]))
+            .thenRunAsync(() -> runPhase(name, phase), task -> executor.execute(task)));
+    }
+
+    /**
+     * Runs every phase, and waits for all of them to finish.
+     * @return Duration of each phase in milliseconds, in the order the phases were added.
+     * @throws SecurityRobotFatal If any phase failed, or the startup timed out.
+     */
+    public synchronized Map<String, Long> run() throws SecurityRobotFatal {
+        final long started = System.nanoTime();
+        executor = Executors.newFixedThreadPool(threads,
+            new ThreadFactoryBuilder().setNameFormat("startup-%d").setDaemon(true).build());
+        try {
+            begin.complete(null);
+            CompletableFuture.allOf(phases.values().toArray(new CompletableFuture<?>[0]))
+                .get(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (final ExecutionException e) {
+            final Throwable cause = (e.getCause() instanceof CompletionException)
+                ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof SecurityRobotFatal) {
+                throw (SecurityRobotFatal) cause;
+            }
+            throw new SecurityRobotFatal("Startup failed: " + cause.getMessage(), cause);
+        } catch (final TimeoutException e) {
+            throw new SecurityRobotFatal(String.format("Startup did not finish within %d seconds. Unfinished: %s",
+                timeoutSeconds, unfinished()));
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SecurityRobotFatal("Startup was interrupted.", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        final Map<String, Long> result = new LinkedHashMap<>();
+        phases.keySet().forEach(name -> result.put(name, timings.get(name)));
+        log.info("Startup finished. totalMillis={}, phaseMillis={}",
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), result);
+        return result;
+    }
+
+    private void runPhase(final String name, final Phase phase) {
+        final long started = System.nanoTime();
+        try {
+            phase.run();
+        } catch (final Exception e) {
+            throw new CompletionException(new SecurityRobotFatal(
+                String.format("Startup phase %s failed: %s", name, e.getMessage()), e));
+        }
+        final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        timings.put(name, millis);
+        log.debug("Startup phase finished. phase={}, millis={}", name, millis);
+    }
+
+    private List<String> unfinished() {
+        final List<String> names = new ArrayList<>();
+        phases.forEach((name, future) -> {
+            if (!future.isDone()) {
+                names.add(name);
+            }
+        });
+        return names;
+    }
+}
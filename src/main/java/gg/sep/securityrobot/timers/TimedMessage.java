@@ -0,0 +1,16 @@
+package gg.sep.securityrobot.timers;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Definition of a message which is sent to a channel periodically, stored as JSON in Redis.
+ */
+@Getter
+@Builder
+public class TimedMessage {
+    private String name;
+    private String message;
+    private int intervalSeconds;
+    private int minMessages;
+}
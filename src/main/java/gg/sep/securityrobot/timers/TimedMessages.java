@@ -0,0 +1,299 @@
+package gg.sep.securityrobot.timers;
+
+import static gg.sep.securityrobot.SecurityRobot.REDIS_PREFIX;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.log4j.Log4j2;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisException;
+
+import gg.sep.securityrobot.config.models.TimersConfig;
+import gg.sep.securityrobot.identity.IdentityTable;
+import gg.sep.securityrobot.identity.TwitchChannelIdentity;
+import gg.sep.securityrobot.listeners.ChannelMessageConsumer;
+import gg.sep.securityrobot.models.twitch.tmi.TwitchChannelMessage;
+import gg.sep.securityrobot.outbound.OutboundMessageQueue;
+import gg.sep.securityrobot.redis.RedisAccess;
+import gg.sep.securityrobot.redis.RedisScript;
+import gg.sep.securityrobot.twitch.StreamStatusCache;
+import gg.sep.securityrobot.utils.IRCUtils;
+import gg.sep.securityrobot.utils.ModelParser;
+
+/**
+ * Sends each channel's {@link TimedMessage}s periodically, driven by a single {@link TimingWheel}.
+ *
+ * Timer definitions are stored in one Redis hash per channel, of timer name to JSON definition. Every timer in every
+ * channel shares one wheel and one thread, so thousands of timers cost a node each rather than a scheduled task
+ * each. Only channels with timers keep any state (a message counter, fed by the ingest path), so idle channels cost
+ * nothing. When a timer comes due it is skipped if its channel has not seen enough messages since it last fired,
+ * if the bot is not in the channel, or (optionally) if the channel is offline; otherwise its message is handed to
+ * the {@link OutboundMessageQueue}.
+ */
+@Log4j2
+public class TimedMessages implements ChannelMessageConsumer {
+
+    private static final String TIMERS_KEY_F = REDIS_PREFIX + "timers:%s";
+    private static final String TIMER_CHANNELS_KEY = REDIS_PREFIX + "timer_channels";
+    // KEYS: channel's timers hash, timer channels set; ARGV: channel, timer name, timer JSON
+    private static final RedisScript ADD_TIMER = new RedisScript("addTimer",
+        "redis.call('HSET', KEYS[1], ARGV[2], ARGV[3])\n"
+            + "return redis.call('SADD', KEYS[2], ARGV[1])");
+    // KEYS: channel's timers hash, timer channels set; ARGV: channel, timer name
+    private static final RedisScript REMOVE_TIMER = new RedisScript("removeTimer",
+        "local removed = redis.call('HDEL', KEYS[1], ARGV[2])\n"
+            + "if redis.call('HLEN', KEYS[1]) == 0 then redis.call('SREM', KEYS[2], ARGV[1]) end\n"
+            + "return removed");
+
+    private final TimersConfig config;
+    private final RedisAccess redis;
+    private final StreamStatusCache streamStatus;
+    private final IdentityTable identityTable;
+    private final OutboundMessageQueue outbound;
+    private final Map<String, ChannelTimers> channels = new ConcurrentHashMap<>();
+    private final TimingWheel<TimerEntry> wheel;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Create a new timed message engine. Timers are loaded from Redis when it is started.
+     * @param config Timed messages configuration.
+     * @param redis Redis which timer definitions are stored in.
+     * @param streamStatus Cache used to check whether channels are live.
+     * @param identityTable Identity table used to find the channels the bot is in.
+     * @param outbound Queue which timed messages are sent through.
+     */
+    public TimedMessages(final TimersConfig config, final RedisAccess redis, final StreamStatusCache streamStatus,
+                         final IdentityTable identityTable, final OutboundMessageQueue outbound) {
+        this.config = config;
+        this.redis = redis;
+        this.streamStatus = streamStatus;
+        this.identityTable = identityTable;
+        this.outbound = outbound;
+        this.wheel = new TimingWheel<>(config.getWheelSize());
+    }
+
+    /**
+     * Counts a message towards the activity of its channel, if the channel has timers.
+     * @param message Parsed Twitch channel message.
+     */
+    @Override
+    public void accept(final TwitchChannelMessage message) {
+        final ChannelTimers timers = channels.get(message.getCleanChannelName());
+        if (timers != null) {
+            timers.messageCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Loads every channel's timers from Redis and starts running them. Each loaded timer first fires at a random
+     * point within its interval, so timers loaded together do not all fire together.
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        load();
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("timed-messages-%d").setDaemon(true).build());
+        scheduler.execute(() -> channels.values().forEach(timers -> timers.entries.values().forEach(entry -> {
+            final long intervalTicks = ticks(entry.timer.getIntervalSeconds());
+            wheel.schedule(entry, ThreadLocalRandom.current().nextLong(1, intervalTicks + 1));
+        })));
+        scheduler.scheduleAtFixedRate(this::tick, config.getTickMillis(), config.getTickMillis(),
+            TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops running timers.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Returns the timers of a channel.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     * @return Timers of the channel, sorted by name.
+     */
+    public List<TimedMessage> getTimers(final String channel) {
+        final ChannelTimers timers = channels.get(IRCUtils.stripIrcChannel(channel));
+        final List<TimedMessage> result = new ArrayList<>();
+        if (timers != null) {
+            timers.entries.values().forEach(entry -> result.add(entry.timer));
+            result.sort(Comparator.comparing(TimedMessage::getName));
+        }
+        return result;
+    }
+
+    /**
+     * Adds a timer to a channel, or replaces the channel's timer of the same name. The timer first fires one
+     * interval from now.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     * @param timer Definition of the timer.
+     * @throws JedisException If the timer could not be saved to Redis.
+     */
+    public synchronized void addTimer(final String channel, final TimedMessage timer) {
+        final String cleanChannel = IRCUtils.stripIrcChannel(channel);
+        redis.eval(ADD_TIMER, Arrays.asList(String.format(TIMERS_KEY_F, cleanChannel), TIMER_CHANNELS_KEY),
+            Arrays.asList(cleanChannel, timer.getName(), ModelParser.GSON.toJson(timer)));
+        final TimerEntry entry = install(cleanChannel, timer);
+        schedule(entry, ticks(timer.getIntervalSeconds()));
+    }
+
+    /**
+     * Removes a timer from a channel.
+     * @param channel Twitch channel in either IRC or non-IRC form.
+     * @param name Name of the timer.
+     * @return <code>true</code> if the channel had the timer; <code>false</code> otherwise.
+     * @throws JedisException If the timer could not be removed from Redis.
+     */
+    public synchronized boolean removeTimer(final String channel, final String name) {
+        final String cleanChannel = IRCUtils.stripIrcChannel(channel);
+        final String key = String.format(TIMERS_KEY_F, cleanChannel);
+        final long removed = (Long) redis.eval(REMOVE_TIMER, Arrays.asList(key, TIMER_CHANNELS_KEY),
+            Arrays.asList(cleanChannel, name));
+        channels.computeIfPresent(cleanChannel, (c, timers) -> {
+            final TimerEntry entry = timers.entries.remove(name);
+            if (entry != null) {
+                entry.cancelled = true;
+            }
+            return timers.entries.isEmpty() ? null : timers;
+        });
+        return removed > 0;
+    }
+
+    private void load() {
+        final Map<String, Response<Map<String, String>>> stored = new HashMap<>();
+        try {
+            redis.execute("loadTimers", jedis -> {
+                final Set<String> timerChannels = jedis.smembers(TIMER_CHANNELS_KEY);
+                final Pipeline pipeline = jedis.pipelined();
+                timerChannels.forEach(channel -> stored.put(channel, pipeline.hgetAll(String.format(TIMERS_KEY_F,
+                    channel))));
+                pipeline.sync();
+                return null;
+            });
+        } catch (final JedisException e) {
+            log.error("Unable to load timed messages from Redis.", e);
+            return;
+        }
+        stored.forEach((channel, timers) -> timers.get().values().forEach(json ->
+            ModelParser.parseJson(json, TimedMessage.class).ifPresent(timer -> install(channel, timer))));
+        log.info("Loaded timed messages. channels={}", stored.size());
+    }
+
+    private TimerEntry install(final String cleanChannel, final TimedMessage timer) {
+        final ChannelTimers timers = channels.computeIfAbsent(cleanChannel, ChannelTimers::new);
+        final TimerEntry entry = new TimerEntry(timers, timer);
+        final TimerEntry replaced = timers.entries.put(timer.getName(), entry);
+        if (replaced != null) {
+            replaced.cancelled = true;
+        }
+        return entry;
+    }
+
+    private synchronized void schedule(final TimerEntry entry, final long delayTicks) {
+        if (scheduler != null) {
+            scheduler.execute(() -> wheel.schedule(entry, delayTicks));
+        }
+    }
+
+    private long ticks(final int seconds) {
+        return Math.max(1, (seconds * 1000L + config.getTickMillis() - 1) / config.getTickMillis());
+    }
+
+    private void tick() {
+        try {
+            wheel.advance(this::fire);
+        } catch (final RuntimeException e) {
+            log.error("Error running timed messages.", e);
+        }
+    }
+
+    private void fire(final TimerEntry entry) {
+        if (entry.cancelled) {
+            return; // dropped from the wheel
+        }
+        wheel.schedule(entry, ticks(entry.timer.getIntervalSeconds()));
+
+        final long messageCount = entry.channel.messageCount.get();
+        if (messageCount - entry.messageCountAtLastSend < entry.timer.getMinMessages()) {
+            return;
+        }
+        // channels are only in the identity table while the bot is in them and has seen chat
+        final Optional<TwitchChannelIdentity> identity = identityTable.getChannel(
+            IRCUtils.ircify(entry.channel.name));
+        if (!identity.isPresent()) {
+            return;
+        }
+        if (!config.isOnlyWhenLive()) {
+            send(entry, messageCount);
+            return;
+        }
+        final String roomId = identity.get().getRoomIdString();
+        if (roomId == null) {
+            return;
+        }
+        streamStatus.isLive(roomId).whenComplete((live, error) -> {
+            if (error != null) {
+                log.debug("Unable to check if channel is live, skipping timer. channel={}, timer={}, error={}",
+                    entry.channel.name, entry.timer.getName(), error.toString());
+            } else if (live && !entry.cancelled) {
+                send(entry, messageCount);
+            }
+        });
+    }
+
+    private void send(final TimerEntry entry, final long messageCount) {
+        if (outbound.enqueue(entry.channel.name, entry.timer.getMessage())) {
+            entry.messageCountAtLastSend = messageCount;
+        }
+    }
+
+    /**
+     * Timers and message counter of a single channel.
+     */
+    private static final class ChannelTimers {
+        private final String name;
+        private final AtomicLong messageCount = new AtomicLong();
+        private final Map<String, TimerEntry> entries = new ConcurrentHashMap<>();
+
+        private ChannelTimers(final String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * A timer on the wheel. Removed and replaced timers are flagged as cancelled and dropped when they next expire.
+     */
+    private static final class TimerEntry {
+        private final ChannelTimers channel;
+        private final TimedMessage timer;
+        private volatile long messageCountAtLastSend;
+        private volatile boolean cancelled;
+
+        private TimerEntry(final ChannelTimers channel, final TimedMessage timer) {
+            this.channel = channel;
+            this.timer = timer;
+            this.messageCountAtLastSend = channel.messageCount.get();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package gg.sep.securityrobot.timers;
+
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel of items which expire after a number of ticks.
+ *
+ * The wheel is a ring of buckets, each holding a linked list of the items which expire when the wheel next passes
+ * it, along with how many more full turns of the wheel they have to wait. Scheduling an item and expiring a tick
+ * are O(1) per item, however many items are scheduled, and an item costs a single node. This class is not thread
+ * safe; all calls must be made from the thread which advances the wheel.
+ * @param <T> Type of the scheduled items.
+ */
+final class TimingWheel<T> {
+
+    private final Node<T>[] buckets;
+    private final int mask;
+    private long tick;
+    private int size;
+
+    /**
+     * Create a new, empty timing wheel.
+     * @param wheelSize Number of buckets, rounded up to a power of two.
+     */
+    @SuppressWarnings("unchecked")
+    TimingWheel(final int wheelSize) {
+        final int capacity = Integer.highestOneBit(Math.max(2, wheelSize) - 1) << 1;
+        this.buckets = (Node<T>[]) new Node<?>[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Schedules an item to expire after a number of ticks.
+     * @param item Item to schedule.
+     * @param delayTicks Number of ticks until the item expires; at least one.
+     */
+    void schedule(final T item, final long delayTicks) {
+        final long delay = Math.max(1, delayTicks);
+        final long deadline = tick + delay;
+        final int index = (int) (deadline & mask);
+        buckets[index] = new Node<>(item, (delay - 1) / buckets.length, buckets[index]);
+        size++;
+    }
+
+    /**
+     * Advances the wheel by one tick, handing every item which expires on it to the consumer.
+     *
+     * Items may be scheduled again from inside the consumer.
+     * @param expired Consumer of the expired items.
+     */
+    void advance(final Consumer<T> expired) {
+        tick++;
+        final int index = (int) (tick & mask);
+        Node<T> node = buckets[index];
+        buckets[index] = null;
+        Node<T> waiting = null;
+        while (node != null) {
+            final Node<T> next = node.next;
+            if (node.rounds > 0) {
+                node.rounds--;
+                node.next = waiting;
+                waiting = node;
+            } else {
+                size--;
+                expired.accept(node.item);
+            }
+            node = next;
+        }
+        // put the items waiting for a later turn back, in front of anything scheduled during this tick
+        while (waiting != null) {
+            final Node<T> next = waiting.next;
+            waiting.next = buckets[index];
+            buckets[index] = waiting;
+            waiting = next;
+        }
+    }
+
+    /**
+     * Number of items currently scheduled.
+     * @return Number of items.
+     */
+    int size() {
+        return size;
+    }
+
+    private static final class Node<T> {
+        private final T item;
+        private long rounds;
+        private Node<T> next;
+
+        private Node(final T item, final long rounds, final Node<T> next) {
+            this.item = item;
+            this.rounds = rounds;
+            this.next = next;
+        }
+    }
+}
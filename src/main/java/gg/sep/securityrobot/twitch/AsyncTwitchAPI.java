@@ -0,0 +1,272 @@
+package gg.sep.securityrobot.twitch;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.log4j.Log4j2;
+
+import gg.sep.securityrobot.config.models.ResilienceConfig;
+import gg.sep.securityrobot.exceptions.TwitchApiUnavailableException;
+import gg.sep.twitchapi.helix.model.stream.Stream;
+import gg.sep.twitchapi.helix.model.user.User;
+import gg.sep.twitchapi.kraken.model.channel.Channel;
+
+/**
+ * Asynchronous, resilient access to the Twitch API endpoints used by the bot.
+ *
+ * The underlying Twitch API client is blocking, so each call runs on a dedicated, bounded pool of API threads and
+ * callers get a {@link CompletableFuture} back immediately. Every endpoint is protected by:
+ * <ul>
+ *   <li>a bulkhead, which limits the calls in flight to it and refuses the rest immediately,</li>
+ *   <li>a circuit breaker, which refuses calls for a while after consecutive failures,</li>
+ *   <li>a per-attempt timeout, and</li>
+ *   <li>retries with exponential backoff and full jitter, limited by a retry budget shared by all endpoints.</li>
+ * </ul>
+ * Refused calls and calls which fail after their retries complete with a {@link TwitchApiUnavailableException}, so
+ * callers can fall back quickly (eg "the Twitch API is busy") instead of waiting out full timeouts.
+ */
+@Log4j2
+public class AsyncTwitchAPI {
+
+    private final TwitchEndpoints endpoints;
+    private final ResilienceConfig config;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService retryScheduler;
+    private final RetryBudget retryBudget;
+    private final Map<String, Endpoint> endpointStates = new ConcurrentHashMap<>();
+
+    /**
+     * Create a new asynchronous wrapper of a set of Twitch API endpoints.
+     * @param endpoints Blocking Twitch API endpoints.
+     * @param config Resilience configuration.
+     * @param threads Maximum number of API calls running at once.
+     */
+    public AsyncTwitchAPI(final TwitchEndpoints endpoints, final ResilienceConfig config, final int threads) {
+        this.endpoints = endpoints;
+        this.config = config;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads),
+            new ThreadFactoryBuilder().setNameFormat("twitch-api-%d").setDaemon(true).build());
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("twitch-api-retry-%d").setDaemon(true).build());
+        this.retryBudget = new RetryBudget(config.getRetryBudgetRatio(), config.getMinRetriesPerSecond());
+    }
+
+    /**
+     * Looks up a user by their ID via Helix.
+     * @param userId ID of the user.
+     * @return Future of the user, empty if they were not found.
+     */
+    public CompletableFuture<Optional<User>> getUserById(final String userId) {
+        return call("helix.users", () -> endpoints.getUserById(userId));
+    }
+
+    /**
+     * Looks up a user by their login via Helix.
+     * @param login Login of the user.
+     * @return Future of the user, empty if they were not found.
+     */
+    public CompletableFuture<Optional<User>> getUserByLogin(final String login) {
+        return call("helix.users", () -> endpoints.getUserByLogin(login));
+    }
+
+    /**
+     * Looks up multiple users by their IDs and/or logins via Helix.
+     * @param userIds IDs of the users.
+     * @param logins Logins of the users.
+     * @return Future of the users which were found.
+     */
+    public CompletableFuture<List<User>> getUsers(final List<String> userIds, final List<String> logins) {
+        return call("helix.users", () -> endpoints.getUsers(userIds, logins));
+    }
+
+    /**
+     * Looks up a user by their ID via Kraken, which includes the account creation time.
+     * @param userId ID of the user.
+     * @return Future of the user, empty if they were not found.
+     */
+    public CompletableFuture<Optional<gg.sep.twitchapi.kraken.model.user.User>> getKrakenUser(final String userId) {
+        return call("kraken.users", () -> endpoints.getKrakenUser(userId));
+    }
+
+    /**
+     * Looks up the live stream of a channel.
+     * @param userId ID of the channel.
+     * @return Future of the stream, empty if the channel is not live.
+     */
+    public CompletableFuture<Optional<Stream>> getStreamByUserId(final String userId) {
+        return call("helix.streams", () -> endpoints.getStreamByUserId(userId));
+    }
+
+    /**
+     * Looks up the number of followers of a channel.
+     * @param roomId ID of the channel.
+     * @return Future of the number of followers.
+     */
+    public CompletableFuture<Long> getFollowerCount(final String roomId) {
+        return call("helix.follows", () -> endpoints.getFollowerCount(roomId));
+    }
+
+    /**
+     * Checks whether a user follows a channel.
+     * @param userId ID of the user.
+     * @param roomId ID of the channel.
+     * @return Future of whether the user follows the channel.
+     */
+    public CompletableFuture<Boolean> userIsFollowing(final String userId, final String roomId) {
+        return call("helix.follows", () -> endpoints.userIsFollowing(userId, roomId));
+    }
+
+    /**
+     * Updates a channel's title and/or game via Kraken.
+     * @param channel Channel with the fields to update.
+     * @return Future of the updated channel, empty if the update failed.
+     */
+    public CompletableFuture<Optional<Channel>> updateChannel(final Channel channel) {
+        return call("kraken.channels", () -> endpoints.updateChannel(channel));
+    }
+
+    /**
+     * Returns the current state and counters of every endpoint which has been called.
+     * @return Map of endpoint name to its metrics.
+     */
+    public Map<String, Map<String, Object>> getMetrics() {
+        final Map<String, Map<String, Object>> metrics = new TreeMap<>();
+        endpointStates.forEach((name, endpoint) -> metrics.put(name, endpoint.metrics.snapshot(
+            endpoint.breaker.getState(), config.getMaxConcurrentPerEndpoint() - endpoint.bulkhead.availablePermits())));
+        return metrics;
+    }
+
+    /**
+     * Stops accepting new calls and waits briefly for calls in flight to finish.
+     */
+    public void shutdown() {
+        retryScheduler.shutdownNow();
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (final InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs a blocking call against an endpoint, protected by the endpoint's bulkhead, circuit breaker, timeout and
+     * retries.
+     * @param endpointName Name of the endpoint, used to group calls for protection and metrics.
+     * @param call Blocking call to run.
+     * @param <T> Type of the call's result.
+     * @return Future completed with the call's result, or with a {@link TwitchApiUnavailableException} if the call
+     *         was refused or failed after its retries. Cancelling it stops any further retries.
+     */
+    public <T> CompletableFuture<T> call(final String endpointName, final Supplier<T> call) {
+        final Endpoint endpoint = endpointStates.computeIfAbsent(endpointName, Endpoint::new);
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        endpoint.metrics.calls.increment();
+        retryBudget.deposit();
+        attempt(endpoint, call, 1, result);
+        return result;
+    }
+
+    private <T> void attempt(final Endpoint endpoint, final Supplier<T> call, final int attempt,
+                             final CompletableFuture<T> result) {
+        if (result.isDone()) {
+            return; // cancelled by the caller
+        }
+        if (!endpoint.bulkhead.tryAcquire()) {
+            endpoint.metrics.bulkheadRejected.increment();
+            result.completeExceptionally(new TwitchApiUnavailableException(
+                String.format("Too many calls in flight to %s", endpoint.name)));
+            return;
+        }
+        if (!endpoint.breaker.allowRequest()) {
+            endpoint.bulkhead.release();
+            endpoint.metrics.shortCircuited.increment();
+            result.completeExceptionally(new TwitchApiUnavailableException(
+                String.format("Circuit breaker for %s is open", endpoint.name)));
+            return;
+        }
+
+        final long start = System.nanoTime();
+        final CompletableFuture<T> running;
+        try {
+            running = CompletableFuture.supplyAsync(call, executor);
+        } catch (final RuntimeException e) {
+            endpoint.bulkhead.release();
+            result.completeExceptionally(new TwitchApiUnavailableException("Twitch API is shutting down", e));
+            return;
+        }
+        // the bulkhead permit is held until the blocking call really returns, even if the attempt times out
+        running.whenComplete((value, error) -> endpoint.bulkhead.release());
+
+        running.copy().orTimeout(config.getCallTimeoutSeconds(), TimeUnit.SECONDS).whenComplete((value, error) -> {
+            endpoint.metrics.recordLatency(start);
+            if (error == null) {
+                endpoint.breaker.onSuccess();
+                endpoint.metrics.successes.increment();
+                result.complete(value);
+                return;
+            }
+            final Throwable cause = (error instanceof CompletionException && error.getCause() != null)
+                ? error.getCause() : error;
+            endpoint.breaker.onFailure();
+            endpoint.metrics.failures.increment();
+            if (cause instanceof TimeoutException) {
+                endpoint.metrics.timeouts.increment();
+            }
+            if (attempt < config.getMaxAttempts() && retryBudget.tryWithdraw()) {
+                endpoint.metrics.retries.increment();
+                log.debug("Retrying Twitch API call. endpoint={}, attempt={}, error={}", endpoint.name, attempt,
+                    cause.toString());
+                try {
+                    retryScheduler.schedule(() -> attempt(endpoint, call, attempt + 1, result),
+                        backoffMillis(attempt), TimeUnit.MILLISECONDS);
+                    return;
+                } catch (final RuntimeException e) {
+                    log.debug("Unable to schedule Twitch API retry.", e);
+                }
+            }
+            log.warn("Twitch API call failed. endpoint={}, attempts={}, error={}", endpoint.name, attempt,
+                cause.toString());
+            result.completeExceptionally(new TwitchApiUnavailableException(
+                String.format("Call to %s failed after %d attempt(s)", endpoint.name, attempt), cause));
+        });
+    }
+
+    private long backoffMillis(final int attempt) {
+        final long exponential = (long) config.getBaseDelayMillis() << Math.min(attempt - 1, 16);
+        final long capped = Math.min(config.getMaxDelayMillis(), exponential);
+        return ThreadLocalRandom.current().nextLong(capped + 1);
+    }
+
+    /**
+     * Protection and metrics state of a single endpoint.
+     */
+    private final class Endpoint {
+        private final String name;
+        private final Semaphore bulkhead = new Semaphore(Math.max(1, config.getMaxConcurrentPerEndpoint()));
+        private final CircuitBreaker breaker = new CircuitBreaker(config.getFailureThreshold(),
+            config.getOpenSeconds() * 1000L);
+        private final EndpointMetrics metrics = new EndpointMetrics();
+
+        private Endpoint(final String name) {
+            this.name = name;
+        }
+    }
+}
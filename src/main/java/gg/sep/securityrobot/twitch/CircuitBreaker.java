@@ -0,0 +1,72 @@
+package gg.sep.securityrobot.twitch;
+
+/**
+ * Consecutive failure circuit breaker for a single Twitch API endpoint.
+ *
+ * After a configured number of consecutive failures the breaker opens and refuses calls for a configured time. It
+ * then lets a single trial call through (half open): success closes the breaker again, failure re-opens it.
+ */
+final class CircuitBreaker {
+
+    /**
+     * State of a circuit breaker.
+     */
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+
+    // guarded by this
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    CircuitBreaker(final int failureThreshold, final long openMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = openMillis * 1_000_000L;
+    }
+
+    synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAt < openNanos) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trialInFlight = true;
+                return true;
+            default:
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+        }
+    }
+
+    synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        trialInFlight = false;
+        state = State.CLOSED;
+    }
+
+    synchronized void onFailure() {
+        trialInFlight = false;
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+}
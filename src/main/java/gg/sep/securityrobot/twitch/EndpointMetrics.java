@@ -0,0 +1,46 @@
+package gg.sep.securityrobot.twitch;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the calls made to a single Twitch API endpoint.
+ */
+final class EndpointMetrics {
+    final LongAdder calls = new LongAdder();
+    final LongAdder successes = new LongAdder();
+    final LongAdder failures = new LongAdder();
+    final LongAdder timeouts = new LongAdder();
+    final LongAdder retries = new LongAdder();
+    final LongAdder shortCircuited = new LongAdder();
+    final LongAdder bulkheadRejected = new LongAdder();
+    final LongAdder attempts = new LongAdder();
+    final LongAdder latencyMillisTotal = new LongAdder();
+    final LongAccumulator latencyMillisMax = new LongAccumulator(Math::max, 0);
+
+    void recordLatency(final long startNanos) {
+        final long millis = (System.nanoTime() - startNanos) / 1_000_000L;
+        attempts.increment();
+        latencyMillisTotal.add(millis);
+        latencyMillisMax.accumulate(millis);
+    }
+
+    Map<String, Object> snapshot(final CircuitBreaker.State state, final int inFlight) {
+        final Map<String, Object> snapshot = new LinkedHashMap<>();
+        final long attemptCount = attempts.sum();
+        snapshot.put("state", state.name());
+        snapshot.put("inFlight", inFlight);
+        snapshot.put("calls", calls.sum());
+        snapshot.put("successes", successes.sum());
+        snapshot.put("failures", failures.sum());
+        snapshot.put("timeouts", timeouts.sum());
+        snapshot.put("retries", retries.sum());
+        snapshot.put("shortCircuited", shortCircuited.sum());
+        snapshot.put("bulkheadRejected", bulkheadRejected.sum());
+        snapshot.put("avgLatencyMillis", attemptCount == 0 ? 0 : latencyMillisTotal.sum() / attemptCount);
+        snapshot.put("maxLatencyMillis", latencyMillisMax.get());
+        return snapshot;
+    }
+}
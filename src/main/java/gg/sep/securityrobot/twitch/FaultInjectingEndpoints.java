@@ -0,0 +1,122 @@
+package gg.sep.securityrobot.twitch;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import lombok.extern.log4j.Log4j2;
+
+import gg.sep.twitchapi.helix.model.stream.Stream;
+import gg.sep.twitchapi.helix.model.user.User;
+import gg.sep.twitchapi.kraken.model.channel.Channel;
+
+/**
+ * {@link TwitchEndpoints} which adds latency and random failures in front of another set of endpoints.
+ *
+ * Used to exercise the circuit breakers, retries and bulkheads of {@link AsyncTwitchAPI} locally, without waiting
+ * for Twitch to actually be degraded. Each call first sleeps for a random time up to the configured latency, then
+ * fails with the configured probability before reaching the delegate.
+ */
+@Log4j2
+public class FaultInjectingEndpoints implements TwitchEndpoints {
+
+    private final TwitchEndpoints delegate;
+    private final int maxLatencyMillis;
+    private final double errorRate;
+
+    /**
+     * Wrap a set of endpoints with injected faults.
+     * @param delegate Endpoints which calls reach if no fault is injected.
+     * @param maxLatencyMillis Maximum latency added to each call, in milliseconds.
+     * @param errorRate Probability between 0 and 1 that a call fails.
+     */
+    public FaultInjectingEndpoints(final TwitchEndpoints delegate, final int maxLatencyMillis,
+                                   final double errorRate) {
+        this.delegate = delegate;
+        this.maxLatencyMillis = maxLatencyMillis;
+        this.errorRate = errorRate;
+        log.warn("Injecting faults into Twitch API calls. maxLatencyMillis={}, errorRate={}", maxLatencyMillis,
+            errorRate);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<User> getUserById(final String userId) {
+        return inject(() -> delegate.getUserById(userId));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<User> getUserByLogin(final String login) {
+        return inject(() -> delegate.getUserByLogin(login));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<User> getUsers(final List<String> userIds, final List<String> logins) {
+        return inject(() -> delegate.getUsers(userIds, logins));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<gg.sep.twitchapi.kraken.model.user.User> getKrakenUser(final String userId) {
+        return inject(() -> delegate.getKrakenUser(userId));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<Stream> getStreamByUserId(final String userId) {
+        return inject(() -> delegate.getStreamByUserId(userId));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getFollowerCount(final String roomId) {
+        return inject(() -> delegate.getFollowerCount(roomId));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean userIsFollowing(final String userId, final String roomId) {
+        return inject(() -> delegate.userIsFollowing(userId, roomId));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<Channel> updateChannel(final Channel channel) {
+        return inject(() -> delegate.updateChannel(channel));
+    }
+
+    private <T> T inject(final Supplier<T> call) {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (maxLatencyMillis > 0) {
+            try {
+                Thread.sleep(random.nextInt(maxLatencyMillis + 1));
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while injecting latency", e);
+            }
+        }
+        if (random.nextDouble() < errorRate) {
+            throw new IllegalStateException("Injected Twitch API failure");
+        }
+        return call.get();
+    }
+}
@@ -0,0 +1,48 @@
+package gg.sep.securityrobot.twitch;
+
+/**
+ * Limits retries to a fraction of the calls being made, so that retries cannot multiply the load on Twitch while it
+ * is degraded.
+ *
+ * Every call deposits a fraction of a retry into the budget and every retry withdraws a whole one. A small number of
+ * retries per second is always allowed, so that retries still work when there is little traffic.
+ */
+final class RetryBudget {
+
+    private static final double MAX_BALANCE = 100;
+    private static final long SECOND_NANOS = 1_000_000_000L;
+
+    private final double ratio;
+    private final int minPerSecond;
+
+    // guarded by this
+    private double balance;
+    private long windowStart = System.nanoTime();
+    private int minUsed;
+
+    RetryBudget(final double ratio, final int minPerSecond) {
+        this.ratio = ratio;
+        this.minPerSecond = minPerSecond;
+    }
+
+    synchronized void deposit() {
+        balance = Math.min(MAX_BALANCE, balance + ratio);
+    }
+
+    synchronized boolean tryWithdraw() {
+        final long now = System.nanoTime();
+        if (now - windowStart >= SECOND_NANOS) {
+            windowStart = now;
+            minUsed = 0;
+        }
+        if (minUsed < minPerSecond) {
+            minUsed++;
+            return true;
+        }
+        if (balance >= 1) {
+            balance -= 1;
+            return true;
+        }
+        return false;
+    }
+}
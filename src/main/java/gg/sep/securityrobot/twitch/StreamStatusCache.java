@@ -0,0 +1,73 @@
+package gg.sep.securityrobot.twitch;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Short lived cache of whether channels are live, shared by the subsystems which only act in live channels, so that
+ * they do not each look up the same streams.
+ */
+public class StreamStatusCache {
+
+    private final AsyncTwitchAPI twitchAPI;
+    private final Cache<String, Boolean> liveChannels;
+    private final long cacheMillis;
+
+    /**
+     * Create a new, empty stream status cache.
+     * @param twitchAPI Twitch API used to look up streams which are not cached.
+     * @param cacheSeconds Number of seconds a channel's status is cached for.
+     */
+    public StreamStatusCache(final AsyncTwitchAPI twitchAPI, final int cacheSeconds) {
+        this.twitchAPI = twitchAPI;
+        this.cacheMillis = TimeUnit.SECONDS.toMillis(cacheSeconds);
+        this.liveChannels = CacheBuilder.newBuilder()
+            .expireAfterWrite(cacheSeconds, TimeUnit.SECONDS)
+            .build();
+    }
+
+    /**
+     * Checks whether a channel is live.
+     *
+     * NOTE: This makes an API call to Twitch if the channel's status is not cached. Failed lookups are not cached.
+     * @param roomId ID of the channel.
+     * @return Future of whether the channel is live.
+     */
+    public CompletableFuture<Boolean> isLive(final String roomId) {
+        final Boolean cached = liveChannels.getIfPresent(roomId);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return twitchAPI.getStreamByUserId(roomId).thenApply(stream -> {
+            liveChannels.put(roomId, stream.isPresent());
+            return stream.isPresent();
+        });
+    }
+
+    /**
+     * Returns every cached stream status, for a warm restart snapshot.
+     * @return Whether channels are live, keyed by the channel's ID.
+     */
+    public Map<String, Boolean> snapshot() {
+        return new HashMap<>(liveChannels.asMap());
+    }
+
+    /**
+     * Restores cached stream statuses from a warm restart snapshot, if the snapshot is younger than the cache time.
+     * @param cached Whether channels are live, as returned by {@link #snapshot()}.
+     * @param ageMillis Age of the snapshot.
+     * @return Number of restored stream statuses.
+     */
+    public int restore(final Map<String, Boolean> cached, final long ageMillis) {
+        if (ageMillis >= cacheMillis) {
+            return 0;
+        }
+        liveChannels.putAll(cached);
+        return cached.size();
+    }
+}
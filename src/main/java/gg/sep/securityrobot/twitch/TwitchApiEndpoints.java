@@ -0,0 +1,97 @@
+package gg.sep.securityrobot.twitch;
+
+import java.util.List;
+import java.util.Optional;
+
+import gg.sep.twitchapi.TwitchAPI;
+import gg.sep.twitchapi.helix.model.stream.Stream;
+import gg.sep.twitchapi.helix.model.user.User;
+import gg.sep.twitchapi.kraken.model.channel.Channel;
+
+/**
+ * {@link TwitchEndpoints} backed by the Twitch API client.
+ */
+public class TwitchApiEndpoints implements TwitchEndpoints {
+
+    private volatile TwitchAPI twitchAPI;
+
+    /**
+     * Create the endpoints for a Twitch API client.
+     * @param twitchAPI Twitch API client.
+     */
+    public TwitchApiEndpoints(final TwitchAPI twitchAPI) {
+        this.twitchAPI = twitchAPI;
+    }
+
+    /**
+     * Replaces the Twitch API client used by later calls, eg after its configuration has been reloaded.
+     * @param twitchAPI New Twitch API client.
+     */
+    public void setTwitchAPI(final TwitchAPI twitchAPI) {
+        this.twitchAPI = twitchAPI;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<User> getUserById(final String userId) {
+        return twitchAPI.getHelix().getUsersAPI().getUserById(userId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<User> getUserByLogin(final String login) {
+        return twitchAPI.getHelix().getUsersAPI().getUserByLogin(login);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<User> getUsers(final List<String> userIds, final List<String> logins) {
+        return twitchAPI.getHelix().getUsersAPI().getUsers(userIds, logins);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<gg.sep.twitchapi.kraken.model.user.User> getKrakenUser(final String userId) {
+        return twitchAPI.getKraken().getUsersAPI().getUser(userId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<Stream> getStreamByUserId(final String userId) {
+        return twitchAPI.getHelix().getStreamsAPI().getStreamByUserId(userId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getFollowerCount(final String roomId) {
+        return twitchAPI.getHelix().getUsersAPI().getFollowsAPI().getFollowerCount(roomId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean userIsFollowing(final String userId, final String roomId) {
+        return twitchAPI.getHelix().getUsersAPI().getFollowsAPI().userIsFollowing(userId, roomId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<Channel> updateChannel(final Channel channel) {
+        return twitchAPI.getKraken().getChannelsAPI().updateChannel(channel);
+    }
+}
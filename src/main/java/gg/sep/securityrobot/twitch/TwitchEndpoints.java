@@ -0,0 +1,75 @@
+package gg.sep.securityrobot.twitch;
+
+import java.util.List;
+import java.util.Optional;
+
+import gg.sep.twitchapi.helix.model.stream.Stream;
+import gg.sep.twitchapi.helix.model.user.User;
+import gg.sep.twitchapi.kraken.model.channel.Channel;
+
+/**
+ * The blocking Twitch API endpoints used by the bot.
+ *
+ * Keeping them behind an interface allows them to be wrapped, eg to inject latency and errors with
+ * {@link FaultInjectingEndpoints}.
+ */
+public interface TwitchEndpoints {
+
+    /**
+     * Looks up a user by their ID via Helix.
+     * @param userId ID of the user.
+     * @return The user, empty if they were not found.
+     */
+    Optional<User> getUserById(String userId);
+
+    /**
+     * Looks up a user by their login via Helix.
+     * @param login Login of the user.
+     * @return The user, empty if they were not found.
+     */
+    Optional<User> getUserByLogin(String login);
+
+    /**
+     * Looks up multiple users by their IDs and/or logins via Helix.
+     * @param userIds IDs of the users.
+     * @param logins Logins of the users.
+     * @return The users which were found.
+     */
+    List<User> getUsers(List<String> userIds, List<String> logins);
+
+    /**
+     * Looks up a user by their ID via Kraken, which includes the account creation time.
+     * @param userId ID of the user.
+     * @return The user, empty if they were not found.
+     */
+    Optional<gg.sep.twitchapi.kraken.model.user.User> getKrakenUser(String userId);
+
+    /**
+     * Looks up the live stream of a channel.
+     * @param userId ID of the channel.
+     * @return The stream, empty if the channel is not live.
+     */
+    Optional<Stream> getStreamByUserId(String userId);
+
+    /**
+     * Looks up the number of followers of a channel.
+     * @param roomId ID of the channel.
+     * @return Number of followers.
+     */
+    long getFollowerCount(String roomId);
+
+    /**
+     * Checks whether a user follows a channel.
+     * @param userId ID of the user.
+     * @param roomId ID of the channel.
+     * @return <code>true</code> if the user follows the channel; <code>false</code> otherwise.
+     */
+    boolean userIsFollowing(String userId, String roomId);
+
+    /**
+     * Updates a channel's title and/or game via Kraken.
+     * @param channel Channel with the fields to update.
+     * @return The updated channel, empty if the update failed.
+     */
+    Optional<Channel> updateChannel(Channel channel);
+}
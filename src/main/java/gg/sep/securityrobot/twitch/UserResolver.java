@@ -0,0 +1,224 @@
+package gg.sep.securityrobot.twitch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.log4j.Log4j2;
+
+import gg.sep.securityrobot.config.models.UserResolverConfig;
+import gg.sep.twitchapi.helix.model.user.User;
+
+/**
+ * Resolves Twitch users by login or ID, batching the lookups of concurrent callers into multi-user Helix calls.
+ *
+ * Lookups which are not cached are queued for a short window, then sent as Helix "get users" calls of up to
+ * {@link UserResolverConfig#getMaxBatchSize()} IDs and logins each. Concurrent lookups of the same user share a
+ * single pending lookup, and resolved users are cached by both login and ID for a while, so importing hundreds of
+ * channels costs a handful of API calls instead of one call per channel. At most
+ * {@link UserResolverConfig#getMaxBatchesInFlight()} batches are sent at once, so large imports stay within the Twitch
+ * API's bulkhead.
+ */
+@Log4j2
+public class UserResolver {
+
+    private final AsyncTwitchAPI twitchAPI;
+    private final UserResolverConfig config;
+    private final Cache<String, User> usersByLogin;
+    private final Cache<String, User> usersById;
+    private final Map<String, CompletableFuture<Optional<User>>> pendingLogins = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Optional<User>>> pendingIds = new ConcurrentHashMap<>();
+    private final Queue<String> queuedLogins = new ConcurrentLinkedQueue<>();
+    private final Queue<String> queuedIds = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicInteger batchesInFlight = new AtomicInteger();
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Create a new user resolver with empty caches.
+     * @param config User resolver configuration.
+     * @param twitchAPI Twitch API used to look up users which are not cached.
+     */
+    public UserResolver(final UserResolverConfig config, final AsyncTwitchAPI twitchAPI) {
+        this.twitchAPI = twitchAPI;
+        this.config = config;
+        this.usersByLogin = CacheBuilder.newBuilder()
+            .maximumSize(config.getCacheSize())
+            .expireAfterWrite(config.getCacheSeconds(), TimeUnit.SECONDS)
+            .build();
+        this.usersById = CacheBuilder.newBuilder()
+            .maximumSize(config.getCacheSize())
+            .expireAfterWrite(config.getCacheSeconds(), TimeUnit.SECONDS)
+            .build();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("user-resolver-%d").setDaemon(true).build());
+    }
+
+    /**
+     * Resolves a user by their login.
+     * @param login Login of the user, in any case.
+     * @return Future of the user, empty if no such user exists.
+     */
+    public CompletableFuture<Optional<User>> resolveLogin(final String login) {
+        final String key = login.trim().toLowerCase(Locale.ROOT);
+        final User cached = usersByLogin.getIfPresent(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(Optional.of(cached));
+        }
+        return enqueue(key, pendingLogins, queuedLogins);
+    }
+
+    /**
+     * Resolves a user by their ID.
+     * @param userId ID of the user.
+     * @return Future of the user, empty if no such user exists.
+     */
+    public CompletableFuture<Optional<User>> resolveId(final String userId) {
+        final User cached = usersById.getIfPresent(userId);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(Optional.of(cached));
+        }
+        return enqueue(userId, pendingIds, queuedIds);
+    }
+
+    /**
+     * Resolves many users by their logins.
+     * @param logins Logins of the users, in any case. Duplicates are resolved once.
+     * @return Future of the users which exist, keyed by lowercase login in the order they were requested.
+     */
+    public CompletableFuture<Map<String, User>> resolveLogins(final Collection<String> logins) {
+        final Map<String, CompletableFuture<Optional<User>>> lookups = new LinkedHashMap<>();
+        for (final String login : logins) {
+            final String key = login.trim().toLowerCase(Locale.ROOT);
+            if (!key.isEmpty()) {
+                lookups.computeIfAbsent(key, this::resolveLogin);
+            }
+        }
+        return CompletableFuture.allOf(lookups.values().toArray(new CompletableFuture<?>[0]))
+            .thenApply(done -> {
+                final Map<String, User> users = new LinkedHashMap<>();
+                lookups.forEach((login, lookup) -> lookup.join().ifPresent(user -> users.put(login, user)));
+                return users;
+            });
+    }
+
+    /**
+     * Stops sending batches. Lookups which are still queued complete exceptionally.
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+        final IllegalStateException error = new IllegalStateException("User resolver is shut down");
+        pendingLogins.values().forEach(f -> f.completeExceptionally(error));
+        pendingIds.values().forEach(f -> f.completeExceptionally(error));
+    }
+
+    private CompletableFuture<Optional<User>> enqueue(final String key,
+                                                      final Map<String, CompletableFuture<Optional<User>>> pending,
+                                                      final Queue<String> queue) {
+        final CompletableFuture<Optional<User>> lookup = new CompletableFuture<>();
+        final CompletableFuture<Optional<User>> existing = pending.putIfAbsent(key, lookup);
+        if (existing != null) {
+            return existing.copy();
+        }
+        queue.add(key);
+        if (queued.incrementAndGet() >= config.getMaxBatchSize()) {
+            submitFlush();
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                scheduler.schedule(this::flush, config.getBatchWindowMillis(), TimeUnit.MILLISECONDS);
+            } catch (final RuntimeException e) {
+                pending.remove(key, lookup);
+                lookup.completeExceptionally(e);
+            }
+        }
+        // callers get a copy, so that one caller timing out or cancelling does not affect the others
+        return lookup.copy();
+    }
+
+    private void submitFlush() {
+        try {
+            scheduler.execute(this::flush);
+        } catch (final RuntimeException e) {
+            log.debug("Unable to submit user resolver batch.", e);
+        }
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+        while (batchesInFlight.get() < config.getMaxBatchesInFlight()) {
+            final List<String> logins = new ArrayList<>();
+            final List<String> ids = new ArrayList<>();
+            String key;
+            while (logins.size() + ids.size() < config.getMaxBatchSize() && (key = queuedIds.poll()) != null) {
+                ids.add(key);
+            }
+            while (logins.size() + ids.size() < config.getMaxBatchSize() && (key = queuedLogins.poll()) != null) {
+                logins.add(key);
+            }
+            if (logins.isEmpty() && ids.isEmpty()) {
+                return;
+            }
+            queued.addAndGet(-(logins.size() + ids.size()));
+            batchesInFlight.incrementAndGet();
+            sendBatch(ids, logins);
+        }
+    }
+
+    private void sendBatch(final List<String> ids, final List<String> logins) {
+        log.debug("Resolving Twitch users. ids={}, logins={}", ids.size(), logins.size());
+        twitchAPI.getUsers(ids, logins).whenComplete((users, error) -> {
+            batchesInFlight.decrementAndGet();
+            if (queued.get() > 0) {
+                submitFlush();
+            }
+            if (error != null) {
+                ids.forEach(id -> completeExceptionally(pendingIds, id, error));
+                logins.forEach(login -> completeExceptionally(pendingLogins, login, error));
+                return;
+            }
+            for (final User user : users) {
+                final String login = user.getLogin().toLowerCase(Locale.ROOT);
+                usersByLogin.put(login, user);
+                usersById.put(user.getId(), user);
+                complete(pendingLogins, login, Optional.of(user));
+                complete(pendingIds, user.getId(), Optional.of(user));
+            }
+            // anything still pending from this batch does not exist
+            ids.forEach(id -> complete(pendingIds, id, Optional.empty()));
+            logins.forEach(login -> complete(pendingLogins, login, Optional.empty()));
+        });
+    }
+
+    private static void complete(final Map<String, CompletableFuture<Optional<User>>> pending, final String key,
+                                 final Optional<User> user) {
+        final CompletableFuture<Optional<User>> lookup = pending.remove(key);
+        if (lookup != null) {
+            lookup.complete(user);
+        }
+    }
+
+    private static void completeExceptionally(final Map<String, CompletableFuture<Optional<User>>> pending,
+                                              final String key, final Throwable error) {
+        final CompletableFuture<Optional<User>> lookup = pending.remove(key);
+        if (lookup != null) {
+            lookup.completeExceptionally(error);
+        }
+    }
+}
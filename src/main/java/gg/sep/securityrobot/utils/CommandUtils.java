@@ -2,9 +2,15 @@ package gg.sep.securityrobot.utils;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 import lombok.experimental.UtilityClass;
 
+import gg.sep.securityrobot.SecurityRobot;
+import gg.sep.securityrobot.identity.TwitchUserIdentity;
+import gg.sep.twitchapi.helix.model.user.User;
+
 /**
  * Utilities for parsing and working with chat commands.
  */
@@ -20,4 +26,24 @@ public class CommandUtils {
     public static List<String> splitString(final String original, final int max) {
         return Arrays.asList(original.split(" ", max));
     }
+
+    /**
+     * Builds an @mention of a user from their ID, for responses which name users other than the command's author.
+     *
+     * Users who have chatted recently are named from the identity table. Other users are looked up through the user
+     * resolver, falling back to their ID if the lookup fails.
+     * @param securityRobot Bot instance running the command.
+     * @param userId ID of the user.
+     * @return Future of the mention.
+     */
+    public static CompletableFuture<String> userMention(final SecurityRobot securityRobot, final long userId) {
+        final Optional<TwitchUserIdentity> identity = securityRobot.getIdentityTable().getUser(userId);
+        if (identity.isPresent()) {
+            return CompletableFuture.completedFuture(identity.get().getDisplayName() != null
+                ? identity.get().getMention() : "@" + identity.get().getLogin());
+        }
+        return securityRobot.getUserResolver().resolveId(Long.toString(userId))
+            .thenApply(user -> user.map(User::getLogin).map(login -> "@" + login).orElse(Long.toString(userId)))
+            .exceptionally(e -> Long.toString(userId));
+    }
 }
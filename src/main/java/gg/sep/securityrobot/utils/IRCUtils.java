@@ -16,8 +16,8 @@ public class IRCUtils {
      * @return Cleaned IRC channel name.
      */
     public static String stripIrcChannel(final String channelName) {
-        if (channelName.startsWith("#")) {
-            return channelName.replaceFirst("#", "").toLowerCase();
+        if (!channelName.isEmpty() && channelName.charAt(0) == '#') {
+            return channelName.substring(1).toLowerCase();
         }
         return channelName.toLowerCase();
     }
@@ -0,0 +1,204 @@
+package gg.sep.securityrobot.utils.collections;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compact set of non-negative {@code int} values, eg interned user IDs.
+ *
+ * Values are split on their high 16 bits into containers, in the style of a roaring bitmap. A container starts out as
+ * a sorted {@code char} array of its low 16 bits, costing two bytes per value, and turns into a fixed 8KB bitmap once
+ * it holds more than {@value #ARRAY_MAX} values (and back again once it shrinks well below that). Membership is a
+ * container lookup followed by a bit test or a binary search of at most {@value #ARRAY_MAX} values, and the size is
+ * tracked as values are added and removed. This class is not thread safe; callers must provide their own
+ * synchronization.
+ */
+public final class CompactIntSet {
+
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1 << 10;
+    private static final int CONTAINER_COUNT = 1 << 15;
+
+    private Object[] containers = new Object[0];
+    private int[] cardinalities = new int[0];
+    private int size;
+
+    /**
+     * Adds a value to the set.
+     * @param value Value to add.
+     * @return <code>true</code> if the value was added; <code>false</code> if it was already in the set.
+     * @throws IllegalArgumentException If the value is negative.
+     */
+    public boolean add(final int value) {
+        final int high = high(value);
+        if (high >= containers.length) {
+            final int length = Math.min(CONTAINER_COUNT, Math.max(high + 1, containers.length * 2));
+            containers = Arrays.copyOf(containers, length);
+            cardinalities = Arrays.copyOf(cardinalities, length);
+        }
+        final char low = (char) value;
+        final Object container = containers[high];
+        if (container instanceof long[]) {
+            final long[] bitmap = (long[]) container;
+            final long bit = 1L << low;
+            if ((bitmap[low >>> 6] & bit) != 0) {
+                return false;
+            }
+            bitmap[low >>> 6] |= bit;
+        } else {
+            char[] array = container == null ? new char[4] : (char[]) container;
+            final int cardinality = cardinalities[high];
+            final int index = Arrays.binarySearch(array, 0, cardinality, low);
+            if (index >= 0) {
+                return false;
+            }
+            if (cardinality == ARRAY_MAX) {
+                final long[] bitmap = toBitmap(array, cardinality);
+                bitmap[low >>> 6] |= 1L << low;
+                containers[high] = bitmap;
+            } else {
+                final int insertAt = -index - 1;
+                if (cardinality == array.length) {
+                    array = Arrays.copyOf(array, Math.min(ARRAY_MAX, array.length * 2));
+                }
+                System.arraycopy(array, insertAt, array, insertAt + 1, cardinality - insertAt);
+                array[insertAt] = low;
+                containers[high] = array;
+            }
+        }
+        cardinalities[high]++;
+        size++;
+        return true;
+    }
+
+    /**
+     * Removes a value from the set.
+     * @param value Value to remove.
+     * @return <code>true</code> if the value was removed; <code>false</code> if it was not in the set.
+     * @throws IllegalArgumentException If the value is negative.
+     */
+    public boolean remove(final int value) {
+        final int high = high(value);
+        if (high >= containers.length || containers[high] == null) {
+            return false;
+        }
+        final char low = (char) value;
+        final int cardinality = cardinalities[high];
+        if (containers[high] instanceof long[]) {
+            final long[] bitmap = (long[]) containers[high];
+            final long bit = 1L << low;
+            if ((bitmap[low >>> 6] & bit) == 0) {
+                return false;
+            }
+            bitmap[low >>> 6] &= ~bit;
+            if (cardinality - 1 <= ARRAY_MAX / 2) {
+                containers[high] = toArray(bitmap, cardinality - 1);
+            }
+        } else {
+            final char[] array = (char[]) containers[high];
+            final int index = Arrays.binarySearch(array, 0, cardinality, low);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(array, index + 1, array, index, cardinality - index - 1);
+            if (cardinality == 1) {
+                containers[high] = null;
+            } else if (cardinality - 1 < array.length / 4) {
+                containers[high] = Arrays.copyOf(array, array.length / 2);
+            }
+        }
+        cardinalities[high]--;
+        size--;
+        return true;
+    }
+
+    /**
+     * Returns whether a value is in the set.
+     * @param value Value to look up.
+     * @return <code>true</code> if the value is in the set; <code>false</code> otherwise.
+     */
+    public boolean contains(final int value) {
+        if (value < 0) {
+            return false;
+        }
+        final int high = value >>> 16;
+        if (high >= containers.length || containers[high] == null) {
+            return false;
+        }
+        final char low = (char) value;
+        if (containers[high] instanceof long[]) {
+            return (((long[]) containers[high])[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) containers[high], 0, cardinalities[high], low) >= 0;
+    }
+
+    /**
+     * Number of values in the set.
+     * @return Number of values.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Calls an action with every value in the set, in ascending order.
+     * @param action Action to call.
+     */
+    public void forEach(final IntConsumer action) {
+        for (int high = 0; high < containers.length; high++) {
+            final int base = high << 16;
+            if (containers[high] instanceof long[]) {
+                final long[] bitmap = (long[]) containers[high];
+                for (int word = 0; word < BITMAP_WORDS; word++) {
+                    long bits = bitmap[word];
+                    while (bits != 0) {
+                        action.accept(base | (word << 6) | Long.numberOfTrailingZeros(bits));
+                        bits &= bits - 1;
+                    }
+                }
+            } else if (containers[high] != null) {
+                final char[] array = (char[]) containers[high];
+                for (int i = 0; i < cardinalities[high]; i++) {
+                    action.accept(base | array[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes every value from the set.
+     */
+    public void clear() {
+        containers = new Object[0];
+        cardinalities = new int[0];
+        size = 0;
+    }
+
+    private static int high(final int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+        return value >>> 16;
+    }
+
+    private static long[] toBitmap(final char[] array, final int cardinality) {
+        final long[] bitmap = new long[BITMAP_WORDS];
+        for (int i = 0; i < cardinality; i++) {
+            bitmap[array[i] >>> 6] |= 1L << array[i];
+        }
+        return bitmap;
+    }
+
+    private static char[] toArray(final long[] bitmap, final int cardinality) {
+        final char[] array = new char[ARRAY_MAX];
+        int count = 0;
+        for (int word = 0; word < BITMAP_WORDS; word++) {
+            long bits = bitmap[word];
+            while (bits != 0) {
+                array[count++] = (char) ((word << 6) | Long.numberOfTrailingZeros(bits));
+                bits &= bits - 1;
+            }
+        }
+        return count == cardinality ? array : Arrays.copyOf(array, count);
+    }
+}
@@ -0,0 +1,229 @@
+package gg.sep.securityrobot.utils.collections;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map of primitive {@code long} keys to primitive {@code int} values.
+ *
+ * Avoids the boxing and per-entry node allocation of a {@code HashMap<Long, Integer>} for hot paths which
+ * key on Twitch numeric IDs. Uses linear probing with backward shift deletion, so removals do not leave
+ * tombstones behind. This class is not thread safe; callers must provide their own synchronization.
+ */
+public final class LongIntHashMap {
+
+    private static final long EMPTY_KEY = 0L;
+    private static final float LOAD_FACTOR = 0.5f;
+    private static final int MIN_CAPACITY = 8;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    /**
+     * Create a new map sized to hold the expected number of entries without resizing.
+     * @param expectedSize Number of entries expected to be stored in the map.
+     */
+    public LongIntHashMap(final int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * Returns the value mapped to the key, or {@code missingValue} if the key is not present.
+     * @param key Key to look up.
+     * @param missingValue Value returned if the key is not present.
+     * @return Value mapped to the key, or {@code missingValue} if not present.
+     */
+    public int get(final long key, final int missingValue) {
+        if (key == EMPTY_KEY) {
+            return hasZeroKey ? zeroValue : missingValue;
+        }
+        int index = hash(key) & mask;
+        long existing;
+        while ((existing = keys[index]) != EMPTY_KEY) {
+            if (existing == key) {
+                return values[index];
+            }
+            index = (index + 1) & mask;
+        }
+        return missingValue;
+    }
+
+    /**
+     * Returns {@code true} if the key is present in the map.
+     * @param key Key to look up.
+     * @return {@code true} if the key is present in the map; {@code false} otherwise.
+     */
+    public boolean containsKey(final long key) {
+        if (key == EMPTY_KEY) {
+            return hasZeroKey;
+        }
+        int index = hash(key) & mask;
+        long existing;
+        while ((existing = keys[index]) != EMPTY_KEY) {
+            if (existing == key) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Maps the key to the value, replacing any existing mapping.
+     * @param key Key to store.
+     * @param value Value to associate with the key.
+     */
+    public void put(final long key, final int value) {
+        if (key == EMPTY_KEY) {
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return;
+        }
+        int index = hash(key) & mask;
+        long existing;
+        while ((existing = keys[index]) != EMPTY_KEY) {
+            if (existing == key) {
+                values[index] = value;
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        values[index] = value;
+        if (++size > resizeAt) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    /**
+     * Removes the mapping for the key, if present.
+     * @param key Key to remove.
+     * @return {@code true} if a mapping was removed; {@code false} if the key was not present.
+     */
+    public boolean remove(final long key) {
+        if (key == EMPTY_KEY) {
+            if (hasZeroKey) {
+                hasZeroKey = false;
+                size--;
+                return true;
+            }
+            return false;
+        }
+        int index = hash(key) & mask;
+        long existing;
+        while ((existing = keys[index]) != EMPTY_KEY) {
+            if (existing == key) {
+                shiftKeysBack(index);
+                size--;
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of mappings in the map.
+     * @return Number of mappings in the map.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all mappings from the map, keeping the allocated table.
+     */
+    public void clear() {
+        Arrays.fill(keys, EMPTY_KEY);
+        hasZeroKey = false;
+        size = 0;
+    }
+
+    /**
+     * Visits every mapping in the map.
+     * @param visitor Visitor which receives every key and value.
+     */
+    public void forEach(final LongIntVisitor visitor) {
+        if (hasZeroKey) {
+            visitor.visit(EMPTY_KEY, zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY_KEY) {
+                visitor.visit(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * Visitor of the primitive mappings in the map.
+     */
+    @FunctionalInterface
+    public interface LongIntVisitor {
+        /**
+         * Visit a single mapping.
+         * @param key Key of the mapping.
+         * @param value Value of the mapping.
+         */
+        void visit(long key, int value);
+    }
+
+    private void shiftKeysBack(final int removedIndex) {
+        int gap = removedIndex;
+        int index = (gap + 1) & mask;
+        long key;
+        while ((key = keys[index]) != EMPTY_KEY) {
+            final int ideal = hash(key) & mask;
+            // move the entry into the gap if its ideal slot is not between the gap and its current slot
+            if (((index - ideal) & mask) >= ((index - gap) & mask)) {
+                keys[gap] = key;
+                values[gap] = values[index];
+                gap = index;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[gap] = EMPTY_KEY;
+    }
+
+    private void rehash(final int newCapacity) {
+        final long[] oldKeys = keys;
+        final int[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            final long key = oldKeys[i];
+            if (key != EMPTY_KEY) {
+                int index = hash(key) & mask;
+                while (keys[index] != EMPTY_KEY) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(final int capacity) {
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+        this.resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int tableSizeFor(final int expectedSize) {
+        final long needed = (long) Math.ceil(Math.max(expectedSize, 1) / LOAD_FACTOR) + 1;
+        final long capacity = Long.highestOneBit(needed - 1) << 1;
+        return (int) Math.max(MIN_CAPACITY, Math.min(capacity, 1 << 30));
+    }
+
+    private static int hash(final long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
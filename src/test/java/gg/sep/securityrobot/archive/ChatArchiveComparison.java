@@ -0,0 +1,172 @@
+package gg.sep.securityrobot.archive;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import com.google.gson.JsonObject;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoDatabase;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+
+import gg.sep.securityrobot.config.models.ArchiveConfig;
+import gg.sep.securityrobot.db.DocumentChatLogStore;
+import gg.sep.securityrobot.models.db.TwitchChannelMessageLog;
+import gg.sep.securityrobot.utils.ModelParser;
+
+/**
+ * Compares the local chat archive with storing chat messages as one Mongo document per message.
+ *
+ * Generates a synthetic day of chat over a number of channels, writes it into an archive in a scratch directory, and
+ * reports the time taken, the bytes on disk against the encoded BSON size of the documents, and the time taken to
+ * scan an hour of a channel. Given a MongoDB connection string, it also writes the messages through
+ * {@link DocumentChatLogStore} into a scratch database, which is dropped afterwards, and times the writes and the same
+ * channel hour queries.
+ * Not run as part of the test suite; run it directly with the test classpath:
+ *
+ *    java gg.sep.securityrobot.archive.ChatArchiveComparison [messages] [mongodb://localhost:27017]
+ */
+public final class ChatArchiveComparison {
+
+    private static final int CHANNELS = 20;
+    private static final int CHATTERS = 5_000;
+    private static final int QUERIES = 200;
+    private static final String DATABASE = "securityrobot_archive_comparison";
+
+    private ChatArchiveComparison() {
+    }
+
+    /**
+     * Runs the comparison.
+     * @param args Optional number of messages (default 200000), and optional MongoDB connection string.
+     * @throws IOException If the scratch archive cannot be written or read.
+     */
+    public static void main(final String[] args) throws IOException {
+        final int messageCount = (args.length > 0) ? Integer.parseInt(args[0]) : 200_000;
+        final List<TwitchChannelMessageLog> messages = generate(messageCount);
+        System.out.printf("%d messages over %d channels and %d chatters%n", messageCount, CHANNELS, CHATTERS);
+
+        long bsonBytes = 0;
+        for (final TwitchChannelMessageLog message : messages) {
+            bsonBytes += RawBsonDocument.parse(message.toJson()).getByteBuffer().remaining();
+        }
+        System.out.printf("%-22s %12d bytes %7.1f bytes/message%n", "document per message", bsonBytes,
+            (double) bsonBytes / messageCount);
+
+        final Path directory = Files.createTempDirectory("chat-archive-comparison");
+        try {
+            timeArchive(directory, messages);
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+
+        if (args.length > 1) {
+            try (MongoClient client = MongoClients.create(args[1])) {
+                final MongoDatabase database = client.getDatabase(DATABASE);
+                database.drop();
+                try {
+                    timeMongo(database, messages);
+                } finally {
+                    database.drop();
+                }
+            }
+        }
+    }
+
+    private static List<TwitchChannelMessageLog> generate(final int count) {
+        final Random random = new Random(42);
+        final long dayStart = Instant.parse("2019-06-01T00:00:00Z").getEpochSecond();
+        final List<TwitchChannelMessageLog> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final int channel = (int) Math.abs(random.nextGaussian() * CHANNELS / 3) % CHANNELS;
+            final int chatter = random.nextInt(CHATTERS);
+            messages.add(TwitchChannelMessageLog.builder()
+                .twitchId(new UUID(random.nextLong(), random.nextLong()).toString())
+                .message("chat message number " + i + " kappa".repeat(random.nextInt(8)))
+                .roomId(Integer.toString(10_000 + channel))
+                .messageTime(dayStart + (86_400L * i / count))
+                .authorId(Integer.toString(1_000_000 + chatter))
+                .authorDisplayName("Chatter" + chatter)
+                .channelName("#channel" + channel)
+                .cleanChannelName("channel" + channel)
+                .build());
+        }
+        return messages;
+    }
+
+    private static void timeArchive(final Path directory, final List<TwitchChannelMessageLog> messages)
+        throws IOException {
+        final JsonObject json = new JsonObject();
+        json.addProperty("directory", directory.toString());
+        final ArchiveConfig config = ModelParser.GSON.fromJson(json, ArchiveConfig.class);
+
+        long start = System.nanoTime();
+        try (ChatArchiveWriter writer = new ChatArchiveWriter(config)) {
+            for (final TwitchChannelMessageLog message : messages) {
+                writer.write(message);
+            }
+        }
+        final long writeNanos = System.nanoTime() - start;
+        long bytes = 0;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (final Path file : (Iterable<Path>) files::iterator) {
+                bytes += Files.size(file);
+            }
+        }
+
+        final Random random = new Random(7);
+        final Instant dayStart = Instant.ofEpochSecond(messages.get(0).getMessageTime());
+        long found = 0;
+        start = System.nanoTime();
+        try (ChatArchiveReader reader = new ChatArchiveReader(directory)) {
+            for (int i = 0; i < QUERIES; i++) {
+                final Instant from = dayStart.plusSeconds(random.nextInt(86_400 - 3_600));
+                found += reader.scan("channel" + random.nextInt(CHANNELS), from, from.plusSeconds(3_600), m -> { });
+            }
+        }
+        final long scanNanos = System.nanoTime() - start;
+
+        System.out.printf("%-22s %12d bytes %7.1f bytes/message, write %6d ms, channel hour scan %7.2f ms"
+                + " (%d found)%n", "archive", bytes, (double) bytes / messages.size(),
+            TimeUnit.NANOSECONDS.toMillis(writeNanos), scanNanos / 1e6 / QUERIES, found);
+    }
+
+    private static void timeMongo(final MongoDatabase database, final List<TwitchChannelMessageLog> messages) {
+        final DocumentChatLogStore store = new DocumentChatLogStore(database, "chatlogs");
+        store.createIndexes();
+        long start = System.nanoTime();
+        messages.forEach(store::write);
+        final long writeNanos = System.nanoTime() - start;
+        final Document stats = database.runCommand(new Document("collStats", "chatlogs"));
+
+        final Random random = new Random(7);
+        final Instant dayStart = Instant.ofEpochSecond(messages.get(0).getMessageTime());
+        long found = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            final Instant from = dayStart.plusSeconds(random.nextInt(86_400 - 3_600));
+            found += store.messagesInChannel(Integer.toString(10_000 + random.nextInt(CHANNELS)), from,
+                from.plusSeconds(3_600), Integer.MAX_VALUE).size();
+        }
+        final long queryNanos = System.nanoTime() - start;
+        store.close();
+
+        final long storageBytes = ((Number) stats.get("storageSize")).longValue()
+            + ((Number) stats.get("totalIndexSize")).longValue();
+        System.out.printf("%-22s %12d bytes %7.1f bytes/message, write %6d ms, channel hour query %6.2f ms"
+                + " (%d found)%n", "mongo documents", storageBytes, (double) storageBytes / messages.size(),
+            TimeUnit.NANOSECONDS.toMillis(writeNanos), queryNanos / 1e6 / QUERIES, found);
+    }
+}
@@ -0,0 +1,288 @@
+package gg.sep.securityrobot.archive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.google.gson.JsonObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import gg.sep.securityrobot.config.models.ArchiveConfig;
+import gg.sep.securityrobot.models.db.TwitchChannelMessageLog;
+import gg.sep.securityrobot.utils.ModelParser;
+
+/**
+ * Round trip and corruption tests for {@link ChatArchiveWriter} and {@link ChatArchiveReader}.
+ */
+public class ChatArchiveTest {
+
+    private static final long T0 = 1_560_000_000L;
+    private static final Instant FROM = Instant.ofEpochSecond(T0 - 1_000);
+    private static final Instant TO = Instant.ofEpochSecond(T0 + 1_000);
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+
+    @Before
+    public void setUp() {
+        directory = folder.getRoot().toPath().resolve("archive");
+    }
+
+    private ArchiveConfig config(final int blockRecords, final int segmentRecords) {
+        final JsonObject json = new JsonObject();
+        json.addProperty("directory", directory.toString());
+        json.addProperty("blockRecords", blockRecords);
+        json.addProperty("segmentRecords", segmentRecords);
+        return ModelParser.GSON.fromJson(json, ArchiveConfig.class);
+    }
+
+    private static TwitchChannelMessageLog message(final String id, final String channel, final long time,
+                                                   final String authorId) {
+        return TwitchChannelMessageLog.builder()
+            .twitchId(id)
+            .message("message " + id + " with \"quotes\", ünïcödé and 🎉")
+            .roomId("room-" + channel)
+            .messageTime(time)
+            .authorId(authorId)
+            .authorDisplayName("User" + authorId)
+            .channelName("#" + channel)
+            .cleanChannelName(channel)
+            .build();
+    }
+
+    private void writeAll(final ArchiveConfig config, final List<TwitchChannelMessageLog> messages)
+        throws IOException {
+        try (ChatArchiveWriter writer = new ChatArchiveWriter(config)) {
+            for (final TwitchChannelMessageLog message : messages) {
+                writer.write(message);
+            }
+        }
+    }
+
+    private List<TwitchChannelMessageLog> scan(final String channel, final Instant from, final Instant to)
+        throws IOException {
+        try (ChatArchiveReader reader = new ChatArchiveReader(directory)) {
+            final List<TwitchChannelMessageLog> read = new ArrayList<>();
+            final long matched = reader.scan(channel, from, to, read::add);
+            assertEquals(read.size(), matched);
+            return read;
+        }
+    }
+
+    private static List<String> ids(final List<TwitchChannelMessageLog> messages) {
+        return messages.stream().map(TwitchChannelMessageLog::getTwitchId).collect(Collectors.toList());
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> p.toString().endsWith(ArchiveFormat.SEGMENT_SUFFIX)).sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    private static void assertSameMessage(final TwitchChannelMessageLog expected,
+                                          final TwitchChannelMessageLog actual) {
+        assertEquals(expected.getTwitchId(), actual.getTwitchId());
+        assertEquals(expected.getMessage(), actual.getMessage());
+        assertEquals(expected.getRoomId(), actual.getRoomId());
+        assertEquals(expected.getMessageTime(), actual.getMessageTime());
+        assertEquals(expected.getAuthorId(), actual.getAuthorId());
+        assertEquals(expected.getAuthorDisplayName(), actual.getAuthorDisplayName());
+        assertEquals(expected.getChannelName(), actual.getChannelName());
+        assertEquals(expected.getCleanChannelName(), actual.getCleanChannelName());
+    }
+
+    private static void overwrite(final Path path, final long position, final ByteBuffer bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(bytes, position);
+        }
+    }
+
+    private static int readInt(final Path path, final long position) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.read(buffer, position);
+        }
+        return buffer.getInt(0);
+    }
+
+    private static ByteBuffer intBytes(final int value) {
+        final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES).putInt(value);
+        buffer.flip();
+        return buffer;
+    }
+
+    private void assertScanFails(final String channel) {
+        try {
+            scan(channel, FROM, TO);
+            fail("Expected the scan to fail on a corrupt block");
+        } catch (final IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("archive block"));
+        }
+    }
+
+    @Test
+    public void messagesRoundTripAcrossBlocksAndSegments() throws IOException {
+        final List<TwitchChannelMessageLog> written = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            // times go backwards now and then, so deltas are not always positive
+            written.add(message("m" + i, "channel" + (i % 3), T0 + i - (i % 4 == 0 ? 7 : 0), "user" + (i % 5)));
+        }
+        writeAll(config(4, 10), written);
+
+        assertEquals(3, segments().size());
+        for (int c = 0; c < 3; c++) {
+            final String channel = "channel" + c;
+            final List<TwitchChannelMessageLog> expected = written.stream()
+                .filter(m -> channel.equals(m.getCleanChannelName())).collect(Collectors.toList());
+            final List<TwitchChannelMessageLog> read = scan(channel, FROM, TO);
+            assertEquals(expected.size(), read.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertSameMessage(expected.get(i), read.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void scansOnlyReturnMessagesInTheRange() throws IOException {
+        final List<TwitchChannelMessageLog> written = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            written.add(message("m" + i, "channel", T0 + i, "user"));
+        }
+        writeAll(config(4, 1_000), written);
+
+        assertEquals(List.of("m5", "m6", "m7", "m8"),
+            ids(scan("channel", Instant.ofEpochSecond(T0 + 5), Instant.ofEpochSecond(T0 + 9))));
+        assertEquals(List.of("m19"), ids(scan("#channel", Instant.ofEpochSecond(T0 + 19), TO)));
+        assertTrue(scan("channel", FROM, Instant.ofEpochSecond(T0)).isEmpty());
+        assertTrue(scan("otherchannel", FROM, TO).isEmpty());
+    }
+
+    @Test
+    public void segmentsAreOnlyVisibleOnceClosed() throws IOException {
+        try (ChatArchiveWriter writer = new ChatArchiveWriter(config(2, 1_000))) {
+            for (int i = 0; i < 5; i++) {
+                writer.write(message("m" + i, "channel", T0 + i, "user"));
+            }
+            // two blocks are already written into the in-progress segment
+            assertTrue(segments().isEmpty());
+            assertTrue(scan("channel", FROM, TO).isEmpty());
+
+            writer.roll();
+            assertEquals(5, scan("channel", FROM, TO).size());
+        }
+    }
+
+    @Test
+    public void truncatedSegmentsAreSkipped() throws IOException {
+        final List<TwitchChannelMessageLog> written = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            written.add(message("m" + i, "channel", T0 + i, "user"));
+        }
+        writeAll(config(2, 4), written);
+        final Path first = segments().get(0);
+        try (FileChannel channel = FileChannel.open(first, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        try (ChatArchiveReader reader = new ChatArchiveReader(directory)) {
+            assertEquals(1, reader.getSegmentCount());
+        }
+        assertEquals(List.of("m4", "m5", "m6", "m7"), ids(scan("channel", FROM, TO)));
+    }
+
+    @Test
+    public void segmentsWithAnotherVersionAreSkipped() throws IOException {
+        writeAll(config(2, 1_000), List.of(message("m0", "channel", T0, "user")));
+        overwrite(segments().get(0), Integer.BYTES, intBytes(ArchiveFormat.VERSION + 1));
+
+        try (ChatArchiveReader reader = new ChatArchiveReader(directory)) {
+            assertEquals(0, reader.getSegmentCount());
+        }
+    }
+
+    @Test
+    public void segmentsWithACorruptFooterAreSkipped() throws IOException {
+        writeAll(config(2, 2), List.of(message("m0", "channel", T0, "user"), message("m1", "channel", T0, "user"),
+            message("m2", "channel", T0, "user"), message("m3", "channel", T0, "user")));
+        final List<Path> segments = segments();
+
+        // footer length pointing before the start of the file
+        final Path first = segments.get(0);
+        overwrite(first, Files.size(first) - ArchiveFormat.TRAILER_BYTES, intBytes(Integer.MAX_VALUE));
+
+        // footer overwritten with unterminated varints
+        final Path second = segments.get(1);
+        final long size = Files.size(second);
+        final int footerLength = readInt(second, size - ArchiveFormat.TRAILER_BYTES);
+        final ByteBuffer garbage = ByteBuffer.allocate(footerLength);
+        while (garbage.hasRemaining()) {
+            garbage.put((byte) 0xFF);
+        }
+        garbage.flip();
+        overwrite(second, size - ArchiveFormat.TRAILER_BYTES - footerLength, garbage);
+
+        try (ChatArchiveReader reader = new ChatArchiveReader(directory)) {
+            assertEquals(0, reader.getSegmentCount());
+        }
+    }
+
+    @Test
+    public void corruptBlocksFailTheScan() throws IOException {
+        writeAll(config(4, 1_000), List.of(message("m0", "channel", T0, "user")));
+        final Path segment = segments().get(0);
+        final long data = ArchiveFormat.HEADER_BYTES + ArchiveFormat.BLOCK_HEADER_BYTES;
+        final int compressedLength = readInt(segment, ArchiveFormat.HEADER_BYTES);
+        final ByteBuffer flipped = ByteBuffer.allocate(1);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            channel.read(flipped, data + compressedLength / 2);
+        }
+        flipped.put(0, (byte) ~flipped.get(0)).rewind();
+        overwrite(segment, data + compressedLength / 2, flipped);
+
+        assertScanFails("channel");
+    }
+
+    @Test
+    public void blocksWithACorruptHeaderFailTheScan() throws IOException {
+        writeAll(config(4, 1_000), List.of(message("m0", "channel", T0, "user")));
+        final Path segment = segments().get(0);
+        final int compressedLength = readInt(segment, ArchiveFormat.HEADER_BYTES);
+        final int rawLength = readInt(segment, ArchiveFormat.HEADER_BYTES + Integer.BYTES);
+
+        // compressed data cut short
+        overwrite(segment, ArchiveFormat.HEADER_BYTES, intBytes(compressedLength - 4));
+        assertScanFails("channel");
+
+        // compressed data running past the footer
+        overwrite(segment, ArchiveFormat.HEADER_BYTES, intBytes((int) Files.size(segment)));
+        assertScanFails("channel");
+
+        // raw length not matching the data
+        overwrite(segment, ArchiveFormat.HEADER_BYTES, intBytes(compressedLength));
+        overwrite(segment, ArchiveFormat.HEADER_BYTES + Integer.BYTES, intBytes(rawLength + 1));
+        assertScanFails("channel");
+        overwrite(segment, ArchiveFormat.HEADER_BYTES + Integer.BYTES, intBytes(Integer.MAX_VALUE));
+        assertScanFails("channel");
+
+        overwrite(segment, ArchiveFormat.HEADER_BYTES + Integer.BYTES, intBytes(rawLength));
+        assertEquals(List.of("m0"), ids(scan("channel", FROM, TO)));
+    }
+}
@@ -0,0 +1,109 @@
+package gg.sep.securityrobot.commands;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timing harness for resolving chat messages against a large command registry.
+ *
+ * Compares the precomputed trigger map used by {@link CommandManager} with scanning every command's tree, and times
+ * building, hashing and deduplicating the registry itself. Not run as part of the test suite; run it directly with
+ * the test classpath, optionally passing the number of commands and the number of lookups:
+ *
+ *    java gg.sep.securityrobot.commands.CommandRegistryBenchmark 10000 1000000
+ */
+public final class CommandRegistryBenchmark {
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 5;
+
+    private CommandRegistryBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     * @param args Optional number of commands (default 10000) and number of lookups per round (default 1000000).
+     */
+    public static void main(final String[] args) {
+        final int commandCount = (args.length > 0) ? Integer.parseInt(args[0]) : 10_000;
+        final int lookups = (args.length > 1) ? Integer.parseInt(args[1]) : 1_000_000;
+
+        long start = System.nanoTime();
+        final List<Command> commands = new ArrayList<>(commandCount);
+        for (int i = 0; i < commandCount; i++) {
+            commands.add(Command.builder()
+                .name("command" + i + ((i % 4 == 0) ? " sub" : ""))
+                .aliases(new String[] {"alias" + i, "other" + i})
+                .level(CommandLevel.ALL)
+                .build());
+        }
+        report("build commands", System.nanoTime() - start, commandCount);
+
+        start = System.nanoTime();
+        final Set<Command> registry = new HashSet<>(commands);
+        final Map<List<String>, Command> triggers = new HashMap<>();
+        registry.forEach(c -> c.getCommandTree().forEach(branch -> triggers.put(branch, c)));
+        report("register commands", System.nanoTime() - start, commandCount);
+
+        final String[] messages = new String[1024];
+        for (int i = 0; i < messages.length; i++) {
+            final int index = (int) ((i * 2654435761L) % commandCount);
+            final String trigger = Arrays.asList("command", "alias", "other").get(i % 3) + index;
+            messages[i] = (i % 8 == 7) ? "+missing" + i + " text"
+                : "+" + trigger + ((index % 4 == 0) ? " sub" : "") + " some arguments";
+        }
+
+        final int scanLookups = Math.max(1, lookups / Math.max(1, commandCount / 10));
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            final boolean measured = round >= WARMUP_ROUNDS;
+
+            start = System.nanoTime();
+            int found = 0;
+            for (int i = 0; i < lookups; i++) {
+                if (CommandManager.resolveCommand(triggers, messages[i & (messages.length - 1)]).isPresent()) {
+                    found++;
+                }
+            }
+            if (measured) {
+                report("resolve with trigger map (found " + found + ")", System.nanoTime() - start, lookups);
+            }
+
+            start = System.nanoTime();
+            found = 0;
+            for (int i = 0; i < scanLookups; i++) {
+                if (scan(commands, messages[i & (messages.length - 1)]).isPresent()) {
+                    found++;
+                }
+            }
+            if (measured) {
+                report("resolve by scanning (found " + found + ")", System.nanoTime() - start, scanLookups);
+            }
+        }
+    }
+
+    private static Optional<Command> scan(final List<Command> commands, final String message) {
+        final String[] splitMsg = message.substring(1).split(" ");
+        final List<String> commandTree = new ArrayList<>(splitMsg.length);
+        for (final String token : splitMsg) {
+            commandTree.add(token.trim().toLowerCase());
+            for (final Command command : commands) {
+                if (command.getCommandTree().contains(commandTree)) {
+                    return Optional.of(command);
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static void report(final String name, final long elapsedNanos, final int operations) {
+        System.out.printf("%-45s %8d ms %10.1f ns/op%n", name, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+            (double) elapsedNanos / operations);
+    }
+}
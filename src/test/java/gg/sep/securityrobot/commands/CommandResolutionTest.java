@@ -0,0 +1,118 @@
+package gg.sep.securityrobot.commands;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.Test;
+
+import gg.sep.securityrobot.commands.handlers.custom.CustomCommandMetadata;
+
+/**
+ * Tests for resolving chat messages and custom command names to registered commands.
+ */
+public class CommandResolutionTest {
+
+    private static Map<List<String>, Command> triggers(final Command... commands) {
+        final Map<List<String>, Command> triggers = new HashMap<>();
+        for (final Command command : commands) {
+            command.getCommandTree().forEach(branch -> triggers.put(branch, command));
+        }
+        return triggers;
+    }
+
+    private static Command command(final String name, final String... aliases) {
+        return Command.builder()
+            .name(name)
+            .aliases(aliases)
+            .level(CommandLevel.ALL)
+            .build();
+    }
+
+    private static Command custom(final String name, final String aliases) {
+        return Command.fromCommandMetadata(CustomCommandMetadata.builder()
+            .commandName(name)
+            .aliases(aliases)
+            .level("100.0")
+            .response("hello!")
+            .build());
+    }
+
+    @Test
+    public void resolvesByNameAndAliasIgnoringCase() {
+        final Command followers = command("followers", "follows");
+        final Map<List<String>, Command> triggers = triggers(followers);
+
+        assertSame(followers, CommandManager.resolveCommand(triggers, "+followers").get());
+        assertSame(followers, CommandManager.resolveCommand(triggers, "+FOLLOWS some text").get());
+    }
+
+    @Test
+    public void resolvesSubCommandsByEveryBranch() {
+        final Command add = command("timer add", "timers");
+        final Command del = command("timer del", "timers");
+        final Map<List<String>, Command> triggers = triggers(add, del);
+
+        assertSame(add, CommandManager.resolveCommand(triggers, "+timer add 60 hello").get());
+        assertSame(del, CommandManager.resolveCommand(triggers, "+timers DEL 3").get());
+        assertFalse(CommandManager.resolveCommand(triggers, "+timer list").isPresent());
+    }
+
+    @Test
+    public void shortestRegisteredBranchWins() {
+        final Command points = command("points");
+        final Command pointsAdd = command("points add");
+        final Map<List<String>, Command> triggers = triggers(points, pointsAdd);
+
+        assertSame(points, CommandManager.resolveCommand(triggers, "+points add 5").get());
+    }
+
+    @Test
+    public void ignoresMessagesWithoutThePrefix() {
+        final Map<List<String>, Command> triggers = triggers(command("followers"));
+
+        assertFalse(CommandManager.resolveCommand(triggers, "followers").isPresent());
+        assertFalse(CommandManager.resolveCommand(triggers, "!followers").isPresent());
+        assertFalse(CommandManager.resolveCommand(triggers, "+").isPresent());
+    }
+
+    @Test
+    public void findsCustomCommandsByNameOrAlias() {
+        final Command hello = custom("hello", "hi|hey");
+        final Map<List<String>, Command> triggers = triggers(hello, command("followers"));
+
+        assertEquals(Optional.of(hello), CommandManager.findCustomCommand("hello", triggers));
+        assertEquals(Optional.of(hello), CommandManager.findCustomCommand("hey", triggers));
+        assertEquals("hello", CommandManager.findCustomCommand("hi", triggers).get().getName());
+    }
+
+    @Test
+    public void doesNotFindBuiltInCommandsAsCustom() {
+        final Map<List<String>, Command> triggers = triggers(custom("hello", null), command("followers"));
+
+        assertFalse(CommandManager.findCustomCommand("followers", triggers).isPresent());
+        assertFalse(CommandManager.findCustomCommand("missing", triggers).isPresent());
+    }
+
+    @Test
+    public void resolvesEveryCommandInALargeRegistry() {
+        final int count = 12_000;
+        final Command[] commands = new Command[count];
+        for (int i = 0; i < count; i++) {
+            commands[i] = command("command" + i + " sub", "alias" + i);
+        }
+        final Map<List<String>, Command> triggers = triggers(commands);
+
+        assertEquals(count * 2, triggers.size());
+        for (int i = 0; i < count; i++) {
+            assertSame(commands[i], CommandManager.resolveCommand(triggers, "+command" + i + " sub text").get());
+            assertSame(commands[i], CommandManager.resolveCommand(triggers, "+alias" + i + " sub").get());
+        }
+        assertFalse(CommandManager.resolveCommand(triggers, "+command" + count + " sub").isPresent());
+    }
+}
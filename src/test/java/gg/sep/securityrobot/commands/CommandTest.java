@@ -0,0 +1,123 @@
+package gg.sep.securityrobot.commands;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests for the trigger strings, command tree and identity precomputed by {@link Command}.
+ */
+public class CommandTest {
+
+    private static Command command(final String name, final String... aliases) {
+        return Command.builder()
+            .name(name)
+            .aliases(aliases)
+            .level(CommandLevel.ALL)
+            .build();
+    }
+
+    @Test
+    public void commandTreeHasABranchForTheNameAndEachAlias() {
+        final Command command = command("points add", "gold", "rewards");
+
+        final Set<List<String>> expected = new HashSet<>(Arrays.asList(
+            Arrays.asList("points", "add"),
+            Arrays.asList("gold", "add"),
+            Arrays.asList("rewards", "add")));
+        assertEquals(expected, command.getCommandTree());
+    }
+
+    @Test
+    public void commandTreeTokensAreLowercaseAndTrimmed() {
+        final Command command = command("Points ADD", " Gold ");
+
+        assertTrue(command.getCommandTree().contains(Arrays.asList("points", "add")));
+        assertTrue(command.getCommandTree().contains(Arrays.asList("gold", "add")));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void commandTreeIsUnmodifiable() {
+        command("points").getCommandTree().clear();
+    }
+
+    @Test
+    public void commandPrefixesAreOrderedLongestFirst() {
+        final Command command = command("timer add", "t", "timers");
+
+        final List<String> prefixes = command.getCommandPrefixes();
+        assertEquals(3, prefixes.size());
+        for (int i = 1; i < prefixes.size(); i++) {
+            assertTrue(prefixes.get(i - 1).length() >= prefixes.get(i).length());
+        }
+        assertEquals("+timers add", prefixes.get(0));
+        assertEquals("+t add", prefixes.get(2));
+    }
+
+    @Test
+    public void equalCommandTreesAreEqualCommandsWithEqualHashes() {
+        final Command first = command("points add", "gold", "rewards");
+        final Command second = Command.builder()
+            .name("points add")
+            .aliases(Arrays.asList("rewards", "gold"))
+            .description("a different description")
+            .level(CommandLevel.MOD)
+            .build();
+
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+    }
+
+    @Test
+    public void differentCommandTreesAreNotEqual() {
+        assertNotEquals(command("points add", "gold"), command("points add", "rewards"));
+        assertNotEquals(command("points add"), command("points del"));
+    }
+
+    @Test
+    public void hashCodeIsStableAcrossCalls() {
+        final Command command = command("poll start", "vote");
+        final int hash = command.hashCode();
+
+        assertEquals(hash, command.hashCode());
+        assertEquals(hash, command.getCommandTree().hashCode());
+        final Set<Command> commands = new HashSet<>();
+        commands.add(command);
+        assertTrue(commands.contains(command("poll start", "vote")));
+    }
+
+    @Test
+    public void tokensAreInternedAcrossCommands() {
+        final Command first = command("raffle start");
+        final Command second = command("poll start");
+
+        final String firstStart = first.getCommandTree().iterator().next().get(1);
+        final String secondStart = second.getCommandTree().iterator().next().get(1);
+        assertSame(firstStart, secondStart);
+    }
+
+    @Test
+    public void duplicatesShareANameOrAlias() {
+        assertTrue(command("points", "gold").isDuplicate(command("coins", "gold")));
+        assertTrue(command("points").isDuplicate(command("points")));
+        assertFalse(command("points", "gold").isDuplicate(command("coins", "silver")));
+    }
+
+    @Test
+    public void handlesCommandMatchesNameAndAliasesIgnoringCase() {
+        final Command command = command("followers", "follows");
+
+        assertTrue(command.handlesCommand("FOLLOWERS"));
+        assertTrue(command.handlesCommand("follows"));
+        assertFalse(command.handlesCommand("follow"));
+    }
+}
@@ -0,0 +1,231 @@
+package gg.sep.securityrobot.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.junit.Before;
+import org.junit.Test;
+
+import gg.sep.securityrobot.models.db.TwitchChannelMessageLog;
+
+/**
+ * Tests for {@link BucketedChatLogStore}, over an in-memory collection.
+ */
+public class BucketedChatLogStoreTest {
+
+    private static final int BUCKET_SECONDS = 60;
+    private static final long T0 = 1_560_000_000L - Math.floorMod(1_560_000_000L, BUCKET_SECONDS);
+    private static final Instant FROM = Instant.ofEpochSecond(T0 - BUCKET_SECONDS);
+    private static final Instant TO = Instant.ofEpochSecond(T0 + 10 * BUCKET_SECONDS);
+
+    private InMemoryMongoCollection collection;
+    private BucketedChatLogStore store;
+
+    @Before
+    public void setUp() {
+        collection = new InMemoryMongoCollection();
+        store = new BucketedChatLogStore(collection.database(), "chatbuckets", BUCKET_SECONDS, 0);
+    }
+
+    private static TwitchChannelMessageLog message(final String id, final String roomId, final long time,
+                                                   final String authorId) {
+        return TwitchChannelMessageLog.builder()
+            .twitchId(id)
+            .message("message " + id + " with \"quotes\" and ünïcödé")
+            .roomId(roomId)
+            .messageTime(time)
+            .authorId(authorId)
+            .authorDisplayName("User" + authorId)
+            .channelName("#channel" + roomId)
+            .cleanChannelName("channel" + roomId)
+            .build();
+    }
+
+    private static List<String> ids(final List<TwitchChannelMessageLog> messages) {
+        final List<String> ids = new ArrayList<>();
+        messages.forEach(m -> ids.add(m.getTwitchId()));
+        return ids;
+    }
+
+    private static void assertSameMessage(final TwitchChannelMessageLog expected,
+                                          final TwitchChannelMessageLog actual) {
+        assertEquals(expected.getTwitchId(), actual.getTwitchId());
+        assertEquals(expected.getMessage(), actual.getMessage());
+        assertEquals(expected.getRoomId(), actual.getRoomId());
+        assertEquals(expected.getMessageTime(), actual.getMessageTime());
+        assertEquals(expected.getAuthorId(), actual.getAuthorId());
+        assertEquals(expected.getAuthorDisplayName(), actual.getAuthorDisplayName());
+        assertEquals(expected.getChannelName(), actual.getChannelName());
+        assertEquals(expected.getCleanChannelName(), actual.getCleanChannelName());
+    }
+
+    @Test
+    public void bucketsRoundTripThroughTheDatabase() {
+        final List<TwitchChannelMessageLog> written = new ArrayList<>();
+        written.add(message("a", "1", T0 + 1, "100"));
+        written.add(message("b", "1", T0 + 5, "200"));
+        written.add(message("c", "1", T0 + 5, "100"));
+        written.add(message("d", "1", T0 + BUCKET_SECONDS + 3, "200"));
+        written.forEach(store::write);
+        store.write(message("e", "2", T0 + 2, "100"));
+        store.flush();
+
+        assertEquals(3, collection.size());
+        final List<TwitchChannelMessageLog> read = store.messagesInChannel("1", FROM, TO, 100);
+        assertEquals(written.size(), read.size());
+        for (int i = 0; i < written.size(); i++) {
+            assertSameMessage(written.get(i), read.get(i));
+        }
+        assertEquals(List.of("a", "e", "c"), ids(store.messagesByUser("100", FROM, TO, 100)));
+    }
+
+    @Test
+    public void bucketsAreDictionaryCoded() {
+        store.write(message("a", "1", T0 + 1, "100"));
+        store.write(message("b", "1", T0 + 2, "100"));
+        store.write(message("c", "1", T0 + 3, "200"));
+        store.flush();
+
+        final Document bucket = collection.documents().get(0);
+        assertEquals(List.of("100", "200"), bucket.get("authors"));
+        assertEquals("channel1", bucket.getString("channel"));
+        assertEquals(3, bucket.getInteger("count").intValue());
+        final List<?> messages = (List<?>) bucket.get("messages");
+        assertEquals(0, ((Document) messages.get(1)).getInteger("a").intValue());
+        assertEquals(1, ((Document) messages.get(2)).getInteger("a").intValue());
+        assertEquals(3, ((Document) messages.get(2)).getInteger("t").intValue());
+    }
+
+    @Test
+    public void queriesOnlyReturnMessagesInTheRange() {
+        store.write(message("a", "1", T0, "100"));
+        store.write(message("b", "1", T0 + 30, "100"));
+        store.write(message("c", "1", T0 + 59, "100"));
+        store.flush();
+
+        final Instant from = Instant.ofEpochSecond(T0 + 30);
+        assertEquals(List.of("b"), ids(store.messagesInChannel("1", from, Instant.ofEpochSecond(T0 + 59), 100)));
+        assertEquals(List.of("b", "c"), ids(store.messagesInChannel("1", from, TO, 100)));
+    }
+
+    @Test
+    public void queriesMergePendingOpenAndWrittenBuckets() {
+        store.write(message("a", "1", T0 + 1, "100"));
+        store.flush();
+
+        collection.failNextInserts(1);
+        store.write(message("b", "1", T0 + BUCKET_SECONDS + 1, "100"));
+        store.flush();
+        assertEquals(1, collection.size());
+
+        store.write(message("c", "1", T0 + 2 * BUCKET_SECONDS + 1, "100"));
+
+        assertEquals(List.of("a", "b", "c"), ids(store.messagesInChannel("1", FROM, TO, 100)));
+        assertEquals(List.of("a", "b", "c"), ids(store.messagesByUser("100", FROM, TO, 100)));
+        assertEquals(List.of("a", "b"), ids(store.messagesInChannel("1", FROM, TO, 2)));
+    }
+
+    @Test
+    public void pendingBucketsAreSortedWithWrittenOnes() {
+        final Date firstBucket = Date.from(Instant.ofEpochSecond(T0));
+        collection.failInsertsOf(document -> firstBucket.equals(document.getDate("bucket")));
+        store.write(message("a", "1", T0 + 1, "100"));
+        store.write(message("b", "1", T0 + BUCKET_SECONDS + 1, "100"));
+        store.flush();
+
+        assertEquals(1, collection.size());
+        assertEquals(List.of("a", "b"), ids(store.messagesInChannel("1", FROM, TO, 100)));
+        assertEquals(List.of("a"), ids(store.messagesInChannel("1", FROM, TO, 1)));
+    }
+
+    @Test
+    public void bucketWrittenWithoutAReplyIsReadOnceAndNotWrittenTwice() {
+        collection.failNextInsertsAfterWriting(1);
+        store.write(message("a", "1", T0 + 1, "100"));
+        store.flush();
+
+        // written, but still pending since the write looked like it failed
+        assertEquals(1, collection.size());
+        assertEquals(List.of("a"), ids(store.messagesInChannel("1", FROM, TO, 100)));
+
+        store.flush();
+        assertEquals(1, collection.size());
+        assertEquals(1, collection.duplicateErrors());
+        assertEquals(List.of("a"), ids(store.messagesInChannel("1", FROM, TO, 100)));
+
+        // no longer pending, so it is not written again
+        store.flush();
+        assertEquals(1, collection.duplicateErrors());
+    }
+
+    @Test
+    public void onlyFailedBucketsAreRetried() {
+        collection.failInsertsOf(document -> "2".equals(document.getString("roomId")));
+        store.write(message("a", "1", T0 + 1, "100"));
+        store.write(message("b", "2", T0 + 1, "100"));
+        store.flush();
+
+        assertEquals(1, collection.size());
+        final Object writtenId = collection.documents().get(0).get("_id");
+        assertEquals(List.of("b"), ids(store.messagesInChannel("2", FROM, TO, 100)));
+
+        collection.failInsertsOf(document -> false);
+        store.flush();
+
+        assertEquals(2, collection.size());
+        assertEquals(1, collection.insertAttempts(writtenId));
+        assertEquals(0, collection.duplicateErrors());
+        assertEquals(List.of("b"), ids(store.messagesInChannel("2", FROM, TO, 100)));
+    }
+
+    @Test
+    public void bucketsAreDroppedAfterTheMaximumAttempts() {
+        collection.failInsertsOf(document -> true);
+        store.write(message("a", "1", T0 + 1, "100"));
+        for (int i = 0; i < 4; i++) {
+            store.flush();
+        }
+        assertEquals(List.of("a"), ids(store.messagesInChannel("1", FROM, TO, 100)));
+
+        store.flush();
+        assertTrue(store.messagesInChannel("1", FROM, TO, 100).isEmpty());
+
+        store.flush();
+        assertEquals(0, collection.size());
+    }
+
+    @Test
+    public void concurrentFlushesWriteEachBucketOnce() throws InterruptedException {
+        store.write(message("a", "1", T0 + 1, "100"));
+        store.write(message("b", "2", T0 + 1, "100"));
+
+        final CountDownLatch entered = collection.holdInserts();
+        final Thread first = new Thread(store::flush);
+        first.start();
+        assertTrue(entered.await(10, TimeUnit.SECONDS));
+
+        store.write(message("c", "1", T0 + BUCKET_SECONDS + 1, "100"));
+        final Thread second = new Thread(store::flush);
+        second.start();
+        // give the second flush the chance to reach the insert before the first one finishes
+        Thread.sleep(200);
+        collection.releaseInserts();
+        first.join();
+        second.join();
+
+        assertEquals(3, collection.size());
+        assertEquals(0, collection.duplicateErrors());
+        for (final Document document : collection.documents()) {
+            assertEquals(1, collection.insertAttempts(document.get("_id")));
+        }
+        assertEquals(List.of("a", "c"), ids(store.messagesInChannel("1", FROM, TO, 100)));
+    }
+}
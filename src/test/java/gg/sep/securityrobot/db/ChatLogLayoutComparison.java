@@ -0,0 +1,144 @@
+package gg.sep.securityrobot.db;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoDatabase;
+import org.bson.BsonDocumentWrapper;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+
+import gg.sep.securityrobot.models.db.TwitchChannelMessageLog;
+
+/**
+ * Compares the bucketed chat log layout with the original document per message layout.
+ *
+ * Generates a synthetic day of chat over a number of channels, and reports the number and encoded BSON size of the
+ * documents each layout stores, and the time taken to write them into an in-memory collection. Given a MongoDB
+ * connection string, it also writes the messages through both stores into a scratch database, which is dropped
+ * afterwards, and times the writes and the channel and user queries.
+ * Not run as part of the test suite; run it directly with the test classpath:
+ *
+ *    java gg.sep.securityrobot.db.ChatLogLayoutComparison [messages] [mongodb://localhost:27017]
+ */
+public final class ChatLogLayoutComparison {
+
+    private static final int BUCKET_SECONDS = 60;
+    private static final int CHANNELS = 20;
+    private static final int CHATTERS = 5_000;
+    private static final int QUERIES = 200;
+    private static final String DATABASE = "securityrobot_layout_comparison";
+
+    private ChatLogLayoutComparison() {
+    }
+
+    /**
+     * Runs the comparison.
+     * @param args Optional number of messages (default 200000), and optional MongoDB connection string.
+     */
+    public static void main(final String[] args) {
+        final int messageCount = (args.length > 0) ? Integer.parseInt(args[0]) : 200_000;
+        final List<TwitchChannelMessageLog> messages = generate(messageCount);
+        System.out.printf("%d messages over %d channels and %d chatters%n", messageCount, CHANNELS, CHATTERS);
+
+        final InMemoryMongoCollection documents = new InMemoryMongoCollection();
+        final DocumentChatLogStore documentStore = new DocumentChatLogStore(documents.database(), "chatlogs");
+        long start = System.nanoTime();
+        messages.forEach(documentStore::write);
+        report("document per message", documents, System.nanoTime() - start, messageCount);
+
+        final InMemoryMongoCollection buckets = new InMemoryMongoCollection();
+        final BucketedChatLogStore bucketStore = new BucketedChatLogStore(buckets.database(), "chatbuckets",
+            BUCKET_SECONDS, 0);
+        start = System.nanoTime();
+        messages.forEach(bucketStore::write);
+        bucketStore.flush();
+        report("bucketed", buckets, System.nanoTime() - start, messageCount);
+
+        if (args.length > 1) {
+            try (MongoClient client = MongoClients.create(args[1])) {
+                final MongoDatabase database = client.getDatabase(DATABASE);
+                database.drop();
+                try {
+                    timeLiveStore("document per message", new DocumentChatLogStore(database, "chatlogs"), messages);
+                    timeLiveStore("bucketed", new BucketedChatLogStore(database, "chatbuckets", BUCKET_SECONDS, 0),
+                        messages);
+                } finally {
+                    database.drop();
+                }
+            }
+        }
+    }
+
+    private static List<TwitchChannelMessageLog> generate(final int count) {
+        final Random random = new Random(42);
+        final long dayStart = Instant.parse("2019-06-01T00:00:00Z").getEpochSecond();
+        final List<TwitchChannelMessageLog> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final int channel = (int) Math.abs(random.nextGaussian() * CHANNELS / 3) % CHANNELS;
+            final int chatter = random.nextInt(CHATTERS);
+            messages.add(TwitchChannelMessageLog.builder()
+                .twitchId(new UUID(random.nextLong(), random.nextLong()).toString())
+                .message("chat message number " + i + " kappa".repeat(random.nextInt(8)))
+                .roomId(Integer.toString(10_000 + channel))
+                .messageTime(dayStart + (86_400L * i / count))
+                .authorId(Integer.toString(1_000_000 + chatter))
+                .authorDisplayName("Chatter" + chatter)
+                .channelName("#channel" + channel)
+                .cleanChannelName("channel" + channel)
+                .build());
+        }
+        return messages;
+    }
+
+    private static void report(final String layout, final InMemoryMongoCollection collection,
+                               final long elapsedNanos, final int messageCount) {
+        long bytes = 0;
+        for (final Document document : collection.documents()) {
+            bytes += new RawBsonDocument(BsonDocumentWrapper.asBsonDocument(document,
+                MongoClientSettings.getDefaultCodecRegistry()), new BsonDocumentCodec()).getByteBuffer().remaining();
+        }
+        System.out.printf("%-22s %9d documents %12d bytes %7.1f bytes/message %8d ms to write in memory%n", layout,
+            collection.size(), bytes, (double) bytes / messageCount, TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+    }
+
+    private static void timeLiveStore(final String layout, final ChatLogStore store,
+                                      final List<TwitchChannelMessageLog> messages) {
+        store.createIndexes();
+        long start = System.nanoTime();
+        messages.forEach(store::write);
+        store.flush();
+        final long writeNanos = System.nanoTime() - start;
+
+        final Random random = new Random(7);
+        final Instant dayStart = Instant.ofEpochSecond(messages.get(0).getMessageTime());
+        long found = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            final Instant from = dayStart.plusSeconds(random.nextInt(86_400 - 3_600));
+            found += store.messagesInChannel(Integer.toString(10_000 + random.nextInt(CHANNELS)), from,
+                from.plusSeconds(3_600), 1_000).size();
+        }
+        final long channelNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            found += store.messagesByUser(Integer.toString(1_000_000 + random.nextInt(CHATTERS)), dayStart,
+                dayStart.plusSeconds(86_400), 1_000).size();
+        }
+        final long userNanos = System.nanoTime() - start;
+        store.close();
+
+        System.out.printf("%-22s write %8d ms, channel hour query %7.2f ms, user day query %7.2f ms (%d found)%n",
+            layout, TimeUnit.NANOSECONDS.toMillis(writeNanos), channelNanos / 1e6 / QUERIES,
+            userNanos / 1e6 / QUERIES, found);
+    }
+}
@@ -0,0 +1,386 @@
+package gg.sep.securityrobot.db;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.WriteRequest;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.InsertManyOptions;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentWrapper;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+
+/**
+ * In-memory stand-in for a single Mongo collection, for testing the chat log stores without a server.
+ *
+ * Supports the operations the stores use: single and unordered or ordered multi-document inserts with duplicate
+ * {@code _id} errors, and finds with equality (including array membership), {@code $nin}, {@code $lt}/{@code $lte}/
+ * {@code $gt}/{@code $gte} and {@code $and} filters, sorted on one field and limited. Writes can be made to fail,
+ * and inserts can be held until released, to test retries and concurrent writers.
+ */
+final class InMemoryMongoCollection {
+
+    static final int DUPLICATE_KEY_ERROR = 11000;
+    static final int WRITE_ERROR = 2;
+
+    private static final CodecRegistry CODECS = MongoClientSettings.getDefaultCodecRegistry();
+    private static final ServerAddress ADDRESS = new ServerAddress();
+
+    private final List<Document> documents = new ArrayList<>();
+    private final Set<Object> ids = new HashSet<>();
+    private final Map<Object, AtomicInteger> insertAttempts = new HashMap<>();
+    private final AtomicInteger duplicateErrors = new AtomicInteger();
+    private volatile Predicate<Document> failing = document -> false;
+    private volatile int failNextInserts;
+    private volatile int failNextInsertsAfterWriting;
+    private volatile CountDownLatch insertEntered;
+    private volatile CountDownLatch insertReleased;
+
+    /**
+     * Returns a database whose collections are all this collection.
+     * @return Database over this collection.
+     */
+    MongoDatabase database() {
+        return proxy(MongoDatabase.class, (method, args) -> {
+            if (method.equals("getCollection")) {
+                return collection();
+            }
+            throw new UnsupportedOperationException(method);
+        });
+    }
+
+    /**
+     * Returns this collection as a Mongo collection.
+     * @return Mongo collection over this collection.
+     */
+    @SuppressWarnings("unchecked")
+    MongoCollection<Document> collection() {
+        return proxy(MongoCollection.class, (method, args) -> {
+            switch (method) {
+                case "createIndex":
+                    return "index";
+                case "insertOne":
+                    insert(Collections.singletonList((Document) args[0]), true);
+                    return null;
+                case "insertMany":
+                    final boolean ordered = args.length < 2 || ((InsertManyOptions) args[1]).isOrdered();
+                    insert((List<Document>) args[0], ordered);
+                    return null;
+                case "find":
+                    return findIterable(args.length == 0 ? new Document() : (Bson) args[0]);
+                case "countDocuments":
+                    return (long) size();
+                default:
+                    throw new UnsupportedOperationException(method);
+            }
+        });
+    }
+
+    /**
+     * Makes every insert of a document matching a predicate fail with a write error.
+     * @param predicate Documents which cannot be written.
+     */
+    void failInsertsOf(final Predicate<Document> predicate) {
+        this.failing = predicate;
+    }
+
+    /**
+     * Makes the next inserts fail as if the server could not be reached, without writing anything.
+     * @param count Number of inserts to fail.
+     */
+    void failNextInserts(final int count) {
+        this.failNextInserts = count;
+    }
+
+    /**
+     * Makes the next inserts write their documents, and then fail as if the reply was lost.
+     * @param count Number of inserts to fail.
+     */
+    void failNextInsertsAfterWriting(final int count) {
+        this.failNextInsertsAfterWriting = count;
+    }
+
+    /**
+     * Holds every insert until {@link #releaseInserts()} is called.
+     * @return Latch which is counted down when an insert is being held.
+     */
+    CountDownLatch holdInserts() {
+        insertReleased = new CountDownLatch(1);
+        insertEntered = new CountDownLatch(1);
+        return insertEntered;
+    }
+
+    /**
+     * Releases the inserts held by {@link #holdInserts()}.
+     */
+    void releaseInserts() {
+        insertReleased.countDown();
+    }
+
+    synchronized int size() {
+        return documents.size();
+    }
+
+    synchronized List<Document> documents() {
+        return new ArrayList<>(documents);
+    }
+
+    synchronized int insertAttempts(final Object id) {
+        final AtomicInteger attempts = insertAttempts.get(id);
+        return attempts == null ? 0 : attempts.get();
+    }
+
+    int duplicateErrors() {
+        return duplicateErrors.get();
+    }
+
+    private void insert(final List<Document> batch, final boolean ordered) {
+        final CountDownLatch released = insertReleased;
+        if (released != null) {
+            insertEntered.countDown();
+            try {
+                released.await(10, TimeUnit.SECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (failNextInserts > 0) {
+                failNextInserts--;
+                throw new MongoException("Server unreachable");
+            }
+            final List<BulkWriteError> errors = new ArrayList<>();
+            int inserted = 0;
+            for (int i = 0; i < batch.size(); i++) {
+                final Document document = batch.get(i);
+                if (!document.containsKey("_id")) {
+                    document.put("_id", new ObjectId());
+                }
+                insertAttempts.computeIfAbsent(document.get("_id"), id -> new AtomicInteger()).incrementAndGet();
+                if (failing.test(document)) {
+                    errors.add(new BulkWriteError(WRITE_ERROR, "Write failed", new BsonDocument(), i));
+                } else if (!ids.add(document.get("_id"))) {
+                    duplicateErrors.incrementAndGet();
+                    errors.add(new BulkWriteError(DUPLICATE_KEY_ERROR, "Duplicate key", new BsonDocument(), i));
+                } else {
+                    documents.add(document);
+                    inserted++;
+                    continue;
+                }
+                if (ordered) {
+                    break;
+                }
+            }
+            if (!errors.isEmpty()) {
+                throw new MongoBulkWriteException(BulkWriteResult.acknowledged(WriteRequest.Type.INSERT, inserted,
+                    Collections.emptyList()), errors, null, ADDRESS);
+            }
+            if (failNextInsertsAfterWriting > 0) {
+                failNextInsertsAfterWriting--;
+                throw new MongoException("Reply lost");
+            }
+        }
+    }
+
+    private FindIterable<Document> findIterable(final Bson filter) {
+        final BsonDocument query = filter.toBsonDocument(Document.class, CODECS);
+        final Bson[] sort = new Bson[1];
+        final int[] limit = {0};
+        final Object[] self = new Object[1];
+        self[0] = proxy(FindIterable.class, (method, args) -> {
+            switch (method) {
+                case "sort":
+                    sort[0] = (Bson) args[0];
+                    return self[0];
+                case "limit":
+                    limit[0] = (Integer) args[0];
+                    return self[0];
+                case "iterator":
+                case "cursor":
+                    return cursor(results(query, sort[0], limit[0]).iterator());
+                case "first":
+                    final List<Document> found = results(query, sort[0], 1);
+                    return found.isEmpty() ? null : found.get(0);
+                case "into":
+                    @SuppressWarnings("unchecked")
+                    final List<Document> target = (List<Document>) args[0];
+                    target.addAll(results(query, sort[0], limit[0]));
+                    return target;
+                case "forEach":
+                    @SuppressWarnings("unchecked")
+                    final Consumer<Document> consumer = (Consumer<Document>) args[0];
+                    results(query, sort[0], limit[0]).forEach(consumer);
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method);
+            }
+        });
+        @SuppressWarnings("unchecked")
+        final FindIterable<Document> iterable = (FindIterable<Document>) self[0];
+        return iterable;
+    }
+
+    private synchronized List<Document> results(final BsonDocument query, final Bson sort, final int limit) {
+        final List<Document> found = new ArrayList<>();
+        for (final Document document : documents) {
+            if (matches(BsonDocumentWrapper.asBsonDocument(document, CODECS), query)) {
+                found.add(document);
+            }
+        }
+        if (sort != null) {
+            final Map.Entry<String, BsonValue> order = sort.toBsonDocument(Document.class, CODECS).entrySet()
+                .iterator().next();
+            final Comparator<Document> comparator = Comparator.comparing(
+                d -> BsonDocumentWrapper.asBsonDocument(d, CODECS).get(order.getKey()),
+                InMemoryMongoCollection::compare);
+            found.sort(order.getValue().asNumber().intValue() < 0 ? comparator.reversed() : comparator);
+        }
+        return (limit > 0 && found.size() > limit) ? new ArrayList<>(found.subList(0, limit)) : found;
+    }
+
+    private static boolean matches(final BsonDocument document, final BsonDocument query) {
+        for (final Map.Entry<String, BsonValue> clause : query.entrySet()) {
+            if (clause.getKey().equals("$and")) {
+                for (final BsonValue part : clause.getValue().asArray()) {
+                    if (!matches(document, part.asDocument())) {
+                        return false;
+                    }
+                }
+                continue;
+            }
+            final BsonValue value = document.get(clause.getKey());
+            final BsonValue condition = clause.getValue();
+            if (condition.isDocument() && condition.asDocument().keySet().stream().allMatch(k -> k.startsWith("$"))) {
+                for (final Map.Entry<String, BsonValue> operator : condition.asDocument().entrySet()) {
+                    if (!matchesOperator(value, operator.getKey(), operator.getValue())) {
+                        return false;
+                    }
+                }
+            } else if (!equalsOrContains(value, condition)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matchesOperator(final BsonValue value, final String operator, final BsonValue operand) {
+        switch (operator) {
+            case "$eq":
+                return equalsOrContains(value, operand);
+            case "$nin":
+                return operand.asArray().stream().noneMatch(o -> equalsOrContains(value, o));
+            case "$in":
+                return operand.asArray().stream().anyMatch(o -> equalsOrContains(value, o));
+            case "$lt":
+                return value != null && compare(value, operand) < 0;
+            case "$lte":
+                return value != null && compare(value, operand) <= 0;
+            case "$gt":
+                return value != null && compare(value, operand) > 0;
+            case "$gte":
+                return value != null && compare(value, operand) >= 0;
+            default:
+                throw new UnsupportedOperationException(operator);
+        }
+    }
+
+    private static boolean equalsOrContains(final BsonValue value, final BsonValue expected) {
+        if (value == null) {
+            return expected.isNull();
+        }
+        if (value.isArray()) {
+            final BsonArray array = value.asArray();
+            return array.contains(expected);
+        }
+        if (value.isNumber() && expected.isNumber()) {
+            return compare(value, expected) == 0;
+        }
+        return value.equals(expected);
+    }
+
+    private static int compare(final BsonValue first, final BsonValue second) {
+        if (first.isNumber() && second.isNumber()) {
+            return Double.compare(first.asNumber().doubleValue(), second.asNumber().doubleValue());
+        }
+        if (first.isDateTime() && second.isDateTime()) {
+            return Long.compare(first.asDateTime().getValue(), second.asDateTime().getValue());
+        }
+        if (first.isString() && second.isString()) {
+            return first.asString().getValue().compareTo(second.asString().getValue());
+        }
+        if (first.isObjectId() && second.isObjectId()) {
+            return first.asObjectId().getValue().compareTo(second.asObjectId().getValue());
+        }
+        throw new UnsupportedOperationException("Cannot compare " + first.getBsonType() + " to "
+            + second.getBsonType());
+    }
+
+    private static MongoCursor<Document> cursor(final Iterator<Document> iterator) {
+        return proxy(MongoCursor.class, (method, args) -> {
+            switch (method) {
+                case "hasNext":
+                    return iterator.hasNext();
+                case "next":
+                    return iterator.next();
+                case "tryNext":
+                    return iterator.hasNext() ? iterator.next() : null;
+                case "close":
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(final Class<?> type, final Handler handler) {
+        return (T) Proxy.newProxyInstance(InMemoryMongoCollection.class.getClassLoader(), new Class<?>[] {type},
+            (instance, method, args) -> {
+                switch (method.getName()) {
+                    case "hashCode":
+                        return System.identityHashCode(instance);
+                    case "equals":
+                        return instance == args[0];
+                    case "toString":
+                        return type.getSimpleName();
+                    default:
+                        return handler.handle(method.getName(), (args == null) ? new Object[0] : args);
+                }
+            });
+    }
+
+    /**
+     * Handles a call made through one of the proxies.
+     */
+    @FunctionalInterface
+    private interface Handler {
+        Object handle(String method, Object[] args);
+    }
+}
@@ -0,0 +1,174 @@
+package gg.sep.securityrobot.engagement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import gg.sep.securityrobot.commands.Role;
+import gg.sep.securityrobot.identity.TwitchUserIdentity;
+
+/**
+ * Load test of raffle entry, at a fixed rate of entries per second in each of several channels.
+ *
+ * Entry threads enter users into one raffle per channel on a fixed schedule, with one in ten entries repeating an
+ * earlier user, while a checkpoint thread drains new entrants every second as the Redis checkpoint does. It reports
+ * the entry rate achieved, the latency of each entry, how far the entry threads fell behind the schedule, and checks
+ * that every entrant was checkpointed exactly once. It then enters as fast as possible to find the maximum rate, and
+ * times drawing winners from the full raffles. Entries go straight into the raffles' {@link EntrantSet}, as
+ * {@link Raffle#enter} does once the author's roles are checked. Not run as part of the test suite; run it directly
+ * with the test classpath, optionally passing the number of channels, entries per second per channel, seconds and
+ * entry threads:
+ *
+ *    java gg.sep.securityrobot.engagement.EntrantLoadHarness 4 10000 10 8
+ */
+public final class EntrantLoadHarness {
+
+    private static final long CHECKPOINT_MILLIS = 1000;
+    private static final int REPEAT_EVERY = 10;
+
+    private EntrantLoadHarness() {
+    }
+
+    /**
+     * Runs the load test.
+     * @param args Optional number of channels (default 4), entries per second per channel (default 10000), seconds
+     *             (default 10) and entry threads (default 8).
+     * @throws Exception If an entry or checkpoint thread fails.
+     */
+    public static void main(final String[] args) throws Exception {
+        final int channels = (args.length > 0) ? Integer.parseInt(args[0]) : 4;
+        final int rate = (args.length > 1) ? Integer.parseInt(args[1]) : 10_000;
+        final int seconds = (args.length > 2) ? Integer.parseInt(args[2]) : 10;
+        final int threads = (args.length > 3) ? Integer.parseInt(args[3]) : 8;
+        final int entriesPerChannel = rate * seconds;
+        final TwitchUserIdentity[] users = EntrantSetTest.identities(entriesPerChannel);
+        System.out.printf("%d channels, %d entries/sec each for %d seconds, %d entry threads%n", channels, rate,
+            seconds, threads);
+
+        run("paced", channels, users, rate, threads);
+        run("unpaced", channels, users, 0, threads);
+    }
+
+    private static void run(final String name, final int channels, final TwitchUserIdentity[] users, final int rate,
+                            final int threads) throws Exception {
+        final Raffle[] raffles = new Raffle[channels];
+        final int[][] orders = new int[channels][];
+        final List<List<Long>> checkpointed = new ArrayList<>();
+        for (int c = 0; c < channels; c++) {
+            raffles[c] = new Raffle("channel" + c, Role.VIEWER.getMask(), System.currentTimeMillis(), users.length,
+                Collections.emptyList());
+            orders[c] = order(users.length, new Random(c));
+            checkpointed.add(new ArrayList<>());
+        }
+
+        final ScheduledExecutorService checkpointer = Executors.newSingleThreadScheduledExecutor();
+        checkpointer.scheduleWithFixedDelay(() -> checkpoint(raffles, checkpointed), CHECKPOINT_MILLIS,
+            CHECKPOINT_MILLIS, TimeUnit.MILLISECONDS);
+
+        final ExecutorService entryThreads = Executors.newFixedThreadPool(threads);
+        final long events = (long) channels * users.length;
+        final double intervalNanos = (rate == 0) ? 0 : 1e9 / ((double) rate * channels);
+        final long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        final List<Future<long[]>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            results.add(entryThreads.submit(() -> {
+                final long[] latencies = new long[(int) ((events + threads - 1) / threads) + 1];
+                long maxLag = 0;
+                int count = 0;
+                for (long event = thread; event < events; event += threads) {
+                    final long due = start + (long) (event * intervalNanos);
+                    long now = System.nanoTime();
+                    while (now < due) {
+                        LockSupport.parkNanos(due - now);
+                        now = System.nanoTime();
+                    }
+                    maxLag = Math.max(maxLag, now - due);
+                    final int channel = (int) (event % channels);
+                    final int[] order = orders[channel];
+                    final int index = (int) (event / channels);
+                    final int user = (index % REPEAT_EVERY == REPEAT_EVERY - 1) ? order[index / 2] : order[index];
+                    final long entered = System.nanoTime();
+                    raffles[channel].getEntrants().add(users[user]);
+                    latencies[count++] = System.nanoTime() - entered;
+                }
+                final long[] result = Arrays.copyOf(latencies, count + 1);
+                result[count] = maxLag;
+                return result;
+            }));
+        }
+
+        long maxLag = 0;
+        final List<long[]> latencies = new ArrayList<>();
+        for (final Future<long[]> result : results) {
+            final long[] threadResult = result.get();
+            maxLag = Math.max(maxLag, threadResult[threadResult.length - 1]);
+            latencies.add(Arrays.copyOf(threadResult, threadResult.length - 1));
+        }
+        final long elapsed = System.nanoTime() - start;
+        entryThreads.shutdown();
+        checkpointer.shutdown();
+        checkpointer.awaitTermination(10, TimeUnit.SECONDS);
+        checkpoint(raffles, checkpointed);
+
+        final long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        long added = 0;
+        boolean consistent = true;
+        for (int c = 0; c < channels; c++) {
+            final long[] snapshot = raffles[c].getEntrants().snapshot();
+            added += snapshot.length;
+            consistent &= Arrays.equals(snapshot, checkpointed.get(c).stream().mapToLong(Long::longValue).toArray())
+                && Arrays.stream(snapshot).distinct().count() == snapshot.length;
+        }
+        System.out.printf("%-8s %,12.0f entries/sec/channel, %d added, entry latency p50 %,d ns p99 %,d ns"
+                + " p99.9 %,d ns max %,d ns, max schedule lag %,d us, checkpoints %s%n",
+            name, events * 1e9 / elapsed / channels, added, percentile(all, 0.5), percentile(all, 0.99),
+            percentile(all, 0.999), all[all.length - 1], TimeUnit.NANOSECONDS.toMicros(maxLag),
+            consistent ? "match the entrants" : "DO NOT MATCH the entrants");
+
+        final long drawStart = System.nanoTime();
+        for (final Raffle raffle : raffles) {
+            raffle.draw(10, userId -> CompletableFuture.completedFuture(true)).join();
+        }
+        System.out.printf("%-8s draw of 10 winners from %,d entrants: %.2f ms%n", name,
+            raffles[0].entrantCount(), (System.nanoTime() - drawStart) / 1e6 / channels);
+    }
+
+    private static int[] order(final int count, final Random random) {
+        final int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        for (int i = count - 1; i > 0; i--) {
+            final int swap = random.nextInt(i + 1);
+            final int value = order[i];
+            order[i] = order[swap];
+            order[swap] = value;
+        }
+        return order;
+    }
+
+    private static void checkpoint(final Raffle[] raffles, final List<List<Long>> checkpointed) {
+        for (int c = 0; c < raffles.length; c++) {
+            final EntrantSet entrants = raffles[c].getEntrants();
+            final long[] userIds = entrants.uncheckpointed();
+            for (final long userId : userIds) {
+                checkpointed.get(c).add(userId);
+            }
+            entrants.markCheckpointed(userIds.length);
+        }
+    }
+
+    private static long percentile(final long[] sorted, final double percentile) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.round(percentile * (sorted.length - 1)))];
+    }
+}
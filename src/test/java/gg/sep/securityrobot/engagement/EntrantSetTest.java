@@ -0,0 +1,189 @@
+package gg.sep.securityrobot.engagement;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import org.junit.After;
+import org.junit.Test;
+
+import gg.sep.securityrobot.config.models.IdentityConfig;
+import gg.sep.securityrobot.identity.IdentityTable;
+import gg.sep.securityrobot.identity.TwitchUserIdentity;
+import gg.sep.securityrobot.models.twitch.tmi.TwitchTags;
+
+/**
+ * Tests for {@link EntrantSet}.
+ */
+public class EntrantSetTest {
+
+    private static final int THREADS = 8;
+
+    // one spare thread, for a test which adds concurrently from the pool itself
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS + 1);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Creates identities for users with IDs 1 to count.
+     * @param count Number of users.
+     * @return Identities, indexed by user ID minus one.
+     */
+    static TwitchUserIdentity[] identities(final int count) {
+        final IdentityTable table = new IdentityTable(new IdentityConfig());
+        final TwitchUserIdentity[] identities = new TwitchUserIdentity[count];
+        for (int i = 0; i < count; i++) {
+            identities[i] = table.resolveUser(i + 1, "user" + (i + 1), TwitchTags.parse("@display-name=User" + i));
+        }
+        return identities;
+    }
+
+    private static long[] sorted(final long[] userIds) {
+        final long[] copy = userIds.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+
+    private int addConcurrently(final EntrantSet set, final TwitchUserIdentity[] identities, final boolean shuffled)
+        throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<Integer>> added = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final List<TwitchUserIdentity> order = new ArrayList<>(Arrays.asList(identities));
+            if (shuffled) {
+                Collections.shuffle(order, new Random(t));
+            }
+            final int thread = t;
+            added.add(executor.submit(() -> {
+                start.await();
+                int count = 0;
+                for (int i = 0; i < order.size(); i++) {
+                    // shuffled threads all enter every user; otherwise each enters its own share
+                    if ((shuffled || i % THREADS == thread) && set.add(order.get(i)) == EntryResult.ADDED) {
+                        count++;
+                    }
+                }
+                return count;
+            }));
+        }
+        start.countDown();
+        int total = 0;
+        for (final Future<Integer> future : added) {
+            total += future.get(30, TimeUnit.SECONDS);
+        }
+        return total;
+    }
+
+    @Test
+    public void usersAreAddedOnce() {
+        final TwitchUserIdentity[] users = identities(3);
+        final EntrantSet set = new EntrantSet(10, Collections.emptyList());
+
+        assertEquals(EntryResult.ADDED, set.add(users[0]));
+        assertEquals(EntryResult.ADDED, set.add(users[1], false));
+        assertEquals(EntryResult.DUPLICATE, set.add(users[0], false));
+        assertEquals(EntryResult.DUPLICATE, set.add(users[1]));
+        assertEquals(EntryResult.ADDED, set.add(users[2]));
+
+        assertEquals(3, set.size());
+        assertArrayEquals(new long[] {1, -2, 3}, set.snapshot());
+    }
+
+    @Test
+    public void restoredEntrantsKeepTheirCheckAndAreAlreadyCheckpointed() {
+        final TwitchUserIdentity[] users = identities(4);
+        final EntrantSet set = new EntrantSet(10, List.of(1L, -2L, 2L, -1L, 3L));
+
+        assertArrayEquals(new long[] {1, -2, 3}, set.snapshot());
+        assertEquals(0, set.uncheckpointed().length);
+        assertEquals(EntryResult.DUPLICATE, set.add(users[1]));
+        assertEquals(EntryResult.ADDED, set.add(users[3], false));
+        assertArrayEquals(new long[] {-4}, set.uncheckpointed());
+    }
+
+    @Test
+    public void entriesAreRefusedOnceFull() {
+        final TwitchUserIdentity[] users = identities(4);
+        final EntrantSet set = new EntrantSet(2, Collections.emptyList());
+
+        assertEquals(EntryResult.ADDED, set.add(users[0]));
+        assertEquals(EntryResult.ADDED, set.add(users[1]));
+        assertEquals(EntryResult.FULL, set.add(users[2]));
+        assertEquals(EntryResult.FULL, set.add(users[2]));
+        assertEquals(EntryResult.DUPLICATE, set.add(users[0]));
+        assertEquals(2, set.size());
+
+        // a checkpoint holding more entrants than the configured maximum is restored whole
+        final EntrantSet restored = new EntrantSet(2, List.of(1L, 2L, 3L));
+        assertEquals(3, restored.size());
+        assertEquals(EntryResult.FULL, restored.add(users[3]));
+    }
+
+    @Test
+    public void entriesSpanPagesInOrder() {
+        final TwitchUserIdentity[] users = identities(10_000);
+        final EntrantSet set = new EntrantSet(20_000, Collections.emptyList());
+        for (final TwitchUserIdentity user : users) {
+            set.add(user);
+        }
+        assertArrayEquals(LongStream.rangeClosed(1, users.length).toArray(), set.snapshot());
+    }
+
+    @Test
+    public void concurrentEntriesAreRecordedOnce() throws Exception {
+        final TwitchUserIdentity[] users = identities(20_000);
+        final EntrantSet set = new EntrantSet(100_000, Collections.emptyList());
+
+        assertEquals(users.length, addConcurrently(set, users, true));
+        assertEquals(users.length, set.size());
+        assertArrayEquals(LongStream.rangeClosed(1, users.length).toArray(), sorted(set.snapshot()));
+    }
+
+    @Test
+    public void concurrentEntriesStopAtTheCapacity() throws Exception {
+        final TwitchUserIdentity[] users = identities(20_000);
+        final EntrantSet set = new EntrantSet(5_000, Collections.emptyList());
+
+        assertEquals(5_000, addConcurrently(set, users, false));
+        assertEquals(5_000, set.size());
+        final long[] snapshot = sorted(set.snapshot());
+        assertEquals(5_000, snapshot.length);
+        assertEquals(5_000, LongStream.of(snapshot).distinct().count());
+    }
+
+    @Test
+    public void checkpointsCoverEveryEntryOnceWhileEntriesArrive() throws Exception {
+        final TwitchUserIdentity[] users = identities(50_000);
+        final EntrantSet set = new EntrantSet(100_000, Collections.emptyList());
+        final Future<Integer> adding = executor.submit(() -> addConcurrently(set, users, true));
+
+        final List<Long> checkpointed = new ArrayList<>();
+        boolean done = false;
+        while (!done) {
+            done = adding.isDone();
+            final long[] batch = set.uncheckpointed();
+            for (final long userId : batch) {
+                checkpointed.add(userId);
+            }
+            set.markCheckpointed(batch.length);
+        }
+
+        assertEquals(users.length, adding.get().intValue());
+        assertArrayEquals(set.snapshot(), checkpointed.stream().mapToLong(Long::longValue).toArray());
+        assertEquals(0, set.uncheckpointed().length);
+    }
+}
@@ -0,0 +1,138 @@
+package gg.sep.securityrobot.engagement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongFunction;
+
+import org.junit.Test;
+
+import gg.sep.securityrobot.commands.Role;
+import gg.sep.securityrobot.identity.TwitchUserIdentity;
+
+/**
+ * Tests for drawing the winners of a {@link Raffle}.
+ */
+public class RaffleTest {
+
+    // chi-squared critical values at a significance level below 0.000001, so the tests practically never fail
+    private static final double CHI_SQUARED_9_DF = 50.7;
+    private static final double CHI_SQUARED_19_DF = 67.0;
+
+    private static final TwitchUserIdentity[] USERS = EntrantSetTest.identities(20);
+    private static final LongFunction<CompletableFuture<Boolean>> EVERYONE_FOLLOWS =
+        userId -> CompletableFuture.completedFuture(true);
+
+    /**
+     * Creates a raffle, entered by the first users, of which those listed as unchecked still need their follow
+     * checked.
+     */
+    private static Raffle raffle(final int entrants, final int... unchecked) {
+        final Raffle raffle = new Raffle("channel", Role.FOLLOWER.getMask(), 0, 1_000, Collections.emptyList());
+        final Set<Integer> uncheckedUsers = new HashSet<>();
+        for (final int user : unchecked) {
+            uncheckedUsers.add(user);
+        }
+        for (int i = 0; i < entrants; i++) {
+            raffle.getEntrants().add(USERS[i], !uncheckedUsers.contains(i + 1));
+        }
+        return raffle;
+    }
+
+    private static double chiSquared(final long[] counts, final double expected) {
+        double statistic = 0;
+        for (final long count : counts) {
+            statistic += (count - expected) * (count - expected) / expected;
+        }
+        return statistic;
+    }
+
+    @Test
+    public void singleWinnersAreDrawnUniformly() {
+        final int trials = 20_000;
+        final long[] wins = new long[10];
+        for (int i = 0; i < trials; i++) {
+            final List<Long> winners = raffle(10).draw(1, EVERYONE_FOLLOWS).join().getWinners();
+            assertEquals(1, winners.size());
+            wins[(int) (winners.get(0) - 1)]++;
+        }
+        final double statistic = chiSquared(wins, trials / 10.0);
+        assertTrue("chi-squared " + statistic, statistic < CHI_SQUARED_9_DF);
+    }
+
+    @Test
+    public void severalWinnersAreDistinctAndDrawnUniformly() {
+        final int trials = 10_000;
+        final long[] wins = new long[20];
+        final long[] firstPicks = new long[20];
+        for (int i = 0; i < trials; i++) {
+            final List<Long> winners = raffle(20).draw(5, EVERYONE_FOLLOWS).join().getWinners();
+            assertEquals(5, new HashSet<>(winners).size());
+            winners.forEach(userId -> wins[(int) (userId - 1)]++);
+            firstPicks[(int) (winners.get(0) - 1)]++;
+        }
+        final double statistic = chiSquared(wins, trials * 5 / 20.0);
+        assertTrue("chi-squared " + statistic, statistic < CHI_SQUARED_19_DF);
+        final double firstStatistic = chiSquared(firstPicks, trials / 20.0);
+        assertTrue("chi-squared " + firstStatistic, firstStatistic < CHI_SQUARED_19_DF);
+    }
+
+    @Test
+    public void winnersAreNotDrawnAgain() {
+        final Raffle raffle = raffle(10);
+        final Set<Long> winners = new HashSet<>(raffle.draw(4, EVERYONE_FOLLOWS).join().getWinners());
+        winners.addAll(raffle.draw(4, EVERYONE_FOLLOWS).join().getWinners());
+        final List<Long> last = raffle.draw(4, EVERYONE_FOLLOWS).join().getWinners();
+        assertEquals(2, last.size());
+        winners.addAll(last);
+        assertEquals(10, winners.size());
+        assertTrue(raffle.draw(1, EVERYONE_FOLLOWS).join().getWinners().isEmpty());
+    }
+
+    @Test
+    public void uncheckedEntrantsWhoDoNotFollowAreReplaced() {
+        for (int trial = 0; trial < 200; trial++) {
+            final List<Long> checkedUsers = new ArrayList<>();
+            final Raffle raffle = raffle(10, 2, 4, 6, 8);
+            final RaffleDraw draw = raffle.draw(6, userId -> {
+                checkedUsers.add(userId);
+                return CompletableFuture.completedFuture(false);
+            }).join();
+
+            assertEquals(0, draw.getUnchecked());
+            assertEquals(Set.of(1L, 3L, 5L, 7L, 9L, 10L), new HashSet<>(draw.getWinners()));
+            assertTrue(Set.of(2L, 4L, 6L, 8L).containsAll(checkedUsers));
+            assertEquals(checkedUsers.size(), new HashSet<>(checkedUsers).size());
+        }
+    }
+
+    @Test
+    public void uncheckedEntrantsWhoFollowCanWin() {
+        final RaffleDraw draw = raffle(3, 1, 2, 3).draw(3, EVERYONE_FOLLOWS).join();
+        assertEquals(Set.of(1L, 2L, 3L), new HashSet<>(draw.getWinners()));
+    }
+
+    @Test
+    public void entrantsWhoseFollowCannotBeCheckedArePutBack() {
+        final Raffle raffle = raffle(4, 3, 4);
+        final LongFunction<CompletableFuture<Boolean>> unavailable = userId -> {
+            final CompletableFuture<Boolean> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalStateException("Twitch API unavailable"));
+            return failed;
+        };
+
+        final RaffleDraw draw = raffle.draw(4, unavailable).join();
+        assertEquals(Set.of(1L, 2L), new HashSet<>(draw.getWinners()));
+        assertEquals(2, draw.getUnchecked());
+
+        final RaffleDraw retry = raffle.draw(4, EVERYONE_FOLLOWS).join();
+        assertEquals(Set.of(3L, 4L), new HashSet<>(retry.getWinners()));
+        assertEquals(0, retry.getUnchecked());
+    }
+}
@@ -0,0 +1,80 @@
+package gg.sep.securityrobot.lifecycle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link LifecycleManager}.
+ */
+public class LifecycleManagerTest {
+
+    @Test
+    public void stepsRunInOrderOnce() {
+        final LifecycleManager lifecycle = new LifecycleManager(5);
+        final List<String> ran = new ArrayList<>();
+        lifecycle.step("intake", deadline -> {
+            ran.add("intake");
+            return 0;
+        });
+        lifecycle.step("drain", deadline -> {
+            ran.add("drain");
+            return 3;
+        });
+
+        final ShutdownReport report = lifecycle.shutdown("test");
+        assertSame(report, lifecycle.shutdown("again"));
+        assertEquals(List.of("intake", "drain"), ran);
+        assertEquals("test", report.getReason());
+        assertEquals(Map.of("drain", 3L), report.getDropped());
+        assertFalse(report.isClean());
+        assertTrue(lifecycle.isShutdown());
+    }
+
+    @Test
+    public void failedStepsAreReportedAndDoNotStopLaterSteps() {
+        final LifecycleManager lifecycle = new LifecycleManager(5);
+        final List<String> ran = new ArrayList<>();
+        lifecycle.step("flush", deadline -> {
+            throw new IllegalStateException("Redis unavailable");
+        });
+        lifecycle.step("close", deadline -> {
+            ran.add("close");
+            return 0;
+        });
+
+        final ShutdownReport report = lifecycle.shutdown("test");
+        assertEquals(Collections.singletonList("flush"), report.getFailedSteps());
+        assertEquals(Collections.singletonList("close"), ran);
+    }
+
+    @Test
+    public void awaitShutdownReturnsTheReportOfAShutdownStartedElsewhere() throws Exception {
+        final LifecycleManager lifecycle = new LifecycleManager(5);
+        lifecycle.step("close", deadline -> 0);
+        final CompletableFuture<ShutdownReport> awaited = CompletableFuture.supplyAsync(() -> {
+            try {
+                return lifecycle.awaitShutdown();
+            } catch (final InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertFalse(awaited.isDone());
+
+        final Thread shutdown = new Thread(() -> lifecycle.shutdown("owner command"), "owner-shutdown");
+        shutdown.start();
+        final ShutdownReport report = awaited.get(10, TimeUnit.SECONDS);
+        assertEquals("owner command", report.getReason());
+        assertTrue(report.isClean());
+    }
+}
@@ -0,0 +1,174 @@
+package gg.sep.securityrobot.listeners;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Measures the throughput of the chat message listeners' logging with several event threads.
+ *
+ * Each event thread handles its share of chat messages, and for each one does what the listener does with it:
+ * <ul>
+ *   <li>{@code stdout}: the previous {@code System.out.println} of the message time, through a print stream shaped
+ *       like {@code System.out} (auto flushed, 8KB buffer) over a scratch file. A terminal or pipe is slower.</li>
+ *   <li>{@code off}: the parameterized trace event, with the listeners at their default INFO level.</li>
+ *   <li>{@code async}/{@code sync}: the trace event, enabled, through asynchronous loggers or synchronous ones, into
+ *       a random access file appender with the production layout.</li>
+ *   <li>{@code async-sampled}: as {@code async}, with the listeners' production burst filter.</li>
+ * </ul>
+ * Log4j's context selector is fixed once it starts, so each mode runs in its own JVM. Not run as part of the test
+ * suite; run it directly with the test classpath, optionally passing the number of messages and event threads:
+ *
+ *    java gg.sep.securityrobot.listeners.ListenerLoggingBenchmark 2000000 8
+ */
+public final class ListenerLoggingBenchmark {
+
+    private static final String[] MODES = {"stdout", "off", "sync", "async", "async-sampled"};
+    private static final String CONFIG = "<Configuration status=\"WARN\">\n"
+        + "  <Appenders>\n"
+        + "    <RandomAccessFile name=\"File\" fileName=\"${sys:benchmark.dir}/listeners.log\">\n"
+        + "      <PatternLayout pattern=\"%d{DEFAULT} [%p] [%t] %c{1} - %m%n\"/>\n"
+        + "    </RandomAccessFile>\n"
+        + "  </Appenders>\n"
+        + "  <Loggers>\n"
+        + "    <Logger name=\"gg.sep.securityrobot.listeners\" level=\"${sys:benchmark.level}\">\n"
+        + "      <BurstFilter level=\"${sys:benchmark.burstLevel}\" rate=\"20\" maxBurst=\"200\"/>\n"
+        + "    </Logger>\n"
+        + "    <Root level=\"info\">\n"
+        + "      <AppenderRef ref=\"File\"/>\n"
+        + "    </Root>\n"
+        + "  </Loggers>\n"
+        + "</Configuration>\n";
+
+    private ListenerLoggingBenchmark() {
+    }
+
+    /**
+     * Runs every mode in its own JVM, or a single mode in this one.
+     * @param args Optional number of messages (default 2000000), number of event threads (default 8), and the
+     *             mode to run in this JVM.
+     * @throws Exception If a mode cannot be run.
+     */
+    public static void main(final String[] args) throws Exception {
+        final int messages = (args.length > 0) ? Integer.parseInt(args[0]) : 2_000_000;
+        final int threads = (args.length > 1) ? Integer.parseInt(args[1]) : 8;
+        if (args.length > 2) {
+            runMode(args[2], messages, threads);
+            return;
+        }
+
+        System.out.printf("%d chat messages over %d event threads%n", messages, threads);
+        final String java = ProcessHandle.current().info().command().orElse("java");
+        for (final String mode : MODES) {
+            final Path directory = Files.createTempDirectory("listener-logging");
+            try {
+                final Path config = directory.resolve("log4j2.xml");
+                Files.write(config, CONFIG.getBytes(StandardCharsets.UTF_8));
+                final List<String> command = new ArrayList<>(List.of(java,
+                    "-Dlog4j.configurationFile=" + config,
+                    "-Dbenchmark.dir=" + directory,
+                    "-Dbenchmark.level=" + (mode.equals("off") ? "info" : "trace"),
+                    // filters nothing unless sampled, since trace is the least severe level
+                    "-Dbenchmark.burstLevel=" + (mode.equals("async-sampled") ? "debug" : "all")));
+                if (mode.startsWith("async")) {
+                    // as log4j2.component.properties sets up production logging
+                    command.addAll(List.of(
+                        "-DLog4jContextSelector=org.apache.logging.log4j.core.async.AsyncLoggerContextSelector",
+                        "-Dlog4j2.asyncLoggerRingBufferSize=262144",
+                        "-Dlog4j2.asyncQueueFullPolicy=Discard",
+                        "-Dlog4j2.discardThreshold=INFO"));
+                }
+                command.addAll(List.of("-Dlog4j2.enableThreadlocals=true", "-Dlog4j2.enableDirectEncoders=true",
+                    "-cp", System.getProperty("java.class.path"), ListenerLoggingBenchmark.class.getName(),
+                    Integer.toString(messages), Integer.toString(threads), mode));
+                new ProcessBuilder(command).inheritIO().start().waitFor();
+            } finally {
+                try (Stream<Path> files = Files.walk(directory)) {
+                    files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+                }
+            }
+        }
+    }
+
+    private static void runMode(final String mode, final int messages, final int threads) throws Exception {
+        final String[] channels = new String[64];
+        final OffsetDateTime[] times = new OffsetDateTime[1024];
+        for (int i = 0; i < channels.length; i++) {
+            channels[i] = "channel" + i;
+        }
+        for (int i = 0; i < times.length; i++) {
+            times[i] = OffsetDateTime.ofInstant(Instant.ofEpochMilli(1_560_000_000_000L + i * 37L), ZoneOffset.UTC);
+        }
+
+        final Path scratch = Files.createTempFile("listener-stdout", ".log");
+        final Logger log = LogManager.getLogger("gg.sep.securityrobot.listeners.CommandListener");
+        try (PrintStream stdout = new PrintStream(new BufferedOutputStream(new FileOutputStream(scratch.toFile()),
+            8192), true)) {
+            // a short warm up round, then the measured one
+            handleMessages(mode, messages / 10, threads, channels, times, stdout, log);
+            final long elapsed = handleMessages(mode, messages, threads, channels, times, stdout, log);
+            System.out.printf("%-14s %8d ms %12.0f messages/sec %8.1f ns/message%s%n", mode,
+                TimeUnit.NANOSECONDS.toMillis(elapsed), messages * 1e9 / elapsed, (double) elapsed / messages,
+                mode.equals("stdout") ? "" : loggedLines(messages + messages / 10));
+        } finally {
+            LogManager.shutdown();
+            Files.deleteIfExists(scratch);
+        }
+    }
+
+    private static long handleMessages(final String mode, final int messages, final int threads,
+                                       final String[] channels, final OffsetDateTime[] times,
+                                       final PrintStream stdout, final Logger log) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            final Thread eventThread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (final InterruptedException e) {
+                    return;
+                }
+                for (int i = thread; i < messages; i += threads) {
+                    final OffsetDateTime time = times[i & (times.length - 1)];
+                    if (mode.equals("stdout")) {
+                        stdout.println(time);
+                    } else {
+                        log.trace("Channel message. channel={}, time={}", channels[i & (channels.length - 1)], time);
+                    }
+                }
+                done.countDown();
+            }, "event-" + t);
+            eventThread.start();
+        }
+        final long startNanos = System.nanoTime();
+        start.countDown();
+        done.await();
+        return System.nanoTime() - startNanos;
+    }
+
+    private static String loggedLines(final int events) throws IOException {
+        // stop logging, so every event the event threads handed over has been written
+        LogManager.shutdown();
+        final Path logFile = Path.of(System.getProperty("benchmark.dir"), "listeners.log");
+        try (Stream<String> lines = Files.lines(logFile)) {
+            return String.format(", %d of %d events logged", lines.count(), events);
+        }
+    }
+}
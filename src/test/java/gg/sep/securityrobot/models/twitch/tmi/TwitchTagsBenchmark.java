@@ -0,0 +1,143 @@
+package gg.sep.securityrobot.models.twitch.tmi;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * Timing harness comparing {@link TwitchTags} with parsing every tag into a map.
+ *
+ * Each round reads the tags a channel message and its author need (IDs, timestamp, flags, badges, display name,
+ * color and emotes) from synthetic, tag heavy PRIVMSG lines. The map based parser copies each tag into a
+ * {@link HashMap}, as the previous message parsing did with the tags Kitteh parsed. Allocation per line is measured
+ * with the thread allocation counter of HotSpot based JVMs. Not run as part of the test suite; run it directly with
+ * the test classpath, optionally passing the number of lines parsed per round:
+ *
+ *    java gg.sep.securityrobot.models.twitch.tmi.TwitchTagsBenchmark 2000000
+ */
+public final class TwitchTagsBenchmark {
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 5;
+    private static final int SUB_TIER_2_BADGE = 2000;
+
+    private TwitchTagsBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     * @param args Optional number of lines parsed per round (default 2000000).
+     */
+    public static void main(final String[] args) {
+        final int parses = (args.length > 0) ? Integer.parseInt(args[0]) : 2_000_000;
+        final String[] lines = generate(1024);
+
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            final boolean measured = round >= WARMUP_ROUNDS;
+            run("hash map of every tag", measured, lines, parses, TwitchTagsBenchmark::readMap);
+            run("new TwitchTags per line", measured, lines, parses, line -> readTags(TwitchTags.parse(line)));
+            run("shared TwitchTags", measured, lines, parses, line -> readTags(TwitchTags.parseShared(line)));
+            run("shared TwitchTags, no strings", measured, lines, parses,
+                line -> readTagsWithoutStrings(TwitchTags.parseShared(line)));
+        }
+    }
+
+    private static String[] generate(final int count) {
+        final Random random = new Random(42);
+        final String[] lines = new String[count];
+        for (int i = 0; i < count; i++) {
+            final int user = random.nextInt(100_000);
+            final boolean mod = random.nextInt(20) == 0;
+            final boolean sub = random.nextInt(3) == 0;
+            lines[i] = "@badge-info=" + (sub ? "subscriber/" + random.nextInt(60) : "")
+                + ";badges=" + (mod ? "moderator/1," : "") + (sub ? "subscriber/" + (random.nextInt(3) * 1000) : "")
+                + ",glhf-pledge/1;client-nonce=" + Long.toHexString(random.nextLong())
+                + ";color=#" + String.format("%06X", random.nextInt(0x1000000))
+                + ";display-name=Chatter" + user
+                + ";emotes=" + (random.nextBoolean() ? "25:0-4/1902:6-10" : "")
+                + ";first-msg=0;flags=;id=" + new UUID(random.nextLong(), random.nextLong())
+                + ";mod=" + (mod ? 1 : 0) + ";returning-chatter=0;room-id=" + (22_484_632 + random.nextInt(20))
+                + ";subscriber=" + (sub ? 1 : 0) + ";tmi-sent-ts=" + (1_560_000_000_000L + i)
+                + ";turbo=0;user-id=" + (10_000_000 + user) + ";user-type=" + (mod ? "mod" : "")
+                + " :chatter" + user + "!chatter" + user + "@chatter" + user + ".tmi.twitch.tv PRIVMSG #channel"
+                + " :Kappa Keepo chat message " + i;
+        }
+        return lines;
+    }
+
+    private static void run(final String name, final boolean measured, final String[] lines, final int parses,
+                            final ToLongFunction<String> read) {
+        final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long thread = Thread.currentThread().getId();
+        final long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+        final long start = System.nanoTime();
+        long checksum = 0;
+        for (int i = 0; i < parses; i++) {
+            checksum += read.applyAsLong(lines[i & (lines.length - 1)]);
+        }
+        final long elapsed = System.nanoTime() - start;
+        final long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+        if (measured) {
+            System.out.printf("%-32s %8d ms %8.1f ns/line %8.1f bytes/line (checksum %d)%n", name,
+                TimeUnit.NANOSECONDS.toMillis(elapsed), (double) elapsed / parses, (double) allocated / parses,
+                checksum);
+        }
+    }
+
+    private static long readMap(final String line) {
+        final Map<String, String> tags = new HashMap<>();
+        if (line.startsWith("@")) {
+            final int end = line.indexOf(' ');
+            for (final String tag : line.substring(1, end).split(";")) {
+                final int equals = tag.indexOf('=');
+                if (equals > 0 && equals + 1 < tag.length()) {
+                    tags.put(tag.substring(0, equals), unescape(tag.substring(equals + 1)));
+                }
+            }
+        }
+        long result = Long.parseLong(tags.get("room-id")) ^ Long.parseLong(tags.get("user-id"))
+            ^ Long.parseLong(tags.get("tmi-sent-ts"));
+        result += "1".equals(tags.get("mod")) ? 1 : 0;
+        result += "1".equals(tags.get("subscriber")) ? 2 : 0;
+        result += "1".equals(tags.get("turbo")) ? 4 : 0;
+        final String badges = tags.getOrDefault("badges", "");
+        for (final String badge : badges.split(",")) {
+            final String[] parts = badge.split("/");
+            if ("subscriber".equals(parts[0]) && parts.length > 1 && Integer.parseInt(parts[1]) >= SUB_TIER_2_BADGE) {
+                result += 8;
+            }
+            result += ("vip".equals(parts[0]) || "founder".equals(parts[0])) ? 16 : 0;
+        }
+        return result + tags.get("id").length() + tags.get("display-name").length() + tags.get("color").length()
+            + tags.getOrDefault("emotes", "").length();
+    }
+
+    private static long readTags(final TwitchTags tags) {
+        final String emotes = tags.getEmotes();
+        return readTagsWithoutStrings(tags) + tags.getId().length() + tags.getDisplayName().length()
+            + tags.getColor().length() + (emotes == null ? 0 : emotes.length());
+    }
+
+    private static long readTagsWithoutStrings(final TwitchTags tags) {
+        long result = tags.getRoomIdAsLong() ^ tags.getUserIdAsLong() ^ tags.getSentTimestamp(-1);
+        result += tags.isMod() ? 1 : 0;
+        result += tags.isSubscriber() ? 2 : 0;
+        result += tags.isTurbo() ? 4 : 0;
+        result += tags.badgeVersion("subscriber") >= SUB_TIER_2_BADGE ? 8 : 0;
+        result += (tags.badgeVersion("vip") >= 0 || tags.badgeVersion("founder") >= 0) ? 16 : 0;
+        return result + (tags.displayNameEquals(null) ? 1 : 0);
+    }
+
+    private static String unescape(final String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        return value.replace("\\s", " ").replace("\\:", ";").replace("\\r", "\r").replace("\\n", "\n")
+            .replace("\\\\", "\\");
+    }
+}
@@ -0,0 +1,170 @@
+package gg.sep.securityrobot.models.twitch.tmi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link TwitchTags}.
+ */
+public class TwitchTagsTest {
+
+    private static final String PRIVMSG = "@badge-info=subscriber/26;badges=broadcaster/1,subscriber/3012,vip/1;"
+        + "client-nonce=abc123;color=#1E90FF;display-name=Some\\sUser;emotes=25:0-4/1902:6-10;first-msg=0;flags=;"
+        + "id=b34ccfc7-4977-403a-8a94-33c6bac34fb8;mod=1;room-id=22484632;subscriber=1;tmi-sent-ts=1560000000123;"
+        + "turbo=0;user-id=12345678;user-type=mod"
+        + " :someuser!someuser@someuser.tmi.twitch.tv PRIVMSG #channel :Kappa a=b";
+
+    @Test
+    public void knownTagsAreReadFromTheLine() {
+        final TwitchTags tags = TwitchTags.parse(PRIVMSG);
+
+        assertEquals("b34ccfc7-4977-403a-8a94-33c6bac34fb8", tags.getId());
+        assertEquals("22484632", tags.getRoomId());
+        assertEquals(22484632L, tags.getRoomIdAsLong());
+        assertEquals("12345678", tags.getUserId());
+        assertEquals(12345678L, tags.getUserIdAsLong());
+        assertEquals(1560000000123L, tags.getSentTimestamp(-1));
+        assertEquals("#1E90FF", tags.getColor());
+        assertEquals("25:0-4/1902:6-10", tags.getEmotes());
+        assertEquals("broadcaster/1,subscriber/3012,vip/1", tags.getBadges());
+        assertTrue(tags.isMod());
+        assertTrue(tags.isSubscriber());
+        assertFalse(tags.isTurbo());
+        assertEquals(0, tags.getBits());
+    }
+
+    @Test
+    public void escapesAreDecoded() {
+        final TwitchTags tags = TwitchTags.parse("@display-name=a\\sb\\:c\\\\d\\re\\nf;msg=x\\qy;trailing=z\\ :nick");
+
+        assertEquals("a b;c\\d\re\nf", tags.getDisplayName());
+        // unknown escapes keep the escaped character, and a trailing backslash is dropped
+        assertEquals("xqy", tags.get("msg"));
+        assertEquals("z", tags.get("trailing"));
+    }
+
+    @Test
+    public void displayNameIsComparedWithAndWithoutEscapes() {
+        assertTrue(TwitchTags.parse(PRIVMSG).displayNameEquals("Some User"));
+        assertFalse(TwitchTags.parse(PRIVMSG).displayNameEquals("Some\\sUser"));
+        assertTrue(TwitchTags.parse("@display-name=Plain :nick").displayNameEquals("Plain"));
+        assertFalse(TwitchTags.parse("@display-name=Plain :nick").displayNameEquals("Plai"));
+        assertFalse(TwitchTags.parse("@display-name=Plain :nick").displayNameEquals(null));
+        assertTrue(TwitchTags.parse("@display-name= :nick").displayNameEquals(null));
+    }
+
+    @Test
+    public void emptyValuesAreAbsent() {
+        final TwitchTags tags = TwitchTags.parse("@color=;flags=;mod;emotes=;id=1 :nick PRIVMSG #channel :hi");
+
+        assertNull(tags.getColor());
+        assertNull(tags.getEmotes());
+        assertNull(tags.get("flags"));
+        assertFalse(tags.isMod());
+        assertEquals(-1, tags.getRoomIdAsLong());
+        assertEquals(42, tags.getSentTimestamp(42));
+        assertEquals(1, tags.size());
+        assertEquals(Map.of("id", "1"), tags.toMap());
+    }
+
+    @Test
+    public void unknownTagsAreAvailableByName() {
+        final StringBuilder line = new StringBuilder("@id=1");
+        final Map<String, String> expected = new HashMap<>();
+        expected.put("id", "1");
+        // more unknown tags than the initial offsets hold
+        for (int i = 0; i < 20; i++) {
+            line.append(";custom-").append(i).append('=').append("value\\s").append(i);
+            expected.put("custom-" + i, "value " + i);
+        }
+        final TwitchTags tags = TwitchTags.parse(line.append(" :nick PRIVMSG #channel :hi").toString());
+
+        assertEquals("value 0", tags.get("custom-0"));
+        assertEquals("value 19", tags.get("custom-19"));
+        assertEquals("1", tags.get("id"));
+        assertNull(tags.get("custom"));
+        assertNull(tags.get("custom-20"));
+        assertEquals(21, tags.size());
+        assertEquals(expected, tags.toMap());
+    }
+
+    @Test
+    public void onlyTheTagSectionIsParsed() {
+        final TwitchTags tags = TwitchTags.parse(PRIVMSG);
+        assertNull(tags.get("a"));
+        assertEquals(15, tags.size());
+
+        assertEquals(0, TwitchTags.parse(":nick PRIVMSG #channel :@id=1").size());
+        assertEquals(0, TwitchTags.parse("").size());
+        assertNull(TwitchTags.parse(null).getId());
+        assertEquals("1", TwitchTags.parse("@id=1").getId());
+    }
+
+    @Test
+    public void flagsAndNumbersAreStrict() {
+        final TwitchTags tags = TwitchTags.parse("@mod=10;subscriber=0;turbo=1;room-id=12a;"
+            + "user-id=99999999999999999999;bits=100;tmi-sent-ts=-5 :nick");
+
+        assertFalse(tags.isMod());
+        assertFalse(tags.isSubscriber());
+        assertTrue(tags.isTurbo());
+        assertEquals(-1, tags.getRoomIdAsLong());
+        assertEquals(-1, tags.getUserIdAsLong());
+        assertEquals(100, tags.getBits());
+        assertEquals(7, tags.getSentTimestamp(7));
+    }
+
+    @Test
+    public void badgeVersionsAreMatchedByFullName() {
+        final TwitchTags tags = TwitchTags.parse("@badges=subscriber/3012,vip/1,founder/0,premium,glitchcon/x :nick");
+
+        assertEquals(3012, tags.badgeVersion("subscriber"));
+        assertEquals(1, tags.badgeVersion("vip"));
+        assertEquals(0, tags.badgeVersion("founder"));
+        assertEquals(0, tags.badgeVersion("premium"));
+        assertEquals(0, tags.badgeVersion("glitchcon"));
+        assertEquals(-1, tags.badgeVersion("sub"));
+        assertEquals(-1, tags.badgeVersion("broadcaster"));
+        assertEquals(-1, TwitchTags.parse("@id=1 :nick").badgeVersion("vip"));
+    }
+
+    @Test
+    public void sharedTagsAreReusedAndCleared() {
+        final TwitchTags first = TwitchTags.parseShared(PRIVMSG);
+        assertEquals("Some User", first.getDisplayName());
+        assertEquals("abc123", first.get("client-nonce"));
+
+        final TwitchTags second = TwitchTags.parseShared("@display-name=Other;mod=0 :nick");
+        assertSame(first, second);
+        assertEquals("Other", second.getDisplayName());
+        assertNull(second.getId());
+        assertNull(second.get("client-nonce"));
+        assertFalse(second.isMod());
+        assertEquals(2, second.size());
+
+        assertEquals(0, TwitchTags.parseShared(null).size());
+        assertNull(second.getDisplayName());
+    }
+
+    @Test
+    public void parsedTagsAreNotShared() throws InterruptedException {
+        final TwitchTags owned = TwitchTags.parse(PRIVMSG);
+        TwitchTags.parseShared("@id=other :nick");
+        assertEquals("b34ccfc7-4977-403a-8a94-33c6bac34fb8", owned.getId());
+
+        final TwitchTags[] otherThread = new TwitchTags[1];
+        final Thread thread = new Thread(() -> otherThread[0] = TwitchTags.parseShared("@id=thread :nick"));
+        thread.start();
+        thread.join();
+        assertEquals("other", TwitchTags.parseShared("@id=other :nick").getId());
+        assertEquals("thread", otherThread[0].getId());
+    }
+}